@@ -0,0 +1,45 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.app;
+
+import gov.lbl.scop.local.JobQueue;
+import gov.lbl.scop.local.LocalSQL;
+
+/**
+   Adds the covering index used by JobQueue to claim jobs (on
+   running, priority, n_failures, id and job_type_id) to the job
+   table, if it isn't there already.  Should be run once before
+   starting JobDaemons; it's safe to run again.
+*/
+public class AddJobClaimIndex {
+    final public static void main(String argv[]) {
+        try {
+            LocalSQL.connectRW();
+            JobQueue.DEFAULT.addClaimIndex();
+            System.out.println("done");
+        }
+        catch (Exception e) {
+            System.out.println("Exception: "+e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
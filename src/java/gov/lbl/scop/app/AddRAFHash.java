@@ -0,0 +1,120 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.app;
+
+import java.sql.*;
+import gov.lbl.scop.local.LocalSQL;
+import gov.lbl.scop.local.RowMapper;
+import gov.lbl.scop.local.SQLCursor;
+import gov.lbl.scop.util.RAF;
+
+/**
+   Adds line_hash and body_hash columns to the raf table (if not
+   there already), with an index on pdb_chain_id and line_hash,
+   and fills in the hashes for any rows that don't have them.
+   Must be run once before FreezeRAF, ParseRAF, or MakeNewRelease
+   can compare RAF lines by hash; it's safe to run again.
+*/
+public class AddRAFHash {
+    /**
+       hashes for one row
+    */
+    private static class Row {
+        int id;
+        long lineHash;
+        long bodyHash;
+        boolean hasBody;
+    }
+
+    final private static RowMapper<Row> ROW_MAPPER = new RowMapper<Row>() {
+        public Row map(ResultSet rs) throws SQLException {
+            Row r = new Row();
+            r.id = rs.getInt(1);
+            r.lineHash = RAF.hash(rs.getString(2));
+            String body = rs.getString(3);
+            r.hasBody = (body != null);
+            if (body != null)
+                r.bodyHash = RAF.hash(body);
+            return r;
+        }
+    };
+
+    /**
+       add the columns and index, if needed
+    */
+    final public static void addColumns() throws SQLException {
+        Statement stmt = LocalSQL.createStatement();
+        ResultSet rs = stmt.executeQuery("show columns from raf like 'line_hash'");
+        boolean found = rs.next();
+        rs.close();
+        if (!found) {
+            System.out.println("adding columns");
+            stmt.executeUpdate("alter table raf add line_hash bigint default null, add body_hash bigint default null, add index raf_chain_hash (pdb_chain_id, line_hash)");
+        }
+        stmt.close();
+    }
+
+    /**
+       fill in missing hashes; returns number of rows updated
+    */
+    final public static int fillHashes() throws SQLException {
+        PreparedStatement update = LocalSQL.prepareStatement("update raf set line_hash=?, body_hash=? where id=?");
+        SQLCursor<Row> c = SQLCursor.keyset("id, line, raf_get_body(id)",
+                                            "raf",
+                                            "line_hash is null or body_hash is null",
+                                            "id",
+                                            SQLCursor.DEFAULT_CHUNK_SIZE,
+                                            ROW_MAPPER);
+        int n = 0;
+        Row r;
+        while ((r = c.next()) != null) {
+            update.setLong(1, r.lineHash);
+            if (r.hasBody)
+                update.setLong(2, r.bodyHash);
+            else
+                update.setNull(2, Types.BIGINT);
+            update.setInt(3, r.id);
+            update.addBatch();
+            n++;
+            if (n % SQLCursor.DEFAULT_CHUNK_SIZE == 0) {
+                update.executeBatch();
+                System.out.println(n+" rows");
+            }
+        }
+        update.executeBatch();
+        update.close();
+        return n;
+    }
+
+    final public static void main(String argv[]) {
+        try {
+            LocalSQL.connectRW();
+            addColumns();
+            int n = fillHashes();
+            System.out.println("hashed "+n+" RAF lines");
+        }
+        catch (Exception e) {
+            System.out.println("Exception: "+e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
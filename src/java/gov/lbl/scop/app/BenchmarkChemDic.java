@@ -0,0 +1,217 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.app;
+
+import java.io.*;
+import java.util.*;
+import gov.lbl.scop.local.SCOP;
+import gov.lbl.scop.util.RAF;
+import org.strbio.IO;
+
+/**
+   Micro-benchmark comparing translation of PDB sequences (with
+   modified residues in parentheses) through the old HashMap
+   chemical dictionary with the ChemDictionary now used by RAF.
+   Sequences are read one per line from the file given as the
+   first argument, or if none is given, about a release's worth
+   (200000 chains of 250 residues) are made up, with 2% of
+   residues drawn from the chemical dictionary.  Uses the
+   dictionary in local property xml2raf.chem_dic; doesn't use the
+   db.
+*/
+public class BenchmarkChemDic {
+    /**
+       the old dictionary
+    */
+    private static HashMap<String,String> oldChemDic;
+
+    /**
+       codes in the dictionary file
+    */
+    private static Vector<String> codes;
+
+    /**
+       load the old dictionary, the way RAF used to
+    */
+    final public static void loadOld() throws Exception {
+        String chemDicFile = SCOP.getProperty("xml2raf.chem_dic");
+        if (chemDicFile == null)
+            throw new Exception("Error; must define local property 'xml2raf.chem_dic'");
+        BufferedReader infile = IO.openReader(chemDicFile);
+        String buffer;
+        oldChemDic = new HashMap<String,String>();
+        codes = new Vector<String>();
+        while ((buffer = infile.readLine()) != null) {
+            String[] fields = buffer.split("\t");
+            oldChemDic.put(fields[0], fields[1]);
+            codes.add(fields[0]);
+        }
+        infile.close();
+        String[] s = {"ala","a", "val","v", "phe","f", "pro","p",
+                      "met","m", "ile","i", "leu","l", "asp","d",
+                      "glu","e", "lys","k", "arg","r", "ser","s",
+                      "thr","t", "tyr","y", "his","h", "cys","c",
+                      "asn","n", "gln","q", "trp","w", "gly","g",
+                      "glx","z", "asx","b", "unk","x", "n/a",".",
+                      "ace",".", "ch3",".", "nh2",".", "for",".",
+                      "fmt",".", "a","x", "t","x", "g","x", "c","x",
+                      "u","x", "n","x", "da","x", "dt","x", "dg","x",
+                      "dc","x", "du","x", "dn","x"};
+        for (int i=0; i<s.length; i+=2)
+            oldChemDic.put(s[i], s[i+1]);
+    }
+
+    /**
+       the old translatePDBRes
+    */
+    final public static String oldTranslatePDBRes(String res) {
+        String translation = oldChemDic.get(res.toLowerCase());
+        if (translation == null)
+            return("x");
+        if (translation.equals("."))
+            return("");
+        return translation;
+    }
+
+    /**
+       the old translatePDBSeq
+    */
+    final public static String oldTranslatePDBSeq(String seq) throws Exception {
+        StringBuffer sb = new StringBuffer();
+        int pos1 = 0;
+        do {
+            int pos2 = seq.indexOf('(', pos1);
+            if (pos2 == -1) {
+                sb.append(seq.substring(pos1));
+                if (sb.length() == 0)
+                    return null;
+                else
+                    return (sb.toString());
+            }
+            else {
+                sb.append(seq.substring(pos1, pos2));
+                pos1 = seq.indexOf(')', pos2 + 1) + 1;
+                if (pos1 == 0)
+                    throw new Exception("Mismatched parentheses in " + seq);
+                String modRes = seq.substring(pos2 + 1, pos1 - 1);
+                sb.append(oldTranslatePDBRes(modRes));
+            }
+        } while (true);
+    }
+
+    /**
+       make up sequences
+    */
+    final public static Vector<String> makeSeqs(int nSeqs, int length) {
+        Random r = new Random(1);
+        String res = "ACDEFGHIKLMNPQRSTVWY";
+        Vector<String> rv = new Vector<String>(nSeqs);
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i<nSeqs; i++) {
+            sb.setLength(0);
+            for (int j=0; j<length; j++) {
+                if ((codes.size() > 0) && (r.nextInt(50) == 0)) {
+                    sb.append('(');
+                    sb.append(codes.get(r.nextInt(codes.size())).toUpperCase());
+                    sb.append(')');
+                }
+                else
+                    sb.append(res.charAt(r.nextInt(res.length())));
+            }
+            rv.add(sb.toString());
+        }
+        return rv;
+    }
+
+    /**
+       translate all sequences; returns total length
+    */
+    final public static long run(Vector<String> seqs, boolean old) throws Exception {
+        long rv = 0;
+        StringBuilder sb = new StringBuilder();
+        for (String seq : seqs) {
+            if (old) {
+                String s = oldTranslatePDBSeq(seq);
+                if (s != null)
+                    rv += s.length();
+            }
+            else {
+                sb.setLength(0);
+                RAF.translatePDBSeq(seq, sb, false);
+                rv += sb.length();
+            }
+        }
+        return rv;
+    }
+
+    final public static void main(String argv[]) {
+        try {
+            loadOld();
+            Vector<String> seqs;
+            if (argv.length > 0) {
+                seqs = new Vector<String>();
+                BufferedReader infile = IO.openReader(argv[0]);
+                String buffer;
+                while ((buffer = infile.readLine()) != null)
+                    if (buffer.length() > 0)
+                        seqs.add(buffer);
+                infile.close();
+            }
+            else
+                seqs = makeSeqs(200000, 250);
+            long nRes = 0;
+            for (String seq : seqs)
+                nRes += seq.length();
+
+            // warm up, and check both give the same answers
+            for (String seq : seqs) {
+                String s1 = oldTranslatePDBSeq(seq);
+                String s2 = RAF.translatePDBSeq(seq);
+                if ((s1 == null) ? (s2 != null) : (!s1.equals(s2))) {
+                    System.out.println("Error - results differ for "+seq);
+                    break;
+                }
+            }
+            run(seqs, true);
+            run(seqs, false);
+
+            long tOld = 0;
+            long tNew = 0;
+            for (int round=0; round<3; round++) {
+                long t1 = System.nanoTime();
+                run(seqs, true);
+                long t2 = System.nanoTime();
+                run(seqs, false);
+                long t3 = System.nanoTime();
+                tOld += t2-t1;
+                tNew += t3-t2;
+            }
+            System.out.println("sequences: "+seqs.size()+", characters: "+nRes);
+            System.out.println("old: "+(tOld/3000000L)+" ms/release");
+            System.out.println("new: "+(tNew/3000000L)+" ms/release");
+        }
+        catch (Exception e) {
+            System.out.println("Exception: "+e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.app;
+
+import java.sql.*;
+import java.util.*;
+import gov.lbl.scop.local.LocalSQL;
+import gov.lbl.scop.util.*;
+
+/**
+   Benchmark comparing the old one-query-per-id translation of
+   node ids to sids and aerospaci scores with the chunked
+   "in (...)" queries now used by ASTRAL and MakeSubsets, over
+   all domains in a release.  Optional argument is the SCOP
+   release id; defaults to the latest.
+*/
+public class BenchmarkIDTranslation {
+    /**
+       the old code path, one query per id
+    */
+    final public static long runOld(Vector<Integer> ids) throws Exception {
+        long t1 = System.nanoTime();
+        Statement stmt = LocalSQL.createStatement();
+        HashMap<Integer,String> sids = new HashMap<Integer,String>();
+        HashMap<Integer,Double> scores = new HashMap<Integer,Double>();
+        for (Integer i : ids) {
+            ResultSet rs = stmt.executeQuery("select sid from scop_node where id="+i);
+            if (rs.next())
+                sids.put(i, rs.getString(1));
+            rs.close();
+            rs = stmt.executeQuery("select a.aerospaci from scop_node n, aerospaci a, link_pdb l, pdb_chain c, pdb_release r where n.id="+i+" and a.release_id=n.release_id and n.id=l.node_id and l.pdb_chain_id=c.id and c.pdb_release_id=r.id and r.pdb_entry_id=a.pdb_entry_id limit 1");
+            if (rs.next()) {
+                double score = rs.getDouble(1);
+                long iScore = Math.round(score*100.0);
+                scores.put(i, new Double((double)iScore / 100.0));
+            }
+            rs.close();
+        }
+        stmt.close();
+        return System.nanoTime() - t1;
+    }
+
+    /**
+       the new code path, in chunks
+    */
+    final public static long runNew(Vector<Integer> ids) throws Exception {
+        long t1 = System.nanoTime();
+        ASTRAL.nodeIDToSid(ids);
+        MakeSubsets.nodeIDToAerospaci(ids);
+        return System.nanoTime() - t1;
+    }
+
+    final public static void main(String argv[]) {
+        try {
+            LocalSQL.connect();
+            int scopReleaseID;
+            if (argv.length > 0)
+                scopReleaseID = Integer.parseInt(argv[0]);
+            else
+                scopReleaseID = LocalSQL.getLatestSCOPRelease(false);
+
+            Vector<Integer> ids = new Vector<Integer>();
+            Statement stmt = LocalSQL.createStatement();
+            ResultSet rs = stmt.executeQuery("select id from scop_node where level_id=8 and release_id="+scopReleaseID);
+            while (rs.next())
+                ids.add(new Integer(rs.getInt(1)));
+            rs.close();
+            stmt.close();
+
+            // sizes of the results, for reference
+            IntMap<String> sids = ASTRAL.nodeIDToSid(ids);
+            IntMap<Double> scores = MakeSubsets.nodeIDToAerospaci(ids);
+            System.out.println("domains: "+ids.size()+", sids: "+(sids==null ? "error" : ""+sids.size())+", scores: "+scores.size());
+
+            // warm up both paths, then alternate timed runs
+            runOld(ids);
+            runNew(ids);
+            long tOld = 0;
+            long tNew = 0;
+            for (int round=0; round<3; round++) {
+                tOld += runOld(ids);
+                tNew += runNew(ids);
+            }
+            System.out.println("old: "+(tOld/3000000L)+" ms/release");
+            System.out.println("new: "+(tNew/3000000L)+" ms/release");
+            if (tNew > 0)
+                System.out.println("speedup: "+((double)tOld/(double)tNew));
+        }
+        catch (Exception e) {
+            System.out.println("Exception: "+e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
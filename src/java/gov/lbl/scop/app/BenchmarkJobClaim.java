@@ -0,0 +1,263 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.app;
+
+import java.sql.*;
+import java.util.*;
+import org.strbio.util.*;
+import gov.lbl.scop.local.JobQueue;
+import gov.lbl.scop.local.LocalSQL;
+
+/**
+   Contention benchmark for claiming jobs: many simulated daemons,
+   each on its own thread and connection, claim jobs from a scratch
+   copy of the job table until it is empty.  Compares the old way
+   (a locked update for each priority and failure count) with
+   JobQueue's skip-locked and optimistic claims, and checks that no
+   job is claimed twice.  Then measures claim latency for one
+   daemon with 100000 jobs queued, either spread over all
+   priorities and failure counts or all in the last one.  Run
+   against a local MySQL; optional arguments are the number of
+   daemons, number of jobs, and jobs claimed at a time.  Uses
+   tables bench_job and bench_job_done, which are dropped
+   afterwards.  The RW pool must allow one connection per daemon
+   (db.pool.max_rw).
+*/
+public class BenchmarkJobClaim {
+    final public static int METHOD_LOCKED = -1;
+
+    final private static String JOB_TABLE = "bench_job";
+    final private static String DONE_TABLE = "bench_job_done";
+
+    /**
+       the old way of claiming jobs, one locked update for each
+       priority and failure count; returns number claimed
+    */
+    final public static int claimLocked(String owner, int limit) throws Exception {
+        PreparedStatement lock = LocalSQL.prepareCached("lock tables "+JOB_TABLE+" write");
+        PreparedStatement unlock = LocalSQL.prepareCached("unlock tables");
+        PreparedStatement takeJobs = LocalSQL.prepareCached("update "+JOB_TABLE+" set running = ?, time_started = now() where running is null and priority = ? and n_failures = ? order by id limit ?");
+        takeJobs.setString(1, owner);
+        takeJobs.setInt(4, limit);
+        for (int priority = 0; priority <= JobDaemon.MAX_PRIORITY; priority++) {
+            takeJobs.setInt(2, priority);
+            for (int nFailures = 0; nFailures < JobDaemon.MAX_FAIL; nFailures++) {
+                takeJobs.setInt(3, nFailures);
+                lock.executeUpdate();
+                int n = takeJobs.executeUpdate();
+                unlock.executeUpdate();
+                if (n > 0)
+                    return n;
+            }
+        }
+        return 0;
+    }
+
+    /**
+       make scratch tables with jobs spread over all priorities
+       and failure counts, or all at the lowest priority and
+       highest failure count
+    */
+    final public static void makeJobs(int nJobs,
+                                      boolean lastBucket) throws Exception {
+        Statement stmt = LocalSQL.createStatement();
+        dropTables();
+        stmt.executeUpdate("create table "+JOB_TABLE+" like job");
+        stmt.executeUpdate("create table "+DONE_TABLE+" like job_done");
+        new JobQueue(JOB_TABLE, DONE_TABLE).addClaimIndex();
+        Random r = new Random(1);
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i<nJobs; i++) {
+            if (sb.length() == 0)
+                sb.append("insert into "+JOB_TABLE+" (job_type_id, time_created, target_id, n_failures, priority) values ");
+            else
+                sb.append(",");
+            if (lastBucket)
+                sb.append("("+(1+r.nextInt(25))+", now(), "+i+", "+(JobDaemon.MAX_FAIL-1)+", "+JobDaemon.MAX_PRIORITY+")");
+            else
+                sb.append("("+(1+r.nextInt(25))+", now(), "+i+", "+r.nextInt(JobDaemon.MAX_FAIL)+", "+r.nextInt(JobDaemon.MAX_PRIORITY+1)+")");
+            if ((i % 1000 == 999) || (i == nJobs-1)) {
+                stmt.executeUpdate(sb.toString());
+                sb.setLength(0);
+            }
+        }
+        stmt.close();
+    }
+
+    final public static void dropTables() throws Exception {
+        Statement stmt = LocalSQL.createStatement();
+        stmt.executeUpdate("drop table if exists "+JOB_TABLE);
+        stmt.executeUpdate("drop table if exists "+DONE_TABLE);
+        stmt.close();
+    }
+
+    /**
+       one simulated daemon
+    */
+    static class Daemon extends Thread {
+        JobQueue queue;
+        int method;
+        String owner;
+        int batch;
+        int nClaimed = 0;
+        int nClaims = 0;
+        long claimNanos = 0;
+        Exception error = null;
+
+        public void run() {
+            try {
+                while (true) {
+                    long t1 = System.nanoTime();
+                    int n;
+                    if (method == METHOD_LOCKED)
+                        n = claimLocked(owner, batch);
+                    else
+                        n = queue.claim(owner, batch, null).ids.size();
+                    claimNanos += System.nanoTime() - t1;
+                    nClaims++;
+                    if (n == 0)
+                        break;
+                    nClaimed += n;
+                }
+            }
+            catch (Exception e) {
+                error = e;
+            }
+            finally {
+                LocalSQL.releaseConnection();
+            }
+        }
+    }
+
+    /**
+       claim all jobs with nDaemons daemons, and print results
+    */
+    final public static void run(String name,
+                                 int method,
+                                 int nDaemons,
+                                 int nJobs,
+                                 int batch) throws Exception {
+        makeJobs(nJobs, false);
+        JobQueue queue = new JobQueue(JOB_TABLE, DONE_TABLE);
+        if (method != METHOD_LOCKED)
+            queue.setClaimMode(method);
+        Daemon[] daemons = new Daemon[nDaemons];
+        for (int i=0; i<nDaemons; i++) {
+            daemons[i] = new Daemon();
+            daemons[i].queue = queue;
+            daemons[i].method = method;
+            daemons[i].owner = "bench."+i;
+            daemons[i].batch = batch;
+        }
+        long t1 = System.nanoTime();
+        for (Daemon d : daemons)
+            d.start();
+        int nClaimed = 0;
+        int nClaims = 0;
+        long claimNanos = 0;
+        for (Daemon d : daemons) {
+            d.join();
+            if (d.error != null)
+                throw d.error;
+            nClaimed += d.nClaimed;
+            nClaims += d.nClaims;
+            claimNanos += d.claimNanos;
+        }
+        long t = System.nanoTime() - t1;
+
+        Statement stmt = LocalSQL.createStatement();
+        ResultSet rs = stmt.executeQuery("select count(*) from "+JOB_TABLE+" where running is null");
+        rs.next();
+        int nLeft = rs.getInt(1);
+        rs.close();
+        stmt.close();
+
+        System.out.println(name+": "+(t/1000000L)+" ms, "+
+                           (nClaimed*1000000000L/t)+" jobs/s, "+
+                           (claimNanos/nClaims/1000L)+" us/claim");
+        if ((nClaimed != nJobs) || (nLeft != 0))
+            System.out.println("Error - claimed "+nClaimed+" of "+nJobs+" jobs, "+nLeft+" left unclaimed");
+    }
+
+    /**
+       claim nClaims jobs, one at a time, from nQueued queued jobs,
+       on this thread, and print latency
+    */
+    final public static void runLatency(String name,
+                                        int method,
+                                        int nQueued,
+                                        boolean lastBucket,
+                                        int nClaims) throws Exception {
+        makeJobs(nQueued, lastBucket);
+        JobQueue queue = new JobQueue(JOB_TABLE, DONE_TABLE);
+        if (method != METHOD_LOCKED)
+            queue.setClaimMode(method);
+        long t1 = System.nanoTime();
+        for (int i=0; i<nClaims; i++) {
+            int n;
+            if (method == METHOD_LOCKED)
+                n = claimLocked("bench", 1);
+            else
+                n = queue.claim("bench", 1, null).ids.size();
+            if (n != 1)
+                throw new Exception("Error - claim "+i+" took "+n+" jobs");
+        }
+        long t = System.nanoTime() - t1;
+        System.out.println(name+", "+nQueued+" queued"+
+                           (lastBucket ? " in last bucket" : "")+": "+
+                           (nClaims*1000000000L/t)+" claims/s, "+
+                           (t/nClaims/1000L)+" us/claim");
+    }
+
+    final public static void main(String argv[]) {
+        try {
+            LocalSQL.connectRW();
+            int nDaemons = 32;
+            int nJobs = 20000;
+            int batch = 1;
+            if (argv.length > 0)
+                nDaemons = StringUtil.atoi(argv[0]);
+            if (argv.length > 1)
+                nJobs = StringUtil.atoi(argv[1]);
+            if (argv.length > 2)
+                batch = StringUtil.atoi(argv[2]);
+            System.out.println("daemons: "+nDaemons+", jobs: "+nJobs+", jobs per claim: "+batch);
+
+            run("locked", METHOD_LOCKED, nDaemons, nJobs, batch);
+            run("skip locked", JobQueue.CLAIM_SKIP_LOCKED, nDaemons, nJobs, batch);
+            run("optimistic", JobQueue.CLAIM_OPTIMISTIC, nDaemons, nJobs, batch);
+
+            for (int i=0; i<2; i++) {
+                boolean lastBucket = (i==1);
+                runLatency("locked", METHOD_LOCKED, 100000, lastBucket, 1000);
+                runLatency("skip locked", JobQueue.CLAIM_SKIP_LOCKED, 100000, lastBucket, 1000);
+                runLatency("optimistic", JobQueue.CLAIM_OPTIMISTIC, 100000, lastBucket, 1000);
+            }
+            dropTables();
+            System.out.print(LocalSQL.getPoolStats());
+        }
+        catch (Exception e) {
+            System.out.println("Exception: "+e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
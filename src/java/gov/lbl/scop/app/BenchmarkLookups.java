@@ -0,0 +1,139 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.app;
+
+import java.sql.*;
+import java.util.*;
+import org.strbio.util.*;
+import gov.lbl.scop.local.LocalSQL;
+
+/**
+   Micro-benchmark comparing single-row lookups done the old way
+   (new Statement, SQL built by concatenation) with the cached
+   PreparedStatements now used by LocalSQL.  Run against a local
+   MySQL; optional argument is the number of nodes to look up.
+*/
+public class BenchmarkLookups {
+    /**
+       node ids, sunids and sids to look up
+    */
+    private static int[] ids;
+    private static int[] sunids;
+    private static String[] sids;
+    private static int scopReleaseID;
+
+    /**
+       the old code path, one Statement per lookup
+    */
+    final public static long runOld() throws Exception {
+        long t1 = System.nanoTime();
+        for (int i=0; i<ids.length; i++) {
+            Statement stmt = LocalSQL.createStatement();
+            ResultSet rs = stmt.executeQuery("select sunid from scop_node where id=" + ids[i]);
+            rs.next();
+            rs.close();
+            rs = stmt.executeQuery("select sccs from scop_node where id=" + ids[i]);
+            rs.next();
+            rs.close();
+            rs = stmt.executeQuery("select level_id from scop_node where id=" + ids[i]);
+            rs.next();
+            rs.close();
+            rs = stmt.executeQuery("select id from scop_node where sunid=" + sunids[i] + " and release_id=" + scopReleaseID);
+            rs.next();
+            rs.close();
+            if (sids[i] != null) {
+                rs = stmt.executeQuery("select id from scop_node where sid=\"" + sids[i] + "\" and release_id=" + scopReleaseID);
+                rs.next();
+                rs.close();
+            }
+            stmt.close();
+        }
+        return System.nanoTime() - t1;
+    }
+
+    /**
+       the new code path, through the LocalSQL helpers
+    */
+    final public static long runNew() throws Exception {
+        long t1 = System.nanoTime();
+        for (int i=0; i<ids.length; i++) {
+            LocalSQL.getSunid(ids[i]);
+            LocalSQL.getSCCS(ids[i]);
+            LocalSQL.getLevel(ids[i]);
+            LocalSQL.lookupNodeBySunid(sunids[i], scopReleaseID);
+            if (sids[i] != null)
+                LocalSQL.lookupNodeBySid(sids[i], scopReleaseID);
+        }
+        return System.nanoTime() - t1;
+    }
+
+    final public static void main(String argv[]) {
+        try {
+            LocalSQL.connect();
+            int n = 10000;
+            if (argv.length > 0)
+                n = StringUtil.atoi(argv[0]);
+
+            scopReleaseID = LocalSQL.getLatestSCOPRelease(false);
+            Statement stmt = LocalSQL.createStatement();
+            ResultSet rs = stmt.executeQuery("select id, sunid, sid from scop_node where release_id="+scopReleaseID+" order by rand() limit "+n);
+            ArrayList<Integer> idList = new ArrayList<Integer>();
+            ArrayList<Integer> sunidList = new ArrayList<Integer>();
+            ArrayList<String> sidList = new ArrayList<String>();
+            while (rs.next()) {
+                idList.add(rs.getInt(1));
+                sunidList.add(rs.getInt(2));
+                sidList.add(rs.getString(3));
+            }
+            rs.close();
+            stmt.close();
+            n = idList.size();
+            ids = new int[n];
+            sunids = new int[n];
+            sids = new String[n];
+            for (int i=0; i<n; i++) {
+                ids[i] = idList.get(i).intValue();
+                sunids[i] = sunidList.get(i).intValue();
+                sids[i] = sidList.get(i);
+            }
+
+            // warm up both paths, then alternate timed runs
+            runOld();
+            runNew();
+            long tOld = 0;
+            long tNew = 0;
+            for (int round=0; round<3; round++) {
+                tOld += runOld();
+                tNew += runNew();
+            }
+            long nCalls = 3L * n * 5;
+            System.out.println("nodes: "+n);
+            System.out.println("old: "+(tOld/1000000L)+" ms, "+(tOld/nCalls/1000L)+" us/lookup");
+            System.out.println("new: "+(tNew/1000000L)+" ms, "+(tNew/nCalls/1000L)+" us/lookup");
+            System.out.print(LocalSQL.getPoolStats());
+        }
+        catch (Exception e) {
+            System.out.println("Exception: "+e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
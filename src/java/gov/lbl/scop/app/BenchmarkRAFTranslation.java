@@ -0,0 +1,182 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.app;
+
+import java.util.*;
+import gov.lbl.scop.util.RAF;
+
+/**
+   Micro-benchmark comparing translation between sequence and RAF
+   indices by scanning the body (the old RAF.translateIndex and
+   rTranslateIndex) with the tables now kept by RAFChain, on a
+   long synthetic chain (default 4000 residues, about the size of
+   a large ribosomal RNA).  Optional argument is the chain length.
+   Doesn't use the db.
+*/
+public class BenchmarkRAFTranslation {
+    /**
+       make a body with some missing ATOMs and SEQRES records
+    */
+    final public static String makeBody(int n) {
+        Random r = new Random(1);
+        StringBuilder sb = new StringBuilder(n*7);
+        String res = "acdefghiklmnpqrstvwy";
+        for (int i=0; i<n; i++) {
+            String resID = ""+(i+1);
+            while (resID.length() < 5)
+                resID += " ";
+            char c = res.charAt(r.nextInt(res.length()));
+            char atomRes = ((i < 20) || (r.nextInt(10) == 0)) ? '.' : c;
+            char seqRes = (r.nextInt(50) == 0) ? '.' : c;
+            sb.append(resID);
+            sb.append(atomRes);
+            sb.append(seqRes);
+        }
+        return sb.toString();
+    }
+
+    /**
+       the old translateIndex, scanning the body
+    */
+    final public static int scanTranslateIndex(String body,
+                                               int index,
+                                               int sourceType) {
+        int l = body.length();
+        int atomStart = 0;
+        int atomEnd = l - 7;
+        if (sourceType == 3) {
+            for (int i = 0; i < l; i += 7) {
+                if (body.charAt(i + 5) != '.') {
+                    atomStart = i;
+                    break;
+                }
+            }
+            for (int i = l - 7; i >= 0; i -= 7) {
+                if (body.charAt(i + 5) != '.') {
+                    atomEnd = i;
+                    break;
+                }
+            }
+        }
+        for (int i = 0; i < l; i += 7) {
+            if ((sourceType == 3) && ((i < atomStart) || (i > atomEnd)))
+                continue;
+            char seqChar = body.charAt(i + ((sourceType == 1) ? 5 : 6));
+            if (seqChar != '.' && seqChar != '"') {
+                if (index-- == 0)
+                    return (i / 7);
+            }
+        }
+        return -1;
+    }
+
+    /**
+       the old rTranslateIndex, scanning the body
+    */
+    final public static int scanRTranslateIndex(String body,
+                                                int index,
+                                                int sourceType) {
+        int l = body.length();
+        int rv = -1;
+        int atomStart = 0;
+        int atomEnd = l - 7;
+        if (sourceType == 3) {
+            for (int i = 0; i < l; i += 7) {
+                if (body.charAt(i + 5) != '.') {
+                    atomStart = i;
+                    break;
+                }
+            }
+            for (int i = l - 7; i >= 0; i -= 7) {
+                if (body.charAt(i + 5) != '.') {
+                    atomEnd = i;
+                    break;
+                }
+            }
+        }
+        for (int i = 0; i <= (index * 7); i += 7) {
+            if ((sourceType == 3) && ((i < atomStart) || (i > atomEnd)))
+                continue;
+            char seqChar = body.charAt(i + ((sourceType == 1) ? 5 : 6));
+            if (seqChar != '.' && seqChar != '"')
+                rv++;
+        }
+        return rv;
+    }
+
+    /**
+       translate every index in both directions, for all source
+       types; returns a checksum
+    */
+    final public static long run(String body, boolean scan) {
+        int n = RAF.getSeqLength(body);
+        long sum = 0;
+        for (int sourceType=1; sourceType<=3; sourceType++) {
+            for (int i=0; i<n; i++) {
+                if (scan) {
+                    sum += scanTranslateIndex(body, i, sourceType);
+                    sum += scanRTranslateIndex(body, i, sourceType);
+                }
+                else {
+                    sum += RAF.translateIndex(body, i, sourceType);
+                    sum += RAF.rTranslateIndex(body, i, sourceType);
+                }
+            }
+        }
+        return sum;
+    }
+
+    final public static void main(String argv[]) {
+        try {
+            int n = 4000;
+            if (argv.length > 0)
+                n = Integer.parseInt(argv[0]);
+            String body = makeBody(n);
+            long nCalls = 3L * 2 * n;
+
+            // warm up, and check both give the same answers
+            long sumScan = run(body, true);
+            long sumTable = run(body, false);
+            if (sumScan != sumTable)
+                System.out.println("Error - results differ: "+sumScan+" "+sumTable);
+
+            long tScan = 0;
+            long tTable = 0;
+            for (int round=0; round<3; round++) {
+                long t1 = System.nanoTime();
+                run(body, true);
+                long t2 = System.nanoTime();
+                run(body, false);
+                long t3 = System.nanoTime();
+                tScan += t2-t1;
+                tTable += t3-t2;
+            }
+            System.out.println("residues: "+n);
+            System.out.println("scan: "+(tScan/3/nCalls)+" ns/call");
+            System.out.println("table: "+(tTable/3/nCalls)+" ns/call");
+        }
+        catch (Exception e) {
+            System.out.println("Exception: "+e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
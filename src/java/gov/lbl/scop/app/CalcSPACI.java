@@ -35,6 +35,8 @@ import org.xml.sax.*;
 import org.xml.sax.helpers.*;
 import javax.xml.parsers.*;
 import gov.lbl.scop.util.*;
+import gov.lbl.scop.local.DimensionCache;
+import gov.lbl.scop.local.JobMetrics;
 import gov.lbl.scop.local.LocalSQL;
 
 /**
@@ -254,7 +256,9 @@ public class CalcSPACI {
             pdbPath = unBundled.getAbsolutePath();
         }
 	
+        long t = JobMetrics.startTool();
         double[] rv = WhatCheck.getSummary(pdbPath);
+        JobMetrics.endTool(t);
 
         if (unBundled != null)
             unBundled.delete();
@@ -328,7 +332,9 @@ public class CalcSPACI {
             pdbPath = unBundled.getAbsolutePath();
         }
 
+        long t = JobMetrics.startTool();
         int[] rv = ProCheck.getSummary(pdbPath,resolution);
+        JobMetrics.endTool(t);
 
         if (unBundled != null)
             unBundled.delete();
@@ -411,13 +417,12 @@ public class CalcSPACI {
         boolean isTheory = false;
         String method = "";
         if (methodID > 0) {
-            rs = stmt.executeQuery("select summary, is_theory from pdb_method where id="+methodID);
-            if (rs.next()) {
-                method = rs.getString(1);
-                isTheory = (rs.getInt(2) == 1);
+            String summary = DimensionCache.getMethodSummary(methodID);
+            if (summary != null) {
+                method = summary;
+                isTheory = DimensionCache.isTheoryMethod(methodID);
                 if (isTheory) method = "THEORY";
             }
-            rs.close();
         }
         double spaci = SPACI.calcSPACI(method,resolution,rFactor,whatcheck,procheck);
         stmt.executeUpdate("update pdb_release set spaci="+spaci+" where id="+pdbReleaseID);
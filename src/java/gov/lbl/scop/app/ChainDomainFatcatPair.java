@@ -1,5 +1,6 @@
 package gov.lbl.scop.app;
 
+import gov.lbl.scop.local.JobMetrics;
 import gov.lbl.scop.local.LocalSQL;
 import gov.lbl.scop.util.RAF;
 import org.strbio.mol.Alignment;
@@ -559,9 +560,11 @@ public class ChainDomainFatcatPair {
         logger.info("running FATCAT");
         ProcessBuilder builder = new ProcessBuilder(command);
         builder.directory(new File("/"));
+        long t = JobMetrics.startTool();
         Process p = builder.start();
         p.waitFor();
         p.destroy();
+        JobMetrics.endTool(t);
 
         if (!alnFile.exists()) {
             throw new Exception(alnFile + " not generated");
@@ -592,9 +595,11 @@ public class ChainDomainFatcatPair {
 
             builder = new ProcessBuilder(command2);
             builder.directory(new File("/"));
+            t = JobMetrics.startTool();
             Process p2 = builder.start();
             p2.waitFor();
             p2.destroy();
+            JobMetrics.endTool(t);
 
             // Read the matrix file
             if (!matrixFile.exists()) {
@@ -608,9 +613,11 @@ public class ChainDomainFatcatPair {
                     throw new Exception("PostFATCAT failed for " + this.chainFile + " x " + this.domainFile);
                 }
                 logger.info("repeating PostFATCAT");
+                t = JobMetrics.startTool();
                 p2 = builder.start();
                 p2.waitFor();
                 p2.destroy();
+                JobMetrics.endTool(t);
                 this.readMatrix(matrixFile);
                 i++;
             }
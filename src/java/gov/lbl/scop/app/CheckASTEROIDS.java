@@ -23,6 +23,7 @@ package gov.lbl.scop.app;
 
 import gov.lbl.scop.local.LocalSQL;
 import gov.lbl.scop.util.ASTEROIDS;
+import gov.lbl.scop.util.ScopTree;
 import org.strbio.util.StringUtil;
 
 import java.sql.ResultSet;
@@ -669,6 +670,7 @@ public class CheckASTEROIDS {
     final public static void main(String argv[]) {
         try {
             LocalSQL.connectRW();
+            ScopTree.setEnabled(true);
             Statement stmt = LocalSQL.createStatement();
             ResultSet rs;
 
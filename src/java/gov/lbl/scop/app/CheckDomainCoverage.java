@@ -42,11 +42,10 @@ public class CheckDomainCoverage {
     final public static void main(String argv[]) {
         try {
             LocalSQL.connectRW();
-            Statement stmt = LocalSQL.createStatement();
             Statement stmt2 = LocalSQL.createStatement();
             Statement stmt3 = LocalSQL.createStatement();
 
-            ResultSet rs, rs2, rs3;
+            ResultSet rs2, rs3;
 
             int scopReleaseID = LocalSQL.lookupSCOPRelease(argv[0]);
             if (scopReleaseID==0)
@@ -55,9 +54,14 @@ public class CheckDomainCoverage {
             Pattern regionPattern = Pattern.compile("\\s*(\\S+?)-(\\S+)\\s*$");
 	    
             // get all chains covered in a release
-            rs = stmt.executeQuery("select distinct(l.pdb_chain_id) from link_pdb l, scop_node n where l.node_id=n.id and n.release_id="+scopReleaseID);
-            while (rs.next()) {
-                int pdbChainID = rs.getInt(1);
+            SQLCursor<Integer> c = SQLCursor.keyset("distinct(l.pdb_chain_id)",
+                                                    "link_pdb l, scop_node n",
+                                                    "l.node_id=n.id and n.release_id="+scopReleaseID,
+                                                    "l.pdb_chain_id",
+                                                    SQLCursor.INT);
+            Integer chainID;
+            while ((chainID = c.next()) != null) {
+                int pdbChainID = chainID.intValue();
                 // System.out.println("pdb chain "+pdbChainID);
 
                 String rafLine = null;
@@ -207,10 +211,8 @@ public class CheckDomainCoverage {
                         System.out.println("Chain "+rafCode+rafChain+" not fully covered by domains; missing "+nMissing+" residues");
                 }
             }
-            rs.close();
             stmt3.close();
             stmt2.close();
-            stmt.close();
         }
         catch (Exception e) {
             System.out.println("Exception: "+e.getMessage());
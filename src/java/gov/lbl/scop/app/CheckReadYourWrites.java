@@ -0,0 +1,53 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.app;
+
+import gov.lbl.scop.local.ConnectionPool;
+import gov.lbl.scop.local.LocalSQL;
+
+/**
+   Checks that beginReadYourWrites() moves the current thread to
+   the RW pool, and that endReadYourWrites() moves it back to the
+   pool it was using before.  Connects RO; useful after changing
+   db.ro_urls or db.rw_urls.
+*/
+public class CheckReadYourWrites {
+    final public static void main(String argv[]) {
+        try {
+            LocalSQL.connect();
+            ConnectionPool before = LocalSQL.getPool();
+            LocalSQL.beginReadYourWrites();
+            if (LocalSQL.getPool() != LocalSQL.getRW())
+                throw new Exception("not using RW pool after beginReadYourWrites");
+            LocalSQL.getConnection();
+            LocalSQL.endReadYourWrites();
+            if (LocalSQL.getPool() != before)
+                throw new Exception("not back on original pool after endReadYourWrites");
+            LocalSQL.releaseConnection();
+            System.out.println("OK");
+        }
+        catch (Exception e) {
+            System.out.println("Exception: "+e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
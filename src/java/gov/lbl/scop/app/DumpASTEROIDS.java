@@ -31,6 +31,7 @@ import org.strbio.util.*;
 import org.strbio.IO;
 import gov.lbl.scop.util.ASTEROIDS.*;
 import gov.lbl.scop.local.LocalSQL;
+import gov.lbl.scop.util.ScopTree;
 
 /**
    Dump chain-vs-domain hits in ASTEROIDS parsed format
@@ -39,6 +40,7 @@ public class DumpASTEROIDS {
     final public static void main(String argv[]) {
         try {
             LocalSQL.connect();
+            ScopTree.setEnabled(true);
             Statement stmt = LocalSQL.createStatement();
             Statement stmt2 = LocalSQL.createStatement();
             ResultSet rs, rs2;
@@ -31,6 +31,7 @@ import org.strbio.mol.*;
 import org.strbio.util.*;
 import org.strbio.IO;
 import gov.lbl.scop.local.LocalSQL;
+import gov.lbl.scop.util.ReleaseSnapshot;
 
 /**
    Dump out dir.com file for a given release
@@ -39,56 +40,9 @@ public class DumpDirCom {
     final public static void main(String argv[]) {
         try {
             LocalSQL.connectRW();
-            Statement stmt = LocalSQL.createStatement();
-            ResultSet rs;
-
-            int scopReleaseID = LocalSQL.lookupSCOPRelease(argv[0]);
-            String dbName = LocalSQL.getDBName(scopReleaseID);
-
-            rs = stmt.executeQuery("select release_date from scop_release where id="+scopReleaseID);
-            rs.next();
-            java.sql.Date d = rs.getDate(1);
-            SimpleDateFormat df = new SimpleDateFormat ("yyyy-MM-dd");
-            SimpleDateFormat dfYear = new SimpleDateFormat ("yyyy");
-
-            String dateString = df.format(d);
-	    
-            if (scopReleaseID > 12) {
-                java.sql.Date d2 = LocalSQL.getUpdateDate(scopReleaseID);
-                if (d2 != null) {
-                    d = d2;
-                    dateString += ", last updated "+df.format(d);
-                }
-            }
-
-            System.out.println("# dir.com."+dbName.toLowerCase()+".txt");
-	    
-            System.out.println("# "+dbName+" release "+argv[0]+" ("+dateString+")  [File format version 1.01]");
-            if (dbName.equals("SCOP")) {
-                System.out.println("# http://scop.mrc-lmb.cam.ac.uk/scop/");
-                System.out.println("# Copyright (c) 1994-"+dfYear.format(d)+" the scop authors; see http://scop.mrc-lmb.cam.ac.uk/scop/lic/copy.html");
-            }
-            else {
-                System.out.println("# http://scop.berkeley.edu/");
-                System.out.println("# Copyright (c) 1994-"+dfYear.format(d)+" the SCOP and SCOPe authors; see http://scop.berkeley.edu/about");
-            }
-
-            // sort by node id order
-            int lastSunid = 0;
-            rs = stmt.executeQuery("select n.sunid, c.description from scop_node n, scop_comment c where c.node_id=n.id and release_id="+scopReleaseID+" order by n.id,c.id");
-            while (rs.next()) {
-                int sunid = rs.getInt(1);
-                String description = rs.getString(2);
-
-                if (sunid != lastSunid) {
-                    if (lastSunid != 0)
-                        System.out.println();
-                    System.out.print(sunid);
-                }
-		
-                System.out.print(" ! "+description);
-                lastSunid = sunid;
-            }
+            ReleaseSnapshot s = new ReleaseSnapshot(argv[0]);
+            s.loadComments();
+            DumpRelease.writeDirCom(System.out, s);
         }
         catch (Exception e) {
             System.out.println("Exception: "+e.getMessage());
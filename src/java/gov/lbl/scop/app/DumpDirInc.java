@@ -31,6 +31,7 @@ import org.strbio.mol.*;
 import org.strbio.util.*;
 import org.strbio.IO;
 import gov.lbl.scop.local.LocalSQL;
+import gov.lbl.scop.util.ReleaseSnapshot;
 
 /**
    Dump out dir.inc file for a given release
@@ -38,60 +39,9 @@ import gov.lbl.scop.local.LocalSQL;
 public class DumpDirInc {
     final public static void main(String argv[]) {
         try {
-            /**original header**/
             LocalSQL.connectRW();
-            Statement stmt = LocalSQL.createStatement();
-            Statement stmt2 = LocalSQL.createStatement();
-            ResultSet rs,rs2;
-
-            int scopReleaseID = LocalSQL.lookupSCOPRelease(argv[0]);
-            //System.out.println("hi");
-            String dbName = LocalSQL.getDBName(scopReleaseID);
-
-            rs = stmt.executeQuery("select release_date from scop_release where id="+scopReleaseID);
-            rs.next();
-            java.sql.Date d = rs.getDate(1);
-            SimpleDateFormat df = new SimpleDateFormat ("yyyy-MM-dd");
-            SimpleDateFormat dfYear = new SimpleDateFormat ("yyyy");
-
-            String dateString = df.format(d);
-        
-            if (scopReleaseID > 12) {
-                java.sql.Date d2 = LocalSQL.getUpdateDate(scopReleaseID);
-                if (d2 != null) {
-                    d = d2;
-                    dateString += ", last updated "+df.format(d);
-                }
-            }
-
-            //call dir.inc
-            System.out.println("# dir.inc."+dbName.toLowerCase()+".txt");
-            System.out.println("# "+dbName+" release "+argv[0]+" ("+dateString+")  [File format version 1.01]");
-            if (dbName.equals("SCOP")) {
-                System.out.println("# http://scop.mrc-lmb.cam.ac.uk/scop/");
-                System.out.println("# Copyright (c) 1994-"+dfYear.format(d)+" the scop authors; see http://scop.mrc-lmb.cam.ac.uk/scop/lic/copy.html");
-            }
-            else {
-                System.out.println("# http://scop.berkeley.edu/");
-                System.out.println("# Copyright (c) 1994-"+dfYear.format(d)+" the SCOP and SCOPe authors; see http://scop.berkeley.edu/about");
-            }
-
-            rs = stmt.executeQuery("SELECT node.sccs, type.abbreviation, GROUP_CONCAT(node.sid)"
-                + " FROM scop_node AS node, scop_node_inconsistent AS inc, scop_inconsistent_type AS type"
-                + " WHERE node.id=inc.node_id AND inc.inconsistent_id=type.id AND release_id=" + scopReleaseID
-                + " GROUP BY node.sccs, type.abbreviation ORDER BY node.sccs");
-
-            while (rs.next()) {
-                String sccs = rs.getString(1);
-                String inc_type = rs.getString(2);
-                String sids = rs.getString(3);
-                if (sids != null){
-                    System.out.println(sccs + "\t" + inc_type + "\t" + sids);
-                } else {
-                    System.out.println(sccs + "\t" + inc_type);
-                }
-                
-            }
+            ReleaseSnapshot s = new ReleaseSnapshot(argv[0]);
+            DumpRelease.writeDirInc(System.out, s);
         }
         catch (Exception e) {
             System.out.println("Exception: "+e.getMessage());
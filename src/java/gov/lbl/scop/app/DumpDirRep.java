@@ -31,6 +31,7 @@ import org.strbio.mol.*;
 import org.strbio.util.*;
 import org.strbio.IO;
 import gov.lbl.scop.local.LocalSQL;
+import gov.lbl.scop.util.ReleaseSnapshot;
 
 /**
    Dump out dir.rep file for a given release
@@ -38,53 +39,10 @@ import gov.lbl.scop.local.LocalSQL;
 public class DumpDirRep {
     final public static void main(String argv[]) {
         try {
-            /**original header**/
             LocalSQL.connectRW();
-            Statement stmt = LocalSQL.createStatement();
-            Statement stmt2 = LocalSQL.createStatement();
-            ResultSet rs,rs2;
-
-            int scopReleaseID = LocalSQL.lookupSCOPRelease(argv[0]);
-            String dbName = LocalSQL.getDBName(scopReleaseID);
-
-            rs = stmt.executeQuery("select release_date from scop_release where id="+scopReleaseID);
-            rs.next();
-            java.sql.Date d = rs.getDate(1);
-            SimpleDateFormat df = new SimpleDateFormat ("yyyy-MM-dd");
-            SimpleDateFormat dfYear = new SimpleDateFormat ("yyyy");
-
-            String dateString = df.format(d);
-        
-            if (scopReleaseID > 12) {
-                java.sql.Date d2 = LocalSQL.getUpdateDate(scopReleaseID);
-                if (d2 != null) {
-                    d = d2;
-                    dateString += ", last updated "+df.format(d);
-                }
-            }
-
-            //call dir.rep
-            System.out.println("# dir.rep."+dbName.toLowerCase()+".txt");
-            System.out.println("# "+dbName+" release "+argv[0]+" ("+dateString+")  [File format version 1.01]");
-            if (dbName.equals("SCOP")) {
-                System.out.println("# http://scop.mrc-lmb.cam.ac.uk/scop/");
-                System.out.println("# Copyright (c) 1994-"+dfYear.format(d)+" the scop authors; see http://scop.mrc-lmb.cam.ac.uk/scop/lic/copy.html");
-            }
-            else {
-                System.out.println("# http://scop.berkeley.edu/");
-                System.out.println("# Copyright (c) 1994-"+dfYear.format(d)+" the SCOP and SCOPe authors; see http://scop.berkeley.edu/about");
-            }
-
-            rs = stmt.executeQuery("SELECT n.sccs, n.sid, r.description FROM scop_node_repeat as r, scop_node as n where r.node_id = n.id ");
-
-            while (rs.next()) {
-                String sccs = rs.getString(1);
-                String sid = rs.getString(2);
-                String description = rs.getString(3);
-                System.out.println(sccs + "\t" + sid + "\t" + description);
-            }
+            ReleaseSnapshot s = new ReleaseSnapshot(argv[0]);
+            DumpRelease.writeDirRep(System.out, s);
         }
-        
         catch (Exception e) {
             System.out.println("Exception: "+e.getMessage());
             e.printStackTrace();
@@ -39,27 +39,8 @@ public class DumpRAF {
     final public static void main(String argv[]) {
         try {
             LocalSQL.connectRW();
-            Statement stmt = LocalSQL.createStatement();
-            ResultSet rs;
-
             int scopReleaseID = LocalSQL.lookupSCOPRelease(argv[0]);
-
-            rs = stmt.executeQuery("select v.version, v.header_length from raf_version v, raf r where r.raf_version_id=v.id and first_release_id<="+scopReleaseID+" and last_release_id>="+scopReleaseID+" limit 1");
-            rs.next();
-            String version = rs.getString(1);
-            int headerLength = rs.getInt(2);
-
-            System.out.println("# ASTRAL Atom-Seqres Rapid Access Format");
-            System.out.println("# Version "+version);
-            System.out.println("# Header: "+headerLength+" Bytes");
-            System.out.println("# http://scop.berkeley.edu/");
-            System.out.println("# http://astral.berkeley.edu/");
-
-            // "binary" order necessary for case sensitivity
-            rs = stmt.executeQuery("select line from raf where first_release_id<="+scopReleaseID+" and last_release_id>="+scopReleaseID+" order by binary line");
-            while (rs.next()) {
-                System.out.println(rs.getString(1));
-            }
+            DumpRelease.writeRAF(System.out, scopReleaseID);
         }
         catch (Exception e) {
             System.out.println("Exception: "+e.getMessage());
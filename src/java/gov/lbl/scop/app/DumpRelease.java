@@ -0,0 +1,747 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.app;
+
+import java.sql.*;
+import java.io.*;
+import java.util.*;
+import java.text.*;
+import java.util.zip.GZIPOutputStream;
+import gov.lbl.scop.local.LocalSQL;
+import gov.lbl.scop.local.SQLCursor;
+import gov.lbl.scop.util.ReleaseSnapshot;
+
+/**
+   Dump out all the flat files for a given release (dir.cla,
+   dir.des, dir.hie, dir.com, dir.inc, dir.rep, the RAF file,
+   and the master file) into a directory, optionally gzipped.
+   The release is read from the db once, into a ReleaseSnapshot,
+   and each file is written by its own thread.  Output is the
+   same as from the separate Dump* tools, which use the writers
+   here.
+   <p>
+   Usage:  DumpRelease version directory [gz] [m|o]
+   <p>
+   gz compresses each file; m and o are passed on to the master
+   file, as in DumpMasterFile.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class DumpRelease {
+    /**
+       writes one file on its own thread
+    */
+    private static abstract class DumpThread extends Thread {
+        File file;
+        boolean gzip;
+        Exception error = null;
+        long millis = 0;
+
+        DumpThread(File file, boolean gzip) {
+            this.file = file;
+            this.gzip = gzip;
+        }
+
+        abstract void write(PrintStream out) throws Exception;
+
+        public void run() {
+            long start = System.currentTimeMillis();
+            try {
+                OutputStream os = new FileOutputStream(file);
+                if (gzip)
+                    os = new GZIPOutputStream(os, 65536);
+                PrintStream out = new PrintStream(new BufferedOutputStream(os, 65536));
+                write(out);
+                out.close();
+                if (out.checkError())
+                    throw new IOException("Error writing "+file.getPath());
+            }
+            catch (Exception e) {
+                error = e;
+            }
+            finally {
+                LocalSQL.releaseConnection();
+            }
+            millis = System.currentTimeMillis() - start;
+        }
+    }
+
+    /**
+       header used by the dir.* files
+    */
+    final public static void writeDirHeader(PrintStream out,
+                                            ReleaseSnapshot s,
+                                            String type,
+                                            String formatVersion) {
+        SimpleDateFormat df = new SimpleDateFormat ("yyyy-MM-dd");
+        SimpleDateFormat dfYear = new SimpleDateFormat ("yyyy");
+        String dbName = s.getDBName();
+        java.sql.Date d = s.getReleaseDate();
+        String dateString = df.format(d);
+        if (s.getUpdateDate() != null) {
+            d = s.getUpdateDate();
+            dateString += ", last updated "+df.format(d);
+        }
+
+        out.println("# dir."+type+"."+dbName.toLowerCase()+".txt");
+        out.println("# "+dbName+" release "+s.getVersion()+" ("+dateString+")  [File format version "+formatVersion+"]");
+        if (dbName.equals("SCOP")) {
+            out.println("# http://scop.mrc-lmb.cam.ac.uk/scop/");
+            out.println("# Copyright (c) 1994-"+dfYear.format(d)+" the scop authors; see http://scop.mrc-lmb.cam.ac.uk/scop/lic/copy.html");
+        }
+        else {
+            out.println("# http://scop.berkeley.edu/");
+            out.println("# Copyright (c) 1994-"+dfYear.format(d)+" the SCOP and SCOPe authors; see http://scop.berkeley.edu/about");
+        }
+    }
+
+    /**
+       dir.cla file
+    */
+    final public static void writeDirCla(PrintStream out,
+                                         ReleaseSnapshot s) {
+        writeDirHeader(out, s, "cla", "1.02");
+
+        // sort by node id order
+        String lastSCCS = "";
+        String lastLongSCCS = null;
+        int n = s.size();
+        for (int i=0; i<n; i++) {
+            if (s.getLevel(i) != 8)
+                continue;
+            int sunid = s.getSunid(i);
+            String sccs = s.getSCCS(i);
+            String sid = s.getSid(i);
+            String description = s.getDescription(i);
+            int sp = s.getParent(i);
+
+            // break up description
+            String code = description.substring(0,4);
+            description = description.substring(5);
+
+            // get dm, sp info
+            int spSunid = s.getSunid(sp);
+            int dm = s.findParent(sp,6);
+            int dmSunid = s.getSunid(dm);
+
+            String longSCCS = null;
+            if (sccs.equals(lastSCCS)) {
+                longSCCS = lastLongSCCS;
+            }
+            else {
+                int fa = s.findParent(dm,5);
+                int sf = s.findParent(fa,4);
+                int cf = s.findParent(sf,3);
+                int cl = s.findParent(cf,2);
+
+                longSCCS = "cl="+s.getSunid(cl)+",cf="+s.getSunid(cf)+",sf="+s.getSunid(sf)+",fa="+s.getSunid(fa);
+            }
+
+            String hier = longSCCS+",dm="+dmSunid+",sp="+spSunid+",px="+sunid;
+            out.println(sid+"\t"+code+"\t"+description+"\t"+sccs+"\t"+sunid+"\t"+hier);
+
+            lastSCCS = sccs;
+            lastLongSCCS = longSCCS;
+        }
+    }
+
+    /**
+       dir.des file
+    */
+    final public static void writeDirDes(PrintStream out,
+                                         ReleaseSnapshot s) {
+        writeDirHeader(out, s, "des", "1.02");
+
+        // sort by node id order
+        int n = s.size();
+        for (int i=0; i<n; i++) {
+            int sunid = s.getSunid(i);
+            if (sunid==0) // skip root
+                continue;
+            String sid = s.getSid(i);
+            if (sid==null)
+                sid = "-";
+
+            out.println(sunid+"\t"+s.getLevelAbbrev(s.getLevel(i))+"\t"+s.getSCCS(i)+"\t"+sid+"\t"+s.getDescription(i));
+        }
+    }
+
+    /**
+       dir.hie file
+    */
+    final public static void writeDirHie(PrintStream out,
+                                         ReleaseSnapshot s) {
+        writeDirHeader(out, s, "hie", "1.01");
+
+        // sort by node id order
+        int n = s.size();
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i<n; i++) {
+            sb.setLength(0);
+            sb.append(s.getSunid(i));
+            sb.append('\t');
+            if (s.getParentID(i)==0)
+                sb.append('-');
+            else
+                sb.append(s.getSunid(s.getParent(i)));
+            sb.append('\t');
+            int c = s.getFirstChild(i);
+            if (c == -1)
+                sb.append('-');
+            for (; c > -1; c = s.getNextSibling(c)) {
+                sb.append(s.getSunid(c));
+                if (s.getNextSibling(c) > -1)
+                    sb.append(',');
+            }
+            out.println(sb);
+        }
+    }
+
+    /**
+       dir.com file; note that there is no newline after the last
+       line
+    */
+    final public static void writeDirCom(PrintStream out,
+                                         ReleaseSnapshot s) {
+        writeDirHeader(out, s, "com", "1.01");
+
+        // sort by node id order
+        int lastSunid = 0;
+        int n = s.size();
+        for (int i=0; i<n; i++) {
+            int sunid = s.getSunid(i);
+            int end = s.getCommentEnd(i);
+            for (int j=s.getCommentStart(i); j<end; j++) {
+                if (sunid != lastSunid) {
+                    if (lastSunid != 0)
+                        out.println();
+                    out.print(sunid);
+                }
+                out.print(" ! "+s.getComment(j));
+                lastSunid = sunid;
+            }
+        }
+    }
+
+    /**
+       dir.inc file; reads the inconsistencies from the db
+    */
+    final public static void writeDirInc(PrintStream out,
+                                         ReleaseSnapshot s) throws SQLException {
+        writeDirHeader(out, s, "inc", "1.01");
+
+        Statement stmt = LocalSQL.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT node.sccs, type.abbreviation, GROUP_CONCAT(node.sid)"
+                                         + " FROM scop_node AS node, scop_node_inconsistent AS inc, scop_inconsistent_type AS type"
+                                         + " WHERE node.id=inc.node_id AND inc.inconsistent_id=type.id AND release_id=" + s.getReleaseID()
+                                         + " GROUP BY node.sccs, type.abbreviation ORDER BY node.sccs");
+        while (rs.next()) {
+            String sccs = rs.getString(1);
+            String incType = rs.getString(2);
+            String sids = rs.getString(3);
+            if (sids != null)
+                out.println(sccs + "\t" + incType + "\t" + sids);
+            else
+                out.println(sccs + "\t" + incType);
+        }
+        rs.close();
+        stmt.close();
+    }
+
+    /**
+       dir.rep file; reads the repeats from the db.  Note that
+       this has always listed repeats from all releases, in no
+       particular order.
+    */
+    final public static void writeDirRep(PrintStream out,
+                                         ReleaseSnapshot s) throws SQLException {
+        writeDirHeader(out, s, "rep", "1.01");
+
+        Statement stmt = LocalSQL.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT n.sccs, n.sid, r.description FROM scop_node_repeat as r, scop_node as n where r.node_id = n.id ");
+        while (rs.next()) {
+            String sccs = rs.getString(1);
+            String sid = rs.getString(2);
+            String description = rs.getString(3);
+            out.println(sccs + "\t" + sid + "\t" + description);
+        }
+        rs.close();
+        stmt.close();
+    }
+
+    /**
+       RAF file used in a release; streams the lines from the db
+    */
+    final public static void writeRAF(PrintStream out,
+                                      int scopReleaseID) throws SQLException {
+        Statement stmt = LocalSQL.createStatement();
+        ResultSet rs = stmt.executeQuery("select v.version, v.header_length from raf_version v, raf r where r.raf_version_id=v.id and first_release_id<="+scopReleaseID+" and last_release_id>="+scopReleaseID+" limit 1");
+        rs.next();
+        String version = rs.getString(1);
+        int headerLength = rs.getInt(2);
+        rs.close();
+        stmt.close();
+
+        out.println("# ASTRAL Atom-Seqres Rapid Access Format");
+        out.println("# Version "+version);
+        out.println("# Header: "+headerLength+" Bytes");
+        out.println("# http://scop.berkeley.edu/");
+        out.println("# http://astral.berkeley.edu/");
+
+        // "binary" order necessary for case sensitivity
+        SQLCursor<String> c = SQLCursor.stream("select line from raf where first_release_id<="+scopReleaseID+" and last_release_id>="+scopReleaseID+" order by binary line",
+                                               SQLCursor.STRING);
+        String line;
+        while ((line = c.next()) != null)
+            out.println(line);
+    }
+
+    /**
+       class names on CF field of master file
+    */
+    final private static HashMap<Integer,String> className = new HashMap<Integer,String>();
+    static {
+        className.put(new Integer(46456), "a");
+        className.put(new Integer(48724), "b");
+        className.put(new Integer(51349), "ab");
+        className.put(new Integer(53931), "apb");
+        className.put(new Integer(56572), "md");
+        className.put(new Integer(56835), "mcs");
+        className.put(new Integer(56992), "sp");
+        className.put(new Integer(57942), "cc");
+        className.put(new Integer(58117), "lr");
+        className.put(new Integer(58231), "pe");
+        className.put(new Integer(58788), "pd");
+    }
+
+    /**
+       sunid to print in the master file for node i, or null
+    */
+    private static String masterSunid(ReleaseSnapshot s,
+                                      int i,
+                                      boolean oldIDs,
+                                      boolean showMerge) {
+        int sunid = s.getSunid(i);
+        if ((showMerge) && (s.getLevel(i)==8) && (s.isMerged(i)))
+            return s.getMergedSunids(i);
+        else if ((oldIDs) && (sunid > s.getMaxOldSunid()))
+            return null;
+        else if (sunid != 0)
+            return ""+sunid;
+        return null;
+    }
+
+    /**
+       all non-autogenerated comments on node i, each followed
+       by " ! "; saved in cache
+    */
+    private static String masterComments(ReleaseSnapshot s,
+                                         int i,
+                                         String[] cache) {
+        if (cache[i] != null)
+            return cache[i];
+        String rv = "";
+        int end = s.getCommentEnd(i);
+        for (int j=s.getCommentStart(i); j<end; j++)
+            if (!s.isCommentAutogenerated(j))
+                rv += s.getComment(j)+" ! ";
+        cache[i] = rv;
+        return rv;
+    }
+
+    /**
+       master file header
+    */
+    final public static void writeMasterHeader(PrintStream out,
+                                               ReleaseSnapshot s,
+                                               boolean oldIDs,
+                                               boolean showMerge) {
+        SimpleDateFormat dfShort = new SimpleDateFormat ("yyyy-MM-dd");
+        SimpleDateFormat dfLong = new SimpleDateFormat ("yyyy-MM-dd 'at' HH:mm:ss z");
+
+        out.println("# SCOP Masterfile");
+        out.print("# SCOP release "+s.getVersion()+" (frozen "+dfShort.format(s.getFreezeDate())+", released ");
+        out.println(dfShort.format(s.getReleaseDate())+", "+(s.isPublic()?"":"not ")+"public)");
+        if (oldIDs)
+            out.println("# not showing sunids assigned since last version");
+        if (showMerge)
+            out.println("# showing merged sunids for domains");
+        out.println("# produced by gov.lbl.scop.app.DumpMasterFile "+DumpMasterFile.VERSION);
+        out.println("# on "+dfLong.format(new java.util.Date()));
+        out.println("#");
+    }
+
+    /**
+       Master file.  Throws exception if release is mis-sorted.
+       The snapshot must have comments and master data loaded.
+    */
+    final public static void writeMasterFile(PrintStream out,
+                                             ReleaseSnapshot s,
+                                             boolean oldIDs,
+                                             boolean showMerge) throws Exception {
+        writeMasterHeader(out, s, oldIDs, showMerge);
+
+        // keep track of all the px we've printed
+        boolean[] printedPX = new boolean[s.size()];
+
+        // comments on each px, filled in as needed
+        String[] allPXComments = new String[s.size()];
+
+        // don't put blank line before first CF in each CL:
+        boolean firstCF = false;
+
+        // track last parent; make sure tree is consistent
+        int[] parentIDs = new int[7];
+
+        // nodes must be in order:
+        int n = s.size();
+        for (int i=0; i<n; i++) {
+            int id = s.getID(i);
+            int sunid = s.getSunid(i);
+            String description = s.getDescription(i);
+            int levelID = s.getLevel(i);
+            String level = s.getMasterAbbrev(levelID);
+            int parentID = s.getParentID(i);
+
+            // check consistency
+            if (levelID > 1)
+                if (parentID != parentIDs[levelID-2])
+                    throw new Exception ("Parent node error for node "+id+"; may be unsorted");
+            if (levelID < 8)
+                parentIDs[levelID-1] = id;
+
+            String sunidString = masterSunid(s, i, oldIDs, showMerge);
+
+            if (levelID==1)
+                continue;
+
+            if ((levelID==8) && (printedPX[i]))
+                continue;
+
+            // if level has only one child, and same description,
+            // make this description blank
+            if (levelID < 6) {
+                int c = s.getFirstChild(i);
+                if ((c > -1) &&
+                    (s.getNextSibling(c) == -1) &&
+                    (s.getDescription(c) != null) &&
+                    (description.equals(s.getDescription(c))))
+                    description = "";
+            }
+
+            // hacks to mangle level appropriately
+            if (levelID==2) {
+                out.println();
+                if (sunidString != null)
+                    description += " ["+sunidString+"]";
+                firstCF = true;
+            }
+            if (levelID==3) {
+                if (firstCF)
+                    firstCF = false;
+                else
+                    out.println();
+                int clSunid = s.getSunid(s.getParent(i));
+                String clName = className.get(new Integer(clSunid));
+                if (clName != null) {
+                    if (description.length()>0)
+                        description += " ";
+                    description += "cl "+clName;
+                }
+            }
+            if (levelID==7) {
+                int taxid = s.getTaxid(i);
+                if (taxid != 0) {
+                    int pos1 = description.indexOf("[TaxId:");
+                    if (pos1 > -1) {
+                        int pos2 = description.indexOf("]",pos1+1);
+                        description = description.substring(0,pos1)+
+                            "<a href=\"http://www.ncbi.nih.gov/Taxonomy/Browser/wwwtax.cgi?id="+taxid+"&lvl=0\" class=\"taxid\">"+
+                            description.substring(pos1,pos2+1)+
+                            "</a>"+
+                            description.substring(pos2+1);
+                    }
+                }
+            }
+
+            if (levelID<8) {
+                out.print(level);
+                if (description.length()>0)
+                    out.print(" "+description);
+                if (sunidString != null)
+                    out.println(" #$ "+sunidString);
+                else
+                    out.println();
+
+                // print link to superfam
+                if (levelID==4) {
+                    out.println("! <a href=\"http://supfam.mrc-lmb.cam.ac.uk/SUPERFAMILY/cgi-bin/scop.cgi?sunid="+sunid+"\"><img src=\"/img/superfamily-s.gif\" alt=\"link to SUPERFAMILY database\"><em>uperfamily</em></a>");
+                }
+            }
+            else {
+                // combine multiple nodes into one line
+                String code = description.substring(0,4);
+                out.print("ID "+code.toUpperCase());
+
+                // only merge nodes with the exact same set of comments
+                String allComments = masterComments(s, i, allPXComments);
+
+                // figure out whether RE, CH, or neither
+                int pos = description.indexOf('-');
+                int idType = 0;
+                if (pos == -1)
+                    idType = 1; // CH
+                else if (pos != 5)
+                    idType = 2; // RE
+
+                if (idType == 0) {
+                    if (sunidString != null) {
+                        out.println(" #$ "+sunidString);
+                    }
+                    printedPX[i] = true;
+                }
+                else {
+                    int[] releases = s.getPDBReleases(i);
+                    if (releases == null)
+                        throw new Exception("No PDB chain linked to node "+id);
+                    int releaseID = releases[0];
+                    if (idType==1)
+                        out.print(" CH ");
+                    else
+                        out.print(" RE ");
+                    String sunids = " #$";
+                    int lastID = id-1;
+                    int nSunids = 0; // # of sunids printed on this line
+                    int nDesc = 0; // # of descriptions on this line
+                    int p = s.getParent(i);
+                    for (int i2 = (p == -1 ? -1 : s.getFirstChild(p));
+                         i2 > -1;
+                         i2 = s.getNextSibling(i2)) {
+                        String description2 = s.getDescription(i2);
+                        if (description2 == null)
+                            continue;
+                        if ((description2.indexOf('-') > -1) != (idType==2))
+                            continue;
+                        if (!hasRelease(s.getPDBReleases(i2), releaseID))
+                            continue;
+                        int id2 = s.getID(i2);
+                        description2 = description2.substring(5);
+
+                        // skip if not same set of comments
+                        if (!allComments.equals(masterComments(s, i2, allPXComments)))
+                            continue;
+
+                        if (printedPX[i2])
+                            continue;
+
+                        if (id2 != lastID+1)
+                            break;
+                        lastID = id2;
+
+                        sunidString = masterSunid(s, i2, oldIDs, showMerge);
+
+                        if (nDesc > 0)
+                            out.print(";");
+                        if (idType==1)
+                            description2 = description2.replaceAll(":","");
+                        if ((sunidString != null) && (nSunids == nDesc)) {
+                            sunids += " "+sunidString;
+                            nSunids++;
+                        }
+                        out.print(description2);
+                        nDesc++;
+                        printedPX[i2] = true;
+                    }
+                    if (nSunids > 0)
+                        out.println(sunids);
+                    else
+                        out.println();
+                }
+            }
+
+            // print comments related to this node
+            int end = s.getCommentEnd(i);
+            for (int j=s.getCommentStart(i); j<end; j++) {
+                if (s.isCommentAutogenerated(j))
+                    continue;
+                out.println("! "+addCommentLinks(s, i, s.getComment(j)));
+            }
+        }
+        out.println("END");
+    }
+
+    /**
+       does a list of pdb releases include a given one?
+    */
+    private static boolean hasRelease(int[] releases, int releaseID) {
+        if (releases == null)
+            return false;
+        for (int r : releases)
+            if (r == releaseID)
+                return true;
+        return false;
+    }
+
+    /**
+       add uniprot and pfam links to a comment in the master file
+    */
+    private static String addCommentLinks(ReleaseSnapshot s,
+                                          int i,
+                                          String comment) {
+        String[] accs = s.getUniprot(i);
+        if ((comment.indexOf("SQ ") > -1) && (accs != null)) {
+            // add in uniprot links
+            for (String acc : accs) {
+                int pos = comment.lastIndexOf(acc);
+                while (pos > -1) {
+                    comment = comment.substring(0,pos)+"<a href=\"http://www.uniprot.org/uniprot/"+acc+"\">"+acc+"</a>"+comment.substring(pos+6);
+                    pos = comment.lastIndexOf(acc,pos);
+                }
+            }
+        }
+
+        accs = s.getPfam(i);
+        if (((comment.indexOf("Pfam ") > -1) ||
+             (comment.indexOf("PfamB ") > -1)) &&
+            (accs != null)) {
+            // add in pfam links
+            for (String acc : accs) {
+                String acc2;
+                String url = "<a href=\"http://pfam.sanger.ac.uk/";
+                if (acc.charAt(1)=='F') {
+                    acc2 = "Pfam "+acc.substring(2);
+                    url += "family?acc=";
+                }
+                else {
+                    acc2 = "PfamB "+acc.substring(2);
+                    url += "pfamb?entry=";
+                }
+                int pos = comment.lastIndexOf(acc2);
+                while (pos > -1) {
+                    comment = comment.substring(0,pos)+url+acc+"\">"+acc2+"</a>"+comment.substring(pos+acc2.length());
+                    pos = comment.lastIndexOf(acc2,pos);
+                }
+            }
+        }
+        return comment;
+    }
+
+    final public static void main(String argv[]) {
+        try {
+            LocalSQL.connectRW();
+
+            boolean gzip = false;
+            boolean showMerge = false;
+            boolean oldIDs = false;
+            for (int i=2; i<argv.length; i++) {
+                if (argv[i].equals("gz"))
+                    gzip = true;
+                else if (argv[i].startsWith("m")) {
+                    showMerge = true;
+                    oldIDs = true;
+                }
+                else if (argv[i].startsWith("o"))
+                    oldIDs = true;
+            }
+            final boolean fOldIDs = oldIDs;
+            final boolean fShowMerge = showMerge;
+
+            long start = System.currentTimeMillis();
+            final ReleaseSnapshot s = new ReleaseSnapshot(argv[0]);
+            s.loadComments();
+            s.loadMasterData(oldIDs, showMerge);
+            System.out.println("loaded "+s.size()+" nodes in "+(System.currentTimeMillis()-start)+" ms");
+
+            File dir = new File(argv[1]);
+            dir.mkdirs();
+            String suffix = "."+s.getDBName().toLowerCase()+"."+argv[0]+".txt";
+            if (gzip)
+                suffix += ".gz";
+
+            Vector<DumpThread> writers = new Vector<DumpThread>();
+            writers.add(new DumpThread(new File(dir, "dir.cla"+suffix), gzip) {
+                    void write(PrintStream out) {
+                        writeDirCla(out, s);
+                    }
+                });
+            writers.add(new DumpThread(new File(dir, "dir.des"+suffix), gzip) {
+                    void write(PrintStream out) {
+                        writeDirDes(out, s);
+                    }
+                });
+            writers.add(new DumpThread(new File(dir, "dir.hie"+suffix), gzip) {
+                    void write(PrintStream out) {
+                        writeDirHie(out, s);
+                    }
+                });
+            writers.add(new DumpThread(new File(dir, "dir.com"+suffix), gzip) {
+                    void write(PrintStream out) {
+                        writeDirCom(out, s);
+                    }
+                });
+            writers.add(new DumpThread(new File(dir, "dir.inc"+suffix), gzip) {
+                    void write(PrintStream out) throws Exception {
+                        writeDirInc(out, s);
+                    }
+                });
+            writers.add(new DumpThread(new File(dir, "dir.rep"+suffix), gzip) {
+                    void write(PrintStream out) throws Exception {
+                        writeDirRep(out, s);
+                    }
+                });
+            writers.add(new DumpThread(new File(dir, "master"+suffix), gzip) {
+                    void write(PrintStream out) throws Exception {
+                        writeMasterFile(out, s, fOldIDs, fShowMerge);
+                    }
+                });
+            writers.add(new DumpThread(new File(dir, "astral-rapid-access-"+argv[0]+".raf"+(gzip ? ".gz" : "")), gzip) {
+                    void write(PrintStream out) throws Exception {
+                        writeRAF(out, s.getReleaseID());
+                    }
+                });
+
+            for (DumpThread w : writers)
+                w.start();
+            boolean ok = true;
+            for (DumpThread w : writers) {
+                w.join();
+                if (w.error != null) {
+                    ok = false;
+                    System.out.println("Exception writing "+w.file.getPath()+": "+w.error.getMessage());
+                    w.error.printStackTrace();
+                }
+                else
+                    System.out.println("wrote "+w.file.getPath()+" in "+w.millis+" ms");
+            }
+            System.out.println((ok ? "done" : "failed")+" in "+(System.currentTimeMillis()-start)+" ms");
+        }
+        catch (Exception e) {
+            System.out.println("Exception: "+e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
@@ -148,7 +148,7 @@ public class DumpSubsets {
                                                                          false,
                                                                          isGD);
                     repNodeID.addAll(newDomains);
-                    HashMap <Integer,String> newSidMap = ASTRAL.domainIDToSid(newDomains);
+                    IntMap<String> newSidMap = ASTRAL.domainIDToSid(newDomains);
                     for (Integer repNode : newDomains)
                         repSid.add(newSidMap.get(repNode));
                     levelNodeID.add(new Integer(rs.getInt(2)));
@@ -184,7 +184,7 @@ public class DumpSubsets {
                 }
 
                 if (verbosity==0) {
-                    HashMap<Integer,String> sidMap;
+                    IntMap<String> sidMap;
                     if (isChain)
                         sidMap = ASTRAL.astralChainIDToSid(repNodeID);
                     else
@@ -226,7 +226,7 @@ public class DumpSubsets {
                 }
 
                 if (verbosity==0) {
-                    HashMap<Integer,String> sidMap = ASTRAL.domainIDToSid(repNodeID);
+                    IntMap<String> sidMap = ASTRAL.domainIDToSid(repNodeID);
                     for (Integer nodeID : repNodeID) {
                         repSid.add(sidMap.get(nodeID));
                     }
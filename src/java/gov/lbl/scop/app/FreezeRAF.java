@@ -31,6 +31,10 @@ import org.strbio.mol.*;
 import org.strbio.util.*;
 import org.strbio.IO;
 import gov.lbl.scop.local.LocalSQL;
+import gov.lbl.scop.local.RowMapper;
+import gov.lbl.scop.local.SQLCursor;
+import gov.lbl.scop.util.IntMap;
+import gov.lbl.scop.util.RafStore;
 
 /**
    Run this on a master file for a release, or just on the
@@ -58,50 +62,154 @@ public class FreezeRAF {
         return rv;
     }
 
+    /**
+       id and line hash of a RAF line
+    */
+    private static class RAFHash {
+        int id;
+        int pdbChainID;
+        long lineHash;
+        boolean hasHash;
+    }
+
+    final private static RowMapper<RAFHash> RAF_HASH_MAPPER = new RowMapper<RAFHash>() {
+        public RAFHash map(ResultSet rs) throws SQLException {
+            RAFHash rv = new RAFHash();
+            rv.id = rs.getInt(1);
+            rv.pdbChainID = rs.getInt(2);
+            rv.lineHash = rs.getLong(3);
+            rv.hasHash = !rs.wasNull();
+            return rv;
+        }
+    };
+
+    /**
+       RAF lines by chain, for the release being frozen: the
+       current generated ones, and the ones used in the previous
+       release.  Loaded by loadRAFHashes(); otherwise, addRAF
+       looks up each chain in the db.
+    */
+    private static int hashReleaseID = 0;
+    private static IntMap<RAFHash> newRAFs = null;
+    private static IntMap<RAFHash> oldRAFs = null;
+
+    /**
+       read ids and hashes of version 3 RAF lines, in one pass;
+       keeps the first (lowest id) line for each chain.
+    */
+    final private static IntMap<RAFHash> readRAFHashes(String where) throws SQLException {
+        IntMap<RAFHash> rv = new IntMap<RAFHash>();
+        SQLCursor<RAFHash> c = SQLCursor.keyset("id, pdb_chain_id, line_hash",
+                                                "raf",
+                                                "raf_version_id=3 and "+where,
+                                                "id",
+                                                10000,
+                                                RAF_HASH_MAPPER);
+        RAFHash h;
+        while ((h = c.next()) != null) {
+            if (!rv.containsKey(h.pdbChainID))
+                rv.put(h.pdbChainID, h);
+        }
+        return rv;
+    }
+
+    /**
+       load hashes of all the RAF lines that addRAF will compare
+       when freezing a release, so it doesn't have to query each
+       chain.
+    */
+    final public static void loadRAFHashes(int scopReleaseID) throws SQLException {
+        int oldScopID = scopReleaseID-1;  // must be consecutive
+        newRAFs = readRAFHashes("last_release_id is null");
+        oldRAFs = readRAFHashes("last_release_id="+oldScopID);
+        hashReleaseID = scopReleaseID;
+    }
+
+    /**
+       forget hashes loaded by loadRAFHashes
+    */
+    final public static void clearRAFHashes() {
+        newRAFs = null;
+        oldRAFs = null;
+        hashReleaseID = 0;
+    }
+
+    /**
+       look up one RAF line for a chain; null if none
+    */
+    final private static RAFHash lookupRAFHash(int pdbChainID,
+                                               String where) throws SQLException {
+        Statement stmt = LocalSQL.createStatement();
+        ResultSet rs = stmt.executeQuery("select id, pdb_chain_id, line_hash from raf where pdb_chain_id="+pdbChainID+" and "+where+" and raf_version_id=3");
+        RAFHash rv = null;
+        if (rs.next())
+            rv = RAF_HASH_MAPPER.map(rs);
+        rs.close();
+        stmt.close();
+        return rv;
+    }
+
+    /**
+       are two RAF lines the same?  Compares hashes if both lines
+       have them, otherwise the lines themselves, on the server.
+    */
+    final private static boolean sameLine(RAFHash h1,
+                                          RAFHash h2) throws SQLException {
+        if (h1.hasHash && h2.hasHash)
+            return (h1.lineHash == h2.lineHash);
+        Statement stmt = LocalSQL.createStatement();
+        ResultSet rs = stmt.executeQuery("select binary r1.line = r2.line from raf r1, raf r2 where r1.id="+h1.id+" and r2.id="+h2.id);
+        boolean rv = (rs.next() && (rs.getInt(1) == 1));
+        rs.close();
+        stmt.close();
+        return rv;
+    }
+
     /**
        finds and adds appropriate line to RAF table; returns id of line
-       or 0 if error.
+       or 0 if error.  Lines are compared by hash, and copied on
+       the server, so they're never read here.
     */
     final public static int addRAF(int pdbChainID,
                                    int scopReleaseID) throws Exception {
-
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs;
         int oldScopID = scopReleaseID-1;  // must be consecutive
-	    
-        rs = stmt.executeQuery("select line from raf where pdb_chain_id="+pdbChainID+" and last_release_id is null and raf_version_id=3");
-        if (rs.next()) {
-            String newLine = rs.getString(1);
+        boolean preloaded = ((newRAFs != null) && (hashReleaseID == scopReleaseID));
 
-            // is there an old RAF line that's the same as this one?
-            rs = stmt.executeQuery("select id,line from raf where pdb_chain_id="+pdbChainID+" and last_release_id="+oldScopID+" and raf_version_id=3");
-            if (rs.next()) {
-                int oldRAFID = rs.getInt(1);
-                String oldLine = rs.getString(2);
-                if (oldLine.equals(newLine)) {
-                    rs.close();
-                    stmt.executeUpdate("update raf set last_release_id="+scopReleaseID+" where id="+oldRAFID);
-                    stmt.close();
-                    return oldRAFID;
-                }
-            }
-            rs.close();
+        RAFHash newRAF;
+        if (preloaded)
+            newRAF = newRAFs.get(pdbChainID);
+        else
+            newRAF = lookupRAFHash(pdbChainID, "last_release_id is null");
+        if (newRAF == null) {
+            System.out.println("Warning: chain "+pdbChainID+" not in new RAF");
+            return 0;
+        }
 
-            // old line different or missing; we need to insert it.
-            stmt.executeUpdate("insert into raf values (null, 3, "+pdbChainID+", "+scopReleaseID+", "+scopReleaseID+", \""+newLine+"\")",
-                               Statement.RETURN_GENERATED_KEYS);
-            rs = stmt.getGeneratedKeys();
-            rs.next();
-            int rv = rs.getInt(1);
-            rs.close();
+        // is there an old RAF line that's the same as this one?
+        RAFHash oldRAF;
+        if (preloaded)
+            oldRAF = oldRAFs.get(pdbChainID);
+        else
+            oldRAF = lookupRAFHash(pdbChainID, "last_release_id="+oldScopID);
+
+        Statement stmt = LocalSQL.createStatement();
+        if ((oldRAF != null) && (sameLine(oldRAF, newRAF))) {
+            stmt.executeUpdate("update raf set last_release_id="+scopReleaseID+" where id="+oldRAF.id);
             stmt.close();
-            return rv;
-        }
-        else {
-            System.out.println("Warning: chain "+pdbChainID+" not in new RAF");
+            if (preloaded)
+                oldRAFs.put(pdbChainID, null);
+            return oldRAF.id;
         }
+
+        // old line different or missing; we need to insert it.
+        stmt.executeUpdate("insert into raf (raf_version_id, pdb_chain_id, first_release_id, last_release_id, line, line_hash, body_hash) select 3, pdb_chain_id, "+scopReleaseID+", "+scopReleaseID+", line, line_hash, body_hash from raf where id="+newRAF.id,
+                           Statement.RETURN_GENERATED_KEYS);
+        ResultSet rs = stmt.getGeneratedKeys();
+        rs.next();
+        int rv = rs.getInt(1);
+        rs.close();
         stmt.close();
-        return 0;
+        return rv;
     }
 	
     /**
@@ -202,67 +310,76 @@ public class FreezeRAF {
             stmt.executeUpdate("delete from raf where first_release_id="+scopReleaseID+" and last_release_id="+scopReleaseID);
             stmt.executeUpdate("update raf set last_release_id = "+oldScopID+" where last_release_id="+scopReleaseID);
 
-            // keep track of chains we're using
-            HashSet<String> included = new HashSet<String>();
+            // compare RAF lines for all chains in bulk
+            loadRAFHashes(scopReleaseID);
+            try {
+                // keep track of chains we're using
+                HashSet<String> included = new HashSet<String>();
 
-            if (infile == null) {
-                // use domains defined in table
-                rs = stmt.executeQuery("select e.code, c.chain, n.id from pdb_entry e, pdb_release r, pdb_chain c, link_pdb l, scop_node n where e.id=r.pdb_entry_id and r.id=c.pdb_release_id and c.id=l.pdb_chain_id and n.id=l.node_id and n.release_id="+scopReleaseID+" and n.level_id=8");
-                while (rs.next()) {
-                    String code = rs.getString(1);
-                    if (code.startsWith("s"))
-                        continue;
-                    char chain = rs.getString(2).charAt(0);
-                    int nodeID = rs.getInt(3);
-                    if (!included.contains(code+chain)) {
-                        int rafID = addRAF(code,chain,scopReleaseID,false);
-                        if (rafID==0) {
-                            // delete the node
-                            System.out.println("deleting node for "+code+chain);
-                            ManualEdit.deleteNode(nodeID,true);
+                if (infile == null) {
+                    // use domains defined in table
+                    rs = stmt.executeQuery("select e.code, c.chain, n.id from pdb_entry e, pdb_release r, pdb_chain c, link_pdb l, scop_node n where e.id=r.pdb_entry_id and r.id=c.pdb_release_id and c.id=l.pdb_chain_id and n.id=l.node_id and n.release_id="+scopReleaseID+" and n.level_id=8");
+                    while (rs.next()) {
+                        String code = rs.getString(1);
+                        if (code.startsWith("s"))
+                            continue;
+                        char chain = rs.getString(2).charAt(0);
+                        int nodeID = rs.getInt(3);
+                        if (!included.contains(code+chain)) {
+                            int rafID = addRAF(code,chain,scopReleaseID,false);
+                            if (rafID==0) {
+                                // delete the node
+                                System.out.println("deleting node for "+code+chain);
+                                ManualEdit.deleteNode(nodeID,true);
+                            }
+                            else
+                                included.add(code+chain);
                         }
-                        else
-                            included.add(code+chain);
                     }
                 }
-            }
-            else {
-                // use Master file
-                String buffer;
-                while ((buffer = infile.readLine()) != null) {
-                    if (!buffer.startsWith("ID"))
-                        continue;
-                    int pos = 0;
-                    String code = buffer.substring(3,7).toLowerCase();
-                    while (pos != -1) {
-                        int nextPos = buffer.length()+1;
-                        int pos2 = buffer.indexOf(" CH ",pos+1);
-                        if (pos2 > -1)
-                            nextPos = Math.min(nextPos,pos2+4);
-                        pos2 = buffer.indexOf(" RE ",pos+1);
-                        if (pos2 > -1)
-                            nextPos = Math.min(nextPos,pos2+4);
-                        pos2 = buffer.indexOf(",",pos+1);
-                        if (pos2 > -1)
-                            nextPos = Math.min(nextPos,pos2+1);
-                        pos2 = buffer.indexOf(";",pos+1);
-                        if (pos2 > -1)
-                            nextPos = Math.min(nextPos,pos2+1);
+                else {
+                    // use Master file
+                    String buffer;
+                    while ((buffer = infile.readLine()) != null) {
+                        if (!buffer.startsWith("ID"))
+                            continue;
+                        int pos = 0;
+                        String code = buffer.substring(3,7).toLowerCase();
+                        while (pos != -1) {
+                            int nextPos = buffer.length()+1;
+                            int pos2 = buffer.indexOf(" CH ",pos+1);
+                            if (pos2 > -1)
+                                nextPos = Math.min(nextPos,pos2+4);
+                            pos2 = buffer.indexOf(" RE ",pos+1);
+                            if (pos2 > -1)
+                                nextPos = Math.min(nextPos,pos2+4);
+                            pos2 = buffer.indexOf(",",pos+1);
+                            if (pos2 > -1)
+                                nextPos = Math.min(nextPos,pos2+1);
+                            pos2 = buffer.indexOf(";",pos+1);
+                            if (pos2 > -1)
+                                nextPos = Math.min(nextPos,pos2+1);
 
-                        if (nextPos == buffer.length()+1)
-                            nextPos = -1;
-                        else {
-                            char chain = buffer.charAt(nextPos);
-                            if (!included.contains(code+chain)) {
-                                addRAF(code,chain,scopReleaseID,true);
-                                included.add(code+chain);
+                            if (nextPos == buffer.length()+1)
+                                nextPos = -1;
+                            else {
+                                char chain = buffer.charAt(nextPos);
+                                if (!included.contains(code+chain)) {
+                                    addRAF(code,chain,scopReleaseID,true);
+                                    included.add(code+chain);
+                                }
                             }
-                        }
 			
-                        pos = nextPos;
+                            pos = nextPos;
+                        }
                     }
                 }
             }
+            finally {
+                clearRAFHashes();
+                // its RAFs have changed; see MakeRafStore
+                RafStore.invalidate(scopReleaseID);
+            }
         }
         catch (Exception e) {
             System.out.println("Exception: "+e.getMessage());
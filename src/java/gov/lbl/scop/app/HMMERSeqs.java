@@ -60,12 +60,9 @@ public class HMMERSeqs {
         else if (releaseID < 0)
             hmmerRelease = "2.3.2";
         else {
-            ResultSet rs = stmt.executeQuery("select hr.version from hmmer_release hr, pfam_release pr where pr.id="+releaseID+" and pr.hmmer_release_id=hr.id");
-            if (rs.next())
-                hmmerRelease = rs.getString(1);
-            else
+            hmmerRelease = DimensionCache.getHMMERVersion(releaseID);
+            if (hmmerRelease == null)
                 hmmerRelease = "2.3.2"; // assume compatible with older release
-            rs.close();
         }
 
         // set up hmmer
@@ -107,18 +104,10 @@ public class HMMERSeqs {
                                       int releaseID) throws Exception {
         Statement stmt = LocalSQL.createStatement();
         String releaseName = null;
-        if (releaseID > 0) {
-            ResultSet rs = stmt.executeQuery("select version from pfam_release where id="+releaseID);
-            if (rs.next())
-                releaseName = rs.getString(1);
-            rs.close();
-        }
-        else if (releaseID < 0) {
-            ResultSet rs = stmt.executeQuery("select version from scop_release where id="+(0-releaseID));
-            if (rs.next())
-                releaseName = rs.getString(1);
-            rs.close();
-        }
+        if (releaseID > 0)
+            releaseName = DimensionCache.getPfamReleaseVersion(releaseID);
+        else if (releaseID < 0)
+            releaseName = DimensionCache.getSCOPReleaseVersion(0-releaseID);
         if (releaseName==null) {
             stmt.close();
             return;
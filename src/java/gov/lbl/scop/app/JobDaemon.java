@@ -21,7 +21,11 @@
  */
 package gov.lbl.scop.app;
 
+import gov.lbl.scop.local.JobMetrics;
+import gov.lbl.scop.local.JobQueue;
 import gov.lbl.scop.local.LocalSQL;
+import gov.lbl.scop.local.SCOP;
+import gov.lbl.scop.local.SQLStats;
 import gov.lbl.scop.util.ASTEROIDS;
 import gov.lbl.scop.util.annotation.ExactSequenceMatchChainAnnotator;
 import org.strbio.util.StringUtil;
@@ -31,12 +35,34 @@ import java.lang.management.RuntimeMXBean;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Vector;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Monitor the job queue, and run the highest priority job that
  * hasn't been run already.  Quit after running a certain number of jobs,
  * to allow fair access to the DRM queue.  This process is
  * started as needed by the QueueDaemon.
+ * <p>
+ * Jobs run in their own threads, in a number of slots set by
+ * job_daemon.slots in scop.properties (a number, or "auto" for one
+ * per core; the default is 1).  A new job is claimed as soon as a
+ * slot is free, up to a limit on how many jobs of each type may run
+ * at once; no more jobs of a type are claimed than may start, and
+ * any claimed job that can't start right away is given back to the
+ * queue, so claimed jobs never wait behind others in this daemon.
+ * Jobs are only claimed if they fit in what's left of the host's
+ * CPUs, memory and temp disk, and the tools they need are
+ * installed; see JobType.  Jobs that search a database whose
+ * files are probably already cached on this host are claimed
+ * first; see JobQueue.
+ * <p>
+ * Metrics for each job run (see JobMetrics) are written in
+ * batches, along with finished jobs, unless job_daemon.metrics is
+ * false in scop.properties.
  */
 public class JobDaemon {
     /**
@@ -56,272 +82,487 @@ public class JobDaemon {
     final public static int MAX_PRIORITY = 6;
 
     /**
-     * max time to allow job to run before calling it crashed
-     * WHAT_CHECK can run for up to 12 hrs, so max time is 24h.
-     * We think FATCAT may take 24 hrs, so max time is 48h
+     * max time to allow a job of a type not in JobType to run
+     * before calling it crashed; registered types have their own
+     * timeouts.
      */
     final public static int MAX_TIME_SECONDS = 172800;
 
+    /**
+     * how long to wait for a job to finish before checking for
+     * hung jobs
+     */
+    final public static int POLL_SECONDS = 60;
+
+    /**
+     * finished jobs are moved to job_done in batches, when this many
+     * have finished, or the first has waited FLUSH_SECONDS.  Until
+     * then, they stay in job, marked as running, so they're run
+     * again if this daemon dies first.
+     */
+    final public static int FLUSH_JOBS = 100;
+    final public static int FLUSH_SECONDS = 10;
+
     /**
      * run jobs in their own thread
      */
     static class Job extends Thread {
+        int jobID;
         int jobTypeID;
         int targetID;
         String args;
         int nFailures;
+
+        /**
+         * search database used, or null
+         */
+        String dataKey;
+
+        /**
+         * type of job, or null if not registered
+         */
+        JobType type;
+
+        /**
+         * error message, if the job failed
+         */
         String status;
 
+        /**
+         * status of the job in the db, before it was run
+         */
+        String oldStatus;
+
+        /**
+         * when the job was started
+         */
+        long startTime;
+
+        /**
+         * did we give up on the job, because it ran too long?  Its
+         * thread keeps its slot and resources until it exits.
+         */
+        boolean hung = false;
+
+        /**
+         * where to put the job when it finishes
+         */
+        LinkedBlockingQueue<Job> done;
+
+        /**
+         * metrics for this run
+         */
+        JobMetrics metrics = new JobMetrics();
+
         Job(int jobTypeID, int targetID, String args, int nFailures) {
             this.jobTypeID = jobTypeID;
             this.targetID = targetID;
             this.args = args;
             this.nFailures = nFailures;
+            type = JobType.get(jobTypeID);
             status = null;
         }
 
+        /**
+         * how long the job may run before it's considered hung
+         */
+        int getTimeoutSeconds() {
+            if (type == null)
+                return MAX_TIME_SECONDS;
+            return type.timeoutSeconds;
+        }
+
         public void run() {
+            JobMetrics.startThread();
             try {
                 String arg[] = null;
                 if (args != null)
                     arg = args.split(" ");
-                switch (jobTypeID) {
-                case 1:
-                    MakeNewRAF.makeRAF(targetID);
-                    MakePDBAuthor.findAuthors(targetID);
-                    MakePDBSource.findSources(targetID);
-                    MakePDBHeaders.findHeaders(targetID);
-                    MakePDBSeqadv.findSeqadv(targetID);
-                    MakePDBUniprot.findUniprot(targetID);
-                    break;
-                case 2:
-                    double rv = CalcSPACI.getResolution(targetID);
-                    if (Double.isNaN(rv) && (nFailures < MAX_FAIL - 1))
-                        throw new Exception("Invalid Resolution");
-                    rv = CalcSPACI.getRFactor(targetID);
-                    if (Double.isNaN(rv) && (nFailures < MAX_FAIL - 1))
-                        throw new Exception("Invalid R Factor");
-                    LocalSQL.newJob(3, targetID, null);
-                    break;
-                case 3:
-                    boolean rv2 = CalcSPACI.runWhatcheck(targetID);
-                    if (!rv2 && (nFailures < MAX_FAIL - 1))
-                        throw new Exception("Invalid WC");
-                    LocalSQL.newJob(4, targetID, null);
-                    break;
-                case 4:
-                    rv2 = CalcSPACI.runProcheck(targetID);
-                    if (!rv2 && (nFailures < MAX_FAIL - 1))
-                        throw new Exception("Invalid PC");
-                    LocalSQL.newJob(5, targetID, null);
-                    break;
-                case 5:
-                    CalcSPACI.calcSPACI(targetID);
-                    break;
-                case 6:
-                    MakeChainSeq.makeChainSeq(targetID);
-                    break;
-                case 7:
-                    MakeThumbnails.makeThumbnail(targetID,
-                                                 (nFailures > 0));
-                    break;
-                case 8:
-                    MakeThumbnails.copyRepThumbnails(targetID,true);
-                    break;
-                case 11:
-                    HMMERSeqs.hmmerSeq(targetID,
-                                       StringUtil.atoi(arg[0]));
-                    break;
-                case 12:
-                    HMMERSeqs.hmmerSeq(targetID,
-                                       0 - StringUtil.atoi(arg[0]));
-                    break;
-                case 16:
-                    int pfamReleaseID = StringUtil.atoi(arg[0]);
-                    int scopReleaseID = StringUtil.atoi(arg[1]);
-                    MakeASTEROIDS.makeASTEROIDS(targetID,
-                                                pfamReleaseID,
-                                                scopReleaseID);
-                    break;
-                case 17:
-                    MakePDBStyle.makePDBStyle(targetID);
-                    break;
-                case 18:
-                    MakePDBStyle.makePDBStyleASTEROID(targetID);
-                    break;
-                case 19:
-                    MakeThumbnails.makeThumbnailASTEROID(targetID,
-                                                         (nFailures > 1));
-                    break;
-                case 20:
-                    BlastSeqs.blastSeq(targetID,
-                                       StringUtil.atoi(arg[0]),
-                                       StringUtil.atoi(arg[1]),
-                                       StringUtil.atoi(arg[2]),
-                                       StringUtil.atoi(arg[3]));
-                    break;
-                case 21:
-                    PromoteASTEROIDS.processChain(targetID,
-                                                  StringUtil.atoi(arg[0]),
-                                                  StringUtil.atoi(arg[1]),
-                                                  StringUtil.atoi(arg[2]));
-                    break;
-                case 22:
-                    CDDSeqs.cddSeq(targetID,
-                                   StringUtil.atoi(arg[0]));
-                    break;
-                case 23:
-                    MakeThumbnailsChain.makeThumbnailChain(targetID,
-                                                           (nFailures > 1));
-                    break;
-                case 24:
-                    FatcatPairs.runComparisons(targetID,
-                                               StringUtil.atoi(arg[0]));
-                    break;
-                case 25:
-                    ChainDomainFatcatPairs.runComparisons(targetID,
-                                                          StringUtil.atoi(arg[0]));
-                    break;
-                }
+                if (type == null)
+                    System.out.println("unknown job type " + jobTypeID);
+                else
+                    type.runner.run(targetID, arg, nFailures);
             } catch (Exception e) {
                 e.printStackTrace();
                 status = e.getMessage();
+                metrics.failure = JobMetrics.categorize(e);
+            } finally {
+                long cpuNS = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+                if (cpuNS >= 0)
+                    metrics.values[2] = cpuNS / 1000000L;
+                metrics.values[3] = JobMetrics.getPeakRSSMB();
+                metrics.values[4] = JobMetrics.getThreadDBNS() / 1000000L;
+                metrics.values[5] = JobMetrics.getThreadToolNS() / 1000000L;
+                LocalSQL.releaseConnection();
+                if (done != null)
+                    done.add(this);
             }
         }
     }
 
+    /**
+     * number of job slots, from scop.properties
+     */
+    final public static int getSlots() {
+        return getSlots(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * number of job slots a daemon would have on a host with
+     * the given number of CPUs
+     */
+    final public static int getSlots(int cpus) {
+        String s = SCOP.getProperty("job_daemon.slots");
+        if (s == null)
+            return 1;
+        s = s.trim();
+        if (s.equals("auto"))
+            return Math.max(cpus, 1);
+        int rv = StringUtil.atoi(s);
+        if (rv < 1)
+            rv = 1;
+        return rv;
+    }
+
+    /**
+     * how many jobs of a type may run at once, or 0 if there
+     * is no limit other than the number of slots and resources
+     */
+    final public static int getMaxRunning(int jobTypeID) {
+        JobType t = JobType.get(jobTypeID);
+        if (t != null)
+            return t.getMaxRunning();
+        String s = SCOP.getProperty("job_daemon.max_running."+jobTypeID);
+        if (s != null)
+            return StringUtil.atoi(s.trim());
+        return 0;
+    }
+
+    /**
+     * write metrics, and clear them; metrics that can't be written
+     * are dropped, rather than stopping the daemon
+     */
+    final public static void writeMetrics(Vector<JobMetrics> metrics) {
+        try {
+            JobMetrics.write(metrics);
+        } catch (Exception e) {
+            System.out.println("couldn't write job metrics");
+            e.printStackTrace();
+        }
+        metrics.clear();
+    }
+
     final public static void main(String argv[]) {
         try {
+            // DB time for metrics comes from SQLStats
+            boolean keepMetrics = !("false".equals(SCOP.getProperty("job_daemon.metrics")));
+            if (keepMetrics)
+                SQLStats.enable();
+
             LocalSQL.connectRW();
 
             Statement stmt = LocalSQL.createStatement();
             PreparedStatement clearJobs = LocalSQL.prepareStatement("update job set running = null, time_started = null where running = ?");
-            PreparedStatement takeJobs = LocalSQL.prepareStatement("update job set running = ?, time_started = now() where running is null and priority = ? and n_failures = ? order by id limit ?");
-            PreparedStatement getJobs = LocalSQL.prepareStatement("select id, job_type_id, target_id, args, status from job where running = ?");
-            PreparedStatement finished1 = LocalSQL.prepareStatement("insert into job_done (select id, job_type_id, time_created, time_started, now(), target_id, args, n_failures, running, priority, status from job where id = ?)");
-            PreparedStatement finished2 = LocalSQL.prepareStatement("delete from job where id = ?");
-            PreparedStatement fail = LocalSQL.prepareStatement("update job set running=null, time_started=null, status = ?, n_failures = ? where id = ?");
-            PreparedStatement lock = LocalSQL.prepareStatement("lock table job write, job_done write");
-            ;
-            PreparedStatement unlock = LocalSQL.prepareStatement("unlock tables");
+            PreparedStatement getJobs = LocalSQL.prepareStatement("select id, job_type_id, target_id, args, status, n_failures, data_key, unix_timestamp(time_started)-unix_timestamp(time_created) from job where running = ?");
 
             // get my process name
             RuntimeMXBean rtb = ManagementFactory.getRuntimeMXBean();
             String processName = rtb.getName();
+            String hostName = processName.substring(processName.indexOf('@') + 1);
             processName = processName.replaceAll("\\W", ".");
-            takeJobs.setString(1, processName);
             getJobs.setString(1, processName);
             clearJobs.setString(1, processName);
 
-            // initial number of jobs at a time
-            int nJobs = 1;
-            takeJobs.setInt(4,nJobs);
-
-            // run jobs
-            for (int i = 0; i <= JOBS_PER_DAEMON; i++) {
-                // clear out old jobs under my name
-                clearJobs.executeUpdate();
-
-                // pick N jobs and run them
-                int nFailures = 0;
-                String s = (new java.util.Date()).toString();
-                TAKE_JOB:
-                for (int priority = 0; priority <= MAX_PRIORITY; priority++) {
-                    takeJobs.setInt(2, priority);
-                    for (nFailures = 0; nFailures < MAX_FAIL; nFailures++) {
-                        System.out.println("getting jobs priority " + priority + " failures " + nFailures + " " + s);
-                        takeJobs.setInt(3, nFailures);
-                        int n = 0; // jobs taken
-                        try {
-                            long t1 = new java.util.Date().getTime();
-                            lock.executeUpdate();
-                            n = takeJobs.executeUpdate();
-                            unlock.executeUpdate();
-                            long t2 = new java.util.Date().getTime();
-                            if (t2 > t1+10L) { // 0.1 seconds
-                                if (nJobs < 10) {
-                                    nJobs++;
-                                    System.out.println("nJobs = "+nJobs);
-                                    takeJobs.setInt(4,nJobs);
-                                }
-                            }
-                            else if (t2 < 2L) {
-                                if (nJobs > 1) {
-                                    nJobs--;
-                                    System.out.println("nJobs = "+nJobs);
-                                    takeJobs.setInt(4,nJobs);
-                                }
-                            }
-                        } catch (Exception e2) {
-                            System.out.println("Transaction failed");
-                            n = 0;
+            int nSlots = getSlots();
+            System.out.println("running up to " + nSlots + " jobs at once");
+
+            // resources not used by running jobs
+            JobType.Resources free = JobType.Resources.forHost();
+            System.out.println("resources: " + free);
+
+            // clear out old jobs under my name
+            clearJobs.executeUpdate();
+
+            // jobs running
+            Vector<Job> running = new Vector<Job>();
+            HashSet<Integer> myJobs = new HashSet<Integer>();
+            HashMap<Integer,Integer> nRunning = new HashMap<Integer,Integer>();
+            LinkedBlockingQueue<Job> done = new LinkedBlockingQueue<Job>();
+
+            // finished jobs not yet moved to job_done, metrics for
+            // all jobs finished since the last flush, data keys
+            // used since then, and when the first of them finished
+            Vector<Integer> toMove = new Vector<Integer>();
+            Vector<JobMetrics> metrics = new Vector<JobMetrics>();
+            HashSet<String> warmKeys = new HashSet<String>();
+            long firstToMove = 0;
+
+            int nStarted = 0;
+            int nHung = 0; // given up on, but thread still running
+            boolean tryClaim = true;
+            boolean queueEmpty = false;
+            while (true) {
+                // jobs claimed but not started yet; any still here
+                // after starting jobs are given back
+                Vector<Job> claimed = new Vector<Job>();
+
+                // pick N jobs, if a slot is free and we haven't
+                // run enough already
+                int limit = nSlots - running.size();
+                if (limit > JOBS_PER_DAEMON - nStarted)
+                    limit = JOBS_PER_DAEMON - nStarted;
+                if ((tryClaim) && (limit > 0)) {
+                    // skip types that are already at their limit, or
+                    // need more than is free, or tools we don't have,
+                    // and take no more of a type than may start and
+                    // fit in what's free.  With nothing running, take
+                    // one job of anything we have tools for, even if
+                    // it's bigger than the host.
+                    String skipTypes = "";
+                    HashMap<Integer,Integer> typeLimits = new HashMap<Integer,Integer>();
+                    for (JobType t : JobType.all()) {
+                        Integer r = nRunning.get(new Integer(t.id));
+                        int nr = (r == null ? 0 : r.intValue());
+                        int room = t.getMaxRunning();
+                        if (room > 0)
+                            room -= nr;
+                        else
+                            room = limit;
+                        if (!free.hasTools(t))
+                            room = 0;
+                        else if (running.size() > 0)
+                            room = Math.min(room, free.count(t));
+                        else
+                            room = Math.min(room, Math.max(free.count(t), 1));
+                        if (room <= 0)
+                            skipTypes += (skipTypes.length() == 0 ? "" : ",") + t.id;
+                        else if (room < limit)
+                            typeLimits.put(new Integer(t.id), new Integer(room));
+                    }
+
+                    String s = (new java.util.Date()).toString();
+                    System.out.println("getting jobs " + s);
+                    int n = 0; // jobs taken
+                    try {
+                        // only take jobs warm on other hosts if
+                        // at least half our slots are free
+                        boolean steal = (running.size() < (nSlots + 1) / 2);
+                        JobQueue.Claim c = JobQueue.DEFAULT.claim(processName, limit, skipTypes, typeLimits, hostName, steal);
+                        n = c.ids.size();
+                        queueEmpty = c.queueEmpty;
+                    } catch (Exception e2) {
+                        System.out.println("Transaction failed");
+                        e2.printStackTrace();
+                        n = 0;
+                        queueEmpty = false;
+                    }
+
+                    if (n > 0) {
+                        s = (new java.util.Date()).toString();
+                        System.out.println("getting job details " + s);
+                        ResultSet rs = getJobs.executeQuery();
+                        while (rs.next()) {
+                            int jobID = rs.getInt(1);
+                            if (myJobs.contains(new Integer(jobID)))
+                                continue;
+                            Job j = new Job(rs.getInt(2),
+                                            rs.getInt(3),
+                                            rs.getString(4),
+                                            rs.getInt(6));
+                            j.jobID = jobID;
+                            j.dataKey = rs.getString(7);
+                            j.metrics.jobID = jobID;
+                            j.metrics.jobTypeID = j.jobTypeID;
+                            j.metrics.host = hostName;
+                            j.metrics.values[0] = rs.getLong(8) * 1000L;
+                            j.oldStatus = rs.getString(5);
+                            if (j.oldStatus == null)
+                                j.oldStatus = "";
+                            j.done = done;
+                            claimed.add(j);
+                            myJobs.add(new Integer(jobID));
                         }
-                        if (n >= 1)
-                            break TAKE_JOB;
+                        rs.close();
                     }
+
+                    // if there's nothing more we can take, don't look
+                    // again until a job finishes, or we've waited a while
+                    if ((n == 0) || (queueEmpty))
+                        tryClaim = false;
+                }
+
+                // start claimed jobs in free slots
+                for (int i = 0; (i < claimed.size()) && (running.size() < nSlots); i++) {
+                    Job j = claimed.get(i);
+                    Integer jobTypeID = new Integer(j.jobTypeID);
+                    int max = getMaxRunning(j.jobTypeID);
+                    Integer r = nRunning.get(jobTypeID);
+                    int nr = (r == null ? 0 : r.intValue());
+                    if ((max > 0) && (nr >= max))
+                        continue;
+                    if ((j.type != null) &&
+                        (running.size() > 0) &&
+                        (!free.fits(j.type)))
+                        continue;
+                    claimed.remove(i--);
+                    if (j.type != null)
+                        free.use(j.type, 1);
+                    nRunning.put(jobTypeID, new Integer(nr + 1));
+                    running.add(j);
+                    nStarted++;
+                    String s = (new java.util.Date()).toString();
+                    System.out.println("running job " + j.jobID + " " + s);
+                    j.startTime = System.currentTimeMillis();
+                    j.start();
+                }
+
+                // give back jobs that can't start yet, rather than
+                // holding them: they'd keep slots from other types,
+                // and their time_started would count down their
+                // timeout while they waited
+                if (claimed.size() > 0) {
+                    Vector<Integer> ids = new Vector<Integer>();
+                    for (Job j : claimed) {
+                        ids.add(new Integer(j.jobID));
+                        myJobs.remove(new Integer(j.jobID));
+                    }
+                    System.out.println("giving back " + ids.size() + " jobs");
+                    JobQueue.DEFAULT.release(ids, processName);
+                }
+
+                // exiting stops the threads of any hung jobs
+                if (running.size() == nHung) {
+                    if ((!tryClaim) || (nStarted >= JOBS_PER_DAEMON))
+                        break;
+                    if (running.size() == 0)
+                        continue;
                 }
-                s = (new java.util.Date()).toString();
-                System.out.println("getting job details " + s);
-                ResultSet rs = getJobs.executeQuery();
-                boolean gotJob = false;
-                while (rs.next()) {
-                    gotJob = true;
-                    int jobID = rs.getInt(1);
-                    int jobTypeID = rs.getInt(2);
-                    int targetID = rs.getInt(3);
-                    String args = rs.getString(4);
-                    String status = rs.getString(5);
-                    if (status == null)
-                        status = "";
-
-                    s = (new java.util.Date()).toString();
-                    System.out.println("running job " + jobID + " " + s);
+
+                // wait for a job to finish, or check for hung jobs,
+                // or move finished jobs
+                long wait = 1000L * POLL_SECONDS;
+                if (toMove.size() + metrics.size() + warmKeys.size() > 0) {
+                    wait = firstToMove + 1000L * FLUSH_SECONDS - System.currentTimeMillis();
+                    if (wait < 1)
+                        wait = 1;
+                }
+                Job finished = done.poll(wait, TimeUnit.MILLISECONDS);
+                tryClaim = true;
+                Vector<Job> toFinish = new Vector<Job>();
+                if (finished != null) {
+                    toFinish.add(finished);
+                    done.drainTo(toFinish);
+                }
+
+                // free the slots and resources of jobs whose threads
+                // have exited; hung jobs were already marked finished
+                // when we gave up on them
+                for (int i = 0; i < toFinish.size(); i++) {
+                    Job j = toFinish.get(i);
+                    if (!running.remove(j))
+                        continue;
+                    Integer jobTypeID = new Integer(j.jobTypeID);
+                    nRunning.put(jobTypeID, new Integer(nRunning.get(jobTypeID).intValue() - 1));
+                    if (j.type != null)
+                        free.use(j.type, -1);
+                    if (j.hung) {
+                        // its metrics are complete only now
+                        nHung--;
+                        toFinish.remove(i--);
+                        if (keepMetrics) {
+                            j.metrics.failure = JobMetrics.FAILURE_TIMEOUT;
+                            if (toMove.size() + metrics.size() + warmKeys.size() == 0)
+                                firstToMove = System.currentTimeMillis();
+                            metrics.add(j.metrics);
+                        }
+                    }
+                }
+
+                // give up on jobs that have run too long, but keep
+                // them in running until their threads exit
+                long now = System.currentTimeMillis();
+                for (Job j : running) {
+                    if ((!j.hung) &&
+                        (now - j.startTime > 1000L * j.getTimeoutSeconds())) {
+                        j.interrupt();
+                        stmt.executeUpdate("insert into notify_message_queue (template_id, user_id) values (1,1)");
+                        stmt.executeUpdate("set @message_id=last_insert_id();");
+                        stmt.executeUpdate("insert into notify_parameter (message_id, parameter) values (@message_id, \"" + j.jobID + "\")");
+                        stmt.executeUpdate("insert into notify_parameter (message_id, parameter) values (@message_id, \"" + processName + "\")");
+                        j.hung = true;
+                        nHung++;
+                        toFinish.add(j);
+                    }
+                }
+
+                for (Job j : toFinish) {
+                    String status = j.oldStatus;
                     boolean failed = false;
                     try {
-                        Job j = new Job(jobTypeID, targetID, args, nFailures);
-                        j.start();
-                        j.join(1000 * MAX_TIME_SECONDS);
-                        if (j.isAlive()) {
-                            j.interrupt();
-                            stmt.executeUpdate("insert into notify_message_queue (template_id, user_id) values (1,1)");
-                            stmt.executeUpdate("set @message_id=last_insert_id();");
-                            stmt.executeUpdate("insert into notify_parameter (message_id, parameter) values (@message_id, \"" + jobID + "\")");
-                            stmt.executeUpdate("insert into notify_parameter (message_id, parameter) values (@message_id, \"" + processName + "\")");
+                        if (j.hung)
                             throw new Exception("hung");
-                        }
-                        if (j.status != null) {
+                        if (j.status != null)
                             throw new Exception(j.status);
-                        }
                     } catch (Exception e) {
-                        System.out.println("failed job " + jobID);
+                        System.out.println("failed job " + j.jobID);
                         e.printStackTrace();
                         status += e.getMessage() + "; ";
                         failed = true;
                     }
+                    if ((j.dataKey != null) && (!j.hung)) {
+                        if (toMove.size() + metrics.size() + warmKeys.size() == 0)
+                            firstToMove = System.currentTimeMillis();
+                        warmKeys.add(j.dataKey);
+                    }
+                    if (keepMetrics) {
+                        j.metrics.values[1] = System.currentTimeMillis() - j.startTime;
+                        // a hung job's thread may still be filling in
+                        // its metrics; they're written when it exits
+                        if (!j.hung) {
+                            if (toMove.size() + metrics.size() + warmKeys.size() == 0)
+                                firstToMove = System.currentTimeMillis();
+                            metrics.add(j.metrics);
+                        }
+                    }
+                    int nFailures = j.nFailures;
                     if (failed) {
                         nFailures++;
-                        fail.setString(1, status);
-                        fail.setInt(2, nFailures);
-                        fail.setInt(3, jobID);
-                        fail.executeUpdate();
+                        JobQueue.DEFAULT.fail(j.jobID,
+                                              status,
+                                              nFailures,
+                                              (nFailures < MAX_FAIL));
                     }
                     if ((!failed) ||
                         (nFailures >= MAX_FAIL)) {
-                        finished1.setInt(1, jobID);
-                        finished2.setInt(1, jobID);
-                        lock.executeUpdate();
-                        finished1.executeUpdate();
-                        finished2.executeUpdate();
-                        unlock.executeUpdate();
+                        if (toMove.size() + metrics.size() + warmKeys.size() == 0)
+                            firstToMove = System.currentTimeMillis();
+                        toMove.add(new Integer(j.jobID));
                     }
+                    else
+                        myJobs.remove(new Integer(j.jobID));
                 }
-                rs.close();
-                if (!gotJob) {
-                    System.out.println("JobDaemon: no more jobs to take");
-                    System.exit(0);
+
+                // move finished jobs to job_done, mark their data
+                // keys warm, and write metrics
+                int nToFlush = Math.max(Math.max(toMove.size(), metrics.size()), warmKeys.size());
+                if ((nToFlush >= FLUSH_JOBS) ||
+                    ((nToFlush > 0) &&
+                     (System.currentTimeMillis() - firstToMove >= 1000L * FLUSH_SECONDS))) {
+                    JobQueue.DEFAULT.finish(toMove, hostName, warmKeys);
+                    warmKeys.clear();
+                    myJobs.removeAll(toMove);
+                    toMove.clear();
+                    writeMetrics(metrics);
                 }
             }
+            JobQueue.DEFAULT.finish(toMove, hostName, warmKeys);
+            writeMetrics(metrics);
+            if (nStarted < JOBS_PER_DAEMON) {
+                System.out.println("JobDaemon: no more jobs to take");
+                System.exit(0);
+            }
             System.out.println("normal finish");
+            System.exit(0);
         } catch (Exception e) {
             System.out.println("Exception: " + e.getMessage());
             e.printStackTrace();
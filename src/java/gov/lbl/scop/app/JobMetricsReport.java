@@ -0,0 +1,168 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.app;
+
+import java.sql.*;
+import java.util.*;
+import gov.lbl.scop.local.JobMetrics;
+import gov.lbl.scop.local.LocalSQL;
+import org.strbio.util.StringUtil;
+
+/**
+   Summarizes job metrics from the last few days (7 by default, or
+   the first argument): for each job type, by decreasing total run
+   time, the number of runs, then the total, median, 90th and 99th
+   percentile of each metric (from the histograms, so percentiles
+   are rounded up to a power of 2), then the number of failures of
+   each category.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class JobMetricsReport {
+    /**
+       histogram for one type and metric
+    */
+    private static class Histogram {
+        long[] n = new long[JobMetrics.N_BUCKETS];
+        long count = 0;
+        long total = 0;
+
+        /**
+           upper bound of value at a given fraction of runs
+        */
+        long getPercentile(double f) {
+            long target = (long)Math.ceil(f * count);
+            long sum = 0;
+            for (int i=0; i<JobMetrics.N_BUCKETS; i++) {
+                sum += n[i];
+                if ((sum >= target) && (sum > 0))
+                    return (i == 0 ? 0 : (1L << i) - 1);
+            }
+            return 0;
+        }
+    }
+
+    final public static void main(String argv[]) {
+        try {
+            LocalSQL.connect();
+            int days = 7;
+            if (argv.length > 0)
+                days = StringUtil.atoi(argv[0]);
+
+            // histograms are by day, so both queries start at
+            // midnight, days-1 days ago
+            String since = ">= date_sub(curdate(), interval ? day)";
+
+            // type -> metric -> histogram
+            final HashMap<Integer,HashMap<String,Histogram>> types = new HashMap<Integer,HashMap<String,Histogram>>();
+            PreparedStatement stmt = LocalSQL.prepareStatement("select job_type_id, metric, bucket, sum(n), sum(total) from job_metrics_histogram where day "+since+" group by job_type_id, metric, bucket");
+            stmt.setInt(1, days - 1);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                Integer typeID = new Integer(rs.getInt(1));
+                HashMap<String,Histogram> metrics = types.get(typeID);
+                if (metrics == null) {
+                    metrics = new HashMap<String,Histogram>();
+                    types.put(typeID, metrics);
+                }
+                Histogram h = metrics.get(rs.getString(2));
+                if (h == null) {
+                    h = new Histogram();
+                    metrics.put(rs.getString(2), h);
+                }
+                h.n[rs.getInt(3)] += rs.getLong(4);
+                h.count += rs.getLong(4);
+                h.total += rs.getLong(5);
+            }
+            rs.close();
+            stmt.close();
+
+            // failures, by type and category
+            HashMap<Integer,String> failures = new HashMap<Integer,String>();
+            stmt = LocalSQL.prepareStatement("select job_type_id, failure, count(*) from job_metrics where time_finished "+since+" and failure != ? group by job_type_id, failure");
+            stmt.setInt(1, days - 1);
+            stmt.setString(2, JobMetrics.FAILURE_NONE);
+            rs = stmt.executeQuery();
+            while (rs.next()) {
+                Integer typeID = new Integer(rs.getInt(1));
+                String s = failures.get(typeID);
+                failures.put(typeID, (s == null ? "" : s+", ")+rs.getString(2)+" "+rs.getLong(3));
+            }
+            rs.close();
+            stmt.close();
+
+            // sort types by total run time
+            Vector<Integer> typeIDs = new Vector<Integer>(types.keySet());
+            Collections.sort(typeIDs, new Comparator<Integer>() {
+                    public int compare(Integer a, Integer b) {
+                        long ta = getTotal(types.get(a), "run_ms");
+                        long tb = getTotal(types.get(b), "run_ms");
+                        return (ta > tb ? -1 : (ta < tb ? 1 : 0));
+                    }
+                });
+
+            System.out.println("# job metrics for the last "+days+" days");
+            System.out.println("# type\tname\tmetric\truns\ttotal\tp50\tp90\tp99");
+            for (Integer typeID : typeIDs) {
+                JobType t = JobType.get(typeID.intValue());
+                String name = (t == null ? "unknown" : t.name);
+                HashMap<String,Histogram> metrics = types.get(typeID);
+                for (String metric : JobMetrics.METRICS) {
+                    Histogram h = metrics.get(metric);
+                    if (h == null)
+                        continue;
+                    System.out.println(typeID+"\t"+
+                                       name+"\t"+
+                                       metric+"\t"+
+                                       h.count+"\t"+
+                                       h.total+"\t"+
+                                       h.getPercentile(0.5)+"\t"+
+                                       h.getPercentile(0.9)+"\t"+
+                                       h.getPercentile(0.99));
+                }
+                String s = failures.get(typeID);
+                if (s != null)
+                    System.out.println(typeID+"\t"+name+"\tfailures\t"+s);
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Exception: "+e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+       total of a metric, or 0 if not recorded
+    */
+    private static long getTotal(HashMap<String,Histogram> metrics,
+                                 String metric) {
+        Histogram h = metrics.get(metric);
+        if (h == null)
+            return 0;
+        return h.total;
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.app;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import gov.lbl.scop.local.LocalSQL;
+import gov.lbl.scop.local.SCOP;
+import org.strbio.util.StringUtil;
+
+/**
+   Registry of the types of jobs run by JobDaemon.  Each type
+   declares how to run it, and the resources one job needs: CPUs,
+   memory, temp disk, how long it may run before it's considered
+   hung, how many may run at once in one daemon, and which external
+   tools it uses.  JobDaemon only claims jobs that fit in what's
+   left of the host's Resources.
+   <p>
+   Limits on how many of a type run at once can be overridden with
+   job_daemon.max_running.[type] in scop.properties.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class JobType {
+    /**
+       runs one job of a type
+    */
+    public interface Runner {
+        public void run(int targetID,
+                        String[] arg,
+                        int nFailures) throws Exception;
+    }
+
+    /**
+       resources on a host, or free for more jobs
+    */
+    public static class Resources {
+        public int cpus;
+        public long memoryMB;
+        public long tempMB;
+
+        /**
+           external tools available, or null if all are
+        */
+        public HashSet<String> tools;
+
+        /**
+           Resources on this host.  These are read from
+           scop.properties (job_daemon.cpus, job_daemon.memory_mb,
+           job_daemon.temp_mb, and job_daemon.tools, a comma-separated
+           list) if set, otherwise from the system.
+        */
+        final public static Resources forHost() {
+            Resources rv = new Resources();
+            String s = SCOP.getProperty("job_daemon.cpus");
+            if (s != null)
+                rv.cpus = StringUtil.atoi(s.trim());
+            else
+                rv.cpus = Runtime.getRuntime().availableProcessors();
+
+            s = SCOP.getProperty("job_daemon.memory_mb");
+            if (s != null)
+                rv.memoryMB = StringUtil.atoi(s.trim());
+            else {
+                rv.memoryMB = Runtime.getRuntime().maxMemory() / 1048576L;
+                try {
+                    com.sun.management.OperatingSystemMXBean os = (com.sun.management.OperatingSystemMXBean)ManagementFactory.getOperatingSystemMXBean();
+                    rv.memoryMB = os.getTotalPhysicalMemorySize() / 1048576L;
+                }
+                catch (Throwable e) {
+                    // not available on this JVM
+                }
+            }
+
+            s = SCOP.getProperty("job_daemon.temp_mb");
+            if (s != null)
+                rv.tempMB = StringUtil.atoi(s.trim());
+            else
+                rv.tempMB = new File(System.getProperty("java.io.tmpdir")).getUsableSpace() / 1048576L;
+
+            s = SCOP.getProperty("job_daemon.tools");
+            if (s != null) {
+                rv.tools = new HashSet<String>();
+                for (String tool : s.split(","))
+                    if (tool.trim().length() > 0)
+                        rv.tools.add(tool.trim());
+            }
+            return rv;
+        }
+
+        /**
+           are the tools used by a type available?
+        */
+        final public boolean hasTools(JobType t) {
+            if (tools == null)
+                return true;
+            for (String tool : t.tools)
+                if (!tools.contains(tool))
+                    return false;
+            return true;
+        }
+
+        /**
+           is there room for a job of a type?
+        */
+        final public boolean fits(JobType t) {
+            return ((cpus >= t.cpus) &&
+                    (memoryMB >= t.memoryMB) &&
+                    (tempMB >= t.tempMB) &&
+                    hasTools(t));
+        }
+
+        /**
+           how many jobs of a type fit in these resources at once;
+           Integer.MAX_VALUE if the type doesn't use any
+        */
+        final public int count(JobType t) {
+            if (!hasTools(t))
+                return 0;
+            long rv = Integer.MAX_VALUE;
+            if (t.cpus > 0)
+                rv = Math.min(rv, cpus / t.cpus);
+            if (t.memoryMB > 0)
+                rv = Math.min(rv, memoryMB / t.memoryMB);
+            if (t.tempMB > 0)
+                rv = Math.min(rv, tempMB / t.tempMB);
+            return (int)Math.max(rv, 0);
+        }
+
+        /**
+           take away (or give back, if n is -1) resources used by
+           n jobs of a type
+        */
+        final public void use(JobType t, int n) {
+            cpus -= n * t.cpus;
+            memoryMB -= n * t.memoryMB;
+            tempMB -= n * t.tempMB;
+        }
+
+        public String toString() {
+            return cpus+" CPUs, "+memoryMB+" MB memory, "+tempMB+" MB temp"+
+                (tools == null ? "" : ", tools "+tools);
+        }
+    }
+
+    public int id;
+    public String name;
+    public int cpus;
+    public int memoryMB;
+    public int tempMB;
+    public int timeoutSeconds;
+
+    /**
+       how many may run at once in one daemon, or 0 if only
+       limited by resources
+    */
+    public int maxRunning;
+
+    /**
+       external tools used
+    */
+    public String[] tools;
+
+    public Runner runner;
+
+    public JobType(int id,
+                   String name,
+                   int cpus,
+                   int memoryMB,
+                   int tempMB,
+                   int timeoutSeconds,
+                   int maxRunning,
+                   String[] tools,
+                   Runner runner) {
+        this.id = id;
+        this.name = name;
+        this.cpus = cpus;
+        this.memoryMB = memoryMB;
+        this.tempMB = tempMB;
+        this.timeoutSeconds = timeoutSeconds;
+        this.maxRunning = maxRunning;
+        this.tools = (tools == null ? new String[0] : tools);
+        this.runner = runner;
+    }
+
+    /**
+       how many of this type may run at once in one daemon, or 0
+       if there is no limit
+    */
+    final public int getMaxRunning() {
+        String s = SCOP.getProperty("job_daemon.max_running."+id);
+        if (s != null)
+            return StringUtil.atoi(s.trim());
+        return maxRunning;
+    }
+
+    /**
+       registered types, by id
+    */
+    final private static TreeMap<Integer,JobType> types = new TreeMap<Integer,JobType>();
+
+    final public static void register(JobType t) {
+        types.put(new Integer(t.id), t);
+    }
+
+    /**
+       type with a given id, or null if not registered
+    */
+    final public static JobType get(int id) {
+        return types.get(new Integer(id));
+    }
+
+    /**
+       all registered types, in order of id
+    */
+    final public static Collection<JobType> all() {
+        return types.values();
+    }
+
+    /**
+       SQL expression for the timeout of a job, in seconds, given
+       the column holding its type, plus extra seconds
+    */
+    final public static String timeoutSQL(String typeColumn, int extraSeconds) {
+        String rv = "case "+typeColumn;
+        for (JobType t : types.values())
+            rv += " when "+t.id+" then "+(t.timeoutSeconds+extraSeconds);
+        rv += " else "+(JobDaemon.MAX_TIME_SECONDS+extraSeconds)+" end";
+        return rv;
+    }
+
+    static {
+        register(new JobType(1, "new PDB entry", 1, 1024, 100, 7200, 0, null, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    MakeNewRAF.makeRAF(targetID);
+                    MakePDBAuthor.findAuthors(targetID);
+                    MakePDBSource.findSources(targetID);
+                    MakePDBHeaders.findHeaders(targetID);
+                    MakePDBSeqadv.findSeqadv(targetID);
+                    MakePDBUniprot.findUniprot(targetID);
+                }
+            }));
+        register(new JobType(2, "resolution and R factor", 1, 512, 0, 3600, 0, null, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    double rv = CalcSPACI.getResolution(targetID);
+                    if (Double.isNaN(rv) && (nFailures < JobDaemon.MAX_FAIL - 1))
+                        throw new Exception("Invalid Resolution");
+                    rv = CalcSPACI.getRFactor(targetID);
+                    if (Double.isNaN(rv) && (nFailures < JobDaemon.MAX_FAIL - 1))
+                        throw new Exception("Invalid R Factor");
+                    LocalSQL.newJob(3, targetID, null);
+                }
+            }));
+        // WHAT_CHECK can run for up to 12 hrs
+        register(new JobType(3, "WHAT_CHECK", 1, 2048, 2000, 86400, 2, new String[] {"whatcheck"}, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    boolean rv = CalcSPACI.runWhatcheck(targetID);
+                    if (!rv && (nFailures < JobDaemon.MAX_FAIL - 1))
+                        throw new Exception("Invalid WC");
+                    LocalSQL.newJob(4, targetID, null);
+                }
+            }));
+        register(new JobType(4, "PROCHECK", 1, 1024, 1000, 21600, 2, new String[] {"procheck"}, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    boolean rv = CalcSPACI.runProcheck(targetID);
+                    if (!rv && (nFailures < JobDaemon.MAX_FAIL - 1))
+                        throw new Exception("Invalid PC");
+                    LocalSQL.newJob(5, targetID, null);
+                }
+            }));
+        register(new JobType(5, "SPACI", 1, 256, 0, 3600, 0, null, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    CalcSPACI.calcSPACI(targetID);
+                }
+            }));
+        register(new JobType(6, "chain sequences", 1, 512, 0, 3600, 0, null, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    MakeChainSeq.makeChainSeq(targetID);
+                }
+            }));
+        register(new JobType(7, "thumbnail", 1, 1024, 500, 7200, 0, new String[] {"gimp"}, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    MakeThumbnails.makeThumbnail(targetID,
+                                                 (nFailures > 0));
+                }
+            }));
+        register(new JobType(8, "copy rep thumbnails", 1, 256, 0, 3600, 0, null, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    MakeThumbnails.copyRepThumbnails(targetID,true);
+                }
+            }));
+        register(new JobType(11, "HMMER vs Pfam", 1, 2048, 100, 14400, 4, new String[] {"hmmer"}, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    HMMERSeqs.hmmerSeq(targetID,
+                                       StringUtil.atoi(arg[0]));
+                }
+            }));
+        register(new JobType(12, "HMMER vs ASTEROIDS", 1, 2048, 100, 14400, 4, new String[] {"hmmer"}, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    HMMERSeqs.hmmerSeq(targetID,
+                                       0 - StringUtil.atoi(arg[0]));
+                }
+            }));
+        register(new JobType(16, "ASTEROIDS", 1, 2048, 0, 21600, 0, null, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    int pfamReleaseID = StringUtil.atoi(arg[0]);
+                    int scopReleaseID = StringUtil.atoi(arg[1]);
+                    MakeASTEROIDS.makeASTEROIDS(targetID,
+                                                pfamReleaseID,
+                                                scopReleaseID);
+                }
+            }));
+        register(new JobType(17, "PDB-style file", 1, 512, 100, 3600, 0, null, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    MakePDBStyle.makePDBStyle(targetID);
+                }
+            }));
+        register(new JobType(18, "PDB-style file for ASTEROID", 1, 512, 100, 3600, 0, null, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    MakePDBStyle.makePDBStyleASTEROID(targetID);
+                }
+            }));
+        register(new JobType(19, "ASTEROID thumbnail", 1, 1024, 500, 7200, 0, new String[] {"gimp"}, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    MakeThumbnails.makeThumbnailASTEROID(targetID,
+                                                         (nFailures > 1));
+                }
+            }));
+        register(new JobType(20, "BLAST", 1, 2048, 100, 14400, 4, new String[] {"blast"}, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    BlastSeqs.blastSeq(targetID,
+                                       StringUtil.atoi(arg[0]),
+                                       StringUtil.atoi(arg[1]),
+                                       StringUtil.atoi(arg[2]),
+                                       StringUtil.atoi(arg[3]));
+                }
+            }));
+        register(new JobType(21, "promote ASTEROIDS", 1, 1024, 0, 7200, 0, null, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    PromoteASTEROIDS.processChain(targetID,
+                                                  StringUtil.atoi(arg[0]),
+                                                  StringUtil.atoi(arg[1]),
+                                                  StringUtil.atoi(arg[2]));
+                }
+            }));
+        register(new JobType(22, "CDD", 1, 2048, 100, 14400, 4, new String[] {"rpsblast"}, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    CDDSeqs.cddSeq(targetID,
+                                   StringUtil.atoi(arg[0]));
+                }
+            }));
+        register(new JobType(23, "chain thumbnail", 1, 1024, 500, 7200, 0, new String[] {"gimp"}, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    MakeThumbnailsChain.makeThumbnailChain(targetID,
+                                                           (nFailures > 1));
+                }
+            }));
+        // FATCAT may take 24 hrs
+        register(new JobType(24, "FATCAT", 1, 4096, 0, 172800, 2, null, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    FatcatPairs.runComparisons(targetID,
+                                               StringUtil.atoi(arg[0]));
+                }
+            }));
+        register(new JobType(25, "chain-domain FATCAT", 1, 4096, 0, 172800, 2, null, new Runner() {
+                public void run(int targetID, String[] arg, int nFailures) throws Exception {
+                    ChainDomainFatcatPairs.runComparisons(targetID,
+                                                          StringUtil.atoi(arg[0]));
+                }
+            }));
+    }
+}
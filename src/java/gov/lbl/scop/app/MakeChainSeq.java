@@ -150,20 +150,22 @@ public class MakeChainSeq {
     final public static void main(String argv[]) {
         try {
             LocalSQL.connectRW();
-            Statement stmt = LocalSQL.createStatement();
 
             BufferedReader infile = null;
 
             int scopReleaseID = LocalSQL.getLatestSCOPRelease(false);
             
-            ResultSet rs = stmt.executeQuery("select id from raf where last_release_id="+scopReleaseID+" and id not in (select raf_id from astral_chain where source_id=4)");
-            while (rs.next()) {
-                int rafID = rs.getInt(1);
-
-                if (rafID==0)
+            SQLCursor<Integer> c = SQLCursor.keyset("id",
+                                                    "raf",
+                                                    "last_release_id="+scopReleaseID+" and id not in (select raf_id from astral_chain where source_id=4)",
+                                                    "id",
+                                                    SQLCursor.INT);
+            Integer rafID;
+            while ((rafID = c.next()) != null) {
+                if (rafID.intValue()==0)
                     continue;
 
-                makeChainSeq(rafID);
+                makeChainSeq(rafID.intValue());
             }
         }
         catch (Exception e) {
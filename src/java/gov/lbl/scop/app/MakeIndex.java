@@ -31,6 +31,7 @@ import org.strbio.mol.*;
 import org.strbio.util.*;
 import org.strbio.IO;
 import gov.lbl.scop.local.LocalSQL;
+import gov.lbl.scop.local.SQLCursor;
 
 /**
    Generates full-text index to search SCOP.
@@ -181,15 +182,16 @@ public class MakeIndex {
     final public static void rebuildIndex() throws Exception {
         LocalSQL.connectRW();
         Statement stmt = LocalSQL.createStatement();
-        ResultSet rs;
         stmt.executeUpdate("truncate table scop_index");
         stmt.executeUpdate("alter table scop_index disable keys");
-        rs = stmt.executeQuery("select id from scop_node where level_id>1");
-        while (rs.next()) {
-            int nodeID = rs.getInt(1);
-            indexNode(nodeID);
-        }
-        rs.close();
+        SQLCursor<Integer> c = SQLCursor.keyset("id",
+                                                "scop_node",
+                                                "level_id>1",
+                                                "id",
+                                                SQLCursor.INT);
+        Integer nodeID;
+        while ((nodeID = c.next()) != null)
+            indexNode(nodeID.intValue());
         stmt.executeUpdate("alter table scop_index enable keys");
         stmt.close();
     }
@@ -32,6 +32,8 @@ import org.strbio.mol.*;
 import org.strbio.util.*;
 import org.strbio.IO;
 import gov.lbl.scop.local.*;
+import gov.lbl.scop.util.RAF;
+import gov.lbl.scop.util.PDBML2RAF;
 
 /**
    Add chains and make new RAF lines for all files that don't have one.
@@ -109,8 +111,13 @@ public class MakeNewRAF {
         System.out.println("making RAF for "+xml);
         System.out.flush();
 
+        // parse once, for both chains and RAF lines
+        PDBML2RAF p = null;
+        if (!XML2RAF.getMode().equals("perl"))
+            p = XML2RAF.parseJava(xml);
+
         // get all chains
-        HashMap<Character,String> chains = GetChains.getChains(xml);
+        HashMap<Character,String> chains = GetChains.getChains(xml, p);
         if (chains != null) {
             for (Character c : chains.keySet()) {
                 char chain = c.charValue();
@@ -126,7 +133,7 @@ public class MakeNewRAF {
         }
 
         // get all RAF lines
-        Vector<String> raf = XML2RAF.getRAF(xml);
+        Vector<String> raf = XML2RAF.getRAF(xml, p);
         if (raf != null) {
             for (String line : raf) {
                 char chain = line.charAt(4);
@@ -142,13 +149,7 @@ public class MakeNewRAF {
                     rs.next();
                     int poly = rs.getInt(1);
                     if (poly==1) {
-                        stmt.executeUpdate("insert into raf values (null, 3, "+
-                                           pdbChainID+", null, null, \""+
-                                           line+"\")",
-                                           Statement.RETURN_GENERATED_KEYS);
-                        rs = stmt.getGeneratedKeys();
-                        rs.next();
-                        int rafID = rs.getInt(1);
+                        int rafID = RAF.insertRAF(3, pdbChainID, 0, 0, line);
 
                         // make job to calculate chain sequence
                         LocalSQL.newJob(6,rafID,null,stmt);
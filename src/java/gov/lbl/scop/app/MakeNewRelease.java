@@ -46,9 +46,35 @@ import gov.lbl.scop.local.*;
    releases.
 */
 public class MakeNewRelease {
+    /**
+       do two RAF lines have the same body?  The current row of rs
+       has the id and body hash of each.  Compares hashes if both
+       have them, otherwise the bodies.
+    */
+    final public static boolean sameBody(ResultSet rs) throws SQLException {
+        int id1 = rs.getInt(1);
+        long hash1 = rs.getLong(2);
+        boolean hasHash1 = !rs.wasNull();
+        int id2 = rs.getInt(3);
+        long hash2 = rs.getLong(4);
+        boolean hasHash2 = !rs.wasNull();
+        if (hasHash1 && hasHash2)
+            return (hash1 == hash2);
+
+        Statement stmt = LocalSQL.createStatement();
+        ResultSet rs2 = stmt.executeQuery("select raf_get_body("+id1+"), raf_get_body("+id2+")");
+        rs2.next();
+        String raf1 = rs2.getString(1);
+        String raf2 = rs2.getString(2);
+        rs2.close();
+        stmt.close();
+        return raf1.equals(raf2);
+    }
+
     final public static void main(String argv[]) {
         try {
             LocalSQL.connectRW();
+            PDBIndex.setEnabled(true);
             Statement stmt = LocalSQL.createStatement();
             Statement stmt2 = LocalSQL.createStatement();
             ResultSet rs,rs2;
@@ -138,6 +164,7 @@ public class MakeNewRelease {
                                    newVersion+"\", 0, 0, \""+
                                    newFreeze+"\", now(), 2, null)");
             }
+            LocalSQL.invalidateCaches();
 	    
             // show all new/updated PDB files between freeze dates.
 
@@ -193,25 +220,21 @@ public class MakeNewRelease {
                 else {
                     changed = "RAF:same";
                     // first, see if raf changed from that used in last release
-                    rs2 = stmt2.executeQuery("select raf_get_body(r1.id), raf_get_body(r2.id) from raf r1, raf r2, pdb_chain c1, pdb_chain c2 where r1.pdb_chain_id=c1.id and r2.pdb_chain_id=c2.id and c1.chain=c2.chain and c1.pdb_release_id="+oldReleaseID+" and c2.pdb_release_id="+releaseID+" and r1.last_release_id="+oldID);
+                    rs2 = stmt2.executeQuery("select r1.id, r1.body_hash, r2.id, r2.body_hash from raf r1, raf r2, pdb_chain c1, pdb_chain c2 where r1.pdb_chain_id=c1.id and r2.pdb_chain_id=c2.id and c1.chain=c2.chain and c1.pdb_release_id="+oldReleaseID+" and c2.pdb_release_id="+releaseID+" and r1.last_release_id="+oldID);
                     int n = 0;
                     while (rs2.next()) {
                         n++;
-                        String raf1 = rs2.getString(1);
-                        String raf2 = rs2.getString(2);
-                        if (!raf1.equals(raf2))
+                        if (!sameBody(rs2))
                             changed = "RAF:different";
                     }
                     if ((n>0) && (n != oldChains))
                         changed += ":newch";
                     if (n==0) {
                         // if it wasn't used, then see if generated versions changed
-                        rs2 = stmt2.executeQuery("select raf_get_body(r1.id), raf_get_body(r2.id) from raf r1, raf r2, pdb_chain c1, pdb_chain c2 where r1.pdb_chain_id=c1.id and r2.pdb_chain_id=c2.id and c1.chain=c2.chain and c1.pdb_release_id="+oldReleaseID+" and c2.pdb_release_id="+releaseID+" and r1.last_release_id is null");
+                        rs2 = stmt2.executeQuery("select r1.id, r1.body_hash, r2.id, r2.body_hash from raf r1, raf r2, pdb_chain c1, pdb_chain c2 where r1.pdb_chain_id=c1.id and r2.pdb_chain_id=c2.id and c1.chain=c2.chain and c1.pdb_release_id="+oldReleaseID+" and c2.pdb_release_id="+releaseID+" and r1.last_release_id is null");
                         while (rs2.next()) {
                             n++;
-                            String raf1 = rs2.getString(1);
-                            String raf2 = rs2.getString(2);
-                            if (!raf1.equals(raf2))
+                            if (!sameBody(rs2))
                                 changed = "RAF:different";
                         }
                         if (n != oldChains)
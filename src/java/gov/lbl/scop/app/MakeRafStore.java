@@ -0,0 +1,57 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.app;
+
+import java.io.*;
+import gov.lbl.scop.local.LocalSQL;
+import gov.lbl.scop.util.RafStore;
+
+/**
+   Write the RafStore file for a SCOP release (given by version),
+   to the directory in the raf_store.dir property.  An optional
+   second argument gives the file to write instead.
+*/
+public class MakeRafStore {
+    final public static void main(String argv[]) {
+        try {
+            LocalSQL.connect();
+            int scopReleaseID = LocalSQL.lookupSCOPRelease(argv[0]);
+            if (scopReleaseID == 0)
+                throw new Exception("unknown release "+argv[0]);
+            File f;
+            if (argv.length > 1)
+                f = new File(argv[1]);
+            else
+                f = RafStore.getFile(scopReleaseID);
+            if (f == null)
+                throw new Exception("must set raf_store.dir property or give a file name");
+            long t1 = System.currentTimeMillis();
+            int n = RafStore.export(scopReleaseID, f);
+            long t2 = System.currentTimeMillis();
+            System.out.println("wrote "+n+" chains to "+f+" in "+(t2-t1)/1000+" s");
+        }
+        catch (Exception e) {
+            System.out.println("Exception: "+e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
@@ -55,28 +55,47 @@ public class MakeSubsets {
     final public static double[] makeLog10E = {-50.0, -25.0, -20.0, -15.0, -10.0, -5.0, -4.0, -3.0, -2.3, -2.0, -1.3, -1.0, -0.3, 0.0, 0.7, 1.0};
 
     /**
-       translate node ids to aerospaci scores.  null on error.
-       Some domains might not have aerospaci values (e.g., for
-       non-PDB nodes); these are left unmapped.
-       For backwards compatibility, rounds off scores to nearest
-       hundreth.
+       run a query returning (id, aerospaci) for each chunk of ids,
+       where the query contains "in (?)"; maps each id to the first
+       score returned for it, so the query should order by id and
+       then aerospaci id to keep the oldest score when an id has
+       several.  For backwards compatibility, rounds
+       off scores to nearest hundreth.
     */
-    final public static HashMap<Integer,Double> nodeIDToAerospaci(Collection<Integer> ids)
+    private static IntMap<Double> lookupAerospaci(String query,
+                                                  Collection<Integer> ids)
         throws Exception {
         Statement stmt = LocalSQL.createStatement();
-        HashMap<Integer,Double> rv = new HashMap<Integer,Double>();
-        for (Integer i : ids) {
-            ResultSet rs = stmt.executeQuery("select a.aerospaci from scop_node n, aerospaci a, link_pdb l, pdb_chain c, pdb_release r where n.id="+i+" and a.release_id=n.release_id and n.id=l.node_id and l.pdb_chain_id=c.id and c.pdb_release_id=r.id and r.pdb_entry_id=a.pdb_entry_id limit 1");
-            if (rs.next()) {
-                double score = rs.getDouble(1);
+        IntMap<Double> rv = new IntMap<Double>(ids.size());
+        for (String in : LocalSQL.makeInLists(ids, LocalSQL.IN_CHUNK_SIZE)) {
+            ResultSet rs = stmt.executeQuery(query.replace("in (?)", "in ("+in+")"));
+            while (rs.next()) {
+                int id = rs.getInt(1);
+                if (rv.containsKey(id))
+                    continue;
+                double score = rs.getDouble(2);
                 long iScore = Math.round(score*100.0);
-                rv.put(i, new Double((double)iScore / 100.0));
+                rv.put(id, new Double((double)iScore / 100.0));
             }
+            rs.close();
         }
         stmt.close();
         return rv;
     }
 
+    /**
+       translate node ids to aerospaci scores.  null on error.
+       Some domains might not have aerospaci values (e.g., for
+       non-PDB nodes); these are left unmapped.
+       For backwards compatibility, rounds off scores to nearest
+       hundreth.
+    */
+    final public static IntMap<Double> nodeIDToAerospaci(Collection<Integer> ids)
+        throws Exception {
+        return lookupAerospaci("select n.id, a.aerospaci from scop_node n, aerospaci a, link_pdb l, pdb_chain c, pdb_release r where n.id in (?) and a.release_id=n.release_id and n.id=l.node_id and l.pdb_chain_id=c.id and c.pdb_release_id=r.id and r.pdb_entry_id=a.pdb_entry_id order by n.id, a.id",
+                               ids);
+    }
+
     /**
        translate domain ids to aerospaci scores.  null on error.
        Some domains might not have aerospaci values (e.g., for
@@ -84,20 +103,10 @@ public class MakeSubsets {
        For backwards compatibility, rounds off scores to nearest
        hundreth.
     */
-    final public static HashMap<Integer,Double> domainIDToAerospaci(Collection<Integer> ids)
+    final public static IntMap<Double> domainIDToAerospaci(Collection<Integer> ids)
         throws Exception {
-        Statement stmt = LocalSQL.createStatement();
-        HashMap<Integer,Double> rv = new HashMap<Integer,Double>();
-        for (Integer i : ids) {
-            ResultSet rs = stmt.executeQuery("select a.aerospaci from astral_domain d, scop_node n, aerospaci a, link_pdb l, pdb_chain c, pdb_release r where d.id="+i+" and d.node_id=n.id and a.release_id=n.release_id and n.id=l.node_id and l.pdb_chain_id=c.id and c.pdb_release_id=r.id and r.pdb_entry_id=a.pdb_entry_id limit 1");
-            if (rs.next()) {
-                double score = rs.getDouble(1);
-                long iScore = Math.round(score*100.0);
-                rv.put(i, new Double((double)iScore / 100.0));
-            }
-        }
-        stmt.close();
-        return rv;
+        return lookupAerospaci("select d.id, a.aerospaci from astral_domain d, scop_node n, aerospaci a, link_pdb l, pdb_chain c, pdb_release r where d.id in (?) and d.node_id=n.id and a.release_id=n.release_id and n.id=l.node_id and l.pdb_chain_id=c.id and c.pdb_release_id=r.id and r.pdb_entry_id=a.pdb_entry_id order by d.id, a.id",
+                               ids);
     }
 
     /**
@@ -107,26 +116,19 @@ public class MakeSubsets {
        For backwards compatibility, rounds off scores to nearest
        hundreth.
     */
-    final public static HashMap<Integer,Double> astralChainIDToAerospaci(Collection<Integer> ids, int scopReleaseID)
+    final public static IntMap<Double> astralChainIDToAerospaci(Collection<Integer> ids, int scopReleaseID)
         throws Exception {
-        Statement stmt = LocalSQL.createStatement();
-        HashMap<Integer,Double> rv = new HashMap<Integer,Double>();
-        for (Integer i : ids) {
-            ResultSet rs = stmt.executeQuery("select a.aerospaci from astral_chain ac, raf r, aerospaci a, pdb_chain c, pdb_release pr where ac.id="+i+" and ac.raf_id=r.id and a.release_id>=r.first_release_id and a.release_id<=r.last_release_id and r.pdb_chain_id=c.id and c.pdb_release_id=pr.id and pr.pdb_entry_id=a.pdb_entry_id and a.release_id="+scopReleaseID+" limit 1");
-            if (rs.next()) {
-                double score = rs.getDouble(1);
-                long iScore = Math.round(score*100.0);
-                rv.put(i, new Double((double)iScore / 100.0));
-            }
-        }
-        stmt.close();
-        return rv;
+        return lookupAerospaci("select ac.id, a.aerospaci from astral_chain ac, raf r, aerospaci a, pdb_chain c, pdb_release pr where ac.id in (?) and ac.raf_id=r.id and a.release_id>=r.first_release_id and a.release_id<=r.last_release_id and r.pdb_chain_id=c.id and c.pdb_release_id=pr.id and pr.pdb_entry_id=a.pdb_entry_id and a.release_id="+scopReleaseID+" order by ac.id, a.id",
+                               ids);
     }
 
     /**
        returns all descendents of a node, at a given level
     */
     final public static Vector<Integer> descendentsOf(int nodeID, int levelID) throws Exception {
+        ScopTree tree = ScopTree.forNode(nodeID);
+        if (tree != null)
+            return tree.findChildren(nodeID, levelID);
         Statement stmt = LocalSQL.createStatement();
         Vector<Integer> rv = new Vector<Integer>();
         ResultSet rs = stmt.executeQuery("select id, level_id from scop_node where parent_node_id="+nodeID+" order by id");
@@ -443,10 +445,10 @@ public class MakeSubsets {
     */
     public static Vector<SPACI.SPACINode>
         getSortedNodes(Vector<Integer> nodeIDs) throws Exception {
-        HashMap<Integer,String> allSids = ASTRAL.nodeIDToSid(nodeIDs);
+        IntMap<String> allSids = ASTRAL.nodeIDToSid(nodeIDs);
         if (allSids==null)
             throw new Exception("error getting sids");
-        HashMap<Integer,Double> allScores = nodeIDToAerospaci(nodeIDs);
+        IntMap<Double> allScores = nodeIDToAerospaci(nodeIDs);
         if (allScores==null)
             throw new Exception("error getting aerospacis");
         Vector<SPACI.SPACINode> nodes = SPACI.sortByScores(nodeIDs, allSids, allScores);
@@ -480,10 +482,10 @@ public class MakeSubsets {
     */
     public static Vector<SPACI.SPACINode>
         getSortedDomains(Vector<Integer> nodeIDs) throws Exception {
-        HashMap<Integer,String> allSids = ASTRAL.domainIDToSid(nodeIDs);
+        IntMap<String> allSids = ASTRAL.domainIDToSid(nodeIDs);
         if (allSids==null)
             throw new Exception("error getting sids");
-        HashMap<Integer,Double> allScores = domainIDToAerospaci(nodeIDs);
+        IntMap<Double> allScores = domainIDToAerospaci(nodeIDs);
         if (allScores==null)
             throw new Exception("error getting aerospacis");
         Vector<SPACI.SPACINode> nodes = SPACI.sortByScores(nodeIDs, allSids, allScores);
@@ -497,10 +499,10 @@ public class MakeSubsets {
     public static Vector<SPACI.SPACINode>
         getSortedChains(Vector<Integer> nodeIDs,
                         int scopReleaseID) throws Exception {
-        HashMap<Integer,String> allSids = ASTRAL.astralChainIDToSid(nodeIDs);
+        IntMap<String> allSids = ASTRAL.astralChainIDToSid(nodeIDs);
         if (allSids==null)
             throw new Exception("error getting sids");
-        HashMap<Integer,Double> allScores = astralChainIDToAerospaci(nodeIDs,scopReleaseID);
+        IntMap<Double> allScores = astralChainIDToAerospaci(nodeIDs,scopReleaseID);
         if (allScores==null)
             throw new Exception("error getting aerospacis");
         Vector<SPACI.SPACINode> nodes = SPACI.sortByScores(nodeIDs, allSids, allScores);
@@ -625,6 +627,7 @@ public class MakeSubsets {
     final public static void main(String argv[]) {
         try {
             LocalSQL.connectRW();
+            ScopTree.setEnabled(true);
             Statement stmt = LocalSQL.createStatement();
             Statement stmt2 = LocalSQL.createStatement();
 
@@ -9,6 +9,7 @@ import org.strbio.math.*;
 import org.strbio.mol.*;
 import org.strbio.util.*;
 import org.strbio.IO;
+import gov.lbl.scop.local.DimensionCache;
 import gov.lbl.scop.local.LocalSQL;
 
 /**
@@ -119,16 +120,13 @@ public class ParsePDB {
     }
 
     final public static int lookupOrCreateMethod(String method) throws Exception {
-        Statement stmt = LocalSQL.createStatement();
-        method = StringUtil.replace(method,"\"","\\\"");
-
-        ResultSet rs = stmt.executeQuery("select id from pdb_method where description=\""+method+"\"");
-        if (rs.next()) {
-            int i = rs.getInt(1);
-            stmt.close();
-            return i;
-        }
+        int methodID = DimensionCache.getMethodID(method);
+        if (methodID > 0)
+            return methodID;
         else {
+            Statement stmt = LocalSQL.createStatement();
+            ResultSet rs;
+            method = StringUtil.replace(method,"\"","\\\"");
             int isXray = 0;
             int isTheory = 0;
             String summary = StringUtil.replace(method," ","");
@@ -235,7 +233,9 @@ public class ParsePDB {
             rs = stmt.getGeneratedKeys();
             rs.next();
             i = rs.getInt(1);
+            rs.close();
             stmt.close();
+            DimensionCache.invalidate(DimensionCache.PDB_METHODS);
             return i;
         }
     }
@@ -34,7 +34,9 @@ import org.strbio.IO;
 import org.xml.sax.*;
 import org.xml.sax.helpers.*;
 import javax.xml.parsers.*;
+import gov.lbl.scop.local.DimensionCache;
 import gov.lbl.scop.local.LocalSQL;
+import gov.lbl.scop.local.PDBIndex;
 
 /**
    Import all data for PDB entries in a directory, or "removed" file,
@@ -306,13 +308,8 @@ public class ParsePDBXML {
             rs.next();
             correctID = rs.getInt(1);
             rs.close();
-            method = StringUtil.replace(method,"\"","\\\"");
-            int methodID = 0;
-            rs = stmt.executeQuery("select id from pdb_method where description=\""+method+"\"");
-            if (rs.next())
-                methodID = rs.getInt(1);
-            rs.close();
             stmt.close();
+            int methodID = DimensionCache.getMethodID(method);
             if (methodID != correctID)
                 System.out.println("Error - checkMethod "+curEntryID+" "+curReleaseID+" "+methodID+" "+correctID+" "+method);
         }
@@ -407,6 +404,7 @@ public class ParsePDBXML {
     final public static void main(String argv[]) {
         try {
             LocalSQL.connectRW();
+            PDBIndex.setEnabled(true);
             Statement stmt = LocalSQL.createStatement();
             ResultSet rs;
 
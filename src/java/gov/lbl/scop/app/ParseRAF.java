@@ -31,6 +31,8 @@ import org.strbio.mol.*;
 import org.strbio.util.*;
 import org.strbio.IO;
 import gov.lbl.scop.local.LocalSQL;
+import gov.lbl.scop.local.PDBIndex;
+import gov.lbl.scop.util.RAF;
 
 /**
    Import old RAF files, after running ParsePDB
@@ -70,6 +72,7 @@ public class ParseRAF {
     final public static void main(String argv[]) {
         try {
             LocalSQL.connectRW();
+            PDBIndex.setEnabled(true);
             Statement stmt = LocalSQL.createStatement();
             ResultSet rs;
 
@@ -136,11 +139,15 @@ public class ParseRAF {
 
                     int pdbChainID = lookupOrCreateChain(releaseID,chainCode);
 
-                    String line = StringUtil.replace(buffer,"\"","\\\"");
-
-                    // find old raf, if it exists
+                    // find old raf, if it exists; the hash narrows
+                    // the search to (almost always) the one matching
+                    // line, via the index on pdb_chain_id and line_hash
                     boolean oldFound = false;
-                    rs = stmt.executeQuery("select id, first_release_id, last_release_id from raf where pdb_chain_id="+pdbChainID+" and line=\""+line+"\"");
+                    PreparedStatement findRAF = LocalSQL.prepareCached("select id, first_release_id, last_release_id from raf where pdb_chain_id=? and (line_hash=? or line_hash is null) and line=?");
+                    findRAF.setInt(1, pdbChainID);
+                    findRAF.setLong(2, RAF.hash(buffer));
+                    findRAF.setString(3, buffer);
+                    rs = findRAF.executeQuery();
                     while (rs.next()) {
                         int rafID = rs.getInt(1);
                         int firstRelease = rs.getInt(2);
@@ -156,14 +163,14 @@ public class ParseRAF {
                             // System.out.println("using prior RAF for "+pdbCode+chainCode);
                         }
                     }
+                    rs.close();
                     if (!oldFound) {
                         // System.out.println("new RAF for "+pdbCode+chainCode);
-                        stmt.executeUpdate("insert into raf values (null,"+
-                                           rafVersionID+", "+
-                                           pdbChainID+", "+
-                                           scopReleaseID+", "+
-                                           scopReleaseID+", \""+
-                                           line+"\")");
+                        RAF.insertRAF(rafVersionID,
+                                      pdbChainID,
+                                      scopReleaseID,
+                                      scopReleaseID,
+                                      buffer);
                     }
                 }
                 buffer = infile.readLine();
@@ -37,24 +37,31 @@ import gov.lbl.scop.local.*;
 /**
    Monitor the job queue, and start JobDaemons if there are jobs
    to be run.  Delete crashed jobs.
+   <p>
+   How many daemons to start is worked out each poll from the
+   queued jobs and the hosts' live load and free memory: each host
+   gets as many more daemons as its idle CPUs and free memory can
+   hold, given the average CPUs and memory needed by the queued
+   jobs (from JobType), up to queue_daemon.max_per_host (default:
+   one per CPU).  No more are started than are needed for the
+   queued jobs, and the total is kept between
+   queue_daemon.min_daemons and queue_daemon.max_daemons while
+   there are jobs.  Daemons waiting for a host are cancelled when
+   no longer needed; running daemons quit by themselves when the
+   queue is empty.  The number of jobs each daemon runs at once
+   comes from job_daemon.slots, as in JobDaemon.
+   <p>
+   Daemons are started by a JobLauncher, chosen by
+   queue_daemon.launcher in scop.properties: "gridengine" (the
+   default), "local" to run them as processes on this host, or the
+   name of a class implementing JobLauncher.
 */
 public class QueueDaemon {
     /**
-       How many jobs to run on each host?
+       most daemons to run at once, unless set by
+       queue_daemon.max_daemons
     */
-    final public static HashMap<String,Integer> HOST_JOBS = new HashMap<String,Integer>() {
-        {
-            put("new-porter.jmcnet",new Integer(16));
-            put("new-stout.jmcnet",new Integer(16));
-            put("porter.jmcnet",new Integer(16));
-            put("stout.jmcnet",new Integer(16));
-            put("new-mead.jmcnet",new Integer(16));
-            put("node1.jmcnet",new Integer(16));
-            put("node2.jmcnet",new Integer(16));
-            put("node3.jmcnet",new Integer(16));
-            put("node6.jmcnet",new Integer(16));
-        }
-    };
+    final public static int MAX_DAEMONS = 144;
 
     /**
        How often to poll for hung jobs and start new daemons?
@@ -67,36 +74,89 @@ public class QueueDaemon {
     */
     final public static int CLEANUP_INTERVAL = 2880;
 
+    /**
+       integer from scop.properties, or a default if not set
+    */
+    final public static int getIntProperty(String key, int def) {
+        String s = SCOP.getProperty(key);
+        if (s == null)
+            return def;
+        return StringUtil.atoi(s.trim());
+    }
+
+    /**
+       launcher chosen in scop.properties
+    */
+    final public static JobLauncher getLauncher() throws Exception {
+        String s = SCOP.getProperty("queue_daemon.launcher");
+        if ((s == null) || (s.equals("gridengine")))
+            return new GridEngineLauncher();
+        if (s.equals("local"))
+            return new LocalLauncher();
+        return (JobLauncher)Class.forName(s).newInstance();
+    }
+
+    /**
+       How many more daemons can a host take?  Each daemon runs
+       daemonSlots jobs, each needing cpus CPUs and memoryMB of
+       memory.
+    */
+    final public static int getRoom(JobLauncher.Host h,
+                                    int daemonSlots,
+                                    double cpus,
+                                    double memoryMB,
+                                    int maxPerHost) {
+        int max = maxPerHost;
+        if (max < 1)
+            max = h.cpus / daemonSlots;
+        int rv = max - h.nDaemons;
+
+        // if load is unknown, assume our daemons are busy
+        double freeCPUs = h.cpus - h.load;
+        if (h.load < 0.0)
+            freeCPUs = h.cpus - h.nDaemons * daemonSlots * cpus;
+        int n = (int)Math.floor(freeCPUs / (cpus * daemonSlots));
+        if (n < rv)
+            rv = n;
+
+        if ((h.freeMemoryMB >= 0) && (memoryMB > 0.0)) {
+            n = (int)Math.floor(h.freeMemoryMB / (memoryMB * daemonSlots));
+            if (n < rv)
+                rv = n;
+        }
+        if (rv < 0)
+            rv = 0;
+        return rv;
+    }
+
     final public static void main(String argv[]) {
         try {
             LocalSQL.connectRW();
             Object timer = new Object();
             Statement stmt = LocalSQL.createStatement();
             PreparedStatement countJobs = LocalSQL.prepareStatement("select count(*) from job");
+            PreparedStatement countQueued = LocalSQL.prepareStatement("select job_type_id, count(*) from job where running is null group by job_type_id");
 
-            // the JobDaemon is supposed to kill jobs after
-            // MAX_TIME_SECONDS; this will free up the job to
+            // the JobDaemon is supposed to kill jobs after the
+            // timeout for their type; this will free up the job to
             // run elsewhere if the JobDaemon itself is hung
-            PreparedStatement restartCrashed = LocalSQL.prepareStatement("update job set running = null, time_started = null where time_started < date_sub(now(), interval "+(JobDaemon.MAX_TIME_SECONDS + 2*POLL_SECONDS)+" second)");
+            PreparedStatement restartCrashed = LocalSQL.prepareStatement("update job set running = null, time_started = null where time_started < date_sub(now(), interval ("+JobType.timeoutSQL("job_type_id", 2*POLL_SECONDS)+") second)");
 
-            // kill jobs that are marked as done
+            // kill jobs that are marked as done.  JobDaemons move
+            // finished jobs in one transaction, so this only finds
+            // anything left over from before they did.
             PreparedStatement deleteDone = LocalSQL.prepareStatement("delete j from job j join job_done jd on j.id=jd.id");
             PreparedStatement deleteDone2 = LocalSQL.prepareStatement("delete jd from job_done jd join job j on j.id=jd.id");
-            PreparedStatement lock = LocalSQL.prepareStatement("lock table job write, job_done write, job as j write, job_done as jd write");;
-            PreparedStatement unlock = LocalSQL.prepareStatement("unlock tables");
-	    
-            lock.executeUpdate();
+
             deleteDone.executeUpdate();
             deleteDone2.executeUpdate();
-            unlock.executeUpdate();
-	    
-            // count up total jobs we can run
-            int MAX_JOBS = 0;
-            for (Integer nJobs : HOST_JOBS.values()) {
-                MAX_JOBS += nJobs.intValue();
-            }
+
+            JobLauncher launcher = getLauncher();
+            int minDaemons = getIntProperty("queue_daemon.min_daemons", 0);
+            int maxDaemons = getIntProperty("queue_daemon.max_daemons", MAX_DAEMONS);
+            int maxPerHost = getIntProperty("queue_daemon.max_per_host", 0);
             System.out.println(new java.util.Date().toString());
-            System.out.println("Want to run "+MAX_JOBS);
+            System.out.println("Want to run "+minDaemons+" to "+maxDaemons+" daemons");
 
             // let admins know daemon was restarted
             stmt.executeUpdate("insert into notify_message_queue (template_id, user_id) values (4,1)");
@@ -108,8 +168,7 @@ public class QueueDaemon {
                 ResultSet rs = countJobs.executeQuery();
                 rs.next();
                 int nTasks = rs.getInt(1);
-                int nJobsWanted = nTasks;
-                if (nJobsWanted > MAX_JOBS) nJobsWanted = MAX_JOBS;
+                rs.close();
                 if (nTasks != lastNTasks) {
                     if (nTasks == 0) {
                         stmt.executeUpdate("insert into notify_message_queue (template_id, user_id) values (2,1)");
@@ -122,51 +181,80 @@ public class QueueDaemon {
                 }
                 lastNTasks = nTasks;
 
-                // check jobs that are running
-                Vector<GridEngine.JobStatus> jobs =
-                    GridEngine.getJobs();
-                int nScopJobs = 0;
-                int realMaxJobs = 0;  // because some machines may not be accepting jobs
-                ArrayList<String> hostsRunningJobs = new ArrayList<String>();
-                boolean scopJobWaiting = false;
-                for (GridEngine.JobStatus j : jobs) {
-                    // System.out.println("job name '"+j.name+"'");
-                    if (j.name.equals("scop_job_daemon.sh")) {
-                        nScopJobs++;
-                        if (j.state.equals("qw"))
-                            scopJobWaiting = true;
-                    }
-                    if (j.state.equals("r")) {
-                        int pos = j.queue.indexOf('@');
-                        if (pos > -1) {
-                            String machine = j.queue.substring(pos+1);
-                            if ((HOST_JOBS.keySet().contains(machine)) &&
-                                (!hostsRunningJobs.contains(machine)))
-                                hostsRunningJobs.add(machine);
-                        }
-                    }
+                // average resources needed by queued jobs
+                int nQueued = 0;
+                double cpus = 0.0;
+                double memoryMB = 0.0;
+                rs = countQueued.executeQuery();
+                while (rs.next()) {
+                    int n = rs.getInt(2);
+                    JobType t = JobType.get(rs.getInt(1));
+                    nQueued += n;
+                    cpus += n * (t == null ? 1 : t.cpus);
+                    memoryMB += n * (t == null ? 0 : t.memoryMB);
+                }
+                rs.close();
+                if (nQueued > 0) {
+                    cpus /= nQueued;
+                    memoryMB /= nQueued;
+                }
+
+                // check daemons that are running, and room for more
+                launcher.update();
+                Vector<JobLauncher.Host> hosts = launcher.getHosts();
+                int nWaiting = launcher.getWaiting();
+                int nDaemons = nWaiting;
+                int room = 0;
+                int totalSlots = 0;
+                for (JobLauncher.Host h : hosts) {
+                    int slots = JobDaemon.getSlots(h.cpus);
+                    totalSlots += slots;
+                    nDaemons += h.nDaemons;
+                    if (nQueued > 0)
+                        room += getRoom(h, slots, cpus, memoryMB, maxPerHost);
                 }
-                for (String host : hostsRunningJobs)
-                    realMaxJobs += HOST_JOBS.get(host).intValue();
-                if ((nJobsWanted > realMaxJobs) && (scopJobWaiting))
-                    nJobsWanted = realMaxJobs;
+
+                // slots per daemon, averaged over the hosts
+                int daemonSlots = JobDaemon.getSlots();
+                if (hosts.size() > 0)
+                    daemonSlots = Math.max(totalSlots / hosts.size(), 1);
 
                 System.out.println(new java.util.Date().toString());
-                System.out.println("SCOP jobs in queue "+nScopJobs);
+                System.out.println("SCOP daemons running "+(nDaemons-nWaiting)+", waiting "+nWaiting+", room for "+room);
 
-                // start new jobs if required
-                int jobsToStart = nJobsWanted - nScopJobs;
-                for (int i=0; i<jobsToStart; i++) {
-                    GridEngine.submit("/lab/proj/astral/bin/scop_job_daemon.sh");
+                // start enough new daemons for the queued jobs, if
+                // hosts have room; daemons still waiting for a
+                // host will take some of them
+                int needed = (nQueued + daemonSlots - 1) / daemonSlots;
+                int jobsToStart = needed - nWaiting;
+                if (jobsToStart > room)
+                    jobsToStart = room;
+                if (nDaemons + jobsToStart > maxDaemons)
+                    jobsToStart = maxDaemons - nDaemons;
+                if ((nQueued > 0) && (nDaemons + jobsToStart < minDaemons))
+                    jobsToStart = minDaemons - nDaemons;
+                if (jobsToStart > 0) {
+                    launcher.launch(jobsToStart);
                     System.out.println(new java.util.Date().toString());
-                    System.out.println("Started new job");
+                    System.out.println("Started "+jobsToStart+" new daemons");
+                }
+
+                // cancel daemons waiting for a host that aren't
+                // needed any more
+                int jobsToCancel = nWaiting - needed;
+                if (nDaemons - maxDaemons > jobsToCancel)
+                    jobsToCancel = nDaemons - maxDaemons;
+                if (jobsToCancel > 0) {
+                    int n = launcher.cancelWaiting(jobsToCancel);
+                    if (n > 0) {
+                        System.out.println(new java.util.Date().toString());
+                        System.out.println("Cancelled "+n+" waiting daemons");
+                    }
                 }
 
                 // restart hung tasks
                 try {
-                    lock.executeUpdate();
                     restartCrashed.executeUpdate();
-                    unlock.executeUpdate();
                 }
                 catch (Exception e2) {
                     System.out.println("Hangcheck failed");
@@ -175,33 +263,13 @@ public class QueueDaemon {
                 // cleanup if required
                 if (cleanup++ >= CLEANUP_INTERVAL) {
                     // delete finished jobs
-                    lock.executeUpdate();
                     deleteDone.executeUpdate();
-                    unlock.executeUpdate();
 		    
                     System.out.println(new java.util.Date().toString());
                     System.out.println("Cleanup");
 		    
-                    // delete old cleanup jobs that haven't run yet
-                    for (GridEngine.JobStatus j : jobs) {
-                        if (j.name.equals("cleanup_host.sh"))
-                            j.delete();
-                    }
+                    launcher.cleanup();
 
-                    // submit new jobs
-                    String[] parms = new String[8];
-                    parms[0] = "-l";
-                    parms[2] = "-pe";
-                    parms[3] = "serial";
-                    parms[5] = "-p";
-                    parms[6] = "16";
-                    parms[7] = "/lab/proj/astral/bin/cleanup_host.sh";
-                    for (String host : HOST_JOBS.keySet()) {
-                        parms[1] = "hostname="+host;
-                        parms[4] = HOST_JOBS.get(host).toString();
-                        GridEngine.submit(parms);
-                    }
-		    
                     cleanup = 0;  // reset timer
                 }
 
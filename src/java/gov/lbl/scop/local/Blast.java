@@ -37,6 +37,7 @@ import org.strbio.local.*;
    that you have a ~/.ncbirc.
    <p>
    <pre>
+   Version 3.1, 10/17/26 - saves hits with BulkWriter
    Version 3.0, 4/16/12 - updated to use new table format
    Version 2.0, 9/23/11 - updated to save gaps, if requested
    Version 1.5, 7/7/11 - fixed to be bug-compatible with Sasum; see 6/15/10 nb
@@ -47,7 +48,7 @@ import org.strbio.local.*;
    Version 1.1, 5/27/10 - updated to only save first hit per query/subject pair
    Version 1.0, 11/26/08 - based on org.strbio.local.BlastP 2.2
    </pre>
-   @version 3.0, 4/16/12
+   @version 3.1, 10/17/26
    @author JMC
 */
 public class Blast extends Program {
@@ -77,7 +78,9 @@ public class Blast extends Program {
     final public void process(File outFile) throws IOException {
         OutputStream os = new GZIPOutputStream(new FileOutputStream(outFile.getPath()));
         setOutput(os);
+        long t = JobMetrics.startTool();
         run(inputs, null, baseDir);
+        JobMetrics.endTool(t);
 
         os.flush();
         os.close();
@@ -180,7 +183,11 @@ public class Blast extends Program {
     /**
        Process BLAST output on a sequence ID; stores all results
        in given table.  Does not close stmt.  Saves gaps of at
-       least minGapLength (0 = don't save)
+       least minGapLength (0 = don't save).  Hits are buffered
+       and written in bulk once all output has been read, so
+       nothing is saved if the output can't be parsed; a db error
+       while writing can leave some batches saved unless the
+       caller is in a transaction.
     */
     final public void processOutput(Statement stmt,
                                     File outFile,
@@ -191,6 +198,38 @@ public class Blast extends Program {
                                     int styleID2,
                                     int scopReleaseID,
                                     int minGapLength) throws Exception {
+        BulkWriter hits = new BulkWriter("astral_seq_blast", 13);
+        hits.setAutoFlush(false);
+        BulkWriter gaps = null;
+        if (minGapLength > 0)
+            gaps = hits.newChild("astral_seq_blast_gap", 4, 1);
+
+        readOutput(hits,
+                   gaps,
+                   outFile,
+                   seqAlnFile,
+                   seqID1,
+                   sourceID,
+                   styleID1,
+                   styleID2,
+                   scopReleaseID,
+                   minGapLength);
+        hits.flush();
+    }
+
+    /**
+       Read BLAST output, adding hits and gaps to the writers
+    */
+    private void readOutput(BulkWriter hits,
+                            BulkWriter gaps,
+                            File outFile,
+                            File seqAlnFile,
+                            int seqID1,
+                            int sourceID,
+                            int styleID1,
+                            int styleID2,
+                            int scopReleaseID,
+                            int minGapLength) throws Exception {
 
         // read in the output
         if (!outFile.canRead())
@@ -456,26 +495,21 @@ public class Blast extends Program {
                     (length1 > 0) &&
                     (length2 > 0)) {
 
-                    stmt.executeUpdate("insert into astral_seq_blast values (NULL, "+
-                                       seqID1+", "+
-                                       seqID2+", "+
-                                       sourceID+", "+
-                                       styleID1+", "+
-                                       styleID2+", "+
-                                       (scopReleaseID==0 ? "null" : scopReleaseID)+", "+
-                                       log10E+", "+
-                                       pctID+", "+
-                                       start1+", "+
-                                       length1+", "+
-                                       start2+", "+
-                                       length2+")",
-                                       Statement.RETURN_GENERATED_KEYS);
+                    int hitRow = hits.add(null,
+                                          new Integer(seqID1),
+                                          new Integer(seqID2),
+                                          new Integer(sourceID),
+                                          new Integer(styleID1),
+                                          new Integer(styleID2),
+                                          (scopReleaseID==0 ? null : new Integer(scopReleaseID)),
+                                          new Double(log10E),
+                                          new Double(pctID),
+                                          new Integer(start1),
+                                          new Integer(length1),
+                                          new Integer(start2),
+                                          new Integer(length2));
 
                     if (minGapLength > 0) {
-                        ResultSet rs = stmt.getGeneratedKeys();
-                        rs.next();
-                        int hitID = rs.getInt(1);
-                        rs.close();
 
                         // check both records to be sure length matches
                         int length1b = allQuery.length();
@@ -507,10 +541,11 @@ public class Blast extends Program {
                             }
                             else {
                                 if (gapLength >= minGapLength) {
-                                    stmt.executeUpdate("insert into astral_seq_blast_gap values (NULL, "+
-                                                       hitID+", "+
-                                                       gapStart+", "+
-                                                       gapLength+")");
+                                    gaps.addChild(hitRow,
+                                                  null,
+                                                  null,
+                                                  new Integer(gapStart),
+                                                  new Integer(gapLength));
                                 }
                                 gapLength = 0;
                             }
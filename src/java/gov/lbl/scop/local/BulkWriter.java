@@ -0,0 +1,576 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.local;
+
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+
+/**
+   Buffers rows for one table and writes them in bulk, either as
+   multi-row inserts or through LOAD DATA LOCAL INFILE.  The first
+   column of the table must be an auto_increment id named "id",
+   as in all our tables; pass null for it to have one assigned.
+   <p>
+   A child table (e.g., gaps for a table of hits) can be attached
+   to a parent writer; child rows refer to parent rows by the row
+   number returned from add(), and the real parent id is filled in
+   when the parent has been written.  Ids for parent rows are
+   reserved a batch at a time in the id_reservation table (see
+   addTables()) and written explicitly (always with inserts), so
+   no key fetch is needed per row and the ids don't depend on
+   innodb_autoinc_lock_mode.  Ids are reserved on a connection
+   kept open for that purpose, outside the pools, so reserving
+   never waits for a pooled connection or holds a lock until the
+   writer's transaction ends.
+   <p>
+   Rows are written on the current thread's connection, and are
+   only guaranteed to be written after flush(), which must be
+   called before committing.  By default, rows are written
+   whenever a batch fills; after setAutoFlush(false), nothing is
+   written until flush().  A db error during flush() can still
+   leave some batches written unless the caller is in a
+   transaction.  Like the connection, a writer must only be used
+   by one thread.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class BulkWriter {
+    /**
+       write rows with multi-row insert statements
+    */
+    final public static int MODE_INSERT = 0;
+
+    /**
+       write rows through a temp file and LOAD DATA LOCAL INFILE;
+       the db URLs must set allowLoadLocalInfile=true
+    */
+    final public static int MODE_LOAD_DATA = 1;
+
+    /**
+       default number of rows written per statement
+    */
+    final public static int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+       number of times to reserve new ids for a batch, if another
+       writer took some of them with auto_increment first
+    */
+    final public static int MAX_ID_RETRIES = 3;
+
+    /**
+       most placeholders MySQL allows in one prepared statement
+    */
+    final public static int MAX_PLACEHOLDERS = 65535;
+
+    /**
+       connection used only to reserve ids, for each pool
+    */
+    private static HashMap<ConnectionPool,Connection> reserveCons = new HashMap<ConnectionPool,Connection>();
+
+    /**
+       table rows are written to
+    */
+    private String tableName;
+
+    /**
+       number of columns in each row, including id
+    */
+    private int nColumns;
+
+    private int mode;
+    private int batchSize;
+
+    /**
+       write rows whenever a batch fills, rather than only on
+       flush()?
+    */
+    private boolean autoFlush = true;
+
+    /**
+       rows not yet written
+    */
+    private ArrayList<Object[]> rows = new ArrayList<Object[]>();
+
+    /**
+       for child rows, row number of the parent of each pending row
+    */
+    private ArrayList<Integer> parentRows = null;
+
+    /**
+       number of rows added before the pending ones
+    */
+    private int nWritten = 0;
+
+    /**
+       id of each row written so far, by row number - 1.  Only
+       kept for writers with children.
+    */
+    private int[] ids = null;
+
+    /**
+       parent writer, and column in this table holding parent id
+    */
+    private BulkWriter parent = null;
+    private int parentColumn = -1;
+
+    /**
+       child writers, flushed after this one
+    */
+    private Vector<BulkWriter> children = new Vector<BulkWriter>();
+
+    // statistics
+    private long nRows = 0;
+    private long nStatements = 0;
+
+    /**
+       make a writer using the mode and batch size in
+       scop.properties (db.bulk_mode=insert or load, and
+       db.bulk_batch_size)
+    */
+    public BulkWriter(String tableName,
+                      int nColumns) {
+        this(tableName,
+             nColumns,
+             ("load".equals(SCOP.getProperty("db.bulk_mode")) ?
+              MODE_LOAD_DATA : MODE_INSERT),
+             getBatchSizeProperty());
+    }
+
+    public BulkWriter(String tableName,
+                      int nColumns,
+                      int mode,
+                      int batchSize) {
+        this.tableName = tableName;
+        this.nColumns = nColumns;
+        this.mode = mode;
+        if (batchSize > MAX_PLACEHOLDERS / nColumns)
+            batchSize = MAX_PLACEHOLDERS / nColumns;
+        if (batchSize < 1)
+            batchSize = 1;
+        this.batchSize = batchSize;
+    }
+
+    private static int getBatchSizeProperty() {
+        String value = SCOP.getProperty("db.bulk_batch_size");
+        if (value == null)
+            return DEFAULT_BATCH_SIZE;
+        try {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException e) {
+            return DEFAULT_BATCH_SIZE;
+        }
+    }
+
+    /**
+       attach a writer for a child table, whose column
+       parentColumn holds the id of a row in this table.
+    */
+    final public BulkWriter newChild(String childTableName,
+                                     int childColumns,
+                                     int parentColumn) {
+        BulkWriter rv = new BulkWriter(childTableName,
+                                       childColumns,
+                                       mode,
+                                       batchSize);
+        rv.parent = this;
+        rv.parentColumn = parentColumn;
+        rv.parentRows = new ArrayList<Integer>();
+        rv.autoFlush = autoFlush;
+        children.add(rv);
+        if (ids == null)
+            ids = new int[batchSize];
+        return rv;
+    }
+
+    /**
+       if false, buffer all rows (in this table and any children)
+       until flush(), so nothing is written if the caller fails
+       before then.  Set this before attaching children.
+    */
+    final public void setAutoFlush(boolean autoFlush) {
+        this.autoFlush = autoFlush;
+        for (BulkWriter c : children)
+            c.setAutoFlush(autoFlush);
+    }
+
+    /**
+       add a row; returns its row number, starting at 1.  The
+       row may be written immediately if the batch is full,
+       unless auto flush is off.
+    */
+    final public int add(Object... values) throws SQLException {
+        if (values.length != nColumns)
+            throw new IllegalArgumentException("expected "+nColumns+" values for "+tableName);
+        if (parent != null)
+            throw new IllegalArgumentException("use addChild for "+tableName);
+        rows.add(values);
+        int rv = nWritten + rows.size();
+        if (autoFlush && (rows.size() >= batchSize))
+            flushRows();
+        return rv;
+    }
+
+    /**
+       add a row to a child table, referring to a row in the
+       parent writer.  The value given for the parent column is
+       replaced with the parent's id when the row is written.
+    */
+    final public void addChild(int parentRow,
+                               Object... values) throws SQLException {
+        if (values.length != nColumns)
+            throw new IllegalArgumentException("expected "+nColumns+" values for "+tableName);
+        if (parent == null)
+            throw new IllegalArgumentException(tableName+" has no parent table");
+        if ((parentRow < 1) || (parentRow > parent.nWritten + parent.rows.size()))
+            throw new IllegalArgumentException("no row "+parentRow+" in "+parent.tableName);
+        rows.add(values);
+        parentRows.add(new Integer(parentRow));
+        if (autoFlush && (rows.size() >= batchSize))
+            flushRows();
+    }
+
+    /**
+       get the id of a row that has been written, or 0 if the
+       row hasn't been written yet.  Only available for writers
+       with children.
+    */
+    final public int getID(int row) {
+        if ((ids == null) || (row < 1) || (row > nWritten))
+            return 0;
+        return ids[row-1];
+    }
+
+    /**
+       write all pending rows, in this table and any children
+    */
+    final public void flush() throws SQLException {
+        flushRows();
+        for (BulkWriter c : children)
+            c.flush();
+    }
+
+    /**
+       discard all pending rows, in this table and any children
+    */
+    final public void clear() {
+        for (BulkWriter c : children)
+            c.clear();
+        rows.clear();
+        if (parentRows != null)
+            parentRows.clear();
+    }
+
+    /**
+       number of rows written so far
+    */
+    final public long getRowsWritten() {
+        return nRows;
+    }
+
+    /**
+       number of statements used to write them
+    */
+    final public long getStatements() {
+        return nStatements;
+    }
+
+    /**
+       Adds the id_reservation table, if it isn't there already.
+       Must be done once before writing tables with children.
+    */
+    final public static void addTables() throws SQLException {
+        Statement stmt = LocalSQL.createStatement();
+        stmt.executeUpdate("create table if not exists id_reservation (table_name varchar(64) not null primary key, next_id int unsigned not null)");
+        stmt.close();
+    }
+
+    /**
+       reserve n consecutive ids for a table; returns the first.
+       Reservations start past the highest id in the table, to
+       skip ids given out by auto_increment.
+    */
+    private static synchronized int reserveIDs(String tableName,
+                                               int n) throws SQLException {
+        ConnectionPool pool = LocalSQL.getPool();
+        for (int tries = 1; ; tries++) {
+            Connection con = reserveCons.get(pool);
+            try {
+                if (con == null) {
+                    con = pool.openUnpooled();
+                    reserveCons.put(pool, con);
+                }
+                return reserveIDs(con, tableName, n);
+            }
+            catch (SQLException e) {
+                // reopen the connection once, in case it timed out
+                reserveCons.remove(pool);
+                if (con != null) {
+                    try {
+                        con.close();
+                    }
+                    catch (SQLException e2) {
+                    }
+                }
+                if (e.getErrorCode() == 1146)
+                    throw new SQLException("id_reservation table is missing; run AddBulkIDs");
+                if (tries >= 2)
+                    throw e;
+            }
+        }
+    }
+
+    private static int reserveIDs(Connection con,
+                                  String tableName,
+                                  int n) throws SQLException {
+        Statement stmt = con.createStatement();
+        try {
+            stmt.executeUpdate("insert ignore into id_reservation values (\""+tableName+"\", 1)");
+            stmt.executeUpdate("update id_reservation set next_id=last_insert_id(greatest(next_id, (select ifnull(max(id),0)+1 from "+tableName+"))+"+n+") where table_name=\""+tableName+"\"");
+            ResultSet rs = stmt.executeQuery("select last_insert_id()");
+            rs.next();
+            int rv = rs.getInt(1) - n;
+            rs.close();
+            return rv;
+        }
+        finally {
+            stmt.close();
+        }
+    }
+
+    /**
+       write pending rows in this table only, one batch at a time
+    */
+    private void flushRows() throws SQLException {
+        int n = rows.size();
+        if (n == 0)
+            return;
+
+        // parent ids must be known before children are written
+        if (parent != null) {
+            if (parent.rows.size() > 0)
+                parent.flushRows();
+            for (int i = 0; i < n; i++) {
+                Object[] row = rows.get(i);
+                row[parentColumn] = new Integer(parent.getID(parentRows.get(i).intValue()));
+            }
+            parentRows.clear();
+        }
+
+        for (int i = 0; i < n; i += batchSize) {
+            List<Object[]> batch = rows.subList(i, Math.min(n, i + batchSize));
+            if (ids != null)
+                writeWithIDs(batch);
+            else
+                writeRows(batch);
+            nWritten += batch.size();
+            nRows += batch.size();
+        }
+        rows.clear();
+    }
+
+    /**
+       write a batch of rows, giving rows without an id one from
+       a reserved range, and record the ids
+    */
+    private void writeWithIDs(List<Object[]> batch) throws SQLException {
+        int n = batch.size();
+        boolean[] reserved = new boolean[n];
+        int nNeeded = 0;
+        for (int i = 0; i < n; i++) {
+            if (batch.get(i)[0] == null) {
+                reserved[i] = true;
+                nNeeded++;
+            }
+        }
+
+        for (int tries = 1; ; tries++) {
+            if (nNeeded > 0) {
+                int nextID = reserveIDs(tableName, nNeeded);
+                for (int i = 0; i < n; i++)
+                    if (reserved[i])
+                        batch.get(i)[0] = new Integer(nextID++);
+            }
+            try {
+                // LOAD DATA LOCAL skips duplicate keys silently, so
+                // reserved ids are always written with inserts
+                if (nNeeded > 0)
+                    insertRows(batch);
+                else
+                    writeRows(batch);
+                break;
+            }
+            catch (SQLException e) {
+                // duplicate key: an auto_increment insert took a
+                // reserved id before we wrote it
+                if ((e.getErrorCode() != 1062) ||
+                    (nNeeded == 0) ||
+                    (tries >= MAX_ID_RETRIES))
+                    throw e;
+            }
+        }
+
+        if (ids.length < nWritten + n)
+            ids = Arrays.copyOf(ids, Math.max(ids.length * 2, nWritten + n));
+        for (int i = 0; i < n; i++)
+            ids[nWritten + i] = ((Number)batch.get(i)[0]).intValue();
+    }
+
+    /**
+       write a batch of rows with one statement
+    */
+    private void writeRows(List<Object[]> batch) throws SQLException {
+        if (mode == MODE_LOAD_DATA)
+            loadRows(batch);
+        else
+            insertRows(batch);
+    }
+
+    /**
+       write a batch of rows with one multi-row insert.  Full
+       batches, the usual case, use a cached statement; others are
+       prepared each time, so the cache doesn't fill with one
+       statement per batch size.
+    */
+    private void insertRows(List<Object[]> batch) throws SQLException {
+        int n = batch.size();
+        StringBuilder sql = new StringBuilder("insert into "+tableName+" values ");
+        for (int i = 0; i < n; i++) {
+            if (i > 0)
+                sql.append(',');
+            sql.append('(');
+            for (int j = 0; j < nColumns; j++) {
+                if (j > 0)
+                    sql.append(',');
+                sql.append('?');
+            }
+            sql.append(')');
+        }
+        boolean cached = (n == batchSize);
+        PreparedStatement stmt;
+        if (cached)
+            stmt = LocalSQL.prepareCached(sql.toString());
+        else
+            stmt = LocalSQL.prepareStatement(sql.toString());
+        try {
+            int k = 1;
+            for (int i = 0; i < n; i++) {
+                Object[] row = batch.get(i);
+                for (int j = 0; j < nColumns; j++)
+                    setValue(stmt, k++, row[j]);
+            }
+            stmt.executeUpdate();
+        }
+        finally {
+            if (!cached)
+                stmt.close();
+        }
+        nStatements++;
+    }
+
+    private static void setValue(PreparedStatement stmt,
+                                 int i,
+                                 Object value) throws SQLException {
+        if (value == null)
+            stmt.setNull(i, Types.NULL);
+        else
+            stmt.setObject(i, value);
+    }
+
+    /**
+       write a batch of rows through a temp file.  Falls back to
+       inserts if the server or driver doesn't allow local files.
+    */
+    private void loadRows(List<Object[]> batch) throws SQLException {
+        File f = null;
+        try {
+            f = File.createTempFile("bulk", ".tsv");
+            BufferedWriter outfile = new BufferedWriter(new FileWriter(f));
+            for (Object[] row : batch) {
+                for (int j = 0; j < nColumns; j++) {
+                    if (j > 0)
+                        outfile.write('\t');
+                    appendValue(outfile, row[j]);
+                }
+                outfile.write('\n');
+            }
+            outfile.close();
+
+            Statement stmt = LocalSQL.createStatement();
+            try {
+                stmt.executeUpdate("load data local infile '"+f.getPath()+"' into table "+tableName);
+            }
+            finally {
+                stmt.close();
+            }
+            nStatements++;
+        }
+        catch (SQLException e) {
+            if ((e.getErrorCode() == 1148) ||
+                (e.getErrorCode() == 3948) ||
+                (e.getMessage().indexOf("forbidden") > -1) ||
+                (e.getMessage().indexOf("disabled") > -1)) {
+                System.err.println("warning: LOAD DATA LOCAL not allowed; using inserts for "+tableName);
+                mode = MODE_INSERT;
+                insertRows(batch);
+                return;
+            }
+            throw e;
+        }
+        catch (IOException e) {
+            throw new SQLException("Error writing bulk data for "+tableName+": "+e.getMessage());
+        }
+        finally {
+            if (f != null)
+                f.delete();
+        }
+    }
+
+    /**
+       write a value in the default LOAD DATA format
+    */
+    private static void appendValue(Writer outfile,
+                                    Object value) throws IOException {
+        if (value == null) {
+            outfile.write("\\N");
+            return;
+        }
+        String s = value.toString();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\')
+                outfile.write("\\\\");
+            else if (c == '\t')
+                outfile.write("\\t");
+            else if (c == '\n')
+                outfile.write("\\n");
+            else
+                outfile.write(c);
+        }
+    }
+}
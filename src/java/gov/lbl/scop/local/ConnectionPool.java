@@ -0,0 +1,752 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.local;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+   Bounded pool of connections to one set of database URLs
+   (separated by ;).  Connections are borrowed by a single thread
+   at a time, and returned to the pool when that thread is done
+   with them.  If the pool is full, borrowers wait until a connection
+   is returned, or until a connection held by a thread that has
+   died can be reclaimed.
+   <p>
+   New connections go to the first URL that works (BALANCE_FIRST),
+   or are spread across all the URLs, e.g. a set of read replicas
+   (BALANCE_ROUND_ROBIN or BALANCE_LEAST_OUTSTANDING).  The number
+   of connections borrowed from each server is used as its number
+   of outstanding requests, since each borrower runs one query at
+   a time.  Servers that fail to connect, stall, or fall too far
+   behind in replication (see startHealthChecks) are skipped until
+   they recover, unless no other server is available.  Borrowers
+   can check with shouldMove() whether a connection they hold is
+   to a server that has since been found unhealthy.
+
+   <pre>
+   Version 1.2, 10/17/26 - shouldMove, openUnpooled
+   Version 1.1, 10/17/26 - balance across URLs, with health checks
+   Version 1.0, 10/17/26 - based on the single connection in LocalSQL 1.2
+   </pre>
+
+   @version 1.2, 10/17/26
+   @author JMC
+*/
+public class ConnectionPool {
+    /**
+       default maximum number of connections in a pool
+    */
+    final public static int DEFAULT_MAX_SIZE = 32;
+
+    /**
+       default number of seconds to wait for a free connection
+    */
+    final public static int DEFAULT_WAIT_SECONDS = 600;
+
+    /**
+       use the first URL that works
+    */
+    final public static int BALANCE_FIRST = 0;
+
+    /**
+       rotate new borrowers through the URLs
+    */
+    final public static int BALANCE_ROUND_ROBIN = 1;
+
+    /**
+       send new borrowers to the URL with fewest borrowed connections
+    */
+    final public static int BALANCE_LEAST_OUTSTANDING = 2;
+
+    /**
+       seconds to wait for a health check query
+    */
+    final public static int CHECK_TIMEOUT_SECONDS = 10;
+
+    /**
+       name of pool, for reporting
+    */
+    private String name;
+
+    /**
+       database URLs, tried in order
+    */
+    private String[] urls;
+
+    /**
+       how to choose among URLs
+    */
+    private int balance;
+
+    /**
+       next URL to start from, for round robin
+    */
+    private int nextURL = 0;
+
+    /**
+       which URL each open connection is to
+    */
+    private HashMap<Connection,Integer> urlIndex = new HashMap<Connection,Integer>();
+
+    /**
+       number of connections borrowed from each URL
+    */
+    private int[] urlInUse;
+
+    /**
+       is each URL currently usable?
+    */
+    private boolean[] urlHealthy;
+
+    /**
+       number of URLs not currently usable; read without locking,
+       so borrowers can check cheaply whether to move
+    */
+    private volatile int nUnhealthy = 0;
+
+    /**
+       replication lag of each URL at last check, in seconds;
+       -1 if unknown
+    */
+    private int[] urlLag;
+
+    /**
+       connections used only for health checks
+    */
+    private Connection[] checkCons;
+
+    /**
+       thread doing periodic health checks, if any
+    */
+    private Thread checker = null;
+
+    /**
+       max number of open connections
+    */
+    private int maxSize;
+
+    /**
+       max time to wait for a connection, in ms
+    */
+    private long maxWait;
+
+    /**
+       connections not currently borrowed
+    */
+    private LinkedList<Connection> idle = new LinkedList<Connection>();
+
+    /**
+       borrowed connections, and the thread that borrowed each
+    */
+    private HashMap<Connection,Thread> borrowed = new HashMap<Connection,Thread>();
+
+    // statistics
+    private long nCreated = 0;
+    private long nBorrowed = 0;
+    private long nReturned = 0;
+    private long nWaits = 0;
+    private long waitMS = 0;
+    private long nTimeouts = 0;
+    private long nReclaimed = 0;
+    private long nDiscarded = 0;
+    private int peakInUse = 0;
+
+    static {
+        try {
+            Class.forName("org.gjt.mm.mysql.Driver").newInstance();
+        }
+        catch (Exception e) {
+            System.err.println("Exception when loading DB driver.  Is MySQL connector in your classpath?  " + e.getMessage());
+        }
+    }
+
+    /**
+       make a pool for a set of URLs separated by ;
+       using the first URL that works
+    */
+    public ConnectionPool(String name,
+                          String urls,
+                          int maxSize,
+                          int waitSeconds) {
+        this(name, urls, maxSize, waitSeconds, BALANCE_FIRST);
+    }
+
+    /**
+       make a pool for a set of URLs separated by ;
+       balanced across the URLs
+    */
+    public ConnectionPool(String name,
+                          String urls,
+                          int maxSize,
+                          int waitSeconds,
+                          int balance) {
+        this.name = name;
+        this.urls = urls.split(";");
+        if (maxSize < 1)
+            maxSize = 1;
+        this.maxSize = maxSize;
+        maxWait = 1000L * waitSeconds;
+        this.balance = balance;
+        int n = this.urls.length;
+        urlInUse = new int[n];
+        urlHealthy = new boolean[n];
+        Arrays.fill(urlHealthy, true);
+        urlLag = new int[n];
+        Arrays.fill(urlLag, -1);
+        checkCons = new Connection[n];
+    }
+
+    /**
+       URLs in the order they should be tried for the next
+       connection; healthy ones first.
+    */
+    private int[] urlOrder() {
+        int n = urls.length;
+        int[] rv = new int[n];
+        long[] key = new long[n];
+        int start = nextURL;
+        if (balance != BALANCE_FIRST)
+            nextURL = (nextURL + 1) % n;
+        for (int i = 0; i < n; i++) {
+            int rotation = (i - start + n) % n;
+            if (balance == BALANCE_FIRST)
+                key[i] = i;
+            else if (balance == BALANCE_ROUND_ROBIN)
+                key[i] = rotation;
+            else
+                key[i] = (long)urlInUse[i] * n + rotation;
+            if (!urlHealthy[i])
+                key[i] += (long)n * (maxSize + 1) + n;
+            // insertion sort; there are only a few URLs
+            int j = i;
+            while ((j > 0) && (key[rv[j-1]] > key[i])) {
+                rv[j] = rv[j-1];
+                j--;
+            }
+            rv[j] = i;
+        }
+        return rv;
+    }
+
+    /**
+       which URL a connection is to, or -1 if unknown
+    */
+    private int urlOf(Connection con) {
+        Integer i = urlIndex.get(con);
+        if (i == null)
+            return -1;
+        return i.intValue();
+    }
+
+    /**
+       open a new connection, using the first URL in the given
+       order that works
+    */
+    private Connection newConnection(int[] order) throws SQLException {
+        SQLException lastError = null;
+        for (int i = 0; i < order.length; i++) {
+            int u = order[i];
+            try {
+                Connection con = DriverManager.getConnection(urls[u]);
+                if (con != null) {
+                    synchronized (this) {
+                        urlIndex.put(con, new Integer(u));
+                        nCreated++;
+                    }
+                    return con;
+                }
+            }
+            catch (SQLException e) {
+                lastError = e;
+                setHealthy(u, false, -1);
+            }
+        }
+        if (lastError != null)
+            throw lastError;
+        throw new SQLException("No database URLs for pool "+name);
+    }
+
+    /**
+       open a connection outside the pool, to the first usable URL,
+       for a caller that needs one of its own and mustn't wait for
+       a pooled one.  The caller must close it.
+    */
+    final public Connection openUnpooled() throws SQLException {
+        int[] order;
+        synchronized (this) {
+            order = urlOrder();
+        }
+        Connection con = newConnection(order);
+        synchronized (this) {
+            urlIndex.remove(con);
+        }
+        return con;
+    }
+
+    /**
+       close a connection that is no longer wanted
+    */
+    private void discard(Connection con) {
+        synchronized (this) {
+            urlIndex.remove(con);
+            nDiscarded++;
+        }
+        StatementCache.remove(con);
+        try {
+            con.close();
+        }
+        catch (SQLException e) {
+        }
+    }
+
+    /**
+       take an idle connection to a given URL, or null if none
+    */
+    private Connection takeIdle(int u) {
+        Iterator<Connection> it = idle.iterator();
+        while (it.hasNext()) {
+            Connection con = it.next();
+            if (urlOf(con) == u) {
+                it.remove();
+                return con;
+            }
+        }
+        return null;
+    }
+
+    /**
+       returns to the idle list any connections borrowed by threads
+       that no longer exist.  Returns number reclaimed.
+    */
+    private int reclaimDead() {
+        int rv = 0;
+        Iterator<Map.Entry<Connection,Thread>> it = borrowed.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Connection,Thread> e = it.next();
+            if (!e.getValue().isAlive()) {
+                it.remove();
+                int u = urlOf(e.getKey());
+                if (u > -1)
+                    urlInUse[u]--;
+                idle.add(e.getKey());
+                rv++;
+            }
+        }
+        nReclaimed += rv;
+        return rv;
+    }
+
+    /**
+       is the connection still usable?
+    */
+    private static boolean isUsable(Connection con) {
+        try {
+            return ((!con.isClosed()) && (con.isValid(5)));
+        }
+        catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+       roll back any transaction left open on a connection (e.g.,
+       by a thread that died), and return to autocommit mode.
+       Returns false if the connection can't be reset.
+    */
+    private static boolean reset(Connection con) {
+        try {
+            if (!con.getAutoCommit()) {
+                con.rollback();
+                con.setAutoCommit(true);
+            }
+            return true;
+        }
+        catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+       number of connections being checked or opened outside the lock
+    */
+    private int pending = 0;
+
+    /**
+       borrow a connection for use by the current thread.  Blocks
+       if all connections are in use.
+    */
+    final public Connection borrow() throws SQLException {
+        Connection con = null;
+        int[] order = null;
+        synchronized (this) {
+            long start = System.currentTimeMillis();
+            boolean waited = false;
+            while (true) {
+                if (idle.isEmpty())
+                    reclaimDead();
+                // reuse an idle connection to the preferred URL,
+                // or else open a new one there if there's room
+                order = urlOrder();
+                con = takeIdle(order[0]);
+                if (con != null)
+                    break;
+                if (borrowed.size() + pending + idle.size() < maxSize)
+                    break;
+                for (int i = 1; (i < order.length) && (con == null); i++)
+                    if (urlHealthy[order[i]])
+                        con = takeIdle(order[i]);
+                if ((con == null) && (!idle.isEmpty()))
+                    con = idle.removeFirst();
+                if (con != null)
+                    break;
+                long left = start + maxWait - System.currentTimeMillis();
+                if (left <= 0) {
+                    nTimeouts++;
+                    throw new SQLException("Timed out waiting for connection from pool "+name);
+                }
+                if (!waited) {
+                    nWaits++;
+                    waited = true;
+                }
+                try {
+                    // wake up periodically to check for dead threads
+                    wait(Math.min(left, 1000L));
+                }
+                catch (InterruptedException e) {
+                    throw new SQLException("Interrupted waiting for connection from pool "+name);
+                }
+            }
+            if (waited)
+                waitMS += System.currentTimeMillis() - start;
+            pending++;
+            nBorrowed++;
+        }
+
+        // check or open connection without holding the lock
+        try {
+            if (con != null) {
+                if (!isUsable(con)) {
+                    // server may have stalled; avoid it until checked
+                    int u;
+                    synchronized (this) {
+                        u = urlOf(con);
+                    }
+                    if (u > -1)
+                        setHealthy(u, false, -1);
+                    discard(con);
+                    con = null;
+                    order = null;
+                }
+                else if (!reset(con)) {
+                    discard(con);
+                    con = null;
+                }
+            }
+            if (con == null) {
+                if (order == null) {
+                    synchronized (this) {
+                        order = urlOrder();
+                    }
+                }
+                con = newConnection(order);
+            }
+        }
+        finally {
+            synchronized (this) {
+                pending--;
+                if (con != null) {
+                    borrowed.put(con, Thread.currentThread());
+                    int u = urlOf(con);
+                    if (u > -1)
+                        urlInUse[u]++;
+                    updatePeak();
+                }
+                notifyAll();
+            }
+        }
+        return con;
+    }
+
+    /**
+       keep track of max simultaneous connections in use
+    */
+    private void updatePeak() {
+        int n = borrowed.size() + pending;
+        if (n > peakInUse)
+            peakInUse = n;
+    }
+
+    /**
+       return a connection to the pool.  Connections that were
+       left in the middle of a transaction are rolled back.
+    */
+    final public void release(Connection con) {
+        if (con == null)
+            return;
+        boolean usable = (isUsable(con) && reset(con));
+        synchronized (this) {
+            if (borrowed.remove(con) == null)
+                return;
+            nReturned++;
+            int u = urlOf(con);
+            if (u > -1) {
+                urlInUse[u]--;
+                // don't keep connections to servers being avoided
+                if (!urlHealthy[u])
+                    usable = false;
+            }
+            if (usable)
+                idle.addFirst(con);
+            notifyAll();
+        }
+        if (!usable)
+            discard(con);
+    }
+
+    /**
+       should a borrowed connection be given back for one to another
+       server?  True if its server is being avoided, and some other
+       server isn't.
+    */
+    final public boolean shouldMove(Connection con) {
+        if (nUnhealthy == 0)
+            return false;
+        synchronized (this) {
+            int u = urlOf(con);
+            if ((u < 0) || (urlHealthy[u]))
+                return false;
+            for (int i = 0; i < urls.length; i++)
+                if (urlHealthy[i])
+                    return true;
+            return false;
+        }
+    }
+
+    /**
+       close all idle connections
+    */
+    final public synchronized void closeIdle() {
+        for (Connection con : idle) {
+            urlIndex.remove(con);
+            StatementCache.remove(con);
+            try {
+                con.close();
+            }
+            catch (SQLException e) {
+            }
+        }
+        idle.clear();
+    }
+
+    /**
+       mark a URL as usable or not, closing idle connections to it
+       if not
+    */
+    private void setHealthy(int u, boolean healthy, int lag) {
+        Vector<Connection> toClose = new Vector<Connection>();
+        synchronized (this) {
+            urlLag[u] = lag;
+            if (urlHealthy[u] == healthy)
+                return;
+            urlHealthy[u] = healthy;
+            nUnhealthy += (healthy ? -1 : 1);
+            if (!healthy) {
+                Iterator<Connection> it = idle.iterator();
+                while (it.hasNext()) {
+                    Connection con = it.next();
+                    if (urlOf(con) == u) {
+                        it.remove();
+                        toClose.add(con);
+                    }
+                }
+            }
+        }
+        if (urls.length > 1)
+            System.err.println("pool "+name+": "+describeURL(u)+
+                               (healthy ? " is back in use" : " is being avoided")+
+                               (lag > -1 ? ", lag "+lag+" s" : ""));
+        for (Connection con : toClose)
+            discard(con);
+    }
+
+    /**
+       check each URL once: can we connect, and is replication (if
+       any) running and no more than maxLagSeconds behind?
+    */
+    final public void checkHealth(int maxLagSeconds) {
+        for (int u = 0; u < urls.length; u++) {
+            boolean healthy = false;
+            int lag = -1;
+            try {
+                if ((checkCons[u] == null) || (checkCons[u].isClosed()))
+                    checkCons[u] = DriverManager.getConnection(urls[u]);
+                Statement stmt = checkCons[u].createStatement();
+                stmt.setQueryTimeout(CHECK_TIMEOUT_SECONDS);
+                ResultSet rs = stmt.executeQuery("show slave status");
+                if (rs.next()) {
+                    String s = rs.getString("Seconds_Behind_Master");
+                    if (s != null) {
+                        lag = Integer.parseInt(s);
+                        healthy = (lag <= maxLagSeconds);
+                    }
+                }
+                else {
+                    // not a replica
+                    lag = 0;
+                    healthy = true;
+                }
+                rs.close();
+                stmt.close();
+            }
+            catch (Exception e) {
+                if (checkCons[u] != null) {
+                    try {
+                        checkCons[u].close();
+                    }
+                    catch (SQLException e2) {
+                    }
+                    checkCons[u] = null;
+                }
+            }
+            setHealthy(u, healthy, lag);
+        }
+    }
+
+    /**
+       start a background thread that checks each URL every
+       periodSeconds, avoiding those that fail or lag more than
+       maxLagSeconds behind their master.
+    */
+    final public synchronized void startHealthChecks(int periodSeconds,
+                                                     final int maxLagSeconds) {
+        if ((checker != null) || (periodSeconds < 1))
+            return;
+        final long period = 1000L * periodSeconds;
+        checker = new Thread("pool "+name+" health checks") {
+                public void run() {
+                    while (true) {
+                        checkHealth(maxLagSeconds);
+                        try {
+                            sleep(period);
+                        }
+                        catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            };
+        checker.setDaemon(true);
+        checker.start();
+    }
+
+    /**
+       URL without parameters (which may include passwords), for
+       reporting
+    */
+    private String describeURL(int u) {
+        String rv = urls[u];
+        int pos = rv.indexOf('?');
+        if (pos > -1)
+            rv = rv.substring(0, pos);
+        return rv;
+    }
+
+    final public String getName() {
+        return name;
+    }
+
+    final public int getMaxSize() {
+        return maxSize;
+    }
+
+    final public synchronized int getInUse() {
+        return borrowed.size();
+    }
+
+    final public synchronized int getIdle() {
+        return idle.size();
+    }
+
+    final public synchronized int getPeakInUse() {
+        return peakInUse;
+    }
+
+    final public synchronized long getCreated() {
+        return nCreated;
+    }
+
+    final public synchronized long getBorrowed() {
+        return nBorrowed;
+    }
+
+    final public synchronized long getWaits() {
+        return nWaits;
+    }
+
+    final public synchronized long getWaitMS() {
+        return waitMS;
+    }
+
+    final public synchronized long getTimeouts() {
+        return nTimeouts;
+    }
+
+    final public synchronized long getReclaimed() {
+        return nReclaimed;
+    }
+
+    /**
+       one-line summary of pool statistics
+    */
+    final public synchronized String getStats() {
+        return ("pool "+name+
+                ": max "+maxSize+
+                ", in use "+borrowed.size()+
+                ", idle "+idle.size()+
+                ", peak "+peakInUse+
+                ", created "+nCreated+
+                ", borrowed "+nBorrowed+
+                ", returned "+nReturned+
+                ", reclaimed "+nReclaimed+
+                ", discarded "+nDiscarded+
+                ", waits "+nWaits+
+                " ("+waitMS+" ms)"+
+                ", timeouts "+nTimeouts+
+                urlStats());
+    }
+
+    /**
+       per-URL part of statistics, if more than one URL
+    */
+    private String urlStats() {
+        if (urls.length < 2)
+            return "";
+        String rv = "";
+        for (int u = 0; u < urls.length; u++)
+            rv += "; "+describeURL(u)+
+                ": in use "+urlInUse[u]+
+                (urlHealthy[u] ? "" : ", avoided")+
+                (urlLag[u] > -1 ? ", lag "+urlLag[u]+" s" : "");
+        return rv;
+    }
+}
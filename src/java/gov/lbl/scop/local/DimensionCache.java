@@ -0,0 +1,389 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.local;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+   In-memory copies of small, nearly static tables (levels,
+   history types, SCOP/Pfam/CDD/HMMER releases, PDB methods),
+   each loaded once per JVM the first time it is needed.
+   <p>
+   A lookup that fails reloads its table (at most once every
+   MISS_RELOAD_MS), so rows added by other processes are found.
+   Tools that change existing rows should call invalidate() or
+   LocalSQL.invalidateCaches() afterwards.
+   <p>
+   Lookups by name match the way the db's collation does: ignoring
+   case and trailing spaces.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class DimensionCache {
+    final public static int LEVELS = 0;
+    final public static int HISTORY_TYPES = 1;
+    final public static int SCOP_RELEASES = 2;
+    final public static int PFAM_RELEASES = 3;
+    final public static int CDD_RELEASES = 4;
+    final public static int PDB_METHODS = 5;
+    final private static int N_TABLES = 6;
+
+    /**
+       minimum time between reloads of a table caused by a
+       failed lookup
+    */
+    final public static long MISS_RELOAD_MS = 10000;
+
+    /**
+       when each table was loaded; 0 if not loaded
+    */
+    private static long[] loadTime = new long[N_TABLES];
+
+    private static HashMap<String,Integer> levelIDs;
+    private static HashMap<Integer,String> levelAbbrevs;
+
+    private static HashMap<String,Integer> historyTypeIDs;
+
+    private static HashMap<String,Integer> scopReleaseIDs;
+    private static HashMap<String,Integer> scopReleaseOldIDs;
+    private static HashMap<Integer,String> scopReleaseVersions;
+    private static HashMap<Integer,Integer> scopReleaseSeries;
+
+    private static HashMap<String,Integer> pfamReleaseIDs;
+    private static HashMap<Integer,String> pfamReleaseVersions;
+    private static HashMap<Integer,String> hmmerVersions;
+
+    private static HashMap<String,Integer> cddReleaseIDs;
+
+    private static HashMap<String,Integer> methodIDs;
+    private static HashMap<Integer,String> methodSummaries;
+    private static HashMap<Integer,Boolean> methodIsTheory;
+
+    /**
+       forget one table; it will be reloaded when next used
+    */
+    final public static synchronized void invalidate(int table) {
+        loadTime[table] = 0;
+    }
+
+    /**
+       forget all tables
+    */
+    final public static synchronized void invalidateAll() {
+        Arrays.fill(loadTime, 0);
+    }
+
+    /**
+       make sure a table is loaded
+    */
+    private static void check(int table) throws SQLException {
+        if (loadTime[table] == 0)
+            load(table);
+    }
+
+    /**
+       reload a table after a failed lookup, unless it was loaded
+       recently.  Returns true if reloaded.
+    */
+    private static boolean reloadOnMiss(int table) throws SQLException {
+        if (System.currentTimeMillis() - loadTime[table] < MISS_RELOAD_MS)
+            return false;
+        load(table);
+        return true;
+    }
+
+    /**
+       load a table from the db
+    */
+    private static void load(int table) throws SQLException {
+        Statement stmt = LocalSQL.createStatement();
+        if (stmt == null)
+            throw new SQLException("Failure to connect to DB");
+        ResultSet rs;
+        if (table == LEVELS) {
+            levelIDs = new HashMap<String,Integer>();
+            levelAbbrevs = new HashMap<Integer,String>();
+            rs = stmt.executeQuery("select id, abbreviation from scop_level");
+            while (rs.next()) {
+                Integer id = new Integer(rs.getInt(1));
+                String abbrev = rs.getString(2);
+                levelAbbrevs.put(id, abbrev);
+                if (abbrev != null)
+                    levelIDs.put(key(abbrev), id);
+            }
+            rs.close();
+        }
+        else if (table == HISTORY_TYPES) {
+            historyTypeIDs = new HashMap<String,Integer>();
+            rs = stmt.executeQuery("select id, abbreviation from scop_history_type");
+            while (rs.next()) {
+                String abbrev = rs.getString(2);
+                if (abbrev != null)
+                    historyTypeIDs.put(key(abbrev), new Integer(rs.getInt(1)));
+            }
+            rs.close();
+        }
+        else if (table == SCOP_RELEASES) {
+            scopReleaseIDs = new HashMap<String,Integer>();
+            scopReleaseOldIDs = new HashMap<String,Integer>();
+            scopReleaseVersions = new HashMap<Integer,String>();
+            scopReleaseSeries = new HashMap<Integer,Integer>();
+            rs = stmt.executeQuery("select id, version, old_version, series from scop_release order by id");
+            while (rs.next()) {
+                Integer id = new Integer(rs.getInt(1));
+                String version = rs.getString(2);
+                String oldVersion = rs.getString(3);
+                scopReleaseVersions.put(id, version);
+                scopReleaseSeries.put(id, new Integer(rs.getInt(4)));
+                if ((version != null) && (!scopReleaseIDs.containsKey(key(version))))
+                    scopReleaseIDs.put(key(version), id);
+                if ((oldVersion != null) && (!scopReleaseOldIDs.containsKey(key(oldVersion))))
+                    scopReleaseOldIDs.put(key(oldVersion), id);
+            }
+            rs.close();
+        }
+        else if (table == PFAM_RELEASES) {
+            pfamReleaseIDs = new HashMap<String,Integer>();
+            pfamReleaseVersions = new HashMap<Integer,String>();
+            hmmerVersions = new HashMap<Integer,String>();
+            rs = stmt.executeQuery("select pr.id, pr.version, hr.version from pfam_release pr left join hmmer_release hr on (pr.hmmer_release_id=hr.id) order by pr.id");
+            while (rs.next()) {
+                Integer id = new Integer(rs.getInt(1));
+                String version = rs.getString(2);
+                pfamReleaseVersions.put(id, version);
+                if ((version != null) && (!pfamReleaseIDs.containsKey(key(version))))
+                    pfamReleaseIDs.put(key(version), id);
+                String hmmerVersion = rs.getString(3);
+                if (hmmerVersion != null)
+                    hmmerVersions.put(id, hmmerVersion);
+            }
+            rs.close();
+        }
+        else if (table == CDD_RELEASES) {
+            cddReleaseIDs = new HashMap<String,Integer>();
+            rs = stmt.executeQuery("select id, version from cdd_release order by id");
+            while (rs.next()) {
+                String version = rs.getString(2);
+                if ((version != null) && (!cddReleaseIDs.containsKey(key(version))))
+                    cddReleaseIDs.put(key(version), new Integer(rs.getInt(1)));
+            }
+            rs.close();
+        }
+        else if (table == PDB_METHODS) {
+            methodIDs = new HashMap<String,Integer>();
+            methodSummaries = new HashMap<Integer,String>();
+            methodIsTheory = new HashMap<Integer,Boolean>();
+            rs = stmt.executeQuery("select id, description, summary, is_theory from pdb_method order by id");
+            while (rs.next()) {
+                Integer id = new Integer(rs.getInt(1));
+                String description = rs.getString(2);
+                if ((description != null) && (!methodIDs.containsKey(key(description))))
+                    methodIDs.put(key(description), id);
+                methodSummaries.put(id, rs.getString(3));
+                methodIsTheory.put(id, new Boolean(rs.getInt(4)==1));
+            }
+            rs.close();
+        }
+        stmt.close();
+        loadTime[table] = System.currentTimeMillis();
+    }
+
+    /**
+       key for a name, ignoring case and trailing spaces, as
+       MySQL's default collation does
+    */
+    private static String key(String s) {
+        if (s == null)
+            return null;
+        int l = s.length();
+        while ((l > 0) && (s.charAt(l-1) == ' '))
+            l--;
+        return s.substring(0, l).toLowerCase();
+    }
+
+    /**
+       returns 0 instead of null
+    */
+    private static int intValue(Integer i) {
+        if (i == null)
+            return 0;
+        return i.intValue();
+    }
+
+    /**
+       returns level id from an abbreviation, or 0 if not found
+    */
+    final public static synchronized int getLevelID(String abbrev) throws SQLException {
+        check(LEVELS);
+        Integer rv = levelIDs.get(key(abbrev));
+        if ((rv == null) && reloadOnMiss(LEVELS))
+            rv = levelIDs.get(key(abbrev));
+        return intValue(rv);
+    }
+
+    /**
+       returns abbreviation for a level id, or null if not found
+    */
+    final public static synchronized String getLevelAbbrev(int id) throws SQLException {
+        check(LEVELS);
+        Integer key = new Integer(id);
+        if (!levelAbbrevs.containsKey(key))
+            reloadOnMiss(LEVELS);
+        return levelAbbrevs.get(key);
+    }
+
+    /**
+       returns history type id from an abbreviation, or 0 if not found
+    */
+    final public static synchronized int getHistoryTypeID(String abbrev) throws SQLException {
+        check(HISTORY_TYPES);
+        Integer rv = historyTypeIDs.get(key(abbrev));
+        if ((rv == null) && reloadOnMiss(HISTORY_TYPES))
+            rv = historyTypeIDs.get(key(abbrev));
+        return intValue(rv);
+    }
+
+    /**
+       returns SCOP release id from version (or old version, if no
+       release has that version), or 0 if not found
+    */
+    final public static synchronized int getSCOPReleaseID(String version) throws SQLException {
+        check(SCOP_RELEASES);
+        Integer rv = scopReleaseIDs.get(key(version));
+        if (rv == null)
+            rv = scopReleaseOldIDs.get(key(version));
+        if ((rv == null) && reloadOnMiss(SCOP_RELEASES)) {
+            rv = scopReleaseIDs.get(key(version));
+            if (rv == null)
+                rv = scopReleaseOldIDs.get(key(version));
+        }
+        return intValue(rv);
+    }
+
+    /**
+       returns version of a SCOP release, or null if not found
+    */
+    final public static synchronized String getSCOPReleaseVersion(int id) throws SQLException {
+        check(SCOP_RELEASES);
+        Integer key = new Integer(id);
+        if (!scopReleaseVersions.containsKey(key))
+            reloadOnMiss(SCOP_RELEASES);
+        return scopReleaseVersions.get(key);
+    }
+
+    /**
+       returns series of a SCOP release (2 = SCOPe), or 0 if
+       not found
+    */
+    final public static synchronized int getSCOPReleaseSeries(int id) throws SQLException {
+        check(SCOP_RELEASES);
+        Integer key = new Integer(id);
+        if (!scopReleaseSeries.containsKey(key))
+            reloadOnMiss(SCOP_RELEASES);
+        return intValue(scopReleaseSeries.get(key));
+    }
+
+    /**
+       returns Pfam release id from version, or 0 if not found
+    */
+    final public static synchronized int getPfamReleaseID(String version) throws SQLException {
+        check(PFAM_RELEASES);
+        Integer rv = pfamReleaseIDs.get(key(version));
+        if ((rv == null) && reloadOnMiss(PFAM_RELEASES))
+            rv = pfamReleaseIDs.get(key(version));
+        return intValue(rv);
+    }
+
+    /**
+       returns version of a Pfam release, or null if not found
+    */
+    final public static synchronized String getPfamReleaseVersion(int id) throws SQLException {
+        check(PFAM_RELEASES);
+        Integer key = new Integer(id);
+        if (!pfamReleaseVersions.containsKey(key))
+            reloadOnMiss(PFAM_RELEASES);
+        return pfamReleaseVersions.get(key);
+    }
+
+    /**
+       returns version of HMMER used for a Pfam release, or null
+       if not found
+    */
+    final public static synchronized String getHMMERVersion(int pfamReleaseID) throws SQLException {
+        check(PFAM_RELEASES);
+        Integer key = new Integer(pfamReleaseID);
+        if (!hmmerVersions.containsKey(key))
+            reloadOnMiss(PFAM_RELEASES);
+        return hmmerVersions.get(key);
+    }
+
+    /**
+       returns CDD release id from version, or 0 if not found
+    */
+    final public static synchronized int getCDDReleaseID(String version) throws SQLException {
+        check(CDD_RELEASES);
+        Integer rv = cddReleaseIDs.get(key(version));
+        if ((rv == null) && reloadOnMiss(CDD_RELEASES))
+            rv = cddReleaseIDs.get(key(version));
+        return intValue(rv);
+    }
+
+    /**
+       returns PDB method id from its description, or 0 if not found
+    */
+    final public static synchronized int getMethodID(String description) throws SQLException {
+        check(PDB_METHODS);
+        Integer rv = methodIDs.get(key(description));
+        if ((rv == null) && reloadOnMiss(PDB_METHODS))
+            rv = methodIDs.get(key(description));
+        return intValue(rv);
+    }
+
+    /**
+       returns summary of a PDB method, or null if not found
+    */
+    final public static synchronized String getMethodSummary(int id) throws SQLException {
+        check(PDB_METHODS);
+        Integer key = new Integer(id);
+        if (!methodSummaries.containsKey(key))
+            reloadOnMiss(PDB_METHODS);
+        return methodSummaries.get(key);
+    }
+
+    /**
+       is a PDB method theoretical?  false if not found
+    */
+    final public static synchronized boolean isTheoryMethod(int id) throws SQLException {
+        check(PDB_METHODS);
+        Integer key = new Integer(id);
+        if (!methodIsTheory.containsKey(key))
+            reloadOnMiss(PDB_METHODS);
+        Boolean rv = methodIsTheory.get(key);
+        return ((rv != null) && rv.booleanValue());
+    }
+}
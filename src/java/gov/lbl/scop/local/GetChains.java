@@ -23,12 +23,15 @@ package gov.lbl.scop.local;
 
 import java.io.*;
 import java.util.*;
+import gov.lbl.scop.util.PDBML2RAF;
 import org.strbio.IO;
 import org.strbio.io.*;
 import org.strbio.local.*;
 
 /**
-   Class to run getChains.pl
+   Class to run getChains.pl.  Chains are now read in Java by
+   PDBML2RAF, unless local property xml2raf.mode says otherwise;
+   see XML2RAF.
 */
 public class GetChains extends Program {
     final public String programName() {
@@ -41,8 +44,49 @@ public class GetChains extends Program {
        or null if failure
     */
     final public static HashMap<Character,String> getChains(String fileName) {
-        GetChains gc = new GetChains();
+        PDBML2RAF p = null;
+        if (!XML2RAF.getMode().equals("perl"))
+            p = XML2RAF.parseJava(fileName);
+        return getChains(fileName, p);
+    }
+
+    /**
+       Returns chains as above, from a file already parsed by
+       XML2RAF.parseJava (null if that failed)
+    */
+    final public static HashMap<Character,String> getChains(String fileName,
+                                                            PDBML2RAF p) {
+        Vector<String> lines = null;
+        String mode = XML2RAF.getMode();
+        if ((!mode.equals("perl")) && (p != null))
+            lines = p.getChainLines();
+        if ((lines == null) || (mode.equals("check"))) {
+            Vector<String> perl = getChainLinesPerl(fileName);
+            if (lines != null)
+                XML2RAF.compare(fileName, lines, perl);
+            lines = perl;
+        }
+        if (lines == null)
+            return null;
+
         HashMap<Character,String> rv = new HashMap<Character,String>();
+        for (String buffer : lines) {
+            StringTokenizer st = new StringTokenizer(buffer,"\t");
+            char c = st.nextToken().charAt(0);
+            String chainType = st.nextToken();
+            rv.put(new Character(c),chainType);
+        }
+        return rv;
+    }
+
+    /**
+       Runs getChains.pl; returns its output lines (chain, type,
+       length, and nucleotide count, tab-separated), or null if
+       failure
+    */
+    final public static Vector<String> getChainLinesPerl(String fileName) {
+        GetChains gc = new GetChains();
+        Vector<String> rv = new Vector<String>();
         BufferedReader infile;
         String buffer;
         try {
@@ -58,10 +102,7 @@ public class GetChains extends Program {
             // read output
             infile = IO.openReader(tmpFile.getPath());
             while ((buffer = infile.readLine()) != null) {
-                StringTokenizer st = new StringTokenizer(buffer,"\t");
-                char c = st.nextToken().charAt(0);
-                String chainType = st.nextToken();
-                rv.put(new Character(c),chainType);
+                rv.add(buffer);
             }
             infile.close();
 
@@ -55,6 +55,17 @@ public class GridEngine {
         }
     }
     
+    /**
+       load and memory of an execution host
+    */
+    public static class HostStatus {
+        public String name;
+        public int nProc;
+        public double load;
+        public long memTotalMB;
+        public long memUsedMB;
+    }
+
     public static class QSub extends Program {
         final public String programName() {
             return "qsub";
@@ -175,6 +186,139 @@ public class GridEngine {
         }
     }
 
+    public static class QHost extends Program {
+        final public String programName() {
+            return "qhost";
+        }
+
+        /**
+           parse a qhost value, or -1 if not known
+        */
+        final public static double parseValue(String s) {
+            if ((s == null) || (s.length() == 0) || (s.equals("-")))
+                return -1.0;
+            try {
+                return Double.parseDouble(s);
+            }
+            catch (NumberFormatException e) {
+                return -1.0;
+            }
+        }
+
+        /**
+           parse a qhost memory size (e.g., 15.6G), in MB, or -1 if
+           not known
+        */
+        final public static long parseMB(String s) {
+            if ((s == null) || (s.length() == 0) || (s.equals("-")))
+                return -1;
+            char unit = s.charAt(s.length()-1);
+            double scale = 1.0 / 1048576.0;
+            if (Character.isLetter(unit)) {
+                s = s.substring(0, s.length()-1);
+                if (unit == 'K')
+                    scale = 1.0 / 1024.0;
+                else if (unit == 'M')
+                    scale = 1.0;
+                else if (unit == 'G')
+                    scale = 1024.0;
+                else if (unit == 'T')
+                    scale = 1048576.0;
+            }
+            double rv = parseValue(s);
+            if (rv < 0.0)
+                return -1;
+            return (long)(rv * scale);
+        }
+
+        public static class QHostHandler extends DefaultHandler {
+            public Vector<HostStatus> hosts = null;
+            private HostStatus host = null;
+            private String valueName = null;
+            private String value = null;
+
+            public QHostHandler() {
+                hosts = new Vector<HostStatus>();
+            }
+
+            public void startElement(String uri,
+                                     String localName,
+                                     String qName,
+                                     Attributes attributes) {
+                if (qName.equals("host")) {
+                    host = new HostStatus();
+                    host.name = attributes.getValue("name");
+                    host.nProc = -1;
+                    host.load = -1.0;
+                    host.memTotalMB = -1;
+                    host.memUsedMB = -1;
+                }
+                else if ((qName.equals("hostvalue")) && (host != null)) {
+                    valueName = attributes.getValue("name");
+                    value = "";
+                }
+            }
+
+            public void endElement(String uri,
+                                   String localName,
+                                   String qName) {
+                if ((qName.equals("hostvalue")) && (valueName != null)) {
+                    value = value.trim();
+                    if (valueName.equals("num_proc"))
+                        host.nProc = (int)parseValue(value);
+                    else if (valueName.equals("load_avg"))
+                        host.load = parseValue(value);
+                    else if (valueName.equals("mem_total"))
+                        host.memTotalMB = parseMB(value);
+                    else if (valueName.equals("mem_used"))
+                        host.memUsedMB = parseMB(value);
+                    valueName = null;
+                }
+                else if ((qName.equals("host")) && (host != null)) {
+                    if (!host.name.equals("global"))
+                        hosts.add(host);
+                    host = null;
+                }
+            }
+
+            public void characters(char[] ch,
+                                   int start,
+                                   int length) {
+                if ((valueName != null) && (length > 0))
+                    value += new String(ch, start, length);
+            }
+        }
+
+        final public static Vector<HostStatus> getHosts() throws Exception {
+            File tmpFile = File.createTempFile("qhost",null);
+            tmpFile.delete();
+            PrintfStream output = new PrintfStream(tmpFile.getPath());
+
+            String[] input = new String[1];
+            input[0] = "-xml";
+            QHost prog = new QHost();
+            prog.setInput(null);
+            prog.setOutput(output);
+            prog.setError(null);
+            prog.run(input);
+            output.close();
+
+            SAXParserFactory factory
+                = SAXParserFactory.newInstance();
+            factory.setValidating(false);
+            SAXParser parser = factory.newSAXParser();
+
+            BufferedReader infile = IO.openReader(tmpFile.getPath());
+            QHostHandler h = new QHostHandler();
+            parser.parse(new InputSource(infile), h);
+            infile.close();
+	    
+            tmpFile.delete();
+
+            return h.hosts;
+        }
+    }
+
     /**
        submit a new job
     */
@@ -197,6 +341,13 @@ public class GridEngine {
         return QStat.getJobs();
     }
 
+    /**
+       get load and memory of all execution hosts
+    */
+    final public static Vector<HostStatus> getHosts() throws Exception {
+        return QHost.getHosts();
+    }
+
     final public static void main(String argv[]) {
         try {
             Vector<JobStatus> jobs = getJobs();
@@ -0,0 +1,188 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.local;
+
+import java.io.*;
+import java.util.*;
+
+/**
+   Launches JobDaemons through Grid Engine, and reads host load and
+   memory from qhost.  The script submitted is set by
+   queue_daemon.command in scop.properties, and the hosts used by
+   queue_daemon.hosts (a comma-separated list; by default, all
+   execution hosts).  Cleanup jobs go to the hosts in
+   queue_daemon.hosts, or if it isn't set, to the hosts daemons
+   have run on since the last cleanup.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class GridEngineLauncher implements JobLauncher {
+    final public static String DEFAULT_COMMAND = "/lab/proj/astral/bin/scop_job_daemon.sh";
+    final public static String CLEANUP_COMMAND = "/lab/proj/astral/bin/cleanup_host.sh";
+
+    private String command;
+    private String jobName;
+    private HashSet<String> hostNames;
+
+    /**
+       Grid Engine jobs and hosts, as of the last update()
+    */
+    private Vector<GridEngine.JobStatus> jobs = new Vector<GridEngine.JobStatus>();
+    private Vector<GridEngine.HostStatus> hostStatus = new Vector<GridEngine.HostStatus>();
+
+    /**
+       CPUs on each host daemons have run on since the last cleanup
+    */
+    private HashMap<String,Integer> usedHosts = new HashMap<String,Integer>();
+
+    public GridEngineLauncher() {
+        command = SCOP.getProperty("queue_daemon.command");
+        if (command == null)
+            command = DEFAULT_COMMAND;
+        jobName = new File(command).getName();
+        String s = SCOP.getProperty("queue_daemon.hosts");
+        if (s != null) {
+            hostNames = new HashSet<String>();
+            for (String host : s.split(","))
+                if (host.trim().length() > 0)
+                    hostNames.add(host.trim());
+        }
+    }
+
+    /**
+       host a running Grid Engine job is on, or null
+    */
+    private static String getHost(GridEngine.JobStatus j) {
+        if (!j.state.equals("r"))
+            return null;
+        int pos = j.queue.indexOf('@');
+        if (pos == -1)
+            return null;
+        return j.queue.substring(pos+1);
+    }
+
+    final public void update() throws Exception {
+        jobs = GridEngine.getJobs();
+        hostStatus = GridEngine.getHosts();
+    }
+
+    final public Vector<Host> getHosts() throws Exception {
+        HashMap<String,Integer> nDaemons = new HashMap<String,Integer>();
+        for (GridEngine.JobStatus j : jobs) {
+            String host = getHost(j);
+            if ((host == null) || (!j.name.equals(jobName)))
+                continue;
+            Integer n = nDaemons.get(host);
+            nDaemons.put(host, new Integer(n == null ? 1 : n.intValue()+1));
+        }
+
+        Vector<Host> rv = new Vector<Host>();
+        for (GridEngine.HostStatus hs : hostStatus) {
+            if ((hostNames != null) && (!hostNames.contains(hs.name)))
+                continue;
+            // hosts that are down don't report their load
+            if ((hs.nProc < 1) || (hs.load < 0.0))
+                continue;
+            Host h = new Host();
+            h.name = hs.name;
+            h.cpus = hs.nProc;
+            h.load = hs.load;
+            h.memoryMB = hs.memTotalMB;
+            if ((hs.memTotalMB < 0) || (hs.memUsedMB < 0))
+                h.freeMemoryMB = -1;
+            else
+                h.freeMemoryMB = hs.memTotalMB - hs.memUsedMB;
+            Integer n = nDaemons.get(hs.name);
+            h.nDaemons = (n == null ? 0 : n.intValue());
+            if (h.nDaemons > 0)
+                usedHosts.put(h.name, new Integer(h.cpus));
+            rv.add(h);
+        }
+        return rv;
+    }
+
+    final public int getWaiting() throws Exception {
+        int rv = 0;
+        for (GridEngine.JobStatus j : jobs)
+            if ((j.name.equals(jobName)) && (j.state.equals("qw")))
+                rv++;
+        return rv;
+    }
+
+    final public void launch(int n) throws Exception {
+        for (int i=0; i<n; i++)
+            GridEngine.submit(command);
+    }
+
+    /**
+       checks qstat again, so daemons that have started since the
+       last update aren't deleted
+    */
+    final public int cancelWaiting(int n) throws Exception {
+        int rv = 0;
+        for (GridEngine.JobStatus j : GridEngine.getJobs()) {
+            if (rv >= n)
+                break;
+            if ((j.name.equals(jobName)) && (j.state.equals("qw"))) {
+                j.delete();
+                rv++;
+            }
+        }
+        return rv;
+    }
+
+    final public void cleanup() throws Exception {
+        // delete old cleanup jobs that haven't run yet
+        String cleanupName = new File(CLEANUP_COMMAND).getName();
+        for (GridEngine.JobStatus j : GridEngine.getJobs()) {
+            if (j.name.equals(cleanupName))
+                j.delete();
+        }
+
+        // submit new jobs, each taking all of a host
+        HashMap<String,Integer> hosts = usedHosts;
+        if (hostNames != null) {
+            hosts = new HashMap<String,Integer>();
+            for (GridEngine.HostStatus hs : hostStatus)
+                if ((hostNames.contains(hs.name)) && (hs.nProc > 0))
+                    hosts.put(hs.name, new Integer(hs.nProc));
+        }
+        String[] parms = new String[8];
+        parms[0] = "-l";
+        parms[2] = "-pe";
+        parms[3] = "serial";
+        parms[5] = "-p";
+        parms[6] = "16";
+        parms[7] = CLEANUP_COMMAND;
+        for (String host : hosts.keySet()) {
+            parms[1] = "hostname="+host;
+            parms[4] = hosts.get(host).toString();
+            GridEngine.submit(parms);
+        }
+        usedHosts = new HashMap<String,Integer>();
+    }
+}
@@ -36,11 +36,12 @@ import org.strbio.local.*;
    hmmscan are in your path.
    <p>
    <pre>
+   Version 3.1, 10/17/26 - saves hits with BulkWriter
    Version 3.0, 7/20/12 - updated to deal with HMMER3
    Version 2.0, 9/23/11 - updated to save gaps, if requested
    Version 1.0, 11/26/08 - based on gov.lbl.scop.app.Blast 1.5
    </pre>
-   @version 3.0, 7/20/12
+   @version 3.1, 10/17/26
    @author JMC
 */
 public class HMMER extends Program {
@@ -74,7 +75,9 @@ public class HMMER extends Program {
         if (outFile != null)
             os = new GZIPOutputStream(new FileOutputStream(outFile.getPath()));
         setOutput(os);
+        long t = JobMetrics.startTool();
         run(inputs, null, baseDir);
+        JobMetrics.endTool(t);
         if (os != null) {
             os.flush();
             os.close();
@@ -123,13 +126,51 @@ public class HMMER extends Program {
        in given table.  Does not close stmt.  releaseID refers
        to the Pfam release if positive and the SCOP release (for
        ASTEROIDS) if negative.  Saves gaps of at least minGapLength
-       (0 = don't save)
+       (0 = don't save).  Hits are buffered and written in bulk
+       once all output has been read, so nothing is saved if the
+       output can't be parsed; a db error while writing can leave
+       some batches saved unless the caller is in a transaction.
     */
     final public void processOutput(Statement stmt,
                                     File outFile,
                                     int seqID,
                                     int releaseID,
                                     int minGapLength) throws Exception {
+        String tableName = "astral_seq_hmm_";
+        if (releaseID <= -1)
+            tableName += "asteroids";
+        else if (releaseID == 0)
+            throw new IllegalArgumentException();
+        else
+            tableName += "pfam";
+
+        BulkWriter hitWriter = new BulkWriter(tableName, 9);
+        hitWriter.setAutoFlush(false);
+        BulkWriter gapWriter = null;
+        if (minGapLength > 0)
+            gapWriter = hitWriter.newChild(tableName+"_gap", 4, 1);
+
+        readOutput(stmt,
+                   hitWriter,
+                   gapWriter,
+                   outFile,
+                   seqID,
+                   releaseID,
+                   minGapLength);
+        hitWriter.flush();
+    }
+
+    /**
+       Read HMMER output, adding hits and gaps to the writers.
+       Hits are kept track of by their row number in hitWriter.
+    */
+    private void readOutput(Statement stmt,
+                            BulkWriter hitWriter,
+                            BulkWriter gapWriter,
+                            File outFile,
+                            int seqID,
+                            int releaseID,
+                            int minGapLength) throws Exception {
         // read in the output
         if (!outFile.canRead())
             throw new Exception("no HMMER output");
@@ -144,13 +185,6 @@ public class HMMER extends Program {
         Vector<Integer> hits = null;
         Vector<Integer> lengths = null;
         Vector<Integer> starts = null;
-        String tableName = "astral_seq_hmm_";
-        if (releaseID <= -1)
-            tableName += "asteroids";
-        else if (releaseID == 0)
-            throw new IllegalArgumentException();
-        else
-            tableName += "pfam";
 
         if (minGapLength > 0) {
             hits = new Vector<Integer>();
@@ -250,20 +284,17 @@ public class HMMER extends Program {
                                 log10E += Math.log(coef)/Math.log(10.0);
                             }
                         }
-                        stmt.executeUpdate("insert into "+tableName+" values (NULL, "+
-                                           seqID+", "+
-                                           hmmID+", "+
-                                           log10E+", "+
-                                           score+", "+
-                                           start+", "+
-                                           l+", 0, "+
-                                           hLength+")",
-                                           Statement.RETURN_GENERATED_KEYS);
+                        int hitRow = hitWriter.add(null,
+                                                   new Integer(seqID),
+                                                   new Integer(hmmID),
+                                                   new Double(log10E),
+                                                   new Double(score),
+                                                   new Integer(start),
+                                                   new Integer(l),
+                                                   new Integer(0),
+                                                   new Integer(hLength));
                         if (minGapLength > 0) {
-                            ResultSet rs = stmt.getGeneratedKeys();
-                            rs.next();
-                            hits.add(new Integer(rs.getInt(1)));
-                            rs.close();
+                            hits.add(new Integer(hitRow));
                             lengths.add(new Integer(l));
                             starts.add(new Integer(start));
                         }
@@ -286,7 +317,7 @@ public class HMMER extends Program {
                 for (int j=0; j<nAlignments; j++) {
                     String allQuery = "";
                     boolean done = false;
-                    int hitID = hits.get(j).intValue();
+                    int hitRow = hits.get(j).intValue();
                     int length1 = lengths.get(j).intValue();
                     int start1 = starts.get(j).intValue();
                     while (!done) {
@@ -296,7 +327,7 @@ public class HMMER extends Program {
                             buffer = infile.readLine();
                         } while (buffer.length() > 0);
 
-                        if (hitID != 0) {
+                        if (hitRow != 0) {
                             int lastQ = queryBuffer.length()-1;
                             int firstQ = 6;
                             while ((firstQ < lastQ-1) &&
@@ -324,7 +355,7 @@ public class HMMER extends Program {
                             done = true;
                     }
 
-                    if (hitID > 0) {
+                    if (hitRow > 0) {
                         // check both records to be sure length matches
                         int length1b = allQuery.length();
                         int length1c = 0;
@@ -333,7 +364,7 @@ public class HMMER extends Program {
                                 length1c++;
                         }
                         if (length1c != length1)
-                            throw new Exception("Query error: "+seqID+" "+hitID+" "+allQuery+" "+length1+" vs "+length1c);
+                            throw new Exception("Query error: "+seqID+" "+hitRow+" "+allQuery+" "+length1+" vs "+length1c);
 
                         // save gaps
                         int queryPos = start1;
@@ -348,10 +379,11 @@ public class HMMER extends Program {
                             }
                             else {
                                 if (gapLength >= minGapLength) {
-                                    stmt.executeUpdate("insert into "+tableName+"_gap values (NULL, "+
-                                                       hitID+", "+
-                                                       gapStart+", "+
-                                                       gapLength+")");
+                                    gapWriter.addChild(hitRow,
+                                                       null,
+                                                       null,
+                                                       new Integer(gapStart),
+                                                       new Integer(gapLength));
                                 }
                                 gapLength = 0;
                             }
@@ -433,21 +465,17 @@ public class HMMER extends Program {
                             start = StringUtil.atoi(st.nextToken()) - 1;
                             l = StringUtil.atoi(st.nextToken()) - start;
 			
-                            stmt.executeUpdate("insert into "+tableName+" values (NULL, "+
-                                               seqID+", "+
-                                               hmmID+", "+
-                                               log10E+", "+
-                                               score+", "+
-                                               start+", "+
-                                               l+", "+
-                                               hStart+", "+
-                                               hLength+")",
-                                               Statement.RETURN_GENERATED_KEYS);
+                            int hitRow = hitWriter.add(null,
+                                                       new Integer(seqID),
+                                                       new Integer(hmmID),
+                                                       new Double(log10E),
+                                                       new Double(score),
+                                                       new Integer(start),
+                                                       new Integer(l),
+                                                       new Integer(hStart),
+                                                       new Integer(hLength));
                             if (minGapLength > 0) {
-                                ResultSet rs = stmt.getGeneratedKeys();
-                                rs.next();
-                                hits.add(new Integer(rs.getInt(1)));
-                                rs.close();
+                                hits.add(new Integer(hitRow));
                                 lengths.add(new Integer(l));
                                 starts.add(new Integer(start));
                             }
@@ -464,7 +492,7 @@ public class HMMER extends Program {
 
                     int nAlignments = hits.size();
                     for (int j=0; j<nAlignments; j++) {
-                        int hitID = hits.get(j).intValue();
+                        int hitRow = hits.get(j).intValue();
                         int length1 = lengths.get(j).intValue();
                         int start1 = starts.get(j).intValue();
 
@@ -477,7 +505,7 @@ public class HMMER extends Program {
                             buffer = infile.readLine();
                         } while (buffer.length() > 0);
 
-                        if (hitID != 0) {
+                        if (hitRow != 0) {
                             int lastQ = queryBuffer.length()-1;
                             int firstQ = 6;
                             while ((firstQ < lastQ-1) &&
@@ -499,7 +527,7 @@ public class HMMER extends Program {
                             }
                         }
 
-                        if (hitID > 0) {
+                        if (hitRow > 0) {
                             // check both records to be sure length matches
                             int length1b = allQuery.length();
                             int length1c = 0;
@@ -508,7 +536,7 @@ public class HMMER extends Program {
                                     length1c++;
                             }
                             if (length1c != length1)
-                                throw new Exception("Query error: "+seqID+" "+hitID+" "+allQuery+" "+length1+" vs "+length1c);
+                                throw new Exception("Query error: "+seqID+" "+hitRow+" "+allQuery+" "+length1+" vs "+length1c);
 
                             // save gaps
                             int queryPos = start1;
@@ -523,10 +551,11 @@ public class HMMER extends Program {
                                 }
                                 else {
                                     if (gapLength >= minGapLength) {
-                                        stmt.executeUpdate("insert into "+tableName+"_gap values (NULL, "+
-                                                           hitID+", "+
-                                                           gapStart+", "+
-                                                           gapLength+")");
+                                        gapWriter.addChild(hitRow,
+                                                           null,
+                                                           null,
+                                                           new Integer(gapStart),
+                                                           new Integer(gapLength));
                                     }
                                     gapLength = 0;
                                 }
@@ -0,0 +1,89 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.local;
+
+import java.util.*;
+
+/**
+   Starts JobDaemons somewhere, for QueueDaemon, and reports the
+   load on the hosts where they run.  GridEngineLauncher submits
+   them to Grid Engine; LocalLauncher runs them on this host.
+*/
+public interface JobLauncher {
+    /**
+       a host where daemons can run
+    */
+    public static class Host {
+        public String name;
+        public int cpus;
+
+        /**
+           load average, or -1 if not known
+        */
+        public double load;
+
+        /**
+           total and free memory, or -1 if not known
+        */
+        public long memoryMB;
+        public long freeMemoryMB;
+
+        /**
+           daemons running there now
+        */
+        public int nDaemons;
+    }
+
+    /**
+       read the current state of hosts and daemons, once per poll;
+       getHosts() and getWaiting() report what was read
+    */
+    public void update() throws Exception;
+
+    /**
+       hosts available to run daemons, with their load at the last
+       update()
+    */
+    public Vector<Host> getHosts() throws Exception;
+
+    /**
+       number of daemons started but not yet running on any host,
+       at the last update()
+    */
+    public int getWaiting() throws Exception;
+
+    /**
+       start n more daemons
+    */
+    public void launch(int n) throws Exception;
+
+    /**
+       cancel up to n daemons that are waiting to run; returns the
+       number cancelled
+    */
+    public int cancelWaiting(int n) throws Exception;
+
+    /**
+       clean up temporary files on the hosts daemons have run on
+    */
+    public void cleanup() throws Exception;
+}
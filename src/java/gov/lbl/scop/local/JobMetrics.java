@@ -0,0 +1,279 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.local;
+
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+
+/**
+   Metrics for one run of a job: how long it waited in the queue,
+   its run time, CPU time, the daemon's peak RSS, time spent in the
+   db and in external tools, and why it failed, if it did.
+   JobDaemon writes them to job_metrics in batches, and adds them to
+   per-day, per-type histograms in job_metrics_histogram, bucketed
+   by powers of 2 (bucket i holds values under 2^i ms, or MB for
+   peak RSS) as in SQLStats.  JobMetricsReport summarizes them.
+   <p>
+   DB and tool time are kept per thread: SQLStats adds the time of
+   each statement (so db.sql_stats must be on, which JobDaemon
+   does), and code that runs external tools brackets them with
+   startTool() and endTool().  CPU time is for the job's own
+   thread, not external tools.  Peak RSS is the daemon's high
+   water mark when the job finished, so it's only the job's own
+   when the daemon runs one job at a time.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class JobMetrics {
+    /**
+       number of histogram buckets
+    */
+    final public static int N_BUCKETS = 32;
+
+    /**
+       failure categories
+    */
+    final public static String FAILURE_NONE = "none";
+    final public static String FAILURE_TIMEOUT = "timeout";
+    final public static String FAILURE_DB = "db";
+    final public static String FAILURE_IO = "io";
+    final public static String FAILURE_INTERRUPTED = "interrupted";
+    final public static String FAILURE_ARGS = "args";
+    final public static String FAILURE_OTHER = "other";
+
+    /**
+       metrics kept in histograms, and their columns in job_metrics
+    */
+    final public static String[] METRICS = {"queue_wait_ms",
+                                            "run_ms",
+                                            "cpu_ms",
+                                            "peak_rss_mb",
+                                            "db_ms",
+                                            "tool_ms"};
+
+    public int jobID;
+    public int jobTypeID;
+    public String host;
+
+    /**
+       values of METRICS, in order; -1 if not known
+    */
+    public long[] values = new long[METRICS.length];
+
+    public String failure = FAILURE_NONE;
+
+    public JobMetrics() {
+        Arrays.fill(values, -1);
+    }
+
+    /**
+       db and tool time in the current thread, in ns
+    */
+    final private static ThreadLocal<long[]> threadNS = new ThreadLocal<long[]>() {
+        protected long[] initialValue() {
+            return new long[2];
+        }
+    };
+
+    /**
+       start counting db and tool time in the current thread
+    */
+    final public static void startThread() {
+        long[] ns = threadNS.get();
+        ns[0] = 0;
+        ns[1] = 0;
+    }
+
+    /**
+       db time so far in the current thread, in ns
+    */
+    final public static long getThreadDBNS() {
+        return threadNS.get()[0];
+    }
+
+    /**
+       tool time so far in the current thread, in ns
+    */
+    final public static long getThreadToolNS() {
+        return threadNS.get()[1];
+    }
+
+    /**
+       add db time to the current thread
+    */
+    final public static void addDBNS(long ns) {
+        threadNS.get()[0] += ns;
+    }
+
+    /**
+       call before running an external tool; returns the time to
+       pass to endTool()
+    */
+    final public static long startTool() {
+        return System.nanoTime();
+    }
+
+    /**
+       call after running an external tool
+    */
+    final public static void endTool(long start) {
+        threadNS.get()[1] += System.nanoTime() - start;
+    }
+
+    /**
+       peak RSS of this process, in MB, or -1 if not known
+    */
+    final public static long getPeakRSSMB() {
+        try {
+            BufferedReader infile = new BufferedReader(new FileReader("/proc/self/status"));
+            String buffer;
+            long rv = -1;
+            while ((buffer = infile.readLine()) != null) {
+                if (buffer.startsWith("VmHWM:")) {
+                    String[] fields = buffer.substring(6).trim().split("\\s+");
+                    rv = Long.parseLong(fields[0]) / 1024L;
+                    break;
+                }
+            }
+            infile.close();
+            return rv;
+        }
+        catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+       category of failure for an exception
+    */
+    final public static String categorize(Throwable e) {
+        if (e == null)
+            return FAILURE_NONE;
+        if (e instanceof SQLException)
+            return FAILURE_DB;
+        if (e instanceof IOException)
+            return FAILURE_IO;
+        if (e instanceof InterruptedException)
+            return FAILURE_INTERRUPTED;
+        if ((e instanceof NumberFormatException) ||
+            (e instanceof ArrayIndexOutOfBoundsException) ||
+            (e instanceof IllegalArgumentException))
+            return FAILURE_ARGS;
+        return FAILURE_OTHER;
+    }
+
+    /**
+       histogram bucket for a value
+    */
+    final public static int getBucket(long value) {
+        int rv = 64 - Long.numberOfLeadingZeros(value);
+        if (rv >= N_BUCKETS)
+            rv = N_BUCKETS - 1;
+        return rv;
+    }
+
+    /**
+       add the metrics tables, if they aren't there already
+    */
+    final public static void addTables() throws SQLException {
+        Statement stmt = LocalSQL.createStatement();
+        String s = "create table if not exists job_metrics (id int unsigned not null auto_increment primary key, job_id int unsigned not null, job_type_id int unsigned not null, host varchar(64), time_finished datetime not null";
+        for (String metric : METRICS)
+            s += ", "+metric+" bigint default null";
+        s += ", failure varchar(16) not null, index (job_id), index (job_type_id, time_finished))";
+        stmt.executeUpdate(s);
+        stmt.executeUpdate("create table if not exists job_metrics_histogram (day date not null, job_type_id int unsigned not null, metric varchar(16) not null, bucket tinyint unsigned not null, n bigint not null, total bigint not null, primary key (day, job_type_id, metric, bucket))");
+        stmt.close();
+    }
+
+    /**
+       Writes metrics for some jobs to job_metrics, and adds them
+       to today's histograms.
+    */
+    final public static void write(Collection<JobMetrics> metrics) throws Exception {
+        if (metrics.size() == 0)
+            return;
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        BulkWriter w = new BulkWriter("job_metrics", METRICS.length+6);
+
+        // (type, metric, bucket) -> count and total
+        TreeMap<String,long[]> histogram = new TreeMap<String,long[]>();
+        for (JobMetrics m : metrics) {
+            Object[] row = new Object[METRICS.length+6];
+            row[0] = null;
+            row[1] = new Integer(m.jobID);
+            row[2] = new Integer(m.jobTypeID);
+            row[3] = m.host;
+            row[4] = now;
+            for (int i=0; i<METRICS.length; i++) {
+                long v = m.values[i];
+                if (v < 0)
+                    continue;
+                row[i+5] = new Long(v);
+                String key = m.jobTypeID+",'"+METRICS[i]+"',"+getBucket(v);
+                long[] h = histogram.get(key);
+                if (h == null) {
+                    h = new long[2];
+                    histogram.put(key, h);
+                }
+                h[0]++;
+                h[1] += v;
+            }
+            row[METRICS.length+5] = m.failure;
+            w.add(row);
+        }
+
+        LocalSQL.setAutoCommit(false);
+        try {
+            w.flush();
+            if (histogram.size() > 0) {
+                StringBuilder s = new StringBuilder("insert into job_metrics_histogram (day, job_type_id, metric, bucket, n, total) values ");
+                boolean first = true;
+                for (String key : histogram.keySet()) {
+                    long[] h = histogram.get(key);
+                    if (!first)
+                        s.append(",");
+                    s.append("(curdate(),"+key+","+h[0]+","+h[1]+")");
+                    first = false;
+                }
+                s.append(" on duplicate key update n=n+values(n), total=total+values(total)");
+                Statement stmt = LocalSQL.createStatement();
+                stmt.executeUpdate(s.toString());
+                stmt.close();
+            }
+            LocalSQL.commit();
+        }
+        catch (Exception e) {
+            LocalSQL.rollback();
+            throw e;
+        }
+        finally {
+            LocalSQL.setAutoCommit(true);
+        }
+    }
+}
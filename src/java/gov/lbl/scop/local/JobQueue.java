@@ -0,0 +1,532 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.local;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+   Claims jobs from the job table without table locks.  Jobs are
+   taken in order of priority, then number of failures, then id,
+   in one statement; with the job_claim index (see
+   addClaimIndex()), this reads only the rows claimed, however the
+   queue is spread over priorities and failure counts.  By default, candidate rows are locked with
+   "select ... for update skip locked" (MySQL 8.0 or later), so
+   daemons claiming at the same time skip each other's rows rather
+   than waiting for them.  Setting job_queue.claim=optimistic in
+   scop.properties instead reads candidates without locking, and
+   claims each with a conditional update that only succeeds if no
+   one else got there first; this works on older servers.
+   <p>
+   Finished jobs are moved to the done table in batches, each in
+   one transaction, again without table locks.  A job stays in the
+   job table, marked as running, until it has been moved, so if a
+   daemon dies before moving its finished jobs, they are restarted
+   with the other crashed jobs and run again rather than lost.
+   <p>
+   Jobs that search a large database (HMMER, BLAST and CDD) carry
+   the name of the database as a data key.  Daemons record which
+   keys their host has used recently (and so are probably still in
+   its page cache), in the job_warm_key table, and prefer to claim
+   jobs with those keys; after them, jobs with no key, or whose
+   key isn't warm on any host.  Jobs warm on other hosts are only
+   taken by a daemon that is idle.  Keys stay warm for
+   job_queue.warm_seconds (default WARM_SECONDS).
+   <p>
+   A claim can limit how many jobs of each type it takes, so a
+   daemon only claims jobs it can start right away; jobs it can't
+   start after all should be given back with release().
+   <p>
+   Statements are run on the current thread's connection.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class JobQueue {
+    /**
+       lock candidate rows, skipping those locked by others
+    */
+    final public static int CLAIM_SKIP_LOCKED = 0;
+
+    /**
+       claim candidate rows one at a time with conditional updates
+    */
+    final public static int CLAIM_OPTIMISTIC = 1;
+
+    /**
+       how long after a host last used a data key it's assumed to
+       still be cached
+    */
+    final public static int WARM_SECONDS = 3600;
+
+    /**
+       when claiming with limits by type, how many candidates to
+       read for each job wanted
+    */
+    final public static int CANDIDATES_PER_JOB = 4;
+
+    /**
+       the queue used by JobDaemon
+    */
+    final public static JobQueue DEFAULT = new JobQueue("job", "job_done");
+
+    /**
+       result of a claim
+    */
+    public static class Claim {
+        /**
+           ids of the jobs claimed, which may be empty
+        */
+        public Vector<Integer> ids = new Vector<Integer>();
+
+        /**
+           were there no unclaimed jobs left, of any type?
+        */
+        public boolean queueEmpty = false;
+    }
+
+    private String jobTable;
+    private String doneTable;
+    private int claimMode;
+    private int warmSeconds;
+
+    /**
+       queue stored in given tables, which must have the same
+       columns as job and job_done
+    */
+    public JobQueue(String jobTable, String doneTable) {
+        this.jobTable = jobTable;
+        this.doneTable = doneTable;
+        if ("optimistic".equals(SCOP.getProperty("job_queue.claim")))
+            claimMode = CLAIM_OPTIMISTIC;
+        else
+            claimMode = CLAIM_SKIP_LOCKED;
+        String s = SCOP.getProperty("job_queue.warm_seconds");
+        if (s != null)
+            warmSeconds = Integer.parseInt(s.trim());
+        else
+            warmSeconds = WARM_SECONDS;
+    }
+
+    final public String getJobTable() {
+        return jobTable;
+    }
+
+    final public String getDoneTable() {
+        return doneTable;
+    }
+
+    final public int getClaimMode() {
+        return claimMode;
+    }
+
+    final public void setClaimMode(int mode) {
+        claimMode = mode;
+    }
+
+    /**
+       where clause for unclaimed jobs, not of the given types
+       (a comma-separated list, or null)
+    */
+    private String unclaimed(String skipTypes) {
+        String rv = "running is null";
+        if ((skipTypes != null) && (skipTypes.length() > 0))
+            rv += " and job_type_id not in ("+skipTypes+")";
+        return rv;
+    }
+
+    /**
+       add the covering index used to claim jobs to the job table,
+       if it isn't there already
+    */
+    final public void addClaimIndex() throws SQLException {
+        Statement stmt = LocalSQL.createStatement();
+        ResultSet rs = stmt.executeQuery("show index from "+jobTable+" where Key_name='job_claim'");
+        boolean found = rs.next();
+        rs.close();
+        if (!found)
+            stmt.executeUpdate("alter table "+jobTable+" add index job_claim (running, priority, n_failures, id, job_type_id)");
+        stmt.close();
+    }
+
+    /**
+       Adds the data_key column and an index for claiming jobs by
+       key to the job table, and the job_warm_key table, if they
+       aren't there already, then fills in keys for unclaimed jobs
+       that don't have them.
+    */
+    final public void addDataKeys() throws Exception {
+        Statement stmt = LocalSQL.createStatement();
+        ResultSet rs = stmt.executeQuery("show columns from "+jobTable+" like 'data_key'");
+        boolean found = rs.next();
+        rs.close();
+        if (!found)
+            stmt.executeUpdate("alter table "+jobTable+" add data_key varchar(64) default null, add index job_claim_key (running, data_key, priority, n_failures, id, job_type_id)");
+        stmt.executeUpdate("create table if not exists job_warm_key (host varchar(64) not null, data_key varchar(64) not null, time_used datetime not null, primary key (host, data_key), index (data_key, time_used))");
+
+        PreparedStatement update = LocalSQL.prepareStatement("update "+jobTable+" set data_key=? where id=?");
+        rs = stmt.executeQuery("select id, job_type_id, args from "+jobTable+" where running is null and data_key is null and job_type_id in (11,12,20,22)");
+        while (rs.next()) {
+            String key = getDataKey(rs.getInt(2), rs.getString(3));
+            if (key == null)
+                continue;
+            update.setString(1, key);
+            update.setInt(2, rs.getInt(1));
+            update.executeUpdate();
+        }
+        rs.close();
+        update.close();
+        stmt.close();
+    }
+
+    /**
+       Data key for a job: the search database it uses, or null
+       if it doesn't use one.
+    */
+    final public static String getDataKey(int jobTypeID,
+                                          String args) throws SQLException {
+        if (args == null)
+            return null;
+        String[] arg = args.split(" ");
+        try {
+            switch (jobTypeID) {
+            case 11:
+                String pfamRelease = DimensionCache.getPfamReleaseVersion(Integer.parseInt(arg[0]));
+                if (pfamRelease == null)
+                    return null;
+                return "Pfam-"+pfamRelease;
+            case 12:
+                String scopRelease = DimensionCache.getSCOPReleaseVersion(Integer.parseInt(arg[0]));
+                if (scopRelease == null)
+                    return null;
+                return "ASTEROIDS-"+scopRelease;
+            case 20:
+                // same directory as BlastSeqs uses
+                if (arg.length < 4)
+                    return null;
+                int sourceID = Integer.parseInt(arg[0]);
+                int styleID1 = Integer.parseInt(arg[1]);
+                int styleID2 = Integer.parseInt(arg[2]);
+                int scopReleaseID = Integer.parseInt(arg[3]);
+                scopRelease = "update";
+                if (scopReleaseID > 0) {
+                    scopRelease = DimensionCache.getSCOPReleaseVersion(scopReleaseID);
+                    if (scopRelease == null)
+                        return null;
+                }
+                String seqType = ((styleID2 == 1) ? "chain" : "domain");
+                if ((styleID1==1) && (styleID2!=1))
+                    seqType = "chain_domain";
+                String sourceType = ((sourceID == 1) ? "atom" : "seqres");
+                if (sourceID==4)
+                    sourceType = "seqres-tags";
+                return "blast-"+scopRelease+"/"+seqType+"/"+sourceType;
+            case 22:
+                return "CDD-"+Integer.parseInt(arg[0]);
+            }
+        }
+        catch (NumberFormatException e) {
+            // not a job we know how to key
+        }
+        return null;
+    }
+
+    /**
+       Records that a host has just used some data keys, with one
+       statement.
+    */
+    final public void markWarm(String host,
+                               Collection<String> dataKeys) throws SQLException {
+        if (dataKeys.size() == 0)
+            return;
+        StringBuilder sql = new StringBuilder("insert into job_warm_key (host, data_key, time_used) values ");
+        for (int i = 0; i < dataKeys.size(); i++)
+            sql.append(i > 0 ? ", " : "").append("(?, ?, now())");
+        sql.append(" on duplicate key update time_used=now()");
+        PreparedStatement stmt = LocalSQL.prepareStatement(sql.toString());
+        int i = 1;
+        for (String dataKey : dataKeys) {
+            stmt.setString(i++, host);
+            stmt.setString(i++, dataKey);
+        }
+        stmt.executeUpdate();
+        stmt.close();
+    }
+
+    /**
+       Claims up to limit jobs for owner, setting running to owner
+       and time_started to now.  Jobs of types in skipTypes (a
+       comma-separated list of job type ids, or null) are not
+       claimed.  If fewer jobs than asked for are claimed, also
+       checks whether any unclaimed jobs are left.
+    */
+    final public Claim claim(String owner,
+                             int limit,
+                             String skipTypes) throws Exception {
+        return claim(owner, limit, skipTypes, null, null, true);
+    }
+
+    /**
+       Claims jobs as above, preferring those whose data keys are
+       warm on host: first those, then jobs with no key or a key
+       not warm anywhere.  Only if neither finds anything, and
+       steal is set, are jobs warm on other hosts claimed.  If host
+       is null, jobs are claimed without regard to their keys.
+       <p>
+       typeLimits, if not null, maps job type ids to the most
+       jobs of that type to claim; types not in it are only
+       limited by limit.
+    */
+    final public Claim claim(String owner,
+                             int limit,
+                             String skipTypes,
+                             Map<Integer,Integer> typeLimits,
+                             String host,
+                             boolean steal) throws Exception {
+        Claim rv = new Claim();
+        String where = unclaimed(skipTypes);
+        boolean claimedAll = true; // did the last pass claim from all jobs?
+        HashMap<Integer,Integer> room = null;
+        if ((typeLimits != null) && (typeLimits.size() > 0))
+            room = new HashMap<Integer,Integer>(typeLimits);
+        if (host == null)
+            rv.ids = claimWhere(owner, limit, room, where, null);
+        else {
+            String warm = "select data_key from job_warm_key where time_used > date_sub(now(), interval "+warmSeconds+" second)";
+            rv.ids = claimWhere(owner,
+                                limit,
+                                room,
+                                where+" and data_key in ("+warm+" and host = ?)",
+                                host);
+            if (rv.ids.size() < limit)
+                rv.ids.addAll(claimWhere(owner,
+                                         limit - rv.ids.size(),
+                                         room,
+                                         where+" and (data_key is null or data_key not in ("+warm+"))",
+                                         null));
+            if ((rv.ids.size() == 0) && (steal))
+                rv.ids = claimWhere(owner, limit, room, where, null);
+            else
+                claimedAll = false;
+        }
+        if (rv.ids.size() < limit) {
+            // jobs passed over for their type may still be waiting
+            if (((skipTypes == null) || (skipTypes.length() == 0)) &&
+                (room == null) &&
+                (claimedAll))
+                rv.queueEmpty = true;
+            else {
+                PreparedStatement stmt = LocalSQL.prepareCached("select id from "+jobTable+" where running is null limit 1");
+                ResultSet rs = stmt.executeQuery();
+                rv.queueEmpty = !rs.next();
+                rs.close();
+            }
+        }
+        return rv;
+    }
+
+    /**
+       claim up to limit jobs matching a where clause, which may
+       have one parameter, set to param.  If room isn't null, it
+       holds how many more jobs of some types may be claimed, and
+       is updated.
+    */
+    private Vector<Integer> claimWhere(String owner,
+                                       int limit,
+                                       HashMap<Integer,Integer> room,
+                                       String where,
+                                       String param) throws Exception {
+        if (claimMode == CLAIM_OPTIMISTIC)
+            return claimOptimistic(owner, limit, room, where, param);
+        else
+            return claimSkipLocked(owner, limit, room, where, param);
+    }
+
+    /**
+       can we claim one more job of a type?  If so, counts it
+       against the room left for its type.
+    */
+    private static boolean take(HashMap<Integer,Integer> room,
+                                int jobTypeID) {
+        if (room == null)
+            return true;
+        Integer r = room.get(new Integer(jobTypeID));
+        if (r == null)
+            return true;
+        if (r.intValue() < 1)
+            return false;
+        room.put(new Integer(jobTypeID), new Integer(r.intValue() - 1));
+        return true;
+    }
+
+    private Vector<Integer> claimSkipLocked(String owner,
+                                            int limit,
+                                            HashMap<Integer,Integer> room,
+                                            String where,
+                                            String param) throws Exception {
+        Vector<Integer> rv = new Vector<Integer>();
+        PreparedStatement select = LocalSQL.prepareCached("select id, job_type_id from "+jobTable+" where "+where+" order by priority, n_failures, id limit ? for update skip locked");
+        LocalSQL.setAutoCommit(false);
+        try {
+            // candidates not taken are unlocked on commit
+            int i = 1;
+            if (param != null)
+                select.setString(i++, param);
+            select.setInt(i, (room == null ? limit : limit*CANDIDATES_PER_JOB));
+            ResultSet rs = select.executeQuery();
+            while ((rs.next()) && (rv.size() < limit))
+                if (take(room, rs.getInt(2)))
+                    rv.add(new Integer(rs.getInt(1)));
+            rs.close();
+            if (rv.size() > 0) {
+                PreparedStatement update = LocalSQL.prepareStatement("update "+jobTable+" set running = ?, time_started = now() where id in ("+LocalSQL.makeInLists(rv, rv.size()).get(0)+")");
+                update.setString(1, owner);
+                update.executeUpdate();
+                update.close();
+            }
+            LocalSQL.commit();
+        }
+        catch (Exception e) {
+            LocalSQL.rollback();
+            throw e;
+        }
+        finally {
+            LocalSQL.setAutoCommit(true);
+        }
+        return rv;
+    }
+
+    private Vector<Integer> claimOptimistic(String owner,
+                                            int limit,
+                                            HashMap<Integer,Integer> room,
+                                            String where,
+                                            String param) throws Exception {
+        Vector<Integer> rv = new Vector<Integer>();
+        PreparedStatement update = LocalSQL.prepareCached("update "+jobTable+" set running = ?, time_started = now() where id = ? and running is null");
+        update.setString(1, owner);
+
+        // read a few more candidates than we need, since others
+        // may be claiming the same ones; if others got all of
+        // them, try again, so we only return nothing if there
+        // was nothing left to claim.
+        PreparedStatement select = LocalSQL.prepareCached("select id, job_type_id from "+jobTable+" where "+where+" order by priority, n_failures, id limit ?");
+        int i = 1;
+        if (param != null)
+            select.setString(i++, param);
+        select.setInt(i, limit*CANDIDATES_PER_JOB);
+        boolean lost;
+        do {
+            lost = false;
+            ResultSet rs = select.executeQuery();
+            while ((rs.next()) && (rv.size() < limit)) {
+                int jobTypeID = rs.getInt(2);
+                Integer r = (room == null ? null : room.get(new Integer(jobTypeID)));
+                if ((r != null) && (r.intValue() < 1))
+                    continue;
+                update.setInt(2, rs.getInt(1));
+                if (update.executeUpdate() == 1) {
+                    take(room, jobTypeID);
+                    rv.add(new Integer(rs.getInt(1)));
+                }
+                else
+                    lost = true;
+            }
+            rs.close();
+        } while ((rv.size() == 0) && (lost));
+        return rv;
+    }
+
+    /**
+       Gives back jobs claimed by owner that weren't started, so
+       they can be claimed again.
+    */
+    final public void release(Collection<Integer> jobIDs,
+                              String owner) throws SQLException {
+        for (String ids : LocalSQL.makeInLists(jobIDs, LocalSQL.IN_CHUNK_SIZE)) {
+            PreparedStatement stmt = LocalSQL.prepareStatement("update "+jobTable+" set running=null, time_started=null where running = ? and id in ("+ids+")");
+            stmt.setString(1, owner);
+            stmt.executeUpdate();
+            stmt.close();
+        }
+    }
+
+    /**
+       Records a failure.  If retry is set, the job is released
+       to be claimed again; otherwise it stays claimed, and should
+       be moved to the done table with finish().
+    */
+    final public void fail(int jobID,
+                           String status,
+                           int nFailures,
+                           boolean retry) throws SQLException {
+        PreparedStatement stmt;
+        if (retry)
+            stmt = LocalSQL.prepareCached("update "+jobTable+" set running=null, time_started=null, status = ?, n_failures = ? where id = ?");
+        else
+            stmt = LocalSQL.prepareCached("update "+jobTable+" set status = ?, n_failures = ? where id = ?");
+        stmt.setString(1, status);
+        stmt.setInt(2, nFailures);
+        stmt.setInt(3, jobID);
+        stmt.executeUpdate();
+    }
+
+    /**
+       Moves finished jobs to the done table as below, after
+       recording that host has just used the given data keys.
+    */
+    final public int finish(Collection<Integer> jobIDs,
+                            String host,
+                            Collection<String> warmKeys) throws Exception {
+        markWarm(host, warmKeys);
+        return finish(jobIDs);
+    }
+
+    /**
+       Moves finished jobs to the done table, with the current time
+       as their finish time.  Returns the number of jobs moved.
+    */
+    final public int finish(Collection<Integer> jobIDs) throws Exception {
+        int rv = 0;
+        Statement stmt = LocalSQL.createStatement();
+        for (String ids : LocalSQL.makeInLists(jobIDs, LocalSQL.IN_CHUNK_SIZE)) {
+            LocalSQL.setAutoCommit(false);
+            try {
+                rv += stmt.executeUpdate("insert into "+doneTable+" (select id, job_type_id, time_created, time_started, now(), target_id, args, n_failures, running, priority, status from "+jobTable+" where id in ("+ids+"))");
+                stmt.executeUpdate("delete from "+jobTable+" where id in ("+ids+")");
+                LocalSQL.commit();
+            }
+            catch (Exception e) {
+                LocalSQL.rollback();
+                throw e;
+            }
+            finally {
+                LocalSQL.setAutoCommit(true);
+            }
+        }
+        stmt.close();
+        return rv;
+    }
+}
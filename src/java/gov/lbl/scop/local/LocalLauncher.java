@@ -0,0 +1,157 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.local;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.InetAddress;
+import java.util.*;
+
+/**
+   Launches JobDaemons as processes on this host, without a DRM,
+   so one large machine can run the whole queue.  The script run
+   is set by queue_daemon.command in scop.properties; its output
+   goes to QueueDaemon's.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class LocalLauncher implements JobLauncher {
+    private String command;
+
+    /**
+       daemons started, which may have exited
+    */
+    private Vector<Process> processes = new Vector<Process>();
+
+    public LocalLauncher() {
+        command = SCOP.getProperty("queue_daemon.command");
+        if (command == null)
+            command = GridEngineLauncher.DEFAULT_COMMAND;
+    }
+
+    /**
+       forget daemons that have exited
+    */
+    private void prune() {
+        for (int i=0; i<processes.size(); i++) {
+            try {
+                processes.get(i).exitValue();
+                processes.remove(i--);
+            }
+            catch (IllegalThreadStateException e) {
+                // still running
+            }
+        }
+    }
+
+    /**
+       memory available for new processes, from MemAvailable in
+       /proc/meminfo, or -1 if not known.  Unlike the JVM's free
+       memory, this counts the page cache as available, since
+       JobDaemons rely on it to keep search databases cached.
+    */
+    final public static long getAvailableMemoryMB() {
+        try {
+            BufferedReader infile = new BufferedReader(new FileReader("/proc/meminfo"));
+            String buffer;
+            try {
+                while ((buffer = infile.readLine()) != null) {
+                    if (buffer.startsWith("MemAvailable:")) {
+                        String[] fields = buffer.substring(13).trim().split("\\s+");
+                        return Long.parseLong(fields[0]) / 1024L;
+                    }
+                }
+            }
+            finally {
+                infile.close();
+            }
+        }
+        catch (Exception e) {
+            // not Linux, or kernel too old
+        }
+        return -1;
+    }
+
+    final public void update() {
+        prune();
+    }
+
+    final public Vector<Host> getHosts() throws Exception {
+        Host h = new Host();
+        h.name = InetAddress.getLocalHost().getHostName();
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        h.cpus = os.getAvailableProcessors();
+        h.load = os.getSystemLoadAverage();
+        h.memoryMB = -1;
+        h.freeMemoryMB = -1;
+        try {
+            com.sun.management.OperatingSystemMXBean sunOS = (com.sun.management.OperatingSystemMXBean)os;
+            h.memoryMB = sunOS.getTotalPhysicalMemorySize() / 1048576L;
+        }
+        catch (Throwable e) {
+            // not available on this JVM
+        }
+        h.freeMemoryMB = getAvailableMemoryMB();
+        h.nDaemons = processes.size();
+        Vector<Host> rv = new Vector<Host>();
+        rv.add(h);
+        return rv;
+    }
+
+    /**
+       local daemons start at once, so none are ever waiting
+    */
+    final public int getWaiting() {
+        return 0;
+    }
+
+    final public void launch(int n) throws Exception {
+        for (int i=0; i<n; i++) {
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.redirectErrorStream(true);
+            pb.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+            processes.add(pb.start());
+        }
+    }
+
+    final public int cancelWaiting(int n) {
+        return 0;
+    }
+
+    /**
+       run the cleanup script here, and wait for it to finish
+    */
+    final public void cleanup() throws Exception {
+        if (!new File(GridEngineLauncher.CLEANUP_COMMAND).canExecute())
+            return;
+        ProcessBuilder pb = new ProcessBuilder(GridEngineLauncher.CLEANUP_COMMAND);
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        pb.start().waitFor();
+    }
+}
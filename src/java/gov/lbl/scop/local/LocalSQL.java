@@ -22,6 +22,8 @@
 package gov.lbl.scop.local;
 
 import gov.lbl.scop.util.RAF;
+import gov.lbl.scop.util.RafStore;
+import gov.lbl.scop.util.ScopTree;
 
 import java.sql.*;
 import java.util.*;
@@ -31,25 +33,74 @@ import org.strbio.util.StringUtil;
 /**
    Class to access local SQL database.
 
+   Each thread uses its own connection, borrowed from a pool
+   the first time it accesses the db; there are separate pools
+   for the RO and RW URLs.  Statements are timed by SQLStats,
+   if db.sql_stats=true.  RO connections are spread across all
+   the RO URLs (e.g., read replicas), according to db.ro_balance;
+   code that needs to read its own writes should do so between
+   beginReadYourWrites() and endReadYourWrites().  A thread whose
+   connection is to a replica that has since stalled or fallen
+   behind gets a new one on its next statement outside a
+   transaction.  Statements it still holds from the old
+   connection are closed, so code that keeps statements across
+   other db calls should get them again with prepareCached().
+   Only code that connects RO is balanced: JobDaemon, QueueDaemon
+   and most tools connect RW, to a single server.
+
    <pre>
+   Version 1.10, 10/17/26 - move threads off unhealthy replicas
+   Version 1.9, 10/17/26 - domainSeq reads RAF bodies from RafStore
+   Version 1.8, 10/17/26 - PDB code lookups can use PDBIndex
+   Version 1.7, 10/17/26 - level/history/release lookups use DimensionCache
+   Version 1.6, 10/17/26 - statements can be timed by SQLStats
+   Version 1.5, 10/17/26 - balance RO connections across replicas
+   Version 1.4, 10/17/26 - lookups use cached PreparedStatements
+   Version 1.3, 10/17/26 - per-thread connections from ConnectionPool
    Version 1.2, 9/13/11 - close all ResultSets
    Version 1.1, 11/17/10 - added code related to Notify
    Version 1.0, 8/7/8 - adapted from gov.lbl.pcap.LocalSQL
    </pre>
 
    @author JMC
-   @version 1.2, 9/13/11
+   @version 1.10, 10/17/26
 */
 public class LocalSQL {
     /**
-       Connection to the db
+       pool of connections for RO access
+    */
+    private static ConnectionPool roPool = null;
+
+    /**
+       pool of connections for RW access
+    */
+    private static ConnectionPool rwPool = null;
+
+    /**
+       pool used by threads that don't ask for a specific one;
+       set by the first call to connect() or connectRW()
+    */
+    private static ConnectionPool defaultPool = null;
+
+    /**
+       connection to the db used by each thread
     */
-    private static Connection con = null;
+    private static ThreadLocal<Connection> threadCon = new ThreadLocal<Connection>();
 
     /**
-       statement to access the db
+       pool each thread's connection came from
     */
-    private static Statement stmt = null;
+    private static ThreadLocal<ConnectionPool> threadPool = new ThreadLocal<ConnectionPool>();
+
+    /**
+       cache of prepared statements on each thread's connection
+    */
+    private static ThreadLocal<StatementCache> threadCache = new ThreadLocal<StatementCache>();
+
+    /**
+       pool each thread was using before beginReadYourWrites()
+    */
+    private static ThreadLocal<ConnectionPool> savedPool = new ThreadLocal<ConnectionPool>();
 
     /**
        database URLs for RO access, separated by ;
@@ -61,27 +112,54 @@ public class LocalSQL {
     */
     private static String rwURLs = null;
 
+    /**
+       read an integer property, or return default if not set
+    */
+    private static int getIntProperty(String key, int def) {
+        String value = SCOP.getProperty(key);
+        if (value == null)
+            return def;
+        try {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    /**
+       make a pool using the size limits in scop.properties
+    */
+    private static ConnectionPool makePool(String name, String urls) {
+        return new ConnectionPool(name,
+                                  urls,
+                                  getIntProperty("db.pool.max_"+name,
+                                                 ConnectionPool.DEFAULT_MAX_SIZE),
+                                  getIntProperty("db.pool.wait_seconds",
+                                                 ConnectionPool.DEFAULT_WAIT_SECONDS));
+    }
+
     /**
        connect to db using a particular URL or set of URLs separated by ;
+       The first pool set up becomes the default for all threads.
     */
     final public static void connect(String urls) {
-        if ((con == null) || (stmt == null)) {
-            try {
-                Class.forName("org.gjt.mm.mysql.Driver").newInstance();
-                String[] url = urls.split(";");
-                for (int i = 0; i < url.length; i++) {
-                    try {
-                        con = DriverManager.getConnection(url[i]);
-                    } catch (Exception e2) {
-                        con = null;
-                    }
-                    if (con != null) i = url.length;
-                }
-                stmt = con.createStatement();
-            } catch (Exception e) {
-                System.err.println("Exception when attempting to make a DB connection.  Is MySQL connector in your classpath?  " + e.getMessage());
+        synchronized (LocalSQL.class) {
+            if (defaultPool == null) {
+                if (urls.equals(roURLs))
+                    defaultPool = getRO();
+                else if (urls.equals(rwURLs))
+                    defaultPool = getRW();
+                else
+                    defaultPool = makePool("url", urls);
             }
         }
+        try {
+            getConnection();
+        }
+        catch (Exception e) {
+            System.err.println("Exception when attempting to make a DB connection.  Is MySQL connector in your classpath?  " + e.getMessage());
+        }
     }
 
     /**
@@ -106,13 +184,182 @@ public class LocalSQL {
         connect(rwURLs);
     }
 
+    /**
+       get pool for RO access
+    */
+    final synchronized public static ConnectionPool getRO() {
+        if (roPool == null) {
+            if (roURLs == null)
+                roURLs = SCOP.getProperty("db.ro_urls");
+            if (roURLs == null)
+                roURLs = "jdbc:mysql://localhost/scop?user=anonymous";
+            String balance = SCOP.getProperty("db.ro_balance");
+            int b = ConnectionPool.BALANCE_LEAST_OUTSTANDING;
+            if ("first".equals(balance))
+                b = ConnectionPool.BALANCE_FIRST;
+            else if ("round_robin".equals(balance))
+                b = ConnectionPool.BALANCE_ROUND_ROBIN;
+            roPool = new ConnectionPool("ro",
+                                        roURLs,
+                                        getIntProperty("db.pool.max_ro",
+                                                       ConnectionPool.DEFAULT_MAX_SIZE),
+                                        getIntProperty("db.pool.wait_seconds",
+                                                       ConnectionPool.DEFAULT_WAIT_SECONDS),
+                                        b);
+            if (roURLs.indexOf(';') > -1)
+                roPool.startHealthChecks(getIntProperty("db.replica_check_seconds", 30),
+                                         getIntProperty("db.replica_max_lag", 60));
+        }
+        return roPool;
+    }
+
+    /**
+       get pool for RW access
+    */
+    final synchronized public static ConnectionPool getRW() {
+        if (rwPool == null) {
+            if (rwURLs == null)
+                rwURLs = SCOP.getProperty("db.rw_urls");
+            if (rwURLs == null)
+                rwURLs = "jdbc:mysql://localhost/scop?user=anonymous";
+            rwPool = makePool("rw", rwURLs);
+        }
+        return rwPool;
+    }
+
+    /**
+       get the default pool, connecting RO if nothing has been
+       set up yet
+    */
+    final synchronized private static ConnectionPool getDefaultPool() {
+        if (defaultPool == null)
+            defaultPool = getRO();
+        return defaultPool;
+    }
+
+    /**
+       get the connection used by the current thread, borrowing one
+       from the default pool if this thread doesn't have one yet.
+    */
+    final public static Connection getConnection() throws SQLException {
+        Connection con = threadCon.get();
+        if (con != null) {
+            // move off a server found unhealthy since this
+            // connection was borrowed, unless in a transaction
+            ConnectionPool pool = threadPool.get();
+            if ((pool.shouldMove(con)) && (con.getAutoCommit())) {
+                returnConnection();
+                con = pool.borrow();
+                threadCon.set(con);
+                threadPool.set(pool);
+            }
+        }
+        else {
+            ConnectionPool pool = getDefaultPool();
+            con = pool.borrow();
+            threadCon.set(con);
+            threadPool.set(pool);
+        }
+        return con;
+    }
+
+    /**
+       get the pool the current thread's connection comes from
+    */
+    final public static ConnectionPool getPool() {
+        ConnectionPool pool = threadPool.get();
+        if (pool == null)
+            pool = getDefaultPool();
+        return pool;
+    }
+
+    /**
+       have the current thread use a connection from a particular
+       pool (e.g., getRW() for a worker that writes), releasing any
+       connection it already holds.
+    */
+    final public static void usePool(ConnectionPool pool) throws SQLException {
+        if (threadPool.get() == pool)
+            return;
+        returnConnection();
+        threadCon.set(pool.borrow());
+        threadPool.set(pool);
+    }
+
+    /**
+       have the current thread use the RW pool until
+       endReadYourWrites(), so that reads see its own writes
+       rather than a replica that may be behind.
+    */
+    final public static void beginReadYourWrites() throws SQLException {
+        ConnectionPool rw = getRW();
+        ConnectionPool current = threadPool.get();
+        if (current == null)
+            current = getDefaultPool();
+        if ((current == rw) || (savedPool.get() != null))
+            return;
+        savedPool.set(current);
+        usePool(rw);
+    }
+
+    /**
+       go back to the pool used before beginReadYourWrites()
+    */
+    final public static void endReadYourWrites() throws SQLException {
+        ConnectionPool pool = savedPool.get();
+        if (pool == null)
+            return;
+        savedPool.remove();
+        usePool(pool);
+    }
+
+    /**
+       return the current thread's connection to its pool.  Threads
+       that do db work should call this when finished; connections held
+       by threads that exit without doing so are reclaimed eventually.
+    */
+    final public static void releaseConnection() {
+        savedPool.remove();
+        returnConnection();
+    }
+
+    /**
+       return the current thread's connection to its pool, without
+       forgetting the pool saved by beginReadYourWrites()
+    */
+    private static void returnConnection() {
+        Connection con = threadCon.get();
+        if (con == null)
+            return;
+        ConnectionPool pool = threadPool.get();
+        threadCon.remove();
+        threadPool.remove();
+        threadCache.remove();
+        pool.release(con);
+    }
+
+    /**
+       statistics on connection pools, one per line
+    */
+    final synchronized public static String getPoolStats() {
+        String rv = "";
+        if (roPool != null)
+            rv += roPool.getStats()+"\n";
+        if (rwPool != null)
+            rv += rwPool.getStats()+"\n";
+        if ((defaultPool != null) &&
+            (defaultPool != roPool) &&
+            (defaultPool != rwPool))
+            rv += defaultPool.getStats()+"\n";
+        return rv;
+    }
+
     /**
        make another Statement, or null if an error occurs.
     */
     final public static Statement createStatement() {
-        if (con == null) connect();
         try {
-            return con.createStatement();
+            return SQLStats.wrap(getConnection().createStatement());
         } catch (Exception e) {
             System.err.println("Exception caught when connecting to DB " + e.getMessage());
         }
@@ -124,12 +371,11 @@ public class LocalSQL {
        row at a time, or null if an error occurs.
     */
     final public static Statement createStatementOneRow() {
-        if (con == null) connect();
         try {
-            Statement stmt = con.createStatement(java.sql.ResultSet.TYPE_FORWARD_ONLY,
-                                                 java.sql.ResultSet.CONCUR_READ_ONLY);
+            Statement stmt = getConnection().createStatement(java.sql.ResultSet.TYPE_FORWARD_ONLY,
+                                                             java.sql.ResultSet.CONCUR_READ_ONLY);
             stmt.setFetchSize(Integer.MIN_VALUE);
-            return stmt;
+            return SQLStats.wrap(stmt);
         } catch (Exception e) {
             System.err.println(e.getMessage());
         }
@@ -140,9 +386,8 @@ public class LocalSQL {
        make a PreparedStatement, or null if an error occurs.
     */
     final public static PreparedStatement prepareStatement(String s) {
-        if (con == null) connect();
         try {
-            return con.prepareStatement(s);
+            return SQLStats.wrap(getConnection().prepareStatement(s), s);
         } catch (Exception e) {
             System.err.println(e.getMessage());
         }
@@ -154,20 +399,45 @@ public class LocalSQL {
     */
     final public static PreparedStatement prepareStatement(String s,
                                                            int autogeneratedkeys) {
-        if (con == null) connect();
         try {
-            return con.prepareStatement(s,
-                                        autogeneratedkeys);
+            return SQLStats.wrap(getConnection().prepareStatement(s,
+                                                                  autogeneratedkeys),
+                                 s);
         } catch (Exception e) {
             System.err.println(e.getMessage());
         }
         return null;
     }
     
+    /**
+       get a PreparedStatement from the current thread's statement
+       cache, or null if an error occurs.  The statement is shared
+       with other callers using the same SQL, so don't close it, and
+       close any ResultSet from it before using the same SQL again.
+       To save parsing on the server as well as the client, the db
+       URLs should set useServerPrepStmts=true.
+    */
+    final public static PreparedStatement prepareCached(String s) {
+        try {
+            StatementCache cache = threadCache.get();
+            if (cache == null) {
+                cache = StatementCache.forConnection(getConnection(),
+                                                     getIntProperty("db.statement_cache_size",
+                                                                    StatementCache.DEFAULT_MAX_SIZE));
+                threadCache.set(cache);
+            }
+            return cache.prepare(s);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        }
+        return null;
+    }
+
     /**
        turn on/off manual committing, for transactions
     */
     final public static void setAutoCommit(boolean b) throws Exception {
+        Connection con = threadCon.get();
         if (con == null)
             return;
         con.setAutoCommit(b);
@@ -177,6 +447,7 @@ public class LocalSQL {
        commit updates
     */
     final public static void commit() throws Exception {
+        Connection con = threadCon.get();
         if (con == null)
             return;
         con.commit();
@@ -186,68 +457,96 @@ public class LocalSQL {
        roll back updates
     */
     final public static void rollback() throws Exception {
+        Connection con = threadCon.get();
         if (con == null)
             return;
         con.rollback();
     }
 
     /**
-       returns level id from an abbreviation, or 0 if not found
+       default number of ids in each "in (...)" list made by
+       makeInLists
     */
-    final public static int lookupLevelAbbrev(String abbrev) throws SQLException {
-        Statement stmt = createStatement();
-        int rv = 0;
-        ResultSet rs = stmt.executeQuery("select id from scop_level where abbreviation=\"" + abbrev + "\"");
-        if (rs.next()) {
-            rv = rs.getInt(1);
+    final public static int IN_CHUNK_SIZE = 1000;
+
+    /**
+       split ids into comma-separated lists of at most chunkSize
+       distinct ids each, for use in "where id in (...)" queries.
+       nulls are skipped.
+    */
+    final public static Vector<String> makeInLists(Collection<Integer> ids,
+                                                   int chunkSize) {
+        Vector<String> rv = new Vector<String>();
+        StringBuilder sb = new StringBuilder();
+        int n = 0;
+        for (Integer i : new LinkedHashSet<Integer>(ids)) {
+            if (i == null)
+                continue;
+            if (n > 0)
+                sb.append(',');
+            sb.append(i.intValue());
+            if (++n == chunkSize) {
+                rv.add(sb.toString());
+                sb.setLength(0);
+                n = 0;
+            }
         }
-        rs.close();
-        stmt.close();
+        if (n > 0)
+            rv.add(sb.toString());
         return rv;
     }
 
+    /**
+       forget cached copies of dimension tables and release trees;
+       call after changing scop_release or other small tables, or
+       editing the nodes of a release
+    */
+    final public static void invalidateCaches() {
+        DimensionCache.invalidateAll();
+        ScopTree.invalidateAll();
+    }
+
+    /**
+       returns level id from an abbreviation, or 0 if not found
+    */
+    final public static int lookupLevelAbbrev(String abbrev) throws SQLException {
+        return DimensionCache.getLevelID(abbrev);
+    }
+
     /**
        returns abbreviation for a level id, or null if not found
     */
     final public static String lookupLevelAbbrev(int id) throws SQLException {
-        Statement stmt = createStatement();
-        String rv = null;
-        ResultSet rs = stmt.executeQuery("select abbreviation from scop_level where id="+id);
-        if (rs.next()) {
-            rv = rs.getString(1);
-        }
-        rs.close();
-        stmt.close();
-        return rv;
+        return DimensionCache.getLevelAbbrev(id);
     }
     
     /**
        returns history type id from an abbreviation, or 0 if not found
     */
     final public static int lookupHistoryTypeAbbrev(String abbrev) throws SQLException {
-        Statement stmt = createStatement();
-        int rv = 0;
-        ResultSet rs = stmt.executeQuery("select id from scop_history_type where abbreviation=\"" + abbrev + "\"");
-        if (rs.next()) {
-            rv = rs.getInt(1);
-        }
-        rs.close();
-        stmt.close();
-        return rv;
+        return DimensionCache.getHistoryTypeID(abbrev);
     }
 
     /**
-       returns pdb id from 4-letter code, or 0 if not found
+       returns pdb id from 4-letter code, or 0 if not found.
+       Uses the in-memory PDBIndex if enabled.
     */
     final public static int lookupPDB(String code) throws SQLException {
-        Statement stmt = createStatement();
+        if (PDBIndex.isEnabled()) {
+            int id = PDBIndex.lookupID(code);
+            if (id > 0)
+                return id;
+        }
+        PreparedStatement stmt = prepareCached("select id, code from pdb_entry where code=?");
+        stmt.setString(1,code);
         int rv = 0;
-        ResultSet rs = stmt.executeQuery("select id from pdb_entry where code=\"" + code + "\"");
+        ResultSet rs = stmt.executeQuery();
         if (rs.next()) {
             rv = rs.getInt(1);
+            if (PDBIndex.isEnabled())
+                PDBIndex.add(rv, rs.getString(2));
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -256,14 +555,14 @@ public class LocalSQL {
        returns on-hold pdb id from 4-letter code, or 0 if not found
     */
     final public static int lookupPDBOnHold(String code) throws SQLException {
-        Statement stmt = createStatement();
+        PreparedStatement stmt = prepareCached("select id from pdb_onhold_entry where code=?");
+        stmt.setString(1,code);
         int rv = 0;
-        ResultSet rs = stmt.executeQuery("select id from pdb_onhold_entry where code=\"" + code + "\"");
+        ResultSet rs = stmt.executeQuery();
         if (rs.next()) {
             rv = rs.getInt(1);
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -271,29 +570,37 @@ public class LocalSQL {
        returns current pdb release, or 0 if not found
     */
     final public static int getCurrentPDBRelease(int entryID) throws SQLException {
-        Statement stmt = createStatement();
+        PreparedStatement stmt = prepareCached("select id from pdb_release where pdb_entry_id=? and replaced_by is null");
+        stmt.setInt(1,entryID);
         int rv = 0;
-        ResultSet rs = stmt.executeQuery("select id from pdb_release where pdb_entry_id=" + entryID + " and replaced_by is null");
+        ResultSet rs = stmt.executeQuery();
         if (rs.next()) {
             rv = rs.getInt(1);
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
     /**
-       returns pdb code from id, or null if not found
+       returns pdb code from id, or null if not found.  Uses the
+       in-memory PDBIndex if enabled.
     */
     final public static String getPDBCode(int id) throws SQLException {
-        Statement stmt = createStatement();
+        if (PDBIndex.isEnabled()) {
+            String code = PDBIndex.lookupCode(id);
+            if (code != null)
+                return code;
+        }
+        PreparedStatement stmt = prepareCached("select code from pdb_entry where id=?");
+        stmt.setInt(1,id);
         String rv = null;
-        ResultSet rs = stmt.executeQuery("select code from pdb_entry where id=" + id);
+        ResultSet rs = stmt.executeQuery();
         if (rs.next()) {
             rv = rs.getString(1);
+            if (PDBIndex.isEnabled())
+                PDBIndex.add(id, rv);
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -301,72 +608,28 @@ public class LocalSQL {
        returns release, or 0 if not found
     */
     final public static int lookupSCOPRelease(String version) throws Exception {
-        Statement stmt = createStatement();
-        if (stmt == null) {
-            throw new Exception("Failure to connect to DB");
-        }
-        int rv = 0;
-        ResultSet rs = stmt.executeQuery("select id from scop_release where version=\"" + version + "\"");
-        if (rs.next()) {
-            rv = rs.getInt(1);
-        }
-        rs.close();
-        if (rv==0) {
-            rs = stmt.executeQuery("select id from scop_release where old_version=\"" + version + "\"");
-            if (rs.next()) {
-                rv = rs.getInt(1);
-            }
-            rs.close();
-        }
-	
-        stmt.close();
-        return rv;
+        return DimensionCache.getSCOPReleaseID(version);
     }
 
     /**
        returns version for a release, or null if not found
     */
     final public static String lookupSCOPRelease(int id) throws Exception {
-        Statement stmt = createStatement();
-        if (stmt == null)
-            throw new Exception("Failure to connect to DB");
-        String rv = null;
-        ResultSet rs = stmt.executeQuery("select version from scop_release where id="+id);
-        if (rs.next())
-            rv = rs.getString(1);
-        rs.close();
-        stmt.close();
-        return rv;
+        return DimensionCache.getSCOPReleaseVersion(id);
     }
     
     /**
        returns Pfam release, or 0 if not found
     */
     final public static int lookupPfamRelease(String version) throws SQLException {
-        Statement stmt = createStatement();
-        int rv = 0;
-        ResultSet rs = stmt.executeQuery("select id from pfam_release where version=\"" + version + "\"");
-        if (rs.next()) {
-            rv = rs.getInt(1);
-        }
-        rs.close();
-        stmt.close();
-        return rv;
+        return DimensionCache.getPfamReleaseID(version);
     }
 
     /**
        returns CDD release, or 0 if not found
     */
     final public static int lookupCDDRelease(String version) throws SQLException {
-        Statement stmt = createStatement();
-        int rv = 0;
-        ResultSet rs = stmt.executeQuery("select id from cdd_release where version=\"" + version + "\"");
-        if (rs.next()) {
-            rv = rs.getInt(1);
-        }
-        rs.close();
-        stmt.close();
-        return rv;
+        return DimensionCache.getCDDReleaseID(version);
     }
 
     /**
@@ -375,7 +638,7 @@ public class LocalSQL {
     */
     final public static int lookupPfam(String acc,
                                        int releaseID) throws SQLException {
-        PreparedStatement stmt = prepareStatement("select id from pfam where accession like ? and release_id=?");
+        PreparedStatement stmt = prepareCached("select id from pfam where accession like ? and release_id=?");
         stmt.setString(1,acc+"%");
         if (releaseID==0)
             stmt.setInt(2,getLatestPfamRelease());
@@ -387,7 +650,6 @@ public class LocalSQL {
             rv = rs.getInt(1);
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -397,7 +659,7 @@ public class LocalSQL {
     */
     final public static int lookupCdd(String acc,
                                       int releaseID) throws SQLException {
-        PreparedStatement stmt = prepareStatement("select id from cdd where accession=? and release_id=?");
+        PreparedStatement stmt = prepareCached("select id from cdd where accession=? and release_id=?");
         stmt.setString(1,acc);
         if (releaseID==0)
             stmt.setInt(2,getLatestCddRelease());
@@ -409,7 +671,6 @@ public class LocalSQL {
             rv = rs.getInt(1);
         }
         rs.close();
-        stmt.close();
         return rv;
     }
     
@@ -417,9 +678,11 @@ public class LocalSQL {
        returns node, or 0 if not found, or -1 if duplicate
     */
     final public static int lookupNodeBySunid(int sunid, int scopReleaseID) throws SQLException {
-        Statement stmt = createStatement();
+        PreparedStatement stmt = prepareCached("select id from scop_node where sunid=? and release_id=?");
+        stmt.setInt(1,sunid);
+        stmt.setInt(2,scopReleaseID);
         int rv = 0;
-        ResultSet rs = stmt.executeQuery("select id from scop_node where sunid=" + sunid + " and release_id=" + scopReleaseID);
+        ResultSet rs = stmt.executeQuery();
         if (rs.next()) {
             rv = rs.getInt(1);
         }
@@ -427,7 +690,6 @@ public class LocalSQL {
             rv = -1;
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -435,9 +697,11 @@ public class LocalSQL {
        returns node, or 0 if not found, or -1 if duplicate
     */
     final public static int lookupNodeBySid(String sid, int scopReleaseID) throws SQLException {
-        Statement stmt = createStatement();
+        PreparedStatement stmt = prepareCached("select id from scop_node where sid=? and release_id=?");
+        stmt.setString(1,sid);
+        stmt.setInt(2,scopReleaseID);
         int rv = 0;
-        ResultSet rs = stmt.executeQuery("select id from scop_node where sid=\"" + sid + "\" and release_id=" + scopReleaseID);
+        ResultSet rs = stmt.executeQuery();
         if (rs.next()) {
             rv = rs.getInt(1);
         }
@@ -445,7 +709,6 @@ public class LocalSQL {
             rv = -1;
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -454,9 +717,11 @@ public class LocalSQL {
        Will only return node of type family or below
     */
     final public static int lookupNodeBySCCS(String sccs, int scopReleaseID) throws SQLException {
-        Statement stmt = createStatement();
+        PreparedStatement stmt = prepareCached("select id from scop_node where sccs=? and release_id=? and level_id<=5");
+        stmt.setString(1,sccs);
+        stmt.setInt(2,scopReleaseID);
         int rv = 0;
-        ResultSet rs = stmt.executeQuery("select id from scop_node where sccs=\"" + sccs + "\" and release_id=" + scopReleaseID + " and level_id<=5");
+        ResultSet rs = stmt.executeQuery();
         if (rs.next()) {
             rv = rs.getInt(1);
         }
@@ -464,7 +729,6 @@ public class LocalSQL {
             rv = -1;
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -472,7 +736,7 @@ public class LocalSQL {
        returns node, or 0 if not found, or -1 if ambiguous
     */
     final public static int lookupNodeByDescription(String description, int scopReleaseID) throws SQLException {
-        PreparedStatement stmt = prepareStatement("select id from scop_node where description=? and release_id=?");
+        PreparedStatement stmt = prepareCached("select id from scop_node where description=? and release_id=?");
         int rv = 0;
         stmt.setString(1,description);
         stmt.setInt(2,scopReleaseID);
@@ -484,7 +748,6 @@ public class LocalSQL {
             rv = -1;
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -494,7 +757,7 @@ public class LocalSQL {
     final public static int lookupNodeByDescription(String description,
                                                     int scopReleaseID,
                                                     int parentNodeID) throws SQLException {
-        PreparedStatement stmt = prepareStatement("select id from scop_node where description=? and release_id=? and parent_node_id=?");
+        PreparedStatement stmt = prepareCached("select id from scop_node where description=? and release_id=? and parent_node_id=?");
         int rv = 0;
         stmt.setString(1,description);
         stmt.setInt(2,scopReleaseID);
@@ -507,7 +770,6 @@ public class LocalSQL {
             rv = -1;
         }
         rs.close();
-        stmt.close();
         return rv;
     }
     
@@ -523,15 +785,18 @@ public class LocalSQL {
         int rv = 0;
         if (id.startsWith("N")) {
             rv = StringUtil.atoi(id,1);
-            Statement stmt = createStatement();
-            String query = "select id from scop_node where id="+rv;
-            if (scopReleaseID > 0)
-                query += " and release_id="+scopReleaseID;
-            ResultSet rs = stmt.executeQuery(query);
+            PreparedStatement stmt;
+            if (scopReleaseID > 0) {
+                stmt = prepareCached("select id from scop_node where id=? and release_id=?");
+                stmt.setInt(2,scopReleaseID);
+            }
+            else
+                stmt = prepareCached("select id from scop_node where id=?");
+            stmt.setInt(1,rv);
+            ResultSet rs = stmt.executeQuery();
             if (!rs.next())
                 rv = 0;
             rs.close();
-            stmt.close();
         }
         else {
             if (scopReleaseID==0)
@@ -560,14 +825,19 @@ public class LocalSQL {
        version is used.  Returns 0 if not found.
     */
     final public static int findRAF(String code, char chain, int scopReleaseID) throws Exception {
-        Statement stmt = createStatement();
-        String rel = null;
+        PreparedStatement stmt;
         int rv = 0;
-        if (scopReleaseID > 0)
-            rel = "r.first_release_id<=" + scopReleaseID + " and r.last_release_id>=" + scopReleaseID;
+        String query = "select r.id from raf r, pdb_chain c, pdb_release re, pdb_entry e where e.code=? and re.pdb_entry_id=e.id and c.pdb_release_id=re.id and c.chain=? and r.pdb_chain_id=c.id and ";
+        if (scopReleaseID > 0) {
+            stmt = prepareCached(query + "r.first_release_id<=? and r.last_release_id>=?");
+            stmt.setInt(3,scopReleaseID);
+            stmt.setInt(4,scopReleaseID);
+        }
         else
-            rel = "r.first_release_id is null and r.last_release_id is null";
-        ResultSet rs = stmt.executeQuery("select r.id from raf r, pdb_chain c, pdb_release re, pdb_entry e where e.code=\"" + code + "\" and re.pdb_entry_id=e.id and c.pdb_release_id=re.id and c.chain=\"" + chain + "\" and r.pdb_chain_id=c.id and " + rel);
+            stmt = prepareCached(query + "r.first_release_id is null and r.last_release_id is null");
+        stmt.setString(1,code);
+        stmt.setString(2,String.valueOf(chain));
+        ResultSet rs = stmt.executeQuery();
         if (rs.next())
             rv = rs.getInt(1);
         if (rs.next()) {
@@ -575,7 +845,6 @@ public class LocalSQL {
             System.exit(1);
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -585,19 +854,21 @@ public class LocalSQL {
        version is used.  Returns 0 if not found.
     */
     final public static int findRAF(int pdbChainID, int scopReleaseID) throws Exception {
-        Statement stmt = createStatement();
-        String rel = null;
+        PreparedStatement stmt;
         int rv = 0;
-        if (scopReleaseID > 0)
-            rel = "first_release_id<=" + scopReleaseID + " and last_release_id>=" + scopReleaseID;
+        if (scopReleaseID > 0) {
+            stmt = prepareCached("select id from raf where pdb_chain_id=? and first_release_id<=? and last_release_id>=?");
+            stmt.setInt(2,scopReleaseID);
+            stmt.setInt(3,scopReleaseID);
+        }
         else
-            rel = "first_release_id is null and last_release_id is null";
-        ResultSet rs = stmt.executeQuery("select id from raf where pdb_chain_id=" + pdbChainID + " and " + rel);
+            stmt = prepareCached("select id from raf where pdb_chain_id=? and first_release_id is null and last_release_id is null");
+        stmt.setInt(1,pdbChainID);
+        ResultSet rs = stmt.executeQuery();
         if (rs.next()) {
             rv = rs.getInt(1);
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -605,14 +876,14 @@ public class LocalSQL {
        Gets the first residue from a raf entry
     */
     final public static String getFirstRAF(int rafID) throws Exception {
-        Statement stmt = createStatement();
+        PreparedStatement stmt = prepareCached("select substr(line,29,5) from raf where id=?");
+        stmt.setInt(1,rafID);
         String rv = null;
-        ResultSet rs = stmt.executeQuery("select substr(line,29,5) from raf where id=" + rafID);
+        ResultSet rs = stmt.executeQuery();
         if (rs.next()) {
             rv = rs.getString(1).trim();
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -620,14 +891,14 @@ public class LocalSQL {
        Gets the last residue from a raf entry
     */
     final public static String getLastRAF(int rafID) throws Exception {
-        Statement stmt = createStatement();
+        PreparedStatement stmt = prepareCached("select substr(line,34,5) from raf where id=?");
+        stmt.setInt(1,rafID);
         String rv = null;
-        ResultSet rs = stmt.executeQuery("select substr(line,34,5) from raf where id=" + rafID);
+        ResultSet rs = stmt.executeQuery();
         if (rs.next()) {
             rv = rs.getString(1).trim();
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -635,9 +906,10 @@ public class LocalSQL {
        gets comments for a node, or null if none
     */
     final public static String getComments(int nodeID) throws Exception {
-        Statement stmt = createStatement();
+        PreparedStatement stmt = prepareCached("select description from scop_comment where node_id=?");
+        stmt.setInt(1,nodeID);
         String rv = null;
-        ResultSet rs = stmt.executeQuery("select description from scop_comment where node_id=" + nodeID);
+        ResultSet rs = stmt.executeQuery();
         while (rs.next()) {
             if (rv == null)
                 rv = rs.getString(1);
@@ -645,7 +917,6 @@ public class LocalSQL {
                 rv += " ; " + rs.getString(1);
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -675,10 +946,12 @@ public class LocalSQL {
     final public static RAF.SequenceFragment domainSeq(int domainID, int sourceType, int styleType, int order) {
         try {
             Statement stmt = LocalSQL.createStatement();
-            ResultSet rs = stmt.executeQuery("select description from scop_node where id=" + domainID);
+            ResultSet rs = stmt.executeQuery("select description, release_id from scop_node where id=" + domainID);
             rs.next();
             String description = rs.getString(1).substring(5);
+            int scopReleaseID = rs.getInt(2);
             rs.close();
+            RafStore rafStore = RafStore.get(scopReleaseID);
             char chain = ' ';
             char lastChain = ' ';
             RAF.SequenceFragment rv = new RAF.SequenceFragment();
@@ -713,8 +986,21 @@ public class LocalSQL {
                     // include this region
                     // System.out.println("using region "+region);
                     if ((body == null) || (chain != lastChain)) {
-                        // get a new RAF body
+                        // get a new RAF body, from the release's
+                        // RafStore if there is one
                         // System.out.println("getting RAF for "+domainID);
+                        body = null;
+                        if (rafStore != null) {
+                            rs = stmt.executeQuery("select c.id from pdb_chain c, link_pdb l where l.pdb_chain_id=c.id and c.chain=\"" + chain + "\" and l.node_id=" + domainID);
+                            if (rs.next()) {
+                                CharSequence cs = rafStore.getBody(rs.getInt(1));
+                                if (cs != null)
+                                    body = cs.toString();
+                            }
+                            rs.close();
+                        }
+                    }
+                    if (body == null) {
                         rs = stmt.executeQuery("select raf_get_body(r.id) from raf r, pdb_chain c, link_pdb l, scop_node n where r.pdb_chain_id=c.id and l.pdb_chain_id=c.id and c.chain=\"" + chain + "\" and l.node_id=n.id and n.release_id >= r.first_release_id and n.release_id <= r.last_release_id and n.id=" + domainID);
                         if (!rs.next()) {
                             // System.out.println("RAF not found");
@@ -779,24 +1065,26 @@ public class LocalSQL {
 
     /**
        Walks up the SCOP tree until parent at a given level is found,
-       or 0 if not found
+       or 0 if not found.  Uses the in-memory ScopTree if enabled.
     */
     final public static int findParent(int nodeID, int levelID) throws Exception {
-        Statement stmt = LocalSQL.createStatement();
+        ScopTree tree = ScopTree.forNode(nodeID);
+        if (tree != null)
+            return tree.findParent(nodeID, levelID);
+        PreparedStatement stmt = prepareCached("select p.id, p.level_id from scop_node p, scop_node c where c.parent_node_id is not null and c.parent_node_id=p.id and c.id=?");
         while (true) {
-            ResultSet rs = stmt.executeQuery("select p.id, p.level_id from scop_node p, scop_node c where c.parent_node_id is not null and c.parent_node_id=p.id and c.id=" + nodeID);
+            stmt.setInt(1,nodeID);
+            ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
                 nodeID = rs.getInt(1);
                 int level = rs.getInt(2);
                 if (level == levelID) {
                     rs.close();
-                    stmt.close();
                     return nodeID;
                 }
             }
             else {
                 rs.close();
-                stmt.close();
                 return 0;
             }
             rs.close();
@@ -805,9 +1093,13 @@ public class LocalSQL {
 
     /**
        Finds all children of a given node; optionally (if levelID is non-zero)
-       at a given level.  Empty vector if not found.
+       at a given level.  Empty vector if not found.  Uses the
+       in-memory ScopTree if enabled.
     */
     final public static Vector<Integer> findChildren(int nodeID, int levelID) throws Exception {
+        ScopTree tree = ScopTree.forNode(nodeID);
+        if (tree != null)
+            return tree.findChildren(nodeID, levelID);
         Statement stmt = LocalSQL.createStatement();
         Vector<Integer> rv = new Vector<Integer>();
         ResultSet rs = stmt.executeQuery("select id, level_id from scop_node where parent_node_id = "+nodeID);
@@ -833,6 +1125,9 @@ public class LocalSQL {
        Checks whether one SCOP node is an ancestor of another.
     */
     final public static boolean isAncestor(int parentNodeID, int childNodeID) throws Exception {
+        ScopTree tree = ScopTree.forNode(childNodeID);
+        if ((tree != null) && (tree.contains(parentNodeID)))
+            return tree.isAncestor(parentNodeID, childNodeID);
         int parentLevel = getLevel(parentNodeID);
         int realParent = findParent(childNodeID,parentLevel);
         if (realParent==parentNodeID)
@@ -844,14 +1139,14 @@ public class LocalSQL {
        Gets description for a given scop node, or null if not found
     */
     final public static String getDescription(int nodeID) throws Exception {
-        Statement stmt = LocalSQL.createStatement();
+        PreparedStatement stmt = prepareCached("select description from scop_node where id=?");
+        stmt.setInt(1,nodeID);
         String rv = null;
-        ResultSet rs = stmt.executeQuery("select description from scop_node where id=" + nodeID);
+        ResultSet rs = stmt.executeQuery();
         if (rs.next()) {
             rv = rs.getString(1);
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -859,14 +1154,17 @@ public class LocalSQL {
        returns sunid for a node, or -1 if not found
     */
     final public static int getSunid(int id) throws SQLException {
-        Statement stmt = createStatement();
+        ScopTree tree = ScopTree.forNode(id);
+        if (tree != null)
+            return tree.getSunid(id);
+        PreparedStatement stmt = prepareCached("select sunid from scop_node where id=?");
+        stmt.setInt(1,id);
         int rv = -1;
-        ResultSet rs = stmt.executeQuery("select sunid from scop_node where id=" + id);
+        ResultSet rs = stmt.executeQuery();
         if (rs.next()) {
             rv = rs.getInt(1);
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -874,13 +1172,16 @@ public class LocalSQL {
        returns sccs for a node, or null if not found
     */
     final public static String getSCCS(int id) throws SQLException {
-        Statement stmt = createStatement();
+        ScopTree tree = ScopTree.forNode(id);
+        if (tree != null)
+            return tree.getSCCS(id);
+        PreparedStatement stmt = prepareCached("select sccs from scop_node where id=?");
+        stmt.setInt(1,id);
         String rv = null;
-        ResultSet rs = stmt.executeQuery("select sccs from scop_node where id=" + id);
+        ResultSet rs = stmt.executeQuery();
         if (rs.next())
             rv = rs.getString(1);
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -888,13 +1189,16 @@ public class LocalSQL {
        returns level for a node, or 0 if not found
     */
     final public static int getLevel(int id) throws SQLException {
-        Statement stmt = createStatement();
+        ScopTree tree = ScopTree.forNode(id);
+        if (tree != null)
+            return tree.getLevel(id);
+        PreparedStatement stmt = prepareCached("select level_id from scop_node where id=?");
+        stmt.setInt(1,id);
         int rv = 0;
-        ResultSet rs = stmt.executeQuery("select level_id from scop_node where id=" + id);
+        ResultSet rs = stmt.executeQuery();
         if (rs.next())
             rv = rs.getInt(1);
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -902,13 +1206,13 @@ public class LocalSQL {
        returns SCOP release ID for a node, or 0 if not found
     */
     final public static int getSCOPRelease(int id) throws SQLException {
-        Statement stmt = createStatement();
+        PreparedStatement stmt = prepareCached("select release_id from scop_node where id=?");
+        stmt.setInt(1,id);
         int rv = 0;
-        ResultSet rs = stmt.executeQuery("select release_id from scop_node where id=" + id);
+        ResultSet rs = stmt.executeQuery();
         if (rs.next())
             rv = rs.getInt(1);
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -916,19 +1220,22 @@ public class LocalSQL {
        Finds id for a particular sid in a version of ASTRAL.
     */
     final public static int findASTRALDomain(String sid, int scopReleaseID, int sourceID) throws Exception {
-        Statement stmt = createStatement();
-        String rel = null;
+        PreparedStatement stmt;
         int rv = 0;
-        if (scopReleaseID > 0)
-            rel = "n.release_id=" + scopReleaseID;
+        String query = "select a.id from astral_domain a, scop_node n where a.sid=? and a.node_id=n.id and source_id=? and ";
+        if (scopReleaseID > 0) {
+            stmt = prepareCached(query + "n.release_id=?");
+            stmt.setInt(3,scopReleaseID);
+        }
         else
-            rel = "n.release_id is null";
-        ResultSet rs = stmt.executeQuery("select a.id from astral_domain a, scop_node n where a.sid=\"" + sid + "\" and a.node_id=n.id and source_id=" + sourceID + " and " + rel);
+            stmt = prepareCached(query + "n.release_id is null");
+        stmt.setString(1,sid);
+        stmt.setInt(2,sourceID);
+        ResultSet rs = stmt.executeQuery();
         if (rs.next()) {
             rv = rs.getInt(1);
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -936,19 +1243,23 @@ public class LocalSQL {
        Finds id for a particular sid in a version of ASTRAL.
     */
     final public static int findASTRALChain(String sid, int scopReleaseID, int sourceID) throws Exception {
-        Statement stmt = createStatement();
-        String rel = null;
+        PreparedStatement stmt;
         int rv = 0;
-        if (scopReleaseID > 0)
-            rel = "r.first_release_id<=" + scopReleaseID + " and r.last_release_id>=" + scopReleaseID;
+        String query = "select a.id from astral_chain a, raf r where a.sid=? and a.raf_id=r.id and source_id=? and ";
+        if (scopReleaseID > 0) {
+            stmt = prepareCached(query + "r.first_release_id<=? and r.last_release_id>=?");
+            stmt.setInt(3,scopReleaseID);
+            stmt.setInt(4,scopReleaseID);
+        }
         else
-            rel = "r.first_release_id is null and r.last_release_id is null";
-        ResultSet rs = stmt.executeQuery("select a.id from astral_chain a, raf r where a.sid=\"" + sid + "\" and a.raf_id=r.id and source_id=" + sourceID + " and " + rel);
+            stmt = prepareCached(query + "r.first_release_id is null and r.last_release_id is null");
+        stmt.setString(1,sid);
+        stmt.setInt(2,sourceID);
+        ResultSet rs = stmt.executeQuery();
         if (rs.next()) {
             rv = rs.getInt(1);
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -957,14 +1268,14 @@ public class LocalSQL {
        or null if not found
     */
     final public static String getPDBStylePath(int nodeID) throws Exception {
-        Statement stmt = createStatement();
+        PreparedStatement stmt = prepareCached("select file_path from scop_node_pdbstyle where node_id=?");
+        stmt.setInt(1,nodeID);
         String rv = null;
-        ResultSet rs = stmt.executeQuery("select file_path from scop_node_pdbstyle where node_id=" + nodeID);
+        ResultSet rs = stmt.executeQuery();
         if (rs.next()) {
             rv = rs.getString(1);
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -973,14 +1284,14 @@ public class LocalSQL {
        or null if not found
     */
     final public static String getPDBStylePathASTEROID(int asteroidID) throws Exception {
-        Statement stmt = createStatement();
+        PreparedStatement stmt = prepareCached("select file_path from asteroid_pdbstyle where asteroid_id=?");
+        stmt.setInt(1,asteroidID);
         String rv = null;
-        ResultSet rs = stmt.executeQuery("select file_path from asteroid_pdbstyle where asteroid_id=" + asteroidID);
+        ResultSet rs = stmt.executeQuery();
         if (rs.next()) {
             rv = rs.getString(1);
         }
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -1002,6 +1313,10 @@ public class LocalSQL {
 
        See job_type table in the SCOP DB for the ID numbers
 
+       Jobs that search a database get a data key (see JobQueue);
+       the job table must have the data_key column, added by
+       AddJobDataKeys.
+
        Warning:  does not sanitize args--don't allow any user input!
     */
     final public static int newJob(int jobTypeID, int targetID, String args, Statement stmt) throws Exception {
@@ -1048,8 +1363,11 @@ public class LocalSQL {
         }
         rs.close();
 
+        // may look up releases, so must be done before locking
+        String dataKey = JobQueue.getDataKey(jobTypeID, args);
+
         stmt.executeUpdate("lock table job write, job_done write");
-        stmt.executeUpdate("insert into job values(null," + jobTypeID + ",now(),null," + targetID + "," + (args == null ? "null" : "\"" + args + "\"") + ",0,null," + priority + ",null)",
+        stmt.executeUpdate("insert into job (id, job_type_id, time_created, time_started, target_id, args, n_failures, running, priority, status, data_key) values(null," + jobTypeID + ",now(),null," + targetID + "," + (args == null ? "null" : "\"" + args + "\"") + ",0,null," + priority + ",null," + (dataKey == null ? "null" : "\"" + dataKey + "\"") + ")",
                            Statement.RETURN_GENERATED_KEYS);
         rs = stmt.getGeneratedKeys();
         rs.next();
@@ -1065,13 +1383,13 @@ public class LocalSQL {
     */
     final public static String getEmail(int userID) {
         try {
-            Statement stmt = createStatement();
-            ResultSet rs = stmt.executeQuery("select email from user where id=" + userID);
+            PreparedStatement stmt = prepareCached("select email from user where id=?");
+            stmt.setInt(1,userID);
+            ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
                 String email = rs.getString(1);
                 if (email.indexOf('@') > 0) {
                     rs.close();
-                    stmt.close();
                     return email;
                 }
             }
@@ -1087,12 +1405,12 @@ public class LocalSQL {
     */
     final public static int getUserID(String userName) {
         try {
-            Statement stmt = createStatement();
-            ResultSet rs = stmt.executeQuery("select id from user where name=\"" + userName + "\"");
+            PreparedStatement stmt = prepareCached("select id from user where name=?");
+            stmt.setString(1,userName);
+            ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
                 int rv = rs.getInt(1);
                 rs.close();
-                stmt.close();
                 return rv;
             }
             rs.close();
@@ -1180,13 +1498,13 @@ public class LocalSQL {
        for the release in question
     */
     final public static java.sql.Date getUpdateDate(int scopReleaseID) throws SQLException {
-        Statement stmt = createStatement();
+        PreparedStatement stmt = prepareCached("select max(time_occurred) from scop_history where release_id=? and change_type_id=12");
+        stmt.setInt(1,scopReleaseID);
         java.sql.Date rv = null;
-        ResultSet rs = stmt.executeQuery("select max(time_occurred) from scop_history where release_id=" + scopReleaseID + " and change_type_id=12");
+        ResultSet rs = stmt.executeQuery();
         if (rs.next())
             rv = rs.getDate(1);
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -1195,15 +1513,9 @@ public class LocalSQL {
        a given release
     */
     final public static String getDBName(int scopReleaseID) throws SQLException {
-        Statement stmt = createStatement();
         String rv = "SCOP";
-        ResultSet rs = stmt.executeQuery("select series from scop_release where id="+scopReleaseID);
-        if (rs.next()) {
-            int series = rs.getInt(1);
-            if (series==2) rv += "e";
-        }
-        rs.close();
-        stmt.close();
+        if (DimensionCache.getSCOPReleaseSeries(scopReleaseID)==2)
+            rv += "e";
         return rv;
     }
     
@@ -1212,15 +1524,14 @@ public class LocalSQL {
        looks only at public releases.
     */
     final public static int getLatestSCOPRelease(boolean publicOnly) throws SQLException {
-        Statement stmt = createStatement();
         String query = "select max(id) from scop_release";
         if (publicOnly)
             query += " where is_public=1";
-        ResultSet rs = stmt.executeQuery(query);
+        PreparedStatement stmt = prepareCached(query);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         int rv = rs.getInt(1);
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -1228,13 +1539,11 @@ public class LocalSQL {
        gets latest pfam release id
     */
     final public static int getLatestPfamRelease() throws SQLException {
-        Statement stmt = createStatement();
-        String query = "select max(id) from pfam_release";
-        ResultSet rs = stmt.executeQuery(query);
+        PreparedStatement stmt = prepareCached("select max(id) from pfam_release");
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         int rv = rs.getInt(1);
         rs.close();
-        stmt.close();
         return rv;
     }
 
@@ -1242,13 +1551,11 @@ public class LocalSQL {
        gets latest cdd release id
     */
     final public static int getLatestCddRelease() throws SQLException {
-        Statement stmt = createStatement();
-        String query = "select max(id) from cdd_release";
-        ResultSet rs = stmt.executeQuery(query);
+        PreparedStatement stmt = prepareCached("select max(id) from cdd_release");
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         int rv = rs.getInt(1);
         rs.close();
-        stmt.close();
         return rv;
     }
 }
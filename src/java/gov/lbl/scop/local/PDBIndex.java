@@ -0,0 +1,306 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.local;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+   In-memory snapshot of pdb_entry, mapping 4-character PDB codes
+   to entry ids and back.  Each code is packed into an int (one
+   byte per character), and both directions are stored in
+   open-addressed int-to-int hash tables, so lookups don't
+   allocate or touch the db.
+   <p>
+   Code lookups ignore case, like the db.  Codes that can't be
+   packed (not 4 ASCII characters) are never in the snapshot.
+   <p>
+   Entries are never renumbered, so a snapshot stays correct
+   except for entries added after it was loaded; those are looked
+   up in the db by LocalSQL, and remembered in a small overflow
+   table until the next refresh().
+   <p>
+   Snapshots are only used by LocalSQL.lookupPDB and getPDBCode if
+   enabled, either with setEnabled() or by setting pdb_index=true
+   in scop.properties.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class PDBIndex {
+    /**
+       is the snapshot used by LocalSQL?
+    */
+    private static boolean enabled = "true".equals(SCOP.getProperty("pdb_index"));
+
+    /**
+       current snapshot, or null if not loaded
+    */
+    private static volatile PDBIndex current = null;
+
+    /**
+       entries found in the db since the snapshot was loaded
+    */
+    private static HashMap<Integer,Integer> extraIDs = new HashMap<Integer,Integer>();
+    private static HashMap<Integer,Integer> extraCodes = new HashMap<Integer,Integer>();
+
+    /**
+       code (folded to lower case) to id; a key of 0 is empty
+    */
+    private int[] codeKeys;
+    private int[] codeValues;
+
+    /**
+       id to code (in original case); a key of 0 is empty
+    */
+    private int[] idKeys;
+    private int[] idValues;
+
+    /**
+       table size - 1; tables are a power of 2 in size
+    */
+    private int mask;
+
+    /**
+       number of entries
+    */
+    private int size;
+
+    /**
+       turn use of the snapshot by LocalSQL on or off
+    */
+    final public static void setEnabled(boolean b) {
+        enabled = b;
+    }
+
+    final public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+       returns the current snapshot, loading it if needed
+    */
+    final public static PDBIndex get() throws SQLException {
+        PDBIndex rv = current;
+        if (rv == null) {
+            synchronized (PDBIndex.class) {
+                if (current == null)
+                    refresh();
+                rv = current;
+            }
+        }
+        return rv;
+    }
+
+    /**
+       load a new snapshot from the db; lookups in progress keep
+       using the old one.
+    */
+    final public static synchronized void refresh() throws SQLException {
+        PDBIndex rv = new PDBIndex();
+        current = rv;
+        extraIDs.clear();
+        extraCodes.clear();
+    }
+
+    /**
+       pack a code into an int, optionally folding to lower case;
+       returns 0 if it can't be packed.
+    */
+    final public static int pack(String code, boolean fold) {
+        if ((code == null) || (code.length() != 4))
+            return 0;
+        int rv = 0;
+        for (int i=0; i<4; i++) {
+            char c = code.charAt(i);
+            if ((c == 0) || (c > 127))
+                return 0;
+            if (fold && (c >= 'A') && (c <= 'Z'))
+                c += 'a'-'A';
+            rv = (rv << 8) | c;
+        }
+        return rv;
+    }
+
+    /**
+       unpack a code packed by pack()
+    */
+    final public static String unpack(int packed) {
+        char[] c = new char[4];
+        for (int i=3; i>=0; i--) {
+            c[i] = (char)(packed & 0xff);
+            packed >>>= 8;
+        }
+        return new String(c);
+    }
+
+    /**
+       returns entry id for a code, or 0 if not in the snapshot
+       or found since.
+    */
+    final public static int lookupID(String code) throws SQLException {
+        int key = pack(code, true);
+        if (key == 0)
+            return 0;
+        int rv = get().getID(key);
+        if (rv == 0) {
+            synchronized (PDBIndex.class) {
+                Integer i = extraIDs.get(new Integer(key));
+                if (i != null)
+                    rv = i.intValue();
+            }
+        }
+        return rv;
+    }
+
+    /**
+       returns code for an entry id, or null if not in the snapshot
+       or found since.
+    */
+    final public static String lookupCode(int id) throws SQLException {
+        if (id <= 0)
+            return null;
+        int rv = get().getCode(id);
+        if (rv == 0) {
+            synchronized (PDBIndex.class) {
+                Integer i = extraCodes.get(new Integer(id));
+                if (i != null)
+                    rv = i.intValue();
+            }
+        }
+        if (rv == 0)
+            return null;
+        return unpack(rv);
+    }
+
+    /**
+       remember an entry found in the db after the snapshot was
+       loaded
+    */
+    final public static synchronized void add(int id, String code) {
+        int exact = pack(code, false);
+        if ((id <= 0) || (exact == 0))
+            return;
+        extraIDs.put(new Integer(pack(code, true)), new Integer(id));
+        extraCodes.put(new Integer(id), new Integer(exact));
+    }
+
+    /**
+       number of entries in the snapshot
+    */
+    final public int size() {
+        return size;
+    }
+
+    /**
+       returns id for a packed, folded code, or 0 if not found
+    */
+    final public int getID(int packedCode) {
+        int i = hash(packedCode) & mask;
+        int k;
+        while ((k = codeKeys[i]) != 0) {
+            if (k == packedCode)
+                return codeValues[i];
+            i = (i+1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+       returns packed code for an id, or 0 if not found
+    */
+    final public int getCode(int id) {
+        int i = hash(id) & mask;
+        int k;
+        while ((k = idKeys[i]) != 0) {
+            if (k == id)
+                return idValues[i];
+            i = (i+1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+       spread bits of a key
+    */
+    private static int hash(int k) {
+        k *= 0x9e3779b9;
+        return k ^ (k >>> 16);
+    }
+
+    /**
+       insert into one of the tables
+    */
+    private void put(int[] keys, int[] values, int key, int value) {
+        int i = hash(key) & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == key)
+                return;  // keep the first
+            i = (i+1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    /**
+       load snapshot from the db
+    */
+    private PDBIndex() throws SQLException {
+        Statement stmt = LocalSQL.createStatement();
+        if (stmt == null)
+            throw new SQLException("Failure to connect to DB");
+        ResultSet rs = stmt.executeQuery("select count(*) from pdb_entry");
+        rs.next();
+        int n = rs.getInt(1);
+        rs.close();
+
+        // keep tables at most half full
+        int capacity = 16;
+        while (capacity < n*2)
+            capacity <<= 1;
+        mask = capacity-1;
+        codeKeys = new int[capacity];
+        codeValues = new int[capacity];
+        idKeys = new int[capacity];
+        idValues = new int[capacity];
+
+        rs = stmt.executeQuery("select id, code from pdb_entry order by id");
+        while (rs.next()) {
+            int id = rs.getInt(1);
+            String code = rs.getString(2);
+            int exact = pack(code, false);
+            if ((id <= 0) || (exact == 0))
+                continue;
+            if (size*2 >= capacity)
+                break;  // more rows than counted; rest go to overflow
+            put(codeKeys, codeValues, pack(code, true), id);
+            put(idKeys, idValues, id, exact);
+            size++;
+        }
+        rs.close();
+        stmt.close();
+    }
+}
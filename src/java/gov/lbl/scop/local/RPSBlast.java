@@ -69,7 +69,9 @@ public class RPSBlast extends Program {
         if (outFile != null)
             os = new GZIPOutputStream(new FileOutputStream(outFile.getPath()));
         setOutput(os);
+        long t = JobMetrics.startTool();
         run(inputs, null, baseDir);
+        JobMetrics.endTool(t);
         if (os != null) {
             os.flush();
             os.close();
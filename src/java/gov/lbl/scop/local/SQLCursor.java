@@ -0,0 +1,259 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.local;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+   Reads the results of a large query a few rows at a time,
+   turning each row into an object with a RowMapper, so that
+   scans over a whole release use a bounded amount of memory.
+   Typical use:
+   <pre>
+   SQLCursor&lt;Integer&gt; c = SQLCursor.keyset("id", "scop_node",
+                                            "release_id="+scopReleaseID,
+                                            "id", SQLCursor.INT);
+   Integer id;
+   while ((id = c.next()) != null) {
+       ...
+   }
+   </pre>
+   <p>
+   There are two kinds of cursor:
+   <p>
+   keyset() reads the rows in chunks ordered by a unique key,
+   starting each chunk after the last key of the previous one.
+   Each chunk is read completely on the thread's own connection,
+   so other queries can be run between calls to next().  The key
+   must be the first column selected.
+   <p>
+   stream() reads rows one at a time from the server, on the
+   thread's own connection, so it never needs a second connection
+   from the pool.  MySQL can't run other queries on a connection
+   that is streaming results, so the thread must not use the db
+   for anything else until the cursor is closed or all rows have
+   been read; use keyset() for scans that do.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class SQLCursor<T> {
+    /**
+       default number of rows per chunk, for keyset cursors
+    */
+    final public static int DEFAULT_CHUNK_SIZE = 1000;
+
+    /**
+       maps the first column to an Integer
+    */
+    final public static RowMapper<Integer> INT = new RowMapper<Integer>() {
+        public Integer map(ResultSet rs) throws SQLException {
+            return new Integer(rs.getInt(1));
+        }
+    };
+
+    /**
+       maps the first column to a String
+    */
+    final public static RowMapper<String> STRING = new RowMapper<String>() {
+        public String map(ResultSet rs) throws SQLException {
+            return rs.getString(1);
+        }
+    };
+
+    private RowMapper<T> mapper;
+
+    // for keyset cursors
+
+    /**
+       queries for first and later chunks
+    */
+    private String firstSQL = null;
+    private String nextSQL = null;
+
+    private int chunkSize;
+
+    /**
+       key of last row read
+    */
+    private Object lastKey = null;
+
+    /**
+       rows read but not yet returned
+    */
+    private ArrayList<T> chunk = null;
+    private int chunkPos = 0;
+
+    /**
+       is the current chunk the last one?
+    */
+    private boolean lastChunk = false;
+
+    // for streaming cursors
+
+    private Statement stmt = null;
+    private ResultSet rs = null;
+
+    /**
+       have all rows been read?
+    */
+    private boolean done = false;
+
+    private SQLCursor(RowMapper<T> mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+       make a cursor that reads rows in chunks, ordered by key.
+       The query is "select [select] from [from] where [where]";
+       the first column selected must be key, which must be unique
+       in the results.  where may be null.
+    */
+    final public static <T> SQLCursor<T> keyset(String select,
+                                                String from,
+                                                String where,
+                                                String key,
+                                                RowMapper<T> mapper) {
+        return keyset(select, from, where, key, DEFAULT_CHUNK_SIZE, mapper);
+    }
+
+    final public static <T> SQLCursor<T> keyset(String select,
+                                                String from,
+                                                String where,
+                                                String key,
+                                                int chunkSize,
+                                                RowMapper<T> mapper) {
+        SQLCursor<T> rv = new SQLCursor<T>(mapper);
+        if (chunkSize < 1)
+            chunkSize = 1;
+        rv.chunkSize = chunkSize;
+        String base = "select "+select+" from "+from+" where ";
+        if (where != null)
+            base += "("+where+") and ";
+        String tail = " order by "+key+" limit "+chunkSize;
+        rv.firstSQL = base+key+" is not null"+tail;
+        rv.nextSQL = base+key+" > ?"+tail;
+        rv.chunk = new ArrayList<T>(chunkSize);
+        return rv;
+    }
+
+    /**
+       make a cursor that streams all rows of a query from the
+       server, on the thread's connection.
+    */
+    final public static <T> SQLCursor<T> stream(String sql,
+                                                RowMapper<T> mapper) throws SQLException {
+        SQLCursor<T> rv = new SQLCursor<T>(mapper);
+        try {
+            Statement s = LocalSQL.getConnection().createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                                                                   ResultSet.CONCUR_READ_ONLY);
+            s.setFetchSize(Integer.MIN_VALUE);
+            rv.stmt = SQLStats.wrap(s);
+            rv.rs = rv.stmt.executeQuery(sql);
+        }
+        catch (SQLException e) {
+            rv.close();
+            throw e;
+        }
+        return rv;
+    }
+
+    /**
+       returns the next row, or null if there are no more
+    */
+    final public T next() throws SQLException {
+        if (done)
+            return null;
+        if (rs != null) {
+            if (rs.next())
+                return mapper.map(rs);
+            close();
+            return null;
+        }
+        if (chunkPos >= chunk.size()) {
+            if (lastChunk) {
+                close();
+                return null;
+            }
+            readChunk();
+            if (chunk.size() == 0) {
+                done = true;
+                return null;
+            }
+        }
+        T rv = chunk.get(chunkPos);
+        chunk.set(chunkPos++, null);
+        return rv;
+    }
+
+    /**
+       read the next chunk of a keyset cursor
+    */
+    private void readChunk() throws SQLException {
+        chunk.clear();
+        chunkPos = 0;
+        PreparedStatement s;
+        if (lastKey == null)
+            s = LocalSQL.prepareCached(firstSQL);
+        else {
+            s = LocalSQL.prepareCached(nextSQL);
+            s.setObject(1, lastKey);
+        }
+        ResultSet r = s.executeQuery();
+        while (r.next()) {
+            lastKey = r.getObject(1);
+            chunk.add(mapper.map(r));
+        }
+        r.close();
+        // a short chunk must be the last
+        if (chunk.size() < chunkSize)
+            lastChunk = true;
+    }
+
+    /**
+       stop reading, releasing any resources held
+    */
+    final public void close() {
+        done = true;
+        if (chunk != null)
+            chunk.clear();
+        try {
+            if (rs != null)
+                rs.close();
+        }
+        catch (SQLException e) {
+        }
+        try {
+            if (stmt != null)
+                stmt.close();
+        }
+        catch (SQLException e) {
+        }
+        rs = null;
+        stmt = null;
+    }
+}
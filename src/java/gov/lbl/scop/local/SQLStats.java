@@ -0,0 +1,663 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.local;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.ObjectName;
+
+/**
+   Timing statistics for SQL run through LocalSQL.  Each query is
+   reduced to a template by replacing literals with ?, and the
+   number of calls, time spent executing, time spent fetching
+   rows, rows returned and a histogram of execution times are
+   kept per template.
+   <p>
+   Statistics are only kept if db.sql_stats=true in scop.properties,
+   in which case the Statements handed out by LocalSQL are wrapped
+   to time each call.  They can then be read through JMX, or are
+   written every db.sql_stats_dump_seconds (default 300) to the
+   file named by db.sql_stats_file, if set.  Queries taking longer
+   than db.slow_query_ms are logged to stderr, along with the
+   class that ran them.  Time spent in each thread is also added
+   to its JobMetrics.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class SQLStats implements SQLStatsMBean {
+    /**
+       number of histogram buckets; bucket i holds times
+       under 2^i microseconds
+    */
+    final public static int N_BUCKETS = 32;
+
+    /**
+       number of templates in getTopTemplates()
+    */
+    final public static int N_TOP = 50;
+
+    /**
+       are statistics being kept?
+    */
+    private static boolean enabled = false;
+
+    /**
+       queries slower than this are logged; 0 = off
+    */
+    private static long slowQueryNS = 0;
+
+    private static long nSlow = 0;
+
+    /**
+       statistics for each template
+    */
+    private static ConcurrentHashMap<String,Template> templates = new ConcurrentHashMap<String,Template>();
+
+    /**
+       the object registered with JMX
+    */
+    private static SQLStats instance = null;
+
+    /**
+       statistics for one query template
+    */
+    final public static class Template {
+        final public String sql;
+        public long nCalls = 0;
+        public long execNS = 0;
+        public long maxNS = 0;
+        public long fetchNS = 0;
+        public long nRows = 0;
+        public long[] histogram = new long[N_BUCKETS];
+
+        Template(String sql) {
+            this.sql = sql;
+        }
+
+        /**
+           approximate time at a given fraction of calls, in ms,
+           from the histogram
+        */
+        final public synchronized double getPercentileMS(double f) {
+            long target = (long)Math.ceil(f * nCalls);
+            long n = 0;
+            for (int i = 0; i < N_BUCKETS; i++) {
+                n += histogram[i];
+                if ((n >= target) && (n > 0))
+                    return (double)(1L << i) / 1000.0;
+            }
+            return (double)maxNS / 1000000.0;
+        }
+
+        /**
+           one line summary, for reports
+        */
+        final public synchronized String toString() {
+            return (nCalls+"\t"+
+                    (execNS/1000000L)+"\t"+
+                    (fetchNS/1000000L)+"\t"+
+                    String.format("%.3f", (nCalls==0 ? 0.0 : (double)execNS/nCalls/1000000.0))+"\t"+
+                    String.format("%.3f", getPercentileMS(0.5))+"\t"+
+                    String.format("%.3f", getPercentileMS(0.99))+"\t"+
+                    String.format("%.3f", (double)maxNS/1000000.0)+"\t"+
+                    nRows+"\t"+
+                    sql);
+        }
+    }
+
+    static {
+        enabled = "true".equals(SCOP.getProperty("db.sql_stats"));
+        String s = SCOP.getProperty("db.slow_query_ms");
+        if (s != null) {
+            try {
+                slowQueryNS = Long.parseLong(s.trim()) * 1000000L;
+            }
+            catch (NumberFormatException e) {
+            }
+        }
+        if (enabled)
+            start();
+    }
+
+    /**
+       register with JMX and start periodic dumps, if configured
+    */
+    private static void start() {
+        try {
+            instance = new SQLStats();
+            ManagementFactory.getPlatformMBeanServer().registerMBean(instance,
+                                                                     new ObjectName("gov.lbl.scop:type=SQLStats"));
+        }
+        catch (Exception e) {
+            System.err.println("Couldn't register SQL statistics with JMX: "+e.getMessage());
+        }
+
+        final String fileName = SCOP.getProperty("db.sql_stats_file");
+        if (fileName == null)
+            return;
+        long seconds = 300;
+        String s = SCOP.getProperty("db.sql_stats_dump_seconds");
+        if (s != null) {
+            try {
+                seconds = Long.parseLong(s.trim());
+            }
+            catch (NumberFormatException e) {
+            }
+        }
+        final long period = 1000L * Math.max(seconds, 1);
+        Thread t = new Thread("SQL stats dump") {
+                public void run() {
+                    while (true) {
+                        try {
+                            sleep(period);
+                        }
+                        catch (InterruptedException e) {
+                            return;
+                        }
+                        dump(fileName);
+                    }
+                }
+            };
+        t.setDaemon(true);
+        t.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+                public void run() {
+                    dump(fileName);
+                }
+            });
+    }
+
+    final public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+       start keeping statistics, even if not set in
+       scop.properties.  Only statements made after this are timed.
+    */
+    final public static synchronized void enable() {
+        if (enabled)
+            return;
+        enabled = true;
+        start();
+    }
+
+    /**
+       write the report to a file, replacing any old one
+    */
+    final public static void dump(String fileName) {
+        try {
+            File tmp = new File(fileName+".tmp");
+            PrintWriter outfile = new PrintWriter(new FileWriter(tmp));
+            outfile.print(report());
+            outfile.close();
+            tmp.renameTo(new File(fileName));
+        }
+        catch (IOException e) {
+            System.err.println("Couldn't write SQL statistics to "+fileName+": "+e.getMessage());
+        }
+    }
+
+    /**
+       templates, by decreasing total time
+    */
+    final public static Vector<Template> getTemplates() {
+        Vector<Template> rv = new Vector<Template>(templates.values());
+        Collections.sort(rv, new Comparator<Template>() {
+                public int compare(Template a, Template b) {
+                    long ta, tb;
+                    synchronized (a) {
+                        ta = a.execNS + a.fetchNS;
+                    }
+                    synchronized (b) {
+                        tb = b.execNS + b.fetchNS;
+                    }
+                    return (ta > tb ? -1 : (ta < tb ? 1 : 0));
+                }
+            });
+        return rv;
+    }
+
+    /**
+       tab-separated report on all templates
+    */
+    final public static String report() {
+        StringBuilder rv = new StringBuilder();
+        rv.append("# SQL statistics, "+new java.util.Date()+"\n");
+        rv.append("# calls\texec_ms\tfetch_ms\tmean_ms\tp50_ms\tp99_ms\tmax_ms\trows\ttemplate\n");
+        for (Template t : getTemplates())
+            rv.append(t.toString()+"\n");
+        return rv.toString();
+    }
+
+    /**
+       get statistics for a template, making them if needed
+    */
+    private static Template getTemplate(String template) {
+        Template t = templates.get(template);
+        if (t == null) {
+            t = new Template(template);
+            Template old = templates.putIfAbsent(template, t);
+            if (old != null)
+                t = old;
+        }
+        return t;
+    }
+
+    /**
+       record one execution of a template
+    */
+    final public static void record(String template,
+                                    long ns,
+                                    String sql) {
+        Template t = getTemplate(template);
+        JobMetrics.addDBNS(ns);
+        long us = ns / 1000L;
+        int bucket = 64 - Long.numberOfLeadingZeros(us);
+        if (bucket >= N_BUCKETS)
+            bucket = N_BUCKETS - 1;
+        synchronized (t) {
+            t.nCalls++;
+            t.execNS += ns;
+            if (ns > t.maxNS)
+                t.maxNS = ns;
+            t.histogram[bucket]++;
+        }
+        if ((slowQueryNS > 0) && (ns >= slowQueryNS)) {
+            synchronized (SQLStats.class) {
+                nSlow++;
+            }
+            if (sql.length() > 1000)
+                sql = sql.substring(0, 1000)+"...";
+            System.err.println("slow query ("+(ns/1000000L)+" ms) from "+getCaller()+": "+sql);
+        }
+    }
+
+    /**
+       record rows fetched for a template
+    */
+    final public static void recordRows(String template,
+                                        long nRows,
+                                        long ns) {
+        Template t = getTemplate(template);
+        JobMetrics.addDBNS(ns);
+        synchronized (t) {
+            t.nRows += nRows;
+            t.fetchNS += ns;
+        }
+    }
+
+    /**
+       first caller outside this package and the JDK, for
+       logging slow queries
+    */
+    private static String getCaller() {
+        StackTraceElement[] st = new Throwable().getStackTrace();
+        for (StackTraceElement e : st) {
+            String c = e.getClassName();
+            if (c.startsWith("gov.lbl.scop.local.LocalSQL") ||
+                c.startsWith("gov.lbl.scop.local.SQLStats") ||
+                c.startsWith("gov.lbl.scop.local.StatementCache"))
+                continue;
+            if (c.startsWith("java.") ||
+                c.startsWith("javax.") ||
+                c.startsWith("jdk.") ||
+                c.startsWith("sun.") ||
+                c.startsWith("com.sun.") ||
+                c.startsWith("com.mysql.") ||
+                c.startsWith("$Proxy") ||
+                c.startsWith("jdk.proxy"))
+                continue;
+            return c+"."+e.getMethodName()+":"+e.getLineNumber();
+        }
+        return "unknown";
+    }
+
+    /**
+       reduce a query to a template, replacing quoted strings and
+       numbers with ?, collapsing whitespace and lists of values.
+    */
+    final public static String normalize(String sql) {
+        int l = sql.length();
+        StringBuilder rv = new StringBuilder(l);
+        int i = 0;
+        while (i < l) {
+            char c = sql.charAt(i);
+            if ((c == '\'') || (c == '"')) {
+                // quoted string, with \ or doubled quote escapes
+                i++;
+                while (i < l) {
+                    char c2 = sql.charAt(i);
+                    if (c2 == '\\')
+                        i += 2;
+                    else if (c2 == c) {
+                        if ((i+1 < l) && (sql.charAt(i+1) == c))
+                            i += 2;
+                        else
+                            break;
+                    }
+                    else
+                        i++;
+                }
+                i++;
+                rv.append('?');
+            }
+            else if (Character.isDigit(c) &&
+                     ((rv.length() == 0) ||
+                      !isIdentifierChar(rv.charAt(rv.length()-1)))) {
+                // number, possibly with decimals or exponent
+                i++;
+                while (i < l) {
+                    char c2 = sql.charAt(i);
+                    if (Character.isDigit(c2) || (c2 == '.'))
+                        i++;
+                    else if (((c2 == 'e') || (c2 == 'E')) &&
+                             (i+1 < l) &&
+                             (Character.isDigit(sql.charAt(i+1)) ||
+                              (sql.charAt(i+1) == '-') ||
+                              (sql.charAt(i+1) == '+')))
+                        i += 2;
+                    else
+                        break;
+                }
+                // treat negative numbers as a single literal
+                int last = rv.length()-1;
+                if ((last > 0) && (rv.charAt(last) == '-') &&
+                    ((rv.charAt(last-1) == ' ') ||
+                     (rv.charAt(last-1) == '(') ||
+                     (rv.charAt(last-1) == ',') ||
+                     (rv.charAt(last-1) == '=')))
+                    rv.setLength(last);
+                rv.append('?');
+            }
+            else if (Character.isWhitespace(c)) {
+                if ((rv.length() > 0) && (rv.charAt(rv.length()-1) != ' '))
+                    rv.append(' ');
+                i++;
+            }
+            else {
+                rv.append(Character.toLowerCase(c));
+                i++;
+            }
+        }
+        String s = rv.toString().trim();
+
+        // collapse lists of literals and multi-row values
+        if (s.indexOf('?') > -1) {
+            s = s.replaceAll("\\( ?(?:\\?|null)(?: ?, ?(?:\\?|null))+ ?\\)", "(?)");
+            s = s.replaceAll("(\\(\\?\\))(?: ?, ?\\(\\?\\))+", "$1,...");
+        }
+        return s;
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return (Character.isLetterOrDigit(c) ||
+                (c == '_') ||
+                (c == '$') ||
+                (c == '.') ||
+                (c == '`'));
+    }
+
+    /**
+       wrap a Statement so that each query is timed; returns
+       the Statement itself if statistics are off.
+    */
+    final public static Statement wrap(Statement stmt) {
+        if ((!enabled) || (stmt == null))
+            return stmt;
+        return (Statement)Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                                                 new Class[] { Statement.class },
+                                                 new StatementHandler(stmt, null));
+    }
+
+    /**
+       wrap a PreparedStatement so that each execution is timed;
+       returns the statement itself if statistics are off.
+    */
+    final public static PreparedStatement wrap(PreparedStatement stmt,
+                                               String sql) {
+        if ((!enabled) || (stmt == null))
+            return stmt;
+        return (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                                                         new Class[] { PreparedStatement.class },
+                                                         new StatementHandler(stmt, sql));
+    }
+
+    /**
+       times execute calls on a Statement or PreparedStatement
+    */
+    private static class StatementHandler implements InvocationHandler {
+        private Statement stmt;
+
+        /**
+           SQL and template, for prepared statements
+        */
+        private String sql;
+        private String template;
+
+        /**
+           template of the last query run, for getResultSet
+        */
+        private String lastTemplate = null;
+
+        /**
+           SQL added with addBatch, for plain statements
+        */
+        private Vector<String> batch = null;
+
+        StatementHandler(Statement stmt, String sql) {
+            this.stmt = stmt;
+            if (sql != null) {
+                this.sql = sql;
+                template = normalize(sql);
+            }
+        }
+
+        public Object invoke(Object proxy,
+                             Method m,
+                             Object[] args) throws Throwable {
+            String name = m.getName();
+            if (name.equals("addBatch") && (args != null) && (args.length > 0) && (args[0] instanceof String)) {
+                if (batch == null)
+                    batch = new Vector<String>();
+                batch.add((String)args[0]);
+            }
+            else if (name.equals("clearBatch") && (batch != null))
+                batch.clear();
+
+            if (!name.startsWith("execute")) {
+                Object rv = invoke(m, args);
+                if ((rv instanceof ResultSet) &&
+                    name.equals("getResultSet") &&
+                    (lastTemplate != null))
+                    return wrapResultSet((ResultSet)rv, lastTemplate);
+                return rv;
+            }
+
+            // figure out which query is being run
+            String qSQL = sql;
+            String qTemplate = template;
+            if ((args != null) && (args.length > 0) && (args[0] instanceof String)) {
+                qSQL = (String)args[0];
+                qTemplate = normalize(qSQL);
+            }
+            else if (name.startsWith("executeBatch") || name.startsWith("executeLargeBatch")) {
+                if ((qSQL == null) && (batch != null) && (batch.size() > 0)) {
+                    qSQL = batch.get(0);
+                    qTemplate = "batch of "+batch.size()+": "+normalize(qSQL);
+                }
+                else if (qTemplate != null)
+                    qTemplate = "batch: "+qTemplate;
+                if (batch != null)
+                    batch.clear();
+            }
+            if (qTemplate == null) {
+                qSQL = "unknown";
+                qTemplate = qSQL;
+            }
+
+            long t1 = System.nanoTime();
+            Object rv = invoke(m, args);
+            long t2 = System.nanoTime();
+            record(qTemplate, t2 - t1, qSQL);
+            lastTemplate = qTemplate;
+            if (rv instanceof ResultSet)
+                return wrapResultSet((ResultSet)rv, qTemplate);
+            return rv;
+        }
+
+        private Object invoke(Method m, Object[] args) throws Throwable {
+            try {
+                return m.invoke(stmt, args);
+            }
+            catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+       wrap a ResultSet to count rows and time spent fetching them
+    */
+    private static ResultSet wrapResultSet(ResultSet rs, String template) {
+        return (ResultSet)Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                                                 new Class[] { ResultSet.class },
+                                                 new ResultSetHandler(rs, template));
+    }
+
+    /**
+       counts rows read from a ResultSet, recording them when
+       the last row has been read or the ResultSet is closed
+    */
+    private static class ResultSetHandler implements InvocationHandler {
+        private ResultSet rs;
+        private String template;
+        private long nRows = 0;
+        private long fetchNS = 0;
+        private boolean recorded = false;
+
+        ResultSetHandler(ResultSet rs, String template) {
+            this.rs = rs;
+            this.template = template;
+        }
+
+        public Object invoke(Object proxy,
+                             Method m,
+                             Object[] args) throws Throwable {
+            String name = m.getName();
+            try {
+                if (name.equals("next")) {
+                    long t1 = System.nanoTime();
+                    Boolean rv = (Boolean)m.invoke(rs, args);
+                    fetchNS += System.nanoTime() - t1;
+                    if (rv.booleanValue())
+                        nRows++;
+                    else
+                        finish();
+                    return rv;
+                }
+                if (name.equals("close"))
+                    finish();
+                return m.invoke(rs, args);
+            }
+            catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void finish() {
+            if (recorded)
+                return;
+            recorded = true;
+            recordRows(template, nRows, fetchNS);
+        }
+    }
+
+    // JMX interface
+
+    public int getTemplateCount() {
+        return templates.size();
+    }
+
+    public long getQueryCount() {
+        long rv = 0;
+        for (Template t : templates.values()) {
+            synchronized (t) {
+                rv += t.nCalls;
+            }
+        }
+        return rv;
+    }
+
+    public long getTotalMS() {
+        long rv = 0;
+        for (Template t : templates.values()) {
+            synchronized (t) {
+                rv += t.execNS + t.fetchNS;
+            }
+        }
+        return rv / 1000000L;
+    }
+
+    public long getSlowQueryCount() {
+        synchronized (SQLStats.class) {
+            return nSlow;
+        }
+    }
+
+    public long getSlowQueryMS() {
+        return slowQueryNS / 1000000L;
+    }
+
+    public void setSlowQueryMS(long ms) {
+        slowQueryNS = ms * 1000000L;
+    }
+
+    public String[] getTopTemplates() {
+        Vector<Template> v = getTemplates();
+        int n = Math.min(v.size(), N_TOP);
+        String[] rv = new String[n];
+        for (int i = 0; i < n; i++)
+            rv[i] = v.get(i).toString();
+        return rv;
+    }
+
+    public String getReport() {
+        return report();
+    }
+
+    public void reset() {
+        templates.clear();
+        synchronized (SQLStats.class) {
+            nSlow = 0;
+        }
+    }
+}
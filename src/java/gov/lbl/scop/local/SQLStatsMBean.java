@@ -0,0 +1,70 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.local;
+
+/**
+   JMX view of SQLStats, registered as gov.lbl.scop:type=SQLStats
+*/
+public interface SQLStatsMBean {
+    /**
+       number of distinct query templates seen
+    */
+    public int getTemplateCount();
+
+    /**
+       number of queries executed
+    */
+    public long getQueryCount();
+
+    /**
+       total time spent executing queries, in ms
+    */
+    public long getTotalMS();
+
+    /**
+       number of queries over the slow query threshold
+    */
+    public long getSlowQueryCount();
+
+    /**
+       slow query threshold, in ms; 0 if off
+    */
+    public long getSlowQueryMS();
+
+    public void setSlowQueryMS(long ms);
+
+    /**
+       one line per template for the templates taking the
+       most total time
+    */
+    public String[] getTopTemplates();
+
+    /**
+       full report, as written to the dump file
+    */
+    public String getReport();
+
+    /**
+       forget all statistics
+    */
+    public void reset();
+}
@@ -0,0 +1,150 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.local;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+   Cache of PreparedStatements on a single connection, keyed by
+   the SQL template.  Statements from the cache are reused, so
+   callers must close their ResultSets but never the statements,
+   and must not use the same template again while a ResultSet
+   from it is still open (e.g., in a recursive call).
+   <p>
+   Like the connection itself, a cache must only be used by
+   one thread at a time.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class StatementCache {
+    /**
+       default max number of statements cached per connection
+    */
+    final public static int DEFAULT_MAX_SIZE = 256;
+
+    /**
+       caches for each open connection
+    */
+    private static IdentityHashMap<Connection,StatementCache> caches = new IdentityHashMap<Connection,StatementCache>();
+
+    /**
+       connection the statements belong to
+    */
+    private Connection con;
+
+    /**
+       statements, in LRU order
+    */
+    private LinkedHashMap<String,PreparedStatement> statements;
+
+    private long nHits = 0;
+    private long nMisses = 0;
+
+    private StatementCache(Connection con, final int maxSize) {
+        this.con = con;
+        statements = new LinkedHashMap<String,PreparedStatement>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String,PreparedStatement> e) {
+                if (size() > maxSize) {
+                    try {
+                        e.getValue().close();
+                    }
+                    catch (SQLException e2) {
+                    }
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+       get the cache for a connection, making a new one if needed
+    */
+    final public static StatementCache forConnection(Connection con,
+                                                     int maxSize) {
+        synchronized (caches) {
+            StatementCache rv = caches.get(con);
+            if (rv == null) {
+                rv = new StatementCache(con, maxSize);
+                caches.put(con, rv);
+            }
+            return rv;
+        }
+    }
+
+    /**
+       close all statements cached for a connection that is
+       being closed
+    */
+    final public static void remove(Connection con) {
+        StatementCache c;
+        synchronized (caches) {
+            c = caches.remove(con);
+        }
+        if (c != null)
+            c.clear();
+    }
+
+    /**
+       get a prepared statement for a query, reusing one if possible
+    */
+    final public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement rv = statements.get(sql);
+        if (rv != null) {
+            nHits++;
+            rv.clearParameters();
+            return rv;
+        }
+        nMisses++;
+        rv = SQLStats.wrap(con.prepareStatement(sql), sql);
+        statements.put(sql, rv);
+        return rv;
+    }
+
+    /**
+       close and forget all cached statements
+    */
+    final public void clear() {
+        for (PreparedStatement s : statements.values()) {
+            try {
+                s.close();
+            }
+            catch (SQLException e) {
+            }
+        }
+        statements.clear();
+    }
+
+    final public long getHits() {
+        return nHits;
+    }
+
+    final public long getMisses() {
+        return nMisses;
+    }
+}
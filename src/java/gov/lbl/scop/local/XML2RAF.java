@@ -23,23 +23,117 @@ package gov.lbl.scop.local;
 
 import java.io.*;
 import java.util.*;
+import gov.lbl.scop.util.PDBML2RAF;
 import org.strbio.IO;
 import org.strbio.io.*;
 import org.strbio.local.*;
 
 /**
-   Class to run xml2raf.pl
+   Class to run xml2raf.pl.  RAF lines are now made in Java by
+   PDBML2RAF; the perl script is only run if that fails, or if
+   local property xml2raf.mode is "perl".  If xml2raf.mode is
+   "check", both are run, any differences are reported, and the
+   perl output is used.
 */
 public class XML2RAF extends Program {
     final public String programName() {
         return "/lab/proj/astral/bin/xml2raf1.pl";
     }
 
+    /**
+       how to make RAF lines and chains: "java" (the default),
+       "perl", or "check"
+    */
+    final public static String getMode() {
+        String rv = SCOP.getProperty("xml2raf.mode");
+        if ((rv == null) ||
+            ((!rv.equals("perl")) && (!rv.equals("check"))))
+            rv = "java";
+        return rv;
+    }
+
+    /**
+       parse a PDBML file in Java; returns null if failure
+    */
+    final public static PDBML2RAF parseJava(String fileName) {
+        try {
+            return new PDBML2RAF(fileName);
+        }
+        catch (Exception e) {
+            System.err.println("PDBML2RAF failed on "+fileName+": "+e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+       compare output of the Java and perl versions, printing
+       any differences; returns true if they're the same.
+    */
+    final public static boolean compare(String fileName,
+                                        Vector<String> javaLines,
+                                        Vector<String> perlLines) {
+        if ((javaLines == null) || (perlLines == null)) {
+            if (javaLines != perlLines) {
+                System.err.println("XML2RAF mismatch for "+fileName+": "+
+                                   (javaLines == null ? "java" : "perl")+
+                                   " failed");
+                return false;
+            }
+            return true;
+        }
+        boolean rv = true;
+        int n = Math.max(javaLines.size(), perlLines.size());
+        for (int i=0; i<n; i++) {
+            String j = (i < javaLines.size() ? javaLines.get(i) : null);
+            String p = (i < perlLines.size() ? perlLines.get(i) : null);
+            if ((j == null) || (p == null) || (!j.equals(p))) {
+                System.err.println("XML2RAF mismatch for "+fileName+" line "+(i+1)+":");
+                System.err.println("  java: "+j);
+                System.err.println("  perl: "+p);
+                rv = false;
+            }
+        }
+        return rv;
+    }
+
     /**
        Returns a Vector of strings, one per RAF line,
        or null if failure
     */
     final public static Vector<String> getRAF(String fileName) {
+        if (getMode().equals("perl"))
+            return getRAFPerl(fileName);
+        return getRAF(fileName, parseJava(fileName));
+    }
+
+    /**
+       Returns RAF lines as above, from a file already parsed
+       by parseJava (null if that failed), so callers that also
+       need chains don't parse it twice.
+    */
+    final public static Vector<String> getRAF(String fileName,
+                                              PDBML2RAF p) {
+        String mode = getMode();
+        if (mode.equals("perl"))
+            return getRAFPerl(fileName);
+
+        if (p == null)
+            return getRAFPerl(fileName);
+
+        Vector<String> rv = p.getRAFLines();
+        if (mode.equals("check")) {
+            Vector<String> perl = getRAFPerl(fileName);
+            compare(fileName, rv, perl);
+            rv = perl;
+        }
+        return rv;
+    }
+
+    /**
+       Runs xml2raf1.pl; returns a Vector of strings, one per RAF
+       line, or null if failure
+    */
+    final public static Vector<String> getRAFPerl(String fileName) {
         XML2RAF xr = new XML2RAF();
         Vector<String> rv = new Vector<String>();
         BufferedReader infile;
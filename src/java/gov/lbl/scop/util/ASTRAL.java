@@ -220,25 +220,35 @@ public class ASTRAL {
     }
     
     /**
-       translate node ids to sids.  null on error.
+       translate ids to sids, for a table with id and sid columns.
+       null if any id isn't found.
     */
-    final public static HashMap<Integer,String> nodeIDToSid(Collection<Integer> ids)
+    private static IntMap<String> idToSid(String table,
+					  Collection<Integer> ids)
 	throws Exception {
 	Statement stmt = LocalSQL.createStatement();
-	HashMap<Integer,String> rv = new HashMap<Integer,String>();
-	for (Integer i : ids) {
-	    ResultSet rs = stmt.executeQuery("select sid from scop_node where id="+i);
-	    if (rs.next())
-		rv.put(i, rs.getString(1));
-	    else {
-		stmt.close();
-		return null;
-	    }
+	IntMap<String> rv = new IntMap<String>(ids.size());
+	for (String in : LocalSQL.makeInLists(ids, LocalSQL.IN_CHUNK_SIZE)) {
+	    ResultSet rs = stmt.executeQuery("select id, sid from "+table+" where id in ("+in+")");
+	    while (rs.next())
+		rv.put(rs.getInt(1), rs.getString(2));
+	    rs.close();
 	}
 	stmt.close();
+	for (Integer i : ids)
+	    if ((i == null) || (!rv.containsKey(i.intValue())))
+		return null;
 	return rv;
     }
 
+    /**
+       translate node ids to sids.  null on error.
+    */
+    final public static IntMap<String> nodeIDToSid(Collection<Integer> ids)
+	throws Exception {
+	return idToSid("scop_node", ids);
+    }
+
     /**
        translate SCOP node ids to domain ids.  All have to be from
        the same SCOP release.
@@ -249,60 +259,53 @@ public class ASTRAL {
 	throws Exception {
 	Statement stmt = LocalSQL.createStatement();
 	ResultSet rs;
-	Vector<Integer> rv = new Vector<Integer>();
 	int sourceID;
 	if (isAtom)
 	    sourceID = 1;
 	else
 	    sourceID = 2;
-	for (Integer i : ids) {
-	    String query = "select id from astral_domain where source_id="+sourceID+" and (style_id=1 or style_id="+(isGD?3:2)+") and node_id="+i;
+	IntMap<Vector<Integer>> domains = new IntMap<Vector<Integer>>(ids.size());
+	for (String in : LocalSQL.makeInLists(ids, LocalSQL.IN_CHUNK_SIZE)) {
+	    String query = "select node_id, id from astral_domain where source_id="+sourceID+" and (style_id=1 or style_id="+(isGD?3:2)+") and node_id in ("+in+") order by id";
 	    rs = stmt.executeQuery(query);
-	    while ((rs.next()))
-		rv.add(new Integer(rs.getInt(1)));
+	    while (rs.next()) {
+		int nodeID = rs.getInt(1);
+		Vector<Integer> v = domains.get(nodeID);
+		if (v == null) {
+		    v = new Vector<Integer>();
+		    domains.put(nodeID, v);
+		}
+		v.add(new Integer(rs.getInt(2)));
+	    }
 	    rs.close();
 	}
 	stmt.close();
+
+	// keep domains in order of the nodes
+	Vector<Integer> rv = new Vector<Integer>();
+	for (Integer i : ids) {
+	    if (i == null)
+		continue;
+	    Vector<Integer> v = domains.get(i.intValue());
+	    if (v != null)
+		rv.addAll(v);
+	}
 	return rv;
     }
     
     /**
        translate domain ids to sids.  null on error.
     */
-    final public static HashMap<Integer,String> domainIDToSid(Collection<Integer> ids)
+    final public static IntMap<String> domainIDToSid(Collection<Integer> ids)
 	throws Exception {
-	Statement stmt = LocalSQL.createStatement();
-	HashMap<Integer,String> rv = new HashMap<Integer,String>();
-	for (Integer i : ids) {
-	    ResultSet rs = stmt.executeQuery("select sid from astral_domain where id="+i);
-	    if (rs.next())
-		rv.put(i, rs.getString(1));
-	    else {
-		stmt.close();
-		return null;
-	    }
-	}
-	stmt.close();
-	return rv;
+	return idToSid("astral_domain", ids);
     }
 
     /**
        translate chain ids to sids.  null on error.
     */
-    final public static HashMap<Integer,String> astralChainIDToSid(Collection<Integer> ids)
+    final public static IntMap<String> astralChainIDToSid(Collection<Integer> ids)
 	throws Exception {
-	Statement stmt = LocalSQL.createStatement();
-	HashMap<Integer,String> rv = new HashMap<Integer,String>();
-	for (Integer i : ids) {
-	    ResultSet rs = stmt.executeQuery("select sid from astral_chain where id="+i);
-	    if (rs.next())
-		rv.put(i, rs.getString(1));
-	    else {
-		stmt.close();
-		return null;
-	    }
-	}
-	stmt.close();
-	return rv;
+	return idToSid("astral_chain", ids);
     }
 }
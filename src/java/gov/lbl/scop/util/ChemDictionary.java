@@ -0,0 +1,209 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.util;
+
+import java.util.HashMap;
+
+/**
+   Table from residue codes to their translations, used by RAF for
+   the chemical dictionary.  Codes of up to 8 ASCII characters
+   (which is all of them, in practice) are packed into a long, one
+   byte per character, and kept in an open-addressed hash table;
+   each distinct translation is stored once.  Looking up part of a
+   sequence, folded to lower case, doesn't allocate.  Other codes
+   are kept in a HashMap.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class ChemDictionary {
+    /**
+       packed code; a key of 0 is empty
+    */
+    private long[] keys;
+
+    /**
+       index of the translation of each code in translations
+    */
+    private int[] values;
+
+    /**
+       table size - 1; tables are a power of 2 in size
+    */
+    private int mask;
+
+    /**
+       number of packed codes
+    */
+    private int size = 0;
+
+    /**
+       distinct translations, and their indices
+    */
+    private String[] translations = new String[16];
+    private int nTranslations = 0;
+    private HashMap<String,Integer> translationIndex = new HashMap<String,Integer>();
+
+    /**
+       codes that can't be packed
+    */
+    private HashMap<String,String> other = new HashMap<String,String>();
+
+    /**
+       make a table with room for n codes before it needs to grow
+    */
+    public ChemDictionary(int n) {
+        int capacity = 16;
+        while (capacity < n*2)
+            capacity <<= 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity-1;
+    }
+
+    /**
+       pack characters start to end-1 of a code into a long,
+       optionally folding to lower case; returns 0 if they can't
+       be packed.
+    */
+    final public static long pack(CharSequence s,
+                                  int start,
+                                  int end,
+                                  boolean fold) {
+        int l = end - start;
+        if ((l < 1) || (l > 8))
+            return 0;
+        long rv = 0;
+        for (int i=start; i<end; i++) {
+            char c = s.charAt(i);
+            if ((c == 0) || (c > 127))
+                return 0;
+            if (fold && (c >= 'A') && (c <= 'Z'))
+                c += 'a'-'A';
+            rv = (rv << 8) | c;
+        }
+        return rv;
+    }
+
+    /**
+       spread bits of a key
+    */
+    private static int hash(long k) {
+        k *= 0x9e3779b97f4a7c15L;
+        return (int)(k ^ (k >>> 32));
+    }
+
+    /**
+       slot holding key, or the empty slot where it belongs
+    */
+    private int find(long key) {
+        int i = hash(key) & mask;
+        while ((keys[i] != 0) && (keys[i] != key))
+            i = (i+1) & mask;
+        return i;
+    }
+
+    /**
+       double the size of the tables
+    */
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length*2];
+        values = new int[oldKeys.length*2];
+        mask = keys.length-1;
+        for (int j=0; j<oldKeys.length; j++) {
+            if (oldKeys[j] != 0) {
+                int i = find(oldKeys[j]);
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+       map a code (exactly as given) to a translation, replacing
+       any previous translation
+    */
+    final public void put(String code, String translation) {
+        long key = pack(code, 0, code.length(), false);
+        if (key == 0) {
+            other.put(code, translation);
+            return;
+        }
+        Integer index = translationIndex.get(translation);
+        if (index == null) {
+            if (nTranslations == translations.length) {
+                String[] t = new String[nTranslations*2];
+                System.arraycopy(translations, 0, t, 0, nTranslations);
+                translations = t;
+            }
+            translations[nTranslations] = translation;
+            index = new Integer(nTranslations++);
+            translationIndex.put(translation, index);
+        }
+        int i = find(key);
+        if (keys[i] == 0) {
+            keys[i] = key;
+            size++;
+        }
+        values[i] = index.intValue();
+        if (size*2 > keys.length)
+            grow();
+    }
+
+    /**
+       translation of characters start to end-1 of s, folded to
+       lower case, or null if not found
+    */
+    final public String get(CharSequence s, int start, int end) {
+        long key = pack(s, start, end, true);
+        if (key == 0) {
+            if (other.size() == 0)
+                return null;
+            return other.get(s.subSequence(start, end).toString().toLowerCase());
+        }
+        int i = find(key);
+        if (keys[i] == 0)
+            return null;
+        return translations[values[i]];
+    }
+
+    /**
+       translation of a code, folded to lower case, or null if not
+       found
+    */
+    final public String get(String code) {
+        return get(code, 0, code.length());
+    }
+
+    /**
+       number of codes
+    */
+    final public int size() {
+        return size + other.size();
+    }
+}
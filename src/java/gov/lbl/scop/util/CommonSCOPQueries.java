@@ -24,6 +24,7 @@ package gov.lbl.scop.util;
 import gov.lbl.scop.app.DumpSeqs;
 import gov.lbl.scop.local.LocalSQL;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -106,12 +107,11 @@ public class CommonSCOPQueries {
      * IDs are listed in the scop_release table
      */
     final public static int getLatestPublicSCOPReleaseID() throws SQLException {
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery("select id from scop_release where is_public=1 order by id desc limit 1");
+        PreparedStatement stmt = LocalSQL.prepareCached("select id from scop_release where is_public=1 order by id desc limit 1");
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         int scopPublicReleaseID = rs.getInt(1);
         rs.close();
-        stmt.close();
         return scopPublicReleaseID;
     }
 
@@ -120,12 +120,11 @@ public class CommonSCOPQueries {
      * IDs are listed in the scop_release table
      */
     final public static int getLatestSCOPReleaseID() throws SQLException {
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery("select id from scop_release order by id desc limit 1");
+        PreparedStatement stmt = LocalSQL.prepareCached("select id from scop_release order by id desc limit 1");
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         int scopReleaseID = rs.getInt(1);
         rs.close();
-        stmt.close();
         return scopReleaseID;
     }
 
@@ -216,6 +215,12 @@ public class CommonSCOPQueries {
         if (scopNodeID1 == scopNodeID2) {
             return level;
         }
+        ScopTree tree = ScopTree.forNode(scopNodeID1);
+        if ((tree != null) &&
+            (tree.contains(scopNodeID2)) &&
+            (tree.getLevel(scopNodeID1) == level) &&
+            (tree.getLevel(scopNodeID2) == level))
+            return tree.getFirstCommonLevel(scopNodeID1, scopNodeID2);
         int parentNodeID1 = LocalSQL.findParent(scopNodeID1, level - 1);
         int parentNodeID2 = LocalSQL.findParent(scopNodeID2, level - 1);
         return getFirstCommonLevel(parentNodeID1, parentNodeID2, level - 1);
@@ -229,13 +234,13 @@ public class CommonSCOPQueries {
      * @throws Exception
      */
     final public static int getPDBChainIDFromAstralChainID(int astralChainID) throws Exception {
-        String query = "select r.pdb_chain_id from astral_chain ac, raf r where ac.raf_id=r.id and ac.id=" + astralChainID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select r.pdb_chain_id from astral_chain ac, raf r where ac.raf_id=r.id and ac.id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,astralChainID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         int pdbChainID = rs.getInt(1);
         rs.close();
-        stmt.close();
         return pdbChainID;
     }
 
@@ -247,14 +252,17 @@ public class CommonSCOPQueries {
      * @throws Exception
      */
     final public static String getSCCS(int scopNodeID) throws Exception {
+        ScopTree tree = ScopTree.forNode(scopNodeID);
+        if (tree != null)
+            return tree.getSCCS(scopNodeID);
         int ScopNodeClass = -1;
-        String query = "select sccs from scop_node where id=" + scopNodeID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select sccs from scop_node where id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,scopNodeID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         String sccs = rs.getString(1);
         rs.close();
-        stmt.close();
         return sccs;
     }
 
@@ -267,13 +275,13 @@ public class CommonSCOPQueries {
      */
     final public static char getScopNodeClass(int scopNodeID) throws Exception {
         int ScopNodeClass = -1;
-        String query = "select sccs from scop_node where id=" + scopNodeID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select sccs from scop_node where id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,scopNodeID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         String sccs = rs.getString(1);
         rs.close();
-        stmt.close();
         char char1 = sccs.charAt(0);
         return char1;
     }
@@ -307,13 +315,13 @@ public class CommonSCOPQueries {
      * @throws Exception
      */
     final public static String getAstralSeq(int seqID) throws Exception {
-        String query = "select seq from astral_seq where id=" + seqID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select seq from astral_seq where id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,seqID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         String astralSeq = rs.getString(1);
         rs.close();
-        stmt.close();
         return astralSeq;
     }
 
@@ -345,13 +353,13 @@ public class CommonSCOPQueries {
      * @throws Exception
      */
     final public static String getAstralChainSid(int chainID) throws Exception {
-        String query = "select sid from astral_chain where id=" + chainID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select sid from astral_chain where id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,chainID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         String sid = rs.getString(1);
         rs.close();
-        stmt.close();
         return sid;
     }
 
@@ -363,13 +371,13 @@ public class CommonSCOPQueries {
      * @throws Exception
      */
     final public static int getSequenceIDFromAstralChainId(int chainID) throws SQLException {
-        String query = "select seq_id from astral_chain where id=" + chainID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select seq_id from astral_chain where id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,chainID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         int seqId = rs.getInt(1);
         rs.close();
-        stmt.close();
         return seqId;
     }
 
@@ -380,13 +388,13 @@ public class CommonSCOPQueries {
      * @throws SQLException
      */
     public static int getSeqLengthFromAstralChainID(int chainID) throws SQLException {
-        String query = "select length(s.seq) from astral_seq s, astral_chain ac where ac.seq_id=s.id and ac.id=" + chainID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select length(s.seq) from astral_seq s, astral_chain ac where ac.seq_id=s.id and ac.id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,chainID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         int seqLength = rs.getInt(1);
         rs.close();
-        stmt.close();
         return seqLength;
     }
 
@@ -397,13 +405,13 @@ public class CommonSCOPQueries {
      * @throws SQLException
      */
     public static int getSeqLength(int seqID) throws SQLException {
-        String query = "select length(s.seq) from astral_seq s where s.id=" + seqID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select length(s.seq) from astral_seq s where s.id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,seqID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         int seqLength = rs.getInt(1);
         rs.close();
-        stmt.close();
         return seqLength;
     }
 
@@ -415,14 +423,13 @@ public class CommonSCOPQueries {
      * @throws Exception
      */
     final public static int getSeqLengthFromScopNodeID(int nodeID) throws SQLException {
-        String query = "select length(s.seq) from astral_seq s, astral_domain d " +
-            "where d.source_id=2 and s.id=d.seq_id and d.node_id=" + nodeID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select length(s.seq) from astral_seq s, astral_domain d where d.source_id=2 and s.id=d.seq_id and d.node_id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,nodeID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         int seqLength = rs.getInt(1);
         rs.close();
-        stmt.close();
         return seqLength;
     }
 
@@ -494,14 +501,14 @@ public class CommonSCOPQueries {
      * @throws Exception
      */
     final public static int getPDBEntryForPDBChain(int pdbChainID) throws SQLException {
-        String query = " select r.pdb_entry_id from pdb_release r, pdb_chain c where c.pdb_release_id=r.id and c.id=" + pdbChainID;
+        String query = "select r.pdb_entry_id from pdb_release r, pdb_chain c where c.pdb_release_id=r.id and c.id=?";
         //System.out.println("getPDBEntryForPDBChain query " + query);
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,pdbChainID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         int pdbEntryID = rs.getInt(1);
         rs.close();
-        stmt.close();
         return pdbEntryID;
     }
 
@@ -513,13 +520,13 @@ public class CommonSCOPQueries {
      * @throws Exception
      */
     final public static int getPdbReleaseForPDBChain(int pdbChainID) throws SQLException {
-        String query = "select pdb_release_id from pdb_chain where id=" + pdbChainID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select pdb_release_id from pdb_chain where id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,pdbChainID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         int pdbReleaseID = rs.getInt(1);
         rs.close();
-        stmt.close();
         return pdbReleaseID;
     }
 
@@ -531,13 +538,13 @@ public class CommonSCOPQueries {
      * @throws Exception
      */
     final public static String getScopNodeDescription(int scopNodeID) throws SQLException {
-        String query = "select description from scop_node where id=" + scopNodeID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select description from scop_node where id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,scopNodeID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         String description = rs.getString(1);
         rs.close();
-        stmt.close();
         return description;
     }
 
@@ -549,13 +556,13 @@ public class CommonSCOPQueries {
      * @throws Exception
      */
     final public static String getScopNodeSid(int scopNodeID) throws SQLException {
-        String query = "select sid from scop_node where id=" + scopNodeID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select sid from scop_node where id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,scopNodeID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         String sid = rs.getString(1);
         rs.close();
-        stmt.close();
         return sid;
     }
 
@@ -571,13 +578,13 @@ public class CommonSCOPQueries {
      */
     final public static boolean isGeneticDomain(int scopNodeID) throws SQLException {
         // get the number of pdb chains associated with a scop node
-        String query = "select count(pdb_chain_id) from link_pdb where node_id=" + scopNodeID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select count(pdb_chain_id) from link_pdb where node_id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,scopNodeID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         int numPdbChains = rs.getInt(1);
         rs.close();
-        stmt.close();
         return (numPdbChains > 1 ? true : false);
     }
 
@@ -592,13 +599,14 @@ public class CommonSCOPQueries {
         boolean ribosomal = false;
         int protNode = LocalSQL.findParent(scopNodeID, 6);
         int famNode = LocalSQL.findParent(protNode, 5);
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery("select id from scop_node where description like '%ibosomal%' and id in (" + protNode + "," + famNode + ")");
+        PreparedStatement stmt = LocalSQL.prepareCached("select id from scop_node where description like '%ibosomal%' and id in (?,?)");
+        stmt.setInt(1,protNode);
+        stmt.setInt(2,famNode);
+        ResultSet rs = stmt.executeQuery();
         if (rs.next()) {
             ribosomal = true;
         }
         rs.close();
-        stmt.close();
         return ribosomal;
     }
 
@@ -611,56 +619,61 @@ public class CommonSCOPQueries {
      * @return
      */
     public static int getScopNodeBySidAndReleaseID(String sid, int releaseID) throws SQLException {
-        String query = "select id from scop_node where sid=\"" + sid + "\" and release_id=" + releaseID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select id from scop_node where sid=? and release_id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setString(1,sid);
+        stmt.setInt(2,releaseID);
+        ResultSet rs = stmt.executeQuery();
         int scopNodeID = -1;
         if (rs.next()) {
             scopNodeID = rs.getInt(1);
         }
         rs.close();
-        stmt.close();
         return scopNodeID;
     }
 
 
     public static int getScopNodeBySunIDAndReleaseID(int sunID, int releaseID) throws SQLException {
-        String query = "select id from scop_node where sunid=" + sunID + " and release_id=" + releaseID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select id from scop_node where sunid=? and release_id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,sunID);
+        stmt.setInt(2,releaseID);
+        ResultSet rs = stmt.executeQuery();
         int scopNodeID = -1;
         if (rs.next()) {
             scopNodeID = rs.getInt(1);
         }
         rs.close();
-        stmt.close();
         return scopNodeID;
     }
 
     public static int getSunID(int nodeID) throws SQLException {
-        String query = "select sunid from scop_node where id=" + nodeID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        ScopTree tree = ScopTree.forNode(nodeID);
+        if (tree != null)
+            return tree.getSunid(nodeID);
+        String query = "select sunid from scop_node where id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,nodeID);
+        ResultSet rs = stmt.executeQuery();
         int sunID = -1;
         if (rs.next()) {
             sunID = rs.getInt(1);
         }
         rs.close();
-        stmt.close();
         return sunID;
     }
 
 
     public static java.sql.Date getReleaseDate(int scopReleaseID) throws SQLException {
-        String query = "select release_date from scop_release where id=" + scopReleaseID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select release_date from scop_release where id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,scopReleaseID);
+        ResultSet rs = stmt.executeQuery();
         java.sql.Date releaseDate = null;
         if (rs.next()) {
             releaseDate = rs.getDate(1);
         }
         rs.close();
-        stmt.close();
         return releaseDate;
     }
 
@@ -676,17 +689,13 @@ public class CommonSCOPQueries {
      * @throws Exception
      */
     final public static String getRAFLineForScopNode(int scopNodeID) throws SQLException {
-        String query = "select r.line from scop_node n, link_pdb l, raf r where " +
-            "l.node_id=n.id and l.pdb_chain_id=r.pdb_chain_id and " +
-            "r.first_release_id<=n.release_id and " +
-            "r.last_release_id>=n.release_id and n.id=" + scopNodeID +
-            " order by first_release_id desc";
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select r.line from scop_node n, link_pdb l, raf r where l.node_id=n.id and l.pdb_chain_id=r.pdb_chain_id and r.first_release_id<=n.release_id and r.last_release_id>=n.release_id and n.id=? order by first_release_id desc";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,scopNodeID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         String rafLine = rs.getString(1);
         rs.close();
-        stmt.close();
         return rafLine;
     }
 
@@ -701,19 +710,13 @@ public class CommonSCOPQueries {
      * @throws Exception
      */
     final public static int getAstralChainIDFromScopNode(int scopNodeID) throws SQLException {
-        String query = "select ac.id from astral_chain ac, raf r, scop_node n, link_pdb l ";
-        query += "where n.id=l.node_id ";  // join scop_node and link_pdb
-        query += "and l.pdb_chain_id=r.pdb_chain_id ";  // join link_pdb and raf
-        query += "and ac.raf_id=r.id ";  // join astral_chain and raf
-        query += "and ac.source_id=2 "; // restrict to astral_chains of source 2
-        query += "and r.first_release_id<=n.release_id and r.last_release_id>=n.release_id ";  // restrict date range
-        query += "and n.id=" + scopNodeID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select ac.id from astral_chain ac, raf r, scop_node n, link_pdb l where n.id=l.node_id and l.pdb_chain_id=r.pdb_chain_id and ac.raf_id=r.id and ac.source_id=2 and r.first_release_id<=n.release_id and r.last_release_id>=n.release_id and n.id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,scopNodeID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         int astralChainID = rs.getInt(1);
         rs.close();
-        stmt.close();
         return astralChainID;
     }
 
@@ -725,13 +728,13 @@ public class CommonSCOPQueries {
      * @throws Exception
      */
     final public static String getRAFLineForAstralChain(int astralChainID) throws SQLException {
-        String query = "select r.line from astral_chain ac, raf r where r.id=ac.raf_id and ac.id=" + astralChainID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select r.line from astral_chain ac, raf r where r.id=ac.raf_id and ac.id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,astralChainID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         String rafLine = rs.getString(1);
         rs.close();
-        stmt.close();
         return rafLine;
     }
 
@@ -801,13 +804,13 @@ public class CommonSCOPQueries {
      * @throws Exception
      */
     final public static boolean isSeqReject(int astralChainID) throws Exception {
-        Statement stmt = LocalSQL.createStatement();
-        String query = "select seq.is_reject from astral_chain ac, astral_seq seq where ac.seq_id=seq.id and ac.id=" + astralChainID;
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select seq.is_reject from astral_chain ac, astral_seq seq where ac.seq_id=seq.id and ac.id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,astralChainID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         int rejectCode = rs.getInt(1);
         rs.close();
-        stmt.close();
         if (rejectCode == 0) {
             return false;
         } else if (rejectCode == 1) {
@@ -823,13 +826,13 @@ public class CommonSCOPQueries {
      * @throws SQLException
      */
     public static int getCurationType(int scopNodeID) throws SQLException {
-        Statement stmt = LocalSQL.createStatement();
-        String query = "SELECT curation_type_id FROM scop_node WHERE id="+scopNodeID;
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "SELECT curation_type_id FROM scop_node WHERE id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,scopNodeID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         int curationType = rs.getInt(1);
         rs.close();
-        stmt.close();
         return curationType;
     }
 
@@ -841,13 +844,13 @@ public class CommonSCOPQueries {
      * @throws Exception
      */
     final public static double getResolution(int astralChainID) throws SQLException {
-        Statement stmt = LocalSQL.createStatement();
-        String query = "select pr.resolution from pdb_release pr, pdb_chain pc, astral_chain ac, raf r where pc.pdb_release_id=pr.id and r.pdb_chain_id=pc.id and ac.raf_id=r.id and ac.id=" + astralChainID;
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select pr.resolution from pdb_release pr, pdb_chain pc, astral_chain ac, raf r where pc.pdb_release_id=pr.id and r.pdb_chain_id=pc.id and ac.raf_id=r.id and ac.id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,astralChainID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         double res = rs.getDouble(1);
         rs.close();
-        stmt.close();
         return res;
     }
 
@@ -859,12 +862,12 @@ public class CommonSCOPQueries {
      * @throws Exception
      */
     final public static int getRootNodeID(int scopReleaseID) throws SQLException {
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery("select id from scop_node where level_id=1 and release_id=" + scopReleaseID);
+        PreparedStatement stmt = LocalSQL.prepareCached("select id from scop_node where level_id=1 and release_id=?");
+        stmt.setInt(1,scopReleaseID);
+        ResultSet rs = stmt.executeQuery();
         rs.next();
         int rootNodeID = rs.getInt(1);
         rs.close();
-        stmt.close();
         return rootNodeID;
     }
 
@@ -875,9 +878,10 @@ public class CommonSCOPQueries {
      * @return
      */
     public static int getHitSeqID(int blastHitID) throws Exception {
-        String query = "select seq2_id from astral_seq_blast where id=" + blastHitID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select seq2_id from astral_seq_blast where id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,blastHitID);
+        ResultSet rs = stmt.executeQuery();
         int hitSeqID = 0;
         if (rs.next()) {
             hitSeqID = rs.getInt(1);
@@ -885,7 +889,6 @@ public class CommonSCOPQueries {
             hitSeqID = -1;
         }
         rs.close();
-        stmt.close();
         return hitSeqID;
     }
 
@@ -896,9 +899,10 @@ public class CommonSCOPQueries {
      * @return
      */
     public static int getScopNodeInNextRelease(int scopNodeID) throws SQLException {
-        String query = "select n2.id from scop_node n1, scop_node n2 where n1.sunid=n2.sunid and n2.release_id=n1.release_id+1 and n1.id=" + scopNodeID;
-        Statement stmt = LocalSQL.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select n2.id from scop_node n1, scop_node n2 where n1.sunid=n2.sunid and n2.release_id=n1.release_id+1 and n1.id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,scopNodeID);
+        ResultSet rs = stmt.executeQuery();
         int nextScopNodeID = -1;
         if (rs.next()) {
             nextScopNodeID = rs.getInt(1);
@@ -925,17 +929,16 @@ public class CommonSCOPQueries {
      * @return
      */
     public static int getSeqID(int astralChainID) throws Exception {
-        Statement stmt = LocalSQL.createStatement();
-        String query = "SELECT seq_id FROM astral_chain where id=" + astralChainID;
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "SELECT seq_id FROM astral_chain where id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,astralChainID);
+        ResultSet rs = stmt.executeQuery();
         if (!rs.next()) {
             rs.close();
-            stmt.close();
-            throw new Exception("Problem with executing query: " + query);
+            throw new Exception("Problem with executing query: " + query + " for " + astralChainID);
         }
         int seqID = rs.getInt(1);
         rs.close();
-        stmt.close();
         return seqID;
     }
 
@@ -1045,15 +1048,15 @@ public class CommonSCOPQueries {
      *  Get the pfam accession from astral_seq_hmm_pfam id
      */
     public static String getPfamAccessionFromPfamHit(int pfamHitID) throws Exception {
-        Statement stmt = LocalSQL.createStatement();
-        String query = "select accession from pfam f, astral_seq_hmm_pfam h where f.id=h.pfam_id and h.id=" + pfamHitID;
-        ResultSet rs = stmt.executeQuery(query);
+        String query = "select accession from pfam f, astral_seq_hmm_pfam h where f.id=h.pfam_id and h.id=?";
+        PreparedStatement stmt = LocalSQL.prepareCached(query);
+        stmt.setInt(1,pfamHitID);
+        ResultSet rs = stmt.executeQuery();
         if (!rs.next()) {
             throw new Exception("No pfam for hit ID " + pfamHitID + " found");
         }
         String pfamAccessionString = rs.getString(1);
         rs.close();
-        stmt.close();
         return pfamAccessionString;
     }
 
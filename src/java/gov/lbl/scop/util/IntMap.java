@@ -0,0 +1,144 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.util;
+
+/**
+   Map from int keys to objects, using open addressing, so keys
+   aren't boxed.  Behaves like HashMap&lt;Integer,V&gt; for
+   get/put/containsKey.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class IntMap<V> {
+    private int[] keys;
+    private Object[] values;
+    private boolean[] used;
+    private int mask;
+    private int size = 0;
+
+    public IntMap() {
+        this(16);
+    }
+
+    /**
+       make a map with room for n keys before it needs to grow
+    */
+    public IntMap(int n) {
+        int capacity = 16;
+        while (capacity < n*2)
+            capacity <<= 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        used = new boolean[capacity];
+        mask = capacity-1;
+    }
+
+    /**
+       spread bits of a key
+    */
+    private static int hash(int k) {
+        k *= 0x9e3779b9;
+        return k ^ (k >>> 16);
+    }
+
+    /**
+       slot holding key, or the empty slot where it belongs
+    */
+    private int find(int key) {
+        int i = hash(key) & mask;
+        while (used[i] && (keys[i] != key))
+            i = (i+1) & mask;
+        return i;
+    }
+
+    /**
+       returns value for key, or null if not mapped
+    */
+    @SuppressWarnings("unchecked")
+    final public V get(int key) {
+        return (V)values[find(key)];
+    }
+
+    final public boolean containsKey(int key) {
+        return used[find(key)];
+    }
+
+    /**
+       map key to value, returning the old value or null
+    */
+    @SuppressWarnings("unchecked")
+    final public V put(int key, V value) {
+        int i = find(key);
+        V rv = (V)values[i];
+        values[i] = value;
+        if (!used[i]) {
+            keys[i] = key;
+            used[i] = true;
+            size++;
+            if (size*2 > keys.length)
+                grow();
+        }
+        return rv;
+    }
+
+    /**
+       double the size of the tables
+    */
+    private void grow() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        boolean[] oldUsed = used;
+        keys = new int[oldKeys.length*2];
+        values = new Object[oldKeys.length*2];
+        used = new boolean[oldKeys.length*2];
+        mask = keys.length-1;
+        for (int j=0; j<oldKeys.length; j++) {
+            if (oldUsed[j]) {
+                int i = find(oldKeys[j]);
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+                used[i] = true;
+            }
+        }
+    }
+
+    final public int size() {
+        return size;
+    }
+
+    /**
+       returns all keys, in no particular order
+    */
+    final public int[] keys() {
+        int[] rv = new int[size];
+        int n = 0;
+        for (int i=0; i<keys.length; i++)
+            if (used[i])
+                rv[n++] = keys[i];
+        return rv;
+    }
+}
@@ -0,0 +1,777 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.util;
+
+import gov.lbl.scop.local.SCOP;
+
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+   Makes RAF lines and chain types from a PDBML file, in one
+   streaming pass, without running XML2RAF's perl scripts
+   (xml2raf1.pl and getChains.pl).  This is a port of
+   Astral::Xml2Raf 1.08, and gives the same output, including its
+   quirks: the one-letter code table from the last entity is used
+   for all chains, and cyclized residues at the end of a chain are
+   only written out for the last chain in the file.  The perl
+   version is still run by XML2RAF and GetChains if this fails, or
+   to cross-check this one.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class PDBML2RAF {
+    private static HashMap<String,String> standardTranslation;
+    private static HashMap<String,String> nucleotideTranslation;
+    static {
+        String[] s = {"ala","a", "val","v", "phe","f", "pro","p",
+                      "met","m", "ile","i", "leu","l", "asp","d",
+                      "glu","e", "lys","k", "arg","r", "ser","s",
+                      "thr","t", "tyr","y", "his","h", "cys","c",
+                      "asn","n", "gln","q", "trp","w", "gly","g",
+                      "glx","z", "asx","b", "unk","x", "n/a",".",
+                      "ace",".", "ch3",".", "nh2",".", "for",".",
+                      "fmt","."};
+        standardTranslation = new HashMap<String,String>();
+        for (int i=0; i<s.length; i+=2)
+            standardTranslation.put(s[i], s[i+1]);
+        String[] n = {"a", "t", "g", "c", "u", "n",
+                      "da", "dt", "dg", "dc", "du", "dn"};
+        nucleotideTranslation = new HashMap<String,String>();
+        for (int i=0; i<n.length; i++)
+            nucleotideTranslation.put(n[i], "x");
+    }
+
+    /**
+       XML2RAF's chemical dictionary cache, from the same file
+       as RAF uses
+    */
+    private static HashMap<String,String> chemTranslation = null;
+
+    private static Pattern pdbCodePattern = Pattern.compile("(\\d\\w\\w\\w)\\.xml");
+    private static Pattern numPattern = Pattern.compile("(-?\\d+)");
+    private static Pattern intPattern = Pattern.compile("-?\\d+");
+
+    /**
+       what we know about one chain
+    */
+    private static class Chain {
+        String pdbxType;
+        Integer nucleotideCount;
+        String firstRes;
+        String lastRes;
+        boolean notOneToOne;
+        StringBuilder body;
+    }
+
+    /**
+       residue being parsed from pdbx_poly_seq_scheme
+    */
+    private static class Residue {
+        String seqRes;
+        String resID;
+        String insCode;
+        String atomRes;
+        String foundChain;
+    }
+
+    /**
+       residue translating to more than one character, waiting
+       until the next regular residue to be numbered
+    */
+    private static class Cyclized {
+        String sr;
+        String ar;
+        String resID;
+
+        Cyclized(String sr, String ar, String resID) {
+            this.sr = sr;
+            this.ar = ar;
+            this.resID = resID;
+        }
+    }
+
+    // parser state; names follow Xml2Raf.pm
+    private HashSet<String> in = new HashSet<String>();
+    private HashMap<String,Chain> pdbml = new HashMap<String,Chain>();
+    private String chain;
+    private String entityID;
+    private String pdbxType;
+    private HashMap<String,String> entityType = new HashMap<String,String>();
+    private String pdbxOneLetterCode;
+    private String pdbxOneLetterCodeCan;
+    private HashMap<String,String> oneLetterCodeTranslation;
+    private String connType;
+    private Residue residue;
+    private String previousResID;
+    private HashMap<String,Vector<Cyclized>> cyc = new HashMap<String,Vector<Cyclized>>();
+    private HashMap<String,HashMap<String,String>> modres = new HashMap<String,HashMap<String,String>>();
+    private String modresChain;
+    private String modresResID;
+    private String modresAA;
+    private HashMap<String,HashMap<String,String>> structRefSeqDif = new HashMap<String,HashMap<String,String>>();
+    private String structRefSeqDifChain;
+    private String structRefSeqDifResID;
+    private String structRefSeqDifAA;
+
+    private Vector<String> chainLines = null;
+    private Vector<String> rafLines = null;
+
+    /**
+       parse a PDBML file; the pdb code is taken from the file name,
+       and the date in the RAF header from its modification time.
+       Files ending in .gz are uncompressed.
+    */
+    public PDBML2RAF(String fileName) throws Exception {
+        Matcher m = pdbCodePattern.matcher(fileName);
+        if (!m.find())
+            throw new Exception("couldn't find pdb code");
+        String pdbCode = m.group(1);
+        File f = new File(fileName);
+        SimpleDateFormat df = new SimpleDateFormat("yyMMdd");
+        String date = df.format(new Date(f.lastModified()));
+
+        InputStream is = new BufferedInputStream(new FileInputStream(f));
+        try {
+            if (fileName.endsWith(".gz"))
+                is = new GZIPInputStream(is);
+            parse(is, pdbCode, date);
+        }
+        finally {
+            is.close();
+        }
+    }
+
+    /**
+       parse a PDBML stream, using the given pdb code and date
+       (YYMMDD) in RAF headers
+    */
+    public PDBML2RAF(InputStream is,
+                     String pdbCode,
+                     String date) throws Exception {
+        parse(is, pdbCode, date);
+    }
+
+    /**
+       RAF lines, without newlines, as written by xml2raf1.pl
+    */
+    final public Vector<String> getRAFLines() {
+        return rafLines;
+    }
+
+    /**
+       chain, type, length, and nucleotide count of each chain,
+       tab-separated, as written by getChains.pl
+    */
+    final public Vector<String> getChainLines() {
+        return chainLines;
+    }
+
+    /**
+       load the chemical dictionary cache
+    */
+    final private static synchronized HashMap<String,String> getChemTranslation() throws Exception {
+        if (chemTranslation != null)
+            return chemTranslation;
+        String chemDicFile = SCOP.getProperty("xml2raf.chem_dic");
+        if (chemDicFile == null) {
+            throw new Exception("Error; must define local property 'xml2raf.chem_dic' with path to XML2RAF's chemical dictionary cache file");
+        }
+        HashMap<String,String> rv = new HashMap<String,String>();
+        BufferedReader infile = new BufferedReader(new FileReader(chemDicFile));
+        String buffer;
+        while ((buffer = infile.readLine()) != null) {
+            String[] fields = buffer.split("\\s+");
+            if (fields.length > 1)
+                rv.put(fields[0], fields[1]);
+            else if (fields.length > 0)
+                rv.put(fields[0], null);
+        }
+        infile.close();
+        chemTranslation = rv;
+        return rv;
+    }
+
+    /**
+       is a string true, in perl?
+    */
+    final private static boolean isTrue(String s) {
+        return ((s != null) && (s.length() > 0) && (!s.equals("0")));
+    }
+
+    /**
+       perl's .= on a possibly undefined string
+    */
+    final private static String cat(String s, String data) {
+        if (s == null)
+            return data;
+        return s + data;
+    }
+
+    /**
+       sprintf("%5s"), treating undefined as empty
+    */
+    final private static String pad5(String s) {
+        if (s == null)
+            s = "";
+        StringBuilder sb = new StringBuilder(5);
+        for (int i=s.length(); i<5; i++)
+            sb.append(' ');
+        sb.append(s);
+        return sb.toString();
+    }
+
+    /**
+       perl's default formatting of num/den
+    */
+    final private static String perlNumber(int num, int den) {
+        if (num % den == 0)
+            return ""+(num/den);
+        String rv = String.format("%.15g", (double)num/(double)den);
+        if (rv.indexOf('e') == -1) {
+            while (rv.endsWith("0"))
+                rv = rv.substring(0, rv.length()-1);
+            if (rv.endsWith("."))
+                rv = rv.substring(0, rv.length()-1);
+        }
+        return rv;
+    }
+
+    final private Chain getChain(String chainID) {
+        Chain rv = pdbml.get(chainID);
+        if (rv == null) {
+            rv = new Chain();
+            pdbml.put(chainID, rv);
+        }
+        return rv;
+    }
+
+    final private Vector<Cyclized> getCyclized(String chainID) {
+        Vector<Cyclized> rv = cyc.get(chainID);
+        if (rv == null) {
+            rv = new Vector<Cyclized>();
+            cyc.put(chainID, rv);
+        }
+        return rv;
+    }
+
+    final private static String lookup(HashMap<String,HashMap<String,String>> h,
+                                       String chainID,
+                                       String resID) {
+        HashMap<String,String> m = h.get(chainID);
+        if (m == null)
+            return null;
+        return m.get(resID);
+    }
+
+    final private static void store(HashMap<String,HashMap<String,String>> h,
+                                    String chainID,
+                                    String resID,
+                                    String value) {
+        HashMap<String,String> m = h.get(chainID);
+        if (m == null) {
+            m = new HashMap<String,String>();
+            h.put(chainID, m);
+        }
+        m.put(resID, value);
+    }
+
+    /**
+       translate a residue name to one or more characters
+    */
+    final private String translateByRules(String res,
+                                          String resID,
+                                          Chain c) throws Exception {
+        if (res == null)
+            res = "";
+        String resIDNoSpace = (resID == null ? "" : resID);
+        if (resIDNoSpace.endsWith(" "))
+            resIDNoSpace = resIDNoSpace.substring(0, resIDNoSpace.length()-1);
+
+        String sr = null;
+        String s;
+        if (standardTranslation.containsKey(res))
+            sr = standardTranslation.get(res);
+        else if (res.length() == 0)
+            sr = ".";
+        else if (nucleotideTranslation.containsKey(res)) {
+            sr = nucleotideTranslation.get(res);
+            if (c != null)
+                c.nucleotideCount = new Integer(c.nucleotideCount.intValue()+1);
+        }
+        else if (isTrue(getChemTranslation().get(res)))
+            sr = getChemTranslation().get(res);
+        else if (isTrue(s = lookup(modres, chain, resIDNoSpace)))
+            sr = standardTranslation.get(s);
+        else if (isTrue(s = lookup(structRefSeqDif, chain, resIDNoSpace)))
+            sr = standardTranslation.get(s);
+        else if ((oneLetterCodeTranslation != null) &&
+                 (isTrue(oneLetterCodeTranslation.get(res))))
+            sr = oneLetterCodeTranslation.get(res).toLowerCase();
+        else
+            sr = "x";
+
+        if (!isTrue(sr))
+            sr = ".";
+        return sr;
+    }
+
+    /**
+       table from one-letter code (with modified residues in
+       parentheses) to canonical one-letter code
+    */
+    final private HashMap<String,String> match(String one,
+                                               String translated) throws Exception {
+        HashMap<String,String> table = null;
+        String o1 = one.toLowerCase();
+        String t1 = translated.toLowerCase();
+        int len = t1.length();
+        int j = 0;
+        for (int i=0; i<len; i++) {
+            String t = t1.substring(i, i+1);
+            String o = (j < o1.length() ? o1.substring(j, j+1) : null);
+            if ("(".equals(o)) {
+                j++;
+                int k = o1.indexOf(')', j+1);
+                if ((j >= o1.length()) || (k == -1))
+                    throw new Exception(chain+": unterminated modified residue in one letter code");
+                o = o1.substring(j, k);
+                j = k+1;
+
+                if ((table != null) && (t.equals(table.get(o))))
+                    continue;
+                if (o.equals("n/a") || o.equals("ace") || o.equals("nh2"))
+                    continue;
+                if ((table != null) && (isTrue(table.get(o))))
+                    throw new Exception(chain+": different translation table "+o+"->"+t);
+                if (table == null)
+                    table = new HashMap<String,String>();
+                table.put(o, t);
+            }
+            else if (!t.equals(o)) {
+                throw new Exception(chain+": Wrong matching "+(o==null ? "" : o)+"-"+t);
+            }
+            else
+                j++;
+        }
+        return table;
+    }
+
+    /**
+       number and write out cyclized residues waiting on the
+       current chain, which are between resID1 and resID2 (either
+       may be null).
+    */
+    final private void addCyclized(String resID1,
+                                   String resID2) {
+        Vector<Cyclized> v = cyc.get(chain);
+        if ((v == null) || (v.size() == 0))
+            return;
+
+        int totalNumber = 0;
+        for (Cyclized cr : v)
+            totalNumber += cr.sr.length();
+
+        Long startingResidue = null;
+        Long resID1Num = null;
+        Long resID2Num = null;
+        Matcher m;
+        if ((resID1 != null) &&
+            ((m = numPattern.matcher(resID1)).find()))
+            resID1Num = new Long(m.group(1));
+        if ((resID2 != null) &&
+            ((m = numPattern.matcher(resID2)).find()))
+            resID2Num = new Long(m.group(1));
+
+        if ((resID1 != null) && (resID2 != null)) {
+            if ((resID1Num != null) && (resID2Num != null)) {
+                long totalGapLength = resID2Num.longValue() - resID1Num.longValue() - 1;
+                if (totalGapLength == totalNumber)
+                    startingResidue = new Long(resID1Num.longValue()+1);
+            }
+        }
+        else if (resID1 != null) {
+            if (resID1Num != null)
+                startingResidue = new Long(resID1Num.longValue()+1);
+        }
+        else if (resID2 != null) {
+            if (resID2Num != null)
+                startingResidue = new Long(resID2Num.longValue()-totalNumber);
+        }
+
+        Chain c = getChain(chain);
+        for (Cyclized cr : v) {
+            if ((!cr.ar.equals(cr.sr)) && (!cr.ar.equals(".")))
+                System.err.println("Mismatched cyclized residue: seqRes=#"+cr.sr+"#; atomRes=#"+cr.ar+"#");
+
+            String resI = null;
+            for (int i=0; i<cr.sr.length(); i++) {
+                char srI = cr.sr.charAt(i);
+                if (c.body == null)
+                    c.body = new StringBuilder();
+                if (cr.ar.equals(".")) {
+                    resI = cr.resID;
+                    c.body.append(pad5(resI));
+                    c.body.append('.');
+                    c.body.append(srI);
+                }
+                else {
+                    String arI = (i < cr.ar.length() ? cr.ar.substring(i, i+1) : "");
+                    if (startingResidue != null) {
+                        resI = startingResidue+" ";
+                        startingResidue = new Long(startingResidue.longValue()+1);
+                    }
+                    else
+                        resI = cr.resID;
+                    c.body.append(pad5(resI));
+                    c.body.append(arI);
+                    c.body.append(srI);
+
+                    if (!isTrue(c.firstRes))
+                        c.firstRes = resI;
+                    c.lastRes = resI;
+                }
+            }
+            if (!cr.ar.equals("."))
+                previousResID = resI;
+        }
+        v.clear();
+    }
+
+    final private void handleStart(String el,
+                                   String parent,
+                                   XMLStreamReader r) {
+        in.add(el);
+
+        if (el.equals("PDBx:datablock")) {
+            in.clear();
+            modres.clear();
+            structRefSeqDif.clear();
+            entityType.clear();
+            pdbml.clear();
+        }
+
+        if (el.equals("PDBx:entity_poly")) {
+            pdbxType = "";
+            pdbxOneLetterCode = "";
+            pdbxOneLetterCodeCan = "";
+            for (int i=0; i<r.getAttributeCount(); i++)
+                if (attributeName(r, i).equals("entity_id"))
+                    entityID = r.getAttributeValue(i);
+        }
+
+        if (el.equals("PDBx:pdbx_poly_seq_scheme") &&
+            "PDBx:pdbx_poly_seq_schemeCategory".equals(parent)) {
+            residue = new Residue();
+            for (int i=0; i<r.getAttributeCount(); i++) {
+                String att = attributeName(r, i);
+                if (att.equals("mon_id"))
+                    residue.seqRes = r.getAttributeValue(i).toLowerCase();
+                if (att.equals("entity_id"))
+                    entityID = r.getAttributeValue(i);
+            }
+            return;
+        }
+
+        if (el.equals("PDBx:struct_conn")) {
+            modresChain = "";
+            modresResID = "";
+            modresAA = "";
+            connType = "";
+        }
+
+        if (el.equals("PDBx:struct_ref_seq_dif")) {
+            structRefSeqDifChain = "";
+            structRefSeqDifResID = "";
+            structRefSeqDifAA = "";
+        }
+    }
+
+    final private void handleChar(String data) {
+        if (in.contains("PDBx:entity_poly")) {
+            if (in.contains("PDBx:type")) {
+                pdbxType = cat(pdbxType, data);
+                entityType.put(entityID, pdbxType);
+            }
+
+            // perl chomps each line as it's read
+            if (in.contains("PDBx:pdbx_seq_one_letter_code") &&
+                (pdbxType != null) &&
+                (pdbxType.indexOf("peptide") > -1))
+                pdbxOneLetterCode = cat(pdbxOneLetterCode, data.replace("\n", ""));
+
+            if (in.contains("PDBx:pdbx_seq_one_letter_code_can") &&
+                (pdbxType != null) &&
+                (pdbxType.indexOf("peptide") > -1))
+                pdbxOneLetterCodeCan = cat(pdbxOneLetterCodeCan, data.replace("\n", ""));
+        }
+
+        if (in.contains("PDBx:pdbx_poly_seq_scheme") &&
+            in.contains("PDBx:pdbx_poly_seq_schemeCategory")) {
+            if (residue == null)
+                residue = new Residue();
+            if (in.contains("PDBx:pdb_seq_num"))
+                residue.resID = cat(residue.resID, data);
+            if (in.contains("PDBx:pdb_ins_code"))
+                residue.insCode = cat(residue.insCode, data);
+            if (in.contains("PDBx:pdb_mon_id"))
+                residue.atomRes = cat(residue.atomRes, data.toLowerCase());
+            if (in.contains("PDBx:pdb_strand_id"))
+                residue.foundChain = cat(residue.foundChain, data);
+        }
+
+        if (in.contains("PDBx:struct_conn")) {
+            if (in.contains("PDBx:conn_type_id"))
+                connType = cat(connType, data);
+        }
+
+        if (in.contains("PDBx:struct_conn") &&
+            (connType != null) &&
+            (connType.indexOf("modres") > -1)) {
+            if (in.contains("PDBx:ptnr1_auth_asym_id"))
+                modresChain = cat(modresChain, data);
+            if (in.contains("PDBx:ptnr1_auth_seq_id"))
+                modresResID = cat(modresResID, data);
+            data = data.toLowerCase();
+            if (in.contains("PDBx:pdbx_ptnr1_standard_comp_id"))
+                modresAA = cat(modresAA, data);
+        }
+
+        if (in.contains("PDBx:struct_ref_seq_dif")) {
+            if (in.contains("PDBx:pdbx_pdb_strand_id"))
+                structRefSeqDifChain = cat(structRefSeqDifChain, data);
+            if (in.contains("PDBx:pdbx_auth_seq_num"))
+                structRefSeqDifResID = cat(structRefSeqDifResID, data);
+            if (in.contains("PDBx:db_mon_id"))
+                structRefSeqDifAA = cat(structRefSeqDifAA, data);
+        }
+    }
+
+    final private void handleEnd(String el) throws Exception {
+        in.remove(el);
+
+        if (el.equals("PDBx:struct_conn") &&
+            (connType != null) &&
+            (connType.indexOf("modres") > -1)) {
+            store(modres, modresChain, modresResID, modresAA.toLowerCase());
+            connType = "";
+        }
+
+        if (el.equals("PDBx:struct_ref_seq_dif")) {
+            store(structRefSeqDif,
+                  structRefSeqDifChain,
+                  structRefSeqDifResID,
+                  structRefSeqDifAA.toLowerCase());
+            return;
+        }
+
+        if (el.equals("PDBx:pdbx_seq_one_letter_code_can")) {
+            oneLetterCodeTranslation =
+                match((pdbxOneLetterCode==null ? "" : pdbxOneLetterCode),
+                      (pdbxOneLetterCodeCan==null ? "" : pdbxOneLetterCodeCan));
+            return;
+        }
+
+        if (el.equals("PDBx:pdbx_poly_seq_scheme")) {
+            if (residue == null)
+                residue = new Residue();
+            chain = residue.foundChain;
+            if (chain == null)
+                chain = "_";
+
+            if ((residue.resID != null) &&
+                (intPattern.matcher(residue.resID).matches()))
+                residue.resID += (isTrue(residue.insCode) ? residue.insCode : " ");
+
+            if ((residue.resID != null) &&
+                (residue.resID.length() > 5)) {
+                System.err.println("Long residue ID; skipping "+chain+", residue "+residue.resID);
+                return;
+            }
+
+            Chain c = getChain(chain);
+            c.pdbxType = entityType.get(entityID);
+
+            if (c.nucleotideCount == null)
+                c.nucleotideCount = new Integer(0);
+            String sr = translateByRules(residue.seqRes, residue.resID, c);
+            String ar = translateByRules(residue.atomRes, residue.resID, null);
+
+            if (!isTrue(c.firstRes))
+                previousResID = null;
+
+            if (sr.length() > 1) {
+                if (ar.equals("."))
+                    c.notOneToOne = true;
+                getCyclized(chain).add(new Cyclized(sr, ar, residue.resID));
+            }
+            else {
+                addCyclized(previousResID, residue.resID);
+
+                if (!ar.equals(".")) {
+                    if (!isTrue(c.firstRes))
+                        c.firstRes = residue.resID;
+                    c.lastRes = residue.resID;
+                }
+
+                if ((!ar.equals(".")) || (!sr.equals("."))) {
+                    if (sr.equals(".") || ar.equals("."))
+                        c.notOneToOne = true;
+
+                    if ((previousResID == null) ||
+                        (!previousResID.equals(residue.resID == null ? "" : residue.resID)) ||
+                        (ar.equals("."))) {
+                        if (c.body == null)
+                            c.body = new StringBuilder();
+                        c.body.append(pad5(residue.resID));
+                        c.body.append(ar);
+                        c.body.append(sr);
+                    }
+                    else {
+                        System.err.println("Possible microheterogeneity; skipping "+chain+", residue "+residue.resID+" vs "+previousResID);
+                    }
+                }
+
+                if (!ar.equals("."))
+                    previousResID = residue.resID;
+            }
+        }
+    }
+
+    /**
+       name of an element or attribute, with the prefix
+    */
+    final private static String qName(String prefix, String localName) {
+        if ((prefix == null) || (prefix.length() == 0))
+            return localName;
+        return prefix+":"+localName;
+    }
+
+    final private static String attributeName(XMLStreamReader r, int i) {
+        return qName(r.getAttributePrefix(i), r.getAttributeLocalName(i));
+    }
+
+    /**
+       read the whole file, then make the chain and RAF lines
+    */
+    final private void parse(InputStream is,
+                             String pdbCode,
+                             String date) throws Exception {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        XMLStreamReader r = factory.createXMLStreamReader(is);
+        Vector<String> elements = new Vector<String>();
+        while (r.hasNext()) {
+            int event = r.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String el = qName(r.getPrefix(), r.getLocalName());
+                String parent = (elements.size() > 0 ? elements.lastElement() : null);
+                elements.add(el);
+                handleStart(el, parent, r);
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT) {
+                String el = elements.remove(elements.size()-1);
+                handleEnd(el);
+            }
+            else if ((event == XMLStreamConstants.CHARACTERS) ||
+                     (event == XMLStreamConstants.CDATA) ||
+                     (event == XMLStreamConstants.SPACE)) {
+                handleChar(r.getText());
+            }
+        }
+        r.close();
+
+        Vector<String> chains = new Vector<String>(new TreeSet<String>(pdbml.keySet()));
+
+        // same as getChains.pl
+        chainLines = new Vector<String>();
+        for (String chainID : chains) {
+            if (chainID.length() > 1)
+                continue;
+            Chain c = pdbml.get(chainID);
+            int l = (c.body == null ? 0 : c.body.length());
+            chainLines.add(chainID+"\t"+
+                           (c.pdbxType == null ? "" : c.pdbxType)+"\t"+
+                           perlNumber(l, 7)+"\t"+
+                           (c.nucleotideCount == null ? "" : c.nucleotideCount.toString()));
+        }
+
+        // same as xml2raf1.pl.  Xml2Raf.pm flushes cyclized
+        // residues for the chain parsed last, not the one in
+        // the loop, so we do that too.
+        pdbCode = pdbCode.toLowerCase();
+        rafLines = new Vector<String>();
+        for (String chainID : chains) {
+            if (chainID.length() > 1)
+                continue;
+            Chain c = pdbml.get(chainID);
+            addCyclized(c.lastRes, null);
+
+            if (c.body == null)
+                continue;
+            String body = c.body.toString();
+            if (body.length() <= 14)
+                continue;
+
+            if ((c.nucleotideCount != null) &&
+                (c.nucleotideCount.intValue()*7 == body.length()) &&
+                ((c.pdbxType == null) || (c.pdbxType.indexOf("nucleotide") == -1)))
+                System.err.println(pdbCode+chainID+" claims to be '"+c.pdbxType+"' but seems to be all nucleotides");
+
+            rafLines.add(pdbCode+chainID+" 0.03 38 "+date+" 11101"+
+                         (c.notOneToOne ? "0" : "1")+
+                         " "+pad5(c.firstRes)+
+                         pad5(c.lastRes)+
+                         body);
+        }
+    }
+
+    /**
+       test:  prints RAF and chains for a PDBML file
+    */
+    final public static void main(String argv[]) {
+        try {
+            PDBML2RAF p = new PDBML2RAF(argv[0]);
+            for (String s : p.getChainLines())
+                System.out.println(s);
+            for (String s : p.getRAFLines())
+                System.out.println(s);
+        }
+        catch (Exception e) {
+            System.out.println("Exception: "+e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
@@ -26,12 +26,17 @@ import gov.lbl.scop.local.SCOP;
 import org.strbio.IO;
 
 import java.io.BufferedReader;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashMap;
+import java.sql.Types;
 
 /**
    Updated by Lindsey Guan 6/20 for RAF version 3
+   <p>
+   Methods that work on a RAF body parse it into a RAFChain, which
+   is cached, so repeated calls on the same body don't rescan it.
 */
 public class RAF {
     public static class SequenceFragment {
@@ -96,48 +101,7 @@ public class RAF {
        (as in astral_seq_source table)
     */
     final public static SequenceFragment wholeChainSeq(String body, int sourceType) throws IllegalArgumentException {
-        int l = body.length();
-        SequenceFragment rv = new SequenceFragment(l / 7);
-        boolean inSeq = true;
-        int atomStart = 0;
-        int atomEnd = l - 7;
-        if (sourceType == 3) {
-            for (int i = 0; i < l; i += 7) {
-                if (body.charAt(i + 5) != '.') {
-                    atomStart = i;
-                    break;
-                }
-            }
-            for (int i = l - 7; i >= 0; i -= 7) {
-                if (body.charAt(i + 5) != '.') {
-                    atomEnd = i;
-                    break;
-                }
-            }
-        }
-        for (int i = 0; i < l; i += 7) {
-            char atomRes = body.charAt(i + 5);
-            char seqRes = body.charAt(i + 6);
-
-            if (sourceType == 3) {
-                if (i < atomStart || i > atomEnd) {
-                    inSeq = false;
-                } else {
-                    inSeq = true;
-                }
-            }
-            char seqChar;
-            if (sourceType == 1) {
-                seqChar = atomRes;
-            } else if (sourceType == 2 || sourceType == 3) {
-                seqChar = seqRes;
-            } else {
-                throw new IllegalArgumentException("'sourceType' must have value 1, 2, or 3.");
-            }  
-            if (inSeq && seqChar != '.' && seqChar != '"')
-                rv.append(seqChar);
-        }
-        return rv;
+        return RAFChain.get(body).wholeChainSeq(sourceType);
     }
 
 
@@ -156,27 +120,14 @@ public class RAF {
        If forward == false, returns last index.  Returns -1 if not found.
     */
     final public static int indexOf(String body, String resID, boolean forward) {
-        int l = body.length();
-        int direction = 1;
-        if (!forward) direction = -1;
-        // System.out.println("debug Indexof: resID = " + resID);
-        for (int i = (forward ? 0 : l - 7);
-             (forward && (i < l)) || (!forward && (i >= 0));
-             i += 7 * direction) {
-            String curResID = body.substring(i, i + 5).trim();
-            // System.out.println("debug Indexof: curResID = " + curResID);
-            if (curResID.equals(resID))
-                return (i / 7);
-        }
-        return -1;
+        return RAFChain.get(body).indexOf(resID, forward);
     }
 
     /**
        find resid at a particular index in RAF.  index starts at 0.
     */
     final public static String getResID(String body, int index) {
-        int i = 7 * index;
-        return body.substring(i, i + 5).trim();
+        return RAFChain.get(body).getResID(index);
     }
 
     /**
@@ -187,50 +138,7 @@ public class RAF {
     final public static int translateIndex(String body,
                                            int index,
                                            int sourceType) throws IllegalArgumentException {
-        int l = body.length();
-        boolean inSeq = true;
-        int atomStart = 0;
-        int atomEnd = l - 7;
-        if (sourceType == 3) {
-            for (int i = 0; i < l; i += 7) {
-                if (body.charAt(i + 5) != '.') {
-                    atomStart = i;
-                    break;
-                }
-            }
-            for (int i = l - 7; i >= 0; i -= 7) {
-                if (body.charAt(i + 5) != '.') {
-                    atomEnd = i;
-                    break;
-                }
-            }
-        }
-        for (int i = 0; i < l; i += 7) {
-            char atomRes = body.charAt(i + 5);
-            char seqRes = body.charAt(i + 6);
-
-            if (sourceType == 3) {
-                if (i < atomStart || i > atomEnd) {
-                    inSeq = false;
-                } else {
-                    inSeq = true;
-                }
-            }
-            char seqChar;
-            if (sourceType == 1) {
-                seqChar = atomRes;
-            } else if (sourceType == 2 || sourceType == 3) {
-                seqChar = seqRes;
-            } else {
-                throw new IllegalArgumentException("'sourceType' must have value 1, 2, or 3.");
-            }
-            if (inSeq && seqChar != '.' && seqChar != '"') {
-                if (index-- == 0) {
-                    return (i / 7);
-                }           
-            }
-        }
-        return -1;
+        return RAFChain.get(body).translateIndex(index, sourceType);
     }
 
     /**
@@ -241,50 +149,7 @@ public class RAF {
     final public static int rTranslateIndex(String body,
                                             int index,
                                             int sourceType) throws IllegalArgumentException {
-        int l = body.length();
-        int rv = -1;
-        boolean inSeq = true;
-        int atomStart = 0;
-        int atomEnd = l - 7;
-        if (sourceType == 3) {
-            for (int i = 0; i < l; i += 7) {
-                if (body.charAt(i + 5) != '.') {
-                    atomStart = i;
-                    break;
-                }
-            }
-            for (int i = l - 7; i >= 0; i -= 7) {
-                if (body.charAt(i + 5) != '.') {
-                    atomEnd = i;
-                    break;
-                }
-            }
-        }
-        for (int i = 0; i <= (index * 7); i += 7) {
-            char atomRes = body.charAt(i + 5);
-            char seqRes = body.charAt(i + 6);
-
-            if (sourceType == 3) {
-                if (i < atomStart || i > atomEnd) {
-                    inSeq = false;
-                } else {
-                    inSeq = true;
-                }
-            }
-            char seqChar;
-            if (sourceType == 1) {
-                seqChar = atomRes;
-            } else if (sourceType == 2 || sourceType == 3) {
-                seqChar = seqRes;
-            } else {
-                throw new IllegalArgumentException("'sourceType' must have value 1, 2, or 3.");
-            }
-
-            if (inSeq && seqChar != '.' && seqChar != '"') {
-                rv++;
-            }
-        }
-        return rv;
+        return RAFChain.get(body).rTranslateIndex(index, sourceType);
     }
 
     /**
@@ -364,15 +229,7 @@ public class RAF {
        Returns null if anything was not found or range is reversed.
     */
     final public static SequenceFragment partialChainSeq(String body, int sourceType, String firstRes, String lastRes) {
-        int firstResN = indexOf(body, firstRes, true);
-        int lastResN = indexOf(body, lastRes, false);
-        // System.out.println(firstRes+" "+firstResN);
-        // System.out.println(lastRes+" "+lastResN);
-        if ((firstResN == -1) || (lastResN == -1) || (firstResN > lastResN)) {
-            return null;
-        } else {
-            return partialChainSeq(body, sourceType, firstResN, lastResN);
-        }      
+        return RAFChain.get(body).partialChainSeq(sourceType, firstRes, lastRes);
     }
 
     /**
@@ -389,34 +246,32 @@ public class RAF {
                                                          int sourceType, 
                                                          int firstRes, 
                                                          int lastRes) throws IllegalArgumentException {
-        SequenceFragment rv = new SequenceFragment(lastRes - firstRes + 1);
-        for (int i = firstRes * 7; i <= lastRes * 7; i += 7) {
-            // System.err.println("debug: '"+body.substring(i,i+7)+"'");
-            if (sourceType == 1) {
-                rv.append(body.charAt(i + 5));
-            } else if (sourceType == 2) {
-                rv.append(body.charAt(i + 6));
-            } else {
-                throw new IllegalArgumentException("'sourceType' must have value 1 or 2.");
-            }
-        }
-        return rv;
+        return RAFChain.get(body).partialChainSeq(sourceType, firstRes, lastRes);
     }
 
-    private static HashMap<String, String> chemDic = null;
+    /**
+       set once, fully filled, by setupChemDic(); volatile so
+       threads that read it without locking see the whole
+       dictionary
+    */
+    private static volatile ChemDictionary chemDic = null;
 
     /**
        Set up chemical dictionary
-       (Unchanged for RAF version 3)
+       (Unchanged for RAF version 3, but now kept in a
+       ChemDictionary rather than a HashMap)
     */
-    final private static void setupChemDic() throws Exception {
+    final private static synchronized void setupChemDic() throws Exception {
+        if (chemDic != null) {
+            return;
+        }
         String chemDicFile = SCOP.getProperty("xml2raf.chem_dic");
         if (chemDicFile == null) {
             throw new Exception("Error; must define local property 'xml2raf.chem_dic' with path to XML2RAF's chemical dictionary cache file");
         }
         BufferedReader infile = IO.openReader(chemDicFile);
         String buffer;
-        chemDic = new HashMap<String, String>();
+        ChemDictionary chemDic = new ChemDictionary(32768);
         while ((buffer = infile.readLine()) != null) {
             String[] fields = buffer.split("\t");
             chemDic.put(fields[0], fields[1]);
@@ -465,6 +320,7 @@ public class RAF {
         chemDic.put("dc", "x");
         chemDic.put("du", "x");
         chemDic.put("dn", "x");
+        RAF.chemDic = chemDic;
     }
 
     /**
@@ -473,10 +329,20 @@ public class RAF {
        (Unchanged for RAF version 3)
     */
     final public static String translatePDBRes(String res) throws Exception {
+        return translatePDBRes(res, 0, res.length());
+    }
+
+    /**
+       translate characters start to end-1 of a sequence as a
+       single modified residue, without copying them
+    */
+    final public static String translatePDBRes(CharSequence seq,
+                                               int start,
+                                               int end) throws Exception {
         if (chemDic == null) {
             setupChemDic();
         }
-        String translation = chemDic.get(res.toLowerCase());
+        String translation = chemDic.get(seq, start, end);
         if (translation == null) {
             return("x");
         }
@@ -492,27 +358,50 @@ public class RAF {
        (Unchanged for RAF version 3)
     */
     final public static String translatePDBSeq(String seq) throws Exception {
-        StringBuffer sb = new StringBuffer();
+        StringBuilder sb = new StringBuilder(seq.length());
+        translatePDBSeq(seq, sb, false);
+        if (sb.length() == 0) {
+            return null;
+        }
+        return sb.toString();
+    }
+
+    /**
+       translate chemically modified residues as above, appending
+       the translation to a buffer supplied by the caller.  If
+       lowerCase is set, residues outside () are converted to
+       lower case.
+    */
+    final public static void translatePDBSeq(CharSequence seq,
+                                             StringBuilder sb,
+                                             boolean lowerCase) throws Exception {
+        int l = seq.length();
         int pos1 = 0;
-        do {
-            int pos2 = seq.indexOf('(', pos1);
-            if (pos2 == -1) {
-                sb.append(seq.substring(pos1));
-                if (sb.length() == 0) {
-                    return null;
-                } else {
-                    return (sb.toString());
-                }  
-            } else {
-                sb.append(seq.substring(pos1, pos2));
-                pos1 = seq.indexOf(')', pos2 + 1) + 1;
-                if (pos1 == 0) {
-                    throw new Exception("Mismatched parentheses in " + seq);
+        while (pos1 < l) {
+            int pos2 = pos1;
+            while ((pos2 < l) && (seq.charAt(pos2) != '(')) {
+                pos2++;
+            }
+            if (lowerCase) {
+                for (int i = pos1; i < pos2; i++) {
+                    sb.append(Character.toLowerCase(seq.charAt(i)));
                 }
-                String modRes = seq.substring(pos2 + 1, pos1 - 1);
-                sb.append(translatePDBRes(modRes));
+            } else {
+                sb.append(seq, pos1, pos2);
+            }
+            if (pos2 == l) {
+                break;
+            }
+            pos1 = pos2 + 1;
+            while ((pos1 < l) && (seq.charAt(pos1) != ')')) {
+                pos1++;
             }
-        } while (true);
+            if (pos1 == l) {
+                throw new Exception("Mismatched parentheses in " + seq);
+            }
+            sb.append(translatePDBRes(seq, pos2 + 1, pos1));
+            pos1++;
+        }
     }
 
     /**
@@ -525,12 +414,12 @@ public class RAF {
         if (seq == null) {
             return false;
         }
-        seq = seq.toLowerCase();
         int pos = 0;
         int total = 0;
         int totalNuc = 0;
-        String tranSeq = translatePDBSeq(seq);
-        while ((pos < 100) && (pos < tranSeq.length()) && (pos != -1)) {
+        StringBuilder tranSeq = new StringBuilder(seq.length());
+        translatePDBSeq(seq, tranSeq, true);
+        while ((pos < 100) && (pos < tranSeq.length())) {
             char c = tranSeq.charAt(pos++);
             if (c != 'x') {
                 total++;
@@ -546,6 +435,7 @@ public class RAF {
                 
         }
         if (total == 0) {
+            seq = seq.toLowerCase();
             if ((seq.indexOf("(a)") > -1) ||
                 (seq.indexOf("(t)") > -1) ||
                 (seq.indexOf("(g)") > -1) ||
@@ -609,6 +499,81 @@ public class RAF {
         }
     }
 
+    /**
+       64-bit hash of a RAF line or body: FNV-1a over the
+       characters, then mixed as in MurmurHash3.  Stored in
+       raf.line_hash and raf.body_hash, so lines can be compared
+       without reading them from the db.
+    */
+    final public static long hash(CharSequence s) {
+        long h = 0xcbf29ce484222325L;
+        int l = s.length();
+        for (int i = 0; i < l; i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+       Insert a RAF line, with the hashes of it and its body;
+       returns the new id.  Release ids of 0 are stored as null.
+       Version 3 bodies are hashed here; other versions are
+       hashed from raf_get_body() after inserting.
+    */
+    final public static int insertRAF(int rafVersionID,
+                                      int pdbChainID,
+                                      int firstReleaseID,
+                                      int lastReleaseID,
+                                      String line) throws SQLException {
+        PreparedStatement stmt = LocalSQL.prepareStatement("insert into raf (raf_version_id, pdb_chain_id, first_release_id, last_release_id, line, line_hash, body_hash) values (?, ?, ?, ?, ?, ?, ?)",
+                                                           Statement.RETURN_GENERATED_KEYS);
+        stmt.setInt(1, rafVersionID);
+        stmt.setInt(2, pdbChainID);
+        if (firstReleaseID > 0) {
+            stmt.setInt(3, firstReleaseID);
+        } else {
+            stmt.setNull(3, Types.INTEGER);
+        }
+        if (lastReleaseID > 0) {
+            stmt.setInt(4, lastReleaseID);
+        } else {
+            stmt.setNull(4, Types.INTEGER);
+        }
+        stmt.setString(5, line);
+        stmt.setLong(6, hash(line));
+        if (rafVersionID == 3) {
+            stmt.setLong(7, hash(getRAFBody(line)));
+        } else {
+            stmt.setNull(7, Types.BIGINT);
+        }
+        stmt.executeUpdate();
+        ResultSet rs = stmt.getGeneratedKeys();
+        rs.next();
+        int rv = rs.getInt(1);
+        rs.close();
+        stmt.close();
+
+        if (rafVersionID != 3) {
+            Statement stmt2 = LocalSQL.createStatement();
+            rs = stmt2.executeQuery("select raf_get_body(" + rv + ")");
+            if (rs.next()) {
+                String body = rs.getString(1);
+                if (body != null) {
+                    stmt2.executeUpdate("update raf set body_hash=" + hash(body) + " where id=" + rv);
+                }
+            }
+            rs.close();
+            stmt2.close();
+        }
+        return rv;
+    }
+
     /**
        Get the body from the raf line
 
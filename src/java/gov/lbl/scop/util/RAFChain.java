@@ -0,0 +1,340 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.util;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+   A RAF body, parsed once: ATOM and SEQRES characters in arrays,
+   residue ids with an index from id to position, and the first
+   and last residues with ATOM records.  Tables for translating
+   between sequence and RAF indices are built the first time
+   they're needed for each source type.  The static methods in RAF
+   use these (via get()) rather than rescanning the body text on
+   every call.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class RAFChain {
+    /**
+       number of recently used chains kept by get()
+    */
+    final public static int CACHE_SIZE = 64;
+
+    /**
+       recently parsed chains, by body
+    */
+    private static LinkedHashMap<String,RAFChain> cache =
+        new LinkedHashMap<String,RAFChain>(CACHE_SIZE*2, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String,RAFChain> e) {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+    /**
+       the body this was parsed from
+    */
+    private String body;
+
+    /**
+       number of residues
+    */
+    private int n;
+
+    /**
+       ATOM and SEQRES character of each residue
+    */
+    private char[] atom;
+    private char[] seqres;
+
+    /**
+       residue id of each residue (trimmed and interned)
+    */
+    private String[] resIDs;
+
+    /**
+       first and last index of each residue id
+    */
+    private HashMap<String,Integer> firstIndex;
+    private HashMap<String,Integer> lastIndex;
+
+    /**
+       first and last residue with an ATOM record; the whole
+       chain if there are none
+    */
+    private int atomStart;
+    private int atomEnd;
+
+    /**
+       tables for translating indices for one source type
+    */
+    private static class Tables {
+        /**
+           number of residues in the whole chain sequence before
+           each RAF index (n+1 entries)
+        */
+        final int[] seqCount;
+
+        /**
+           RAF index of each residue in the sequence
+        */
+        final int[] seqToRAF;
+
+        Tables(int[] seqCount, int[] seqToRAF) {
+            this.seqCount = seqCount;
+            this.seqToRAF = seqToRAF;
+        }
+    }
+
+    /**
+       tables for each source type (1-3), built when first needed
+    */
+    private Tables[] tables = new Tables[4];
+
+    /**
+       get parsed version of a body, from the cache if it was used
+       recently
+    */
+    final public static RAFChain get(String body) {
+        synchronized (cache) {
+            RAFChain rv = cache.get(body);
+            if (rv == null) {
+                rv = new RAFChain(body);
+                cache.put(body, rv);
+            }
+            return rv;
+        }
+    }
+
+    /**
+       parse a RAF body (the part of a RAF line after the header)
+    */
+    public RAFChain(String body) {
+        this.body = body;
+        n = body.length() / 7;
+        atom = new char[n];
+        seqres = new char[n];
+        resIDs = new String[n];
+        firstIndex = new HashMap<String,Integer>(n*2);
+        lastIndex = new HashMap<String,Integer>(n*2);
+        atomStart = -1;
+        atomEnd = -1;
+        for (int i=0; i<n; i++) {
+            int pos = i*7;
+            atom[i] = body.charAt(pos+5);
+            seqres[i] = body.charAt(pos+6);
+            String resID = body.substring(pos, pos+5).trim().intern();
+            resIDs[i] = resID;
+            Integer index = new Integer(i);
+            if (!firstIndex.containsKey(resID))
+                firstIndex.put(resID, index);
+            lastIndex.put(resID, index);
+            if (atom[i] != '.') {
+                if (atomStart == -1)
+                    atomStart = i;
+                atomEnd = i;
+            }
+        }
+        if (atomStart == -1) {
+            atomStart = 0;
+            atomEnd = n-1;
+        }
+    }
+
+    final public String getBody() {
+        return body;
+    }
+
+    /**
+       number of residues
+    */
+    final public int length() {
+        return n;
+    }
+
+    final public char getATOM(int index) {
+        return atom[index];
+    }
+
+    final public char getSEQRES(int index) {
+        return seqres[index];
+    }
+
+    /**
+       first and last residue with an ATOM record
+    */
+    final public int getATOMStart() {
+        return atomStart;
+    }
+
+    final public int getATOMEnd() {
+        return atomEnd;
+    }
+
+    /**
+       character of a residue in the whole chain sequence for a
+       source type (see RAF.wholeChainSeq), or 0 if that residue
+       isn't in the sequence.
+    */
+    final public char seqChar(int index, int sourceType) throws IllegalArgumentException {
+        char c;
+        if (sourceType == 1)
+            c = atom[index];
+        else if (sourceType == 2)
+            c = seqres[index];
+        else if (sourceType == 3) {
+            if ((index < atomStart) || (index > atomEnd))
+                return 0;
+            c = seqres[index];
+        }
+        else
+            throw new IllegalArgumentException("'sourceType' must have value 1, 2, or 3.");
+        if ((c == '.') || (c == '"'))
+            return 0;
+        return c;
+    }
+
+    /**
+       see RAF.wholeChainSeq
+    */
+    final public RAF.SequenceFragment wholeChainSeq(int sourceType) throws IllegalArgumentException {
+        RAF.SequenceFragment rv = new RAF.SequenceFragment(n);
+        for (int i=0; i<n; i++) {
+            char c = seqChar(i, sourceType);
+            if (c != 0)
+                rv.append(c);
+        }
+        return rv;
+    }
+
+    /**
+       see RAF.indexOf
+    */
+    final public int indexOf(String resID, boolean forward) {
+        Integer rv;
+        if (forward)
+            rv = firstIndex.get(resID);
+        else
+            rv = lastIndex.get(resID);
+        if (rv == null)
+            return -1;
+        return rv.intValue();
+    }
+
+    /**
+       see RAF.getResID
+    */
+    final public String getResID(int index) {
+        return resIDs[index];
+    }
+
+    /**
+       returns the translation tables for a source type, building
+       them if needed
+    */
+    private Tables getTables(int sourceType) throws IllegalArgumentException {
+        if ((sourceType < 1) || (sourceType > 3))
+            throw new IllegalArgumentException("'sourceType' must have value 1, 2, or 3.");
+        Tables rv = tables[sourceType];
+        if (rv != null)
+            return rv;
+        int[] count = new int[n+1];
+        int[] toRAF = new int[n];
+        int k = 0;
+        for (int i=0; i<n; i++) {
+            count[i] = k;
+            if (seqChar(i, sourceType) != 0)
+                toRAF[k++] = i;
+        }
+        count[n] = k;
+        int[] trimmed = new int[k];
+        System.arraycopy(toRAF, 0, trimmed, 0, k);
+        // another thread may build the same tables; either is fine
+        rv = new Tables(count, trimmed);
+        tables[sourceType] = rv;
+        return rv;
+    }
+
+    /**
+       see RAF.translateIndex; constant time after the first call
+       for each source type.
+    */
+    final public int translateIndex(int index, int sourceType) throws IllegalArgumentException {
+        int[] toRAF = getTables(sourceType).seqToRAF;
+        if ((index < 0) || (index >= toRAF.length))
+            return -1;
+        return toRAF[index];
+    }
+
+    /**
+       see RAF.rTranslateIndex; constant time after the first call
+       for each source type.
+    */
+    final public int rTranslateIndex(int index, int sourceType) throws IllegalArgumentException {
+        if (index >= n)
+            throw new IndexOutOfBoundsException("index "+index+" past end of chain");
+        Tables t = getTables(sourceType);
+        if (index < 0)
+            return -1;
+        return t.seqCount[index+1] - 1;
+    }
+
+    /**
+       see RAF.partialChainSeq; returns null if anything was not
+       found or range is reversed.
+    */
+    final public RAF.SequenceFragment partialChainSeq(int sourceType,
+                                                      String firstRes,
+                                                      String lastRes) {
+        int firstResN = indexOf(firstRes, true);
+        int lastResN = indexOf(lastRes, false);
+        if ((firstResN == -1) || (lastResN == -1) || (firstResN > lastResN))
+            return null;
+        return partialChainSeq(sourceType, firstResN, lastResN);
+    }
+
+    /**
+       see RAF.partialChainSeq
+    */
+    final public RAF.SequenceFragment partialChainSeq(int sourceType,
+                                                      int firstRes,
+                                                      int lastRes) throws IllegalArgumentException {
+        char[] source;
+        if (sourceType == 1)
+            source = atom;
+        else if (sourceType == 2)
+            source = seqres;
+        else
+            throw new IllegalArgumentException("'sourceType' must have value 1 or 2.");
+        RAF.SequenceFragment rv = new RAF.SequenceFragment(lastRes - firstRes + 1);
+        for (int i=firstRes; i<=lastRes; i++)
+            rv.append(source[i]);
+        return rv;
+    }
+}
@@ -0,0 +1,540 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.util;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.sql.*;
+import java.util.*;
+import gov.lbl.scop.local.LocalSQL;
+import gov.lbl.scop.local.PDBIndex;
+import gov.lbl.scop.local.RowMapper;
+import gov.lbl.scop.local.SCOP;
+import gov.lbl.scop.local.SQLCursor;
+
+/**
+   Binary copy of the RAF bodies for all chains in one SCOP
+   release, so release builds can read them from a memory-mapped
+   file rather than through raf_get_body() on the server.
+   <p>
+   Files are made by export() (see MakeRafStore), and kept in the
+   directory given by the raf_store.dir property, as
+   raf-[release id].bin.  The layout is:
+   <pre>
+   header:  magic "SCOPRAF2", int release id, int n entries,
+            long offset of bodies, int number of raf rows in
+            the release, int highest raf id in the release
+   index:   n entries of (int packed code, int chain, int raf id,
+            int pdb chain id, long body offset, int body length,
+            int unused), sorted by code and chain
+   bodies:  one byte per character
+   </pre>
+   Codes are packed as in PDBIndex (folded to lower case); chains
+   are case sensitive.  All numbers are big-endian.
+   <p>
+   Bodies are returned as CharSequence views of the mapped file,
+   without copying.  Chains not in the file (e.g., chains with
+   multi-character ids) aren't found, and callers should fall back
+   to the db.
+   <p>
+   Nothing updates a store when raf rows change, so it must be
+   made again with MakeRafStore after RAFs for its release are
+   added or replaced (e.g., by FreezeRAF).  To catch stores that
+   weren't, the number of raf rows in the release and the highest
+   raf id are saved in the header, and checked against the db
+   when the store is opened; a store that doesn't match is
+   ignored, so callers fall back to the db.  A store already open
+   isn't checked again unless invalidate() is called.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class RafStore {
+    final private static byte[] MAGIC = {'S','C','O','P','R','A','F','2'};
+    final private static int HEADER_SIZE = 32;
+    final private static int ENTRY_SIZE = 32;
+
+    /**
+       stores opened so far, by release id; null if there is no
+       file for a release
+    */
+    private static HashMap<Integer,RafStore> stores = new HashMap<Integer,RafStore>();
+
+    private int scopReleaseID;
+    private int n;
+
+    /**
+       number of raf rows in the release, and highest raf id,
+       when the store was made
+    */
+    private int nRAFs;
+    private int maxRAFID;
+
+    /**
+       the index, in memory, sorted by code and chain
+    */
+    private int[] codes;
+    private int[] chains;
+    private int[] rafIDs;
+    private int[] pdbChainIDs;
+    private long[] offsets;
+    private int[] lengths;
+
+    /**
+       index entries sorted by pdb chain id
+    */
+    private int[] byPDBChain;
+
+    /**
+       the mapped file, in overlapping pieces starting every
+       SEGMENT_SIZE bytes
+    */
+    final private static long SEGMENT_SIZE = 1L<<30;
+    private MappedByteBuffer[] segments;
+    private long bodiesOffset;
+
+    /**
+       A body, read from the mapped file without copying
+    */
+    public static class Body implements CharSequence {
+        private ByteBuffer buf;
+        private int start;
+        private int length;
+
+        Body(ByteBuffer buf, int start, int length) {
+            this.buf = buf;
+            this.start = start;
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public char charAt(int index) {
+            if ((index < 0) || (index >= length))
+                throw new IndexOutOfBoundsException("index "+index);
+            return (char)(buf.get(start+index) & 0xff);
+        }
+
+        public CharSequence subSequence(int from, int to) {
+            if ((from < 0) || (to > length) || (from > to))
+                throw new IndexOutOfBoundsException("range "+from+"-"+to);
+            return new Body(buf, start+from, to-from);
+        }
+
+        public String toString() {
+            char[] c = new char[length];
+            for (int i=0; i<length; i++)
+                c[i] = (char)(buf.get(start+i) & 0xff);
+            return new String(c);
+        }
+    }
+
+    /**
+       returns the file for a release, or null if raf_store.dir
+       isn't set
+    */
+    final public static File getFile(int scopReleaseID) {
+        String dir = SCOP.getProperty("raf_store.dir");
+        if (dir == null)
+            return null;
+        return new File(dir, "raf-"+scopReleaseID+".bin");
+    }
+
+    /**
+       returns the store for a release, or null if there is no
+       file for it
+    */
+    final public static synchronized RafStore get(int scopReleaseID) {
+        Integer key = new Integer(scopReleaseID);
+        if (stores.containsKey(key))
+            return stores.get(key);
+        RafStore rv = null;
+        File f = getFile(scopReleaseID);
+        if ((f != null) && (f.exists())) {
+            try {
+                rv = new RafStore(f);
+                if (rv.scopReleaseID != scopReleaseID) {
+                    System.err.println("RafStore: "+f+" is for release "+rv.scopReleaseID);
+                    rv = null;
+                }
+                else {
+                    int[] fp = getFingerprint(scopReleaseID);
+                    if ((fp[0] != rv.nRAFs) || (fp[1] != rv.maxRAFID)) {
+                        System.err.println("RafStore: "+f+" is out of date; run MakeRafStore");
+                        rv = null;
+                    }
+                }
+            }
+            catch (IOException e) {
+                System.err.println("RafStore: can't open "+f+": "+e.getMessage());
+                rv = null;
+            }
+            catch (SQLException e) {
+                System.err.println("RafStore: can't check "+f+": "+e.getMessage());
+                rv = null;
+            }
+        }
+        stores.put(key, rv);
+        return rv;
+    }
+
+    /**
+       forget a store, e.g. after it has been rewritten
+    */
+    final public static synchronized void invalidate(int scopReleaseID) {
+        stores.remove(new Integer(scopReleaseID));
+    }
+
+    /**
+       number of raf rows in a release, and the highest raf id,
+       from the db
+    */
+    private static int[] getFingerprint(int scopReleaseID) throws SQLException {
+        PreparedStatement stmt = LocalSQL.prepareCached("select count(*), ifnull(max(id),0) from raf where first_release_id<=? and last_release_id>=?");
+        stmt.setInt(1, scopReleaseID);
+        stmt.setInt(2, scopReleaseID);
+        ResultSet rs = stmt.executeQuery();
+        rs.next();
+        int[] rv = new int[2];
+        rv[0] = rs.getInt(1);
+        rv[1] = rs.getInt(2);
+        rs.close();
+        return rv;
+    }
+
+    /**
+       release this store is for
+    */
+    final public int getSCOPReleaseID() {
+        return scopReleaseID;
+    }
+
+    /**
+       number of chains in the store
+    */
+    final public int size() {
+        return n;
+    }
+
+    /**
+       returns body of a chain, or null if not in the store
+    */
+    final public CharSequence getBody(String code, char chain) {
+        int packed = PDBIndex.pack(code, true);
+        if (packed == 0)
+            return null;
+        int lo = 0;
+        int hi = n-1;
+        while (lo <= hi) {
+            int mid = (lo+hi) >>> 1;
+            int c = compare(codes[mid], chains[mid], packed, chain);
+            if (c < 0)
+                lo = mid+1;
+            else if (c > 0)
+                hi = mid-1;
+            else
+                return getEntryBody(mid);
+        }
+        return null;
+    }
+
+    /**
+       returns body of a chain, by pdb_chain id, or null if not in
+       the store
+    */
+    final public CharSequence getBody(int pdbChainID) {
+        int lo = 0;
+        int hi = n-1;
+        while (lo <= hi) {
+            int mid = (lo+hi) >>> 1;
+            int id = pdbChainIDs[byPDBChain[mid]];
+            if (id < pdbChainID)
+                lo = mid+1;
+            else if (id > pdbChainID)
+                hi = mid-1;
+            else
+                return getEntryBody(byPDBChain[mid]);
+        }
+        return null;
+    }
+
+    /**
+       returns raf id for a chain, or 0 if not in the store
+    */
+    final public int getRAFID(String code, char chain) {
+        int packed = PDBIndex.pack(code, true);
+        if (packed == 0)
+            return 0;
+        int lo = 0;
+        int hi = n-1;
+        while (lo <= hi) {
+            int mid = (lo+hi) >>> 1;
+            int c = compare(codes[mid], chains[mid], packed, chain);
+            if (c < 0)
+                lo = mid+1;
+            else if (c > 0)
+                hi = mid-1;
+            else
+                return rafIDs[mid];
+        }
+        return 0;
+    }
+
+    /**
+       order of index entries
+    */
+    private static int compare(int code1, int chain1, int code2, int chain2) {
+        if (code1 != code2)
+            return (code1 < code2 ? -1 : 1);
+        if (chain1 != chain2)
+            return (chain1 < chain2 ? -1 : 1);
+        return 0;
+    }
+
+    /**
+       body for an index entry
+    */
+    private CharSequence getEntryBody(int i) {
+        long pos = bodiesOffset + offsets[i];
+        int segment = (int)(pos / SEGMENT_SIZE);
+        int start = (int)(pos % SEGMENT_SIZE);
+        return new Body(segments[segment], start, lengths[i]);
+    }
+
+    /**
+       open a store file
+    */
+    private RafStore(File f) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+            long size = ch.size();
+            if (size < HEADER_SIZE)
+                throw new IOException("file too short");
+            ByteBuffer header = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC))
+                throw new IOException("not a RAF store");
+            scopReleaseID = header.getInt();
+            n = header.getInt();
+            bodiesOffset = header.getLong();
+            nRAFs = header.getInt();
+            maxRAFID = header.getInt();
+            if ((n < 0) ||
+                (bodiesOffset != HEADER_SIZE + (long)n*ENTRY_SIZE) ||
+                (bodiesOffset > size))
+                throw new IOException("bad header");
+
+            // read index into memory
+            codes = new int[n];
+            chains = new int[n];
+            rafIDs = new int[n];
+            pdbChainIDs = new int[n];
+            offsets = new long[n];
+            lengths = new int[n];
+            ByteBuffer index = ch.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long)n*ENTRY_SIZE);
+            for (int i=0; i<n; i++) {
+                codes[i] = index.getInt();
+                chains[i] = index.getInt();
+                rafIDs[i] = index.getInt();
+                pdbChainIDs[i] = index.getInt();
+                offsets[i] = index.getLong();
+                lengths[i] = index.getInt();
+                index.getInt();
+                if (bodiesOffset + offsets[i] + lengths[i] > size)
+                    throw new IOException("bad index entry "+i);
+            }
+
+            // map the file in segments starting every SEGMENT_SIZE
+            // bytes; each extends up to 1 GB into the next, so no
+            // body is split between two segments
+            int nSegments = (int)((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            if (nSegments == 0)
+                nSegments = 1;
+            segments = new MappedByteBuffer[nSegments];
+            for (int i=0; i<nSegments; i++) {
+                long start = (long)i*SEGMENT_SIZE;
+                long length = Math.min(size-start, SEGMENT_SIZE+Integer.MAX_VALUE/2);
+                if (length < 0)
+                    length = 0;
+                segments[i] = ch.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+        }
+        finally {
+            raf.close();
+        }
+
+        // sort entries by pdb chain id, for getBody(int)
+        Integer[] order = new Integer[n];
+        for (int i=0; i<n; i++)
+            order[i] = new Integer(i);
+        Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer i1, Integer i2) {
+                    int id1 = pdbChainIDs[i1.intValue()];
+                    int id2 = pdbChainIDs[i2.intValue()];
+                    return (id1 < id2 ? -1 : (id1 == id2 ? 0 : 1));
+                }
+            });
+        byPDBChain = new int[n];
+        for (int i=0; i<n; i++)
+            byPDBChain[i] = order[i].intValue();
+    }
+
+    /**
+       index entry, while exporting
+    */
+    private static class Entry {
+        int code;
+        int chain;
+        int rafID;
+        int pdbChainID;
+        long offset;
+        int length;
+
+        /**
+           body, until it is written
+        */
+        String body;
+    }
+
+    /**
+       reads an index entry and body while exporting
+    */
+    final private static RowMapper<Entry> ENTRY_MAPPER = new RowMapper<Entry>() {
+        public Entry map(ResultSet rs) throws SQLException {
+            Entry e = new Entry();
+            e.rafID = rs.getInt(1);
+            e.pdbChainID = rs.getInt(2);
+            e.code = PDBIndex.pack(rs.getString(3), true);
+            String chain = rs.getString(4);
+            if ((chain == null) || (chain.length() != 1))
+                e.code = 0;
+            else
+                e.chain = chain.charAt(0);
+            e.body = rs.getString(5);
+            return e;
+        }
+    };
+
+    /**
+       write all RAF bodies in a release to a store file.  Bodies
+       are written to a temporary file as they're read, then the
+       sorted index and bodies are written to the final file.
+       Returns the number of chains written.
+    */
+    final public static int export(int scopReleaseID, File f) throws Exception {
+        File tmpBodies = new File(f.getPath()+".bodies");
+        File tmp = new File(f.getPath()+".tmp");
+        ArrayList<Entry> entries = new ArrayList<Entry>();
+        // taken first, so rows added while exporting make the
+        // store look out of date rather than current
+        int[] fp = getFingerprint(scopReleaseID);
+        SQLCursor<Entry> c = SQLCursor.stream("select r.id, c.id, e.code, c.chain, raf_get_body(r.id) from raf r, pdb_chain c, pdb_release re, pdb_entry e where r.pdb_chain_id=c.id and c.pdb_release_id=re.id and re.pdb_entry_id=e.id and r.first_release_id<="+scopReleaseID+" and r.last_release_id>="+scopReleaseID,
+                                              ENTRY_MAPPER);
+        BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(tmpBodies), 1<<16);
+        long offset = 0;
+        int nSkipped = 0;
+        try {
+            Entry e;
+            while ((e = c.next()) != null) {
+                String body = e.body;
+                e.body = null;
+                if ((e.code == 0) || (body == null)) {
+                    nSkipped++;
+                    continue;
+                }
+                e.offset = offset;
+                e.length = body.length();
+                for (int i=0; i<e.length; i++) {
+                    char ch = body.charAt(i);
+                    if (ch > 255)
+                        throw new Exception("non-Latin-1 character in RAF "+e.rafID);
+                    out.write(ch);
+                }
+                offset += e.length;
+                entries.add(e);
+            }
+        }
+        finally {
+            c.close();
+            out.close();
+        }
+
+        Collections.sort(entries, new Comparator<Entry>() {
+                public int compare(Entry e1, Entry e2) {
+                    return RafStore.compare(e1.code, e1.chain, e2.code, e2.chain);
+                }
+            });
+        for (int i=1; i<entries.size(); i++) {
+            Entry e1 = entries.get(i-1);
+            Entry e2 = entries.get(i);
+            if (compare(e1.code, e1.chain, e2.code, e2.chain) == 0)
+                System.err.println("RafStore: duplicate chain "+PDBIndex.unpack(e1.code)+(char)e1.chain+" in RAFs "+e1.rafID+" and "+e2.rafID);
+        }
+
+        int n = entries.size();
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1<<16));
+        try {
+            dos.write(MAGIC);
+            dos.writeInt(scopReleaseID);
+            dos.writeInt(n);
+            dos.writeLong(HEADER_SIZE + (long)n*ENTRY_SIZE);
+            dos.writeInt(fp[0]);
+            dos.writeInt(fp[1]);
+            for (Entry e : entries) {
+                dos.writeInt(e.code);
+                dos.writeInt(e.chain);
+                dos.writeInt(e.rafID);
+                dos.writeInt(e.pdbChainID);
+                dos.writeLong(e.offset);
+                dos.writeInt(e.length);
+                dos.writeInt(0);
+            }
+            InputStream in = new BufferedInputStream(new FileInputStream(tmpBodies), 1<<16);
+            byte[] buf = new byte[1<<16];
+            int l;
+            while ((l = in.read(buf)) > 0)
+                dos.write(buf, 0, l);
+            in.close();
+        }
+        finally {
+            dos.close();
+        }
+        tmpBodies.delete();
+        if (f.exists())
+            f.delete();
+        if (!tmp.renameTo(f))
+            throw new IOException("can't rename "+tmp+" to "+f);
+        invalidate(scopReleaseID);
+        if (nSkipped > 0)
+            System.err.println("RafStore: skipped "+nSkipped+" chains that can't be indexed");
+        return n;
+    }
+}
@@ -0,0 +1,553 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.util;
+
+import java.sql.*;
+import java.util.*;
+import gov.lbl.scop.local.LocalSQL;
+
+/**
+   Everything needed to write the flat files for one release,
+   read from the db in a few streamed queries.  Nodes are kept in
+   arrays indexed by position in the release (sorted by id), like
+   ScopTree, along with their descriptions and comments; the
+   links used only by the master file are read by
+   loadMasterData().  Once loaded, a snapshot is read-only, and
+   may be shared by several writer threads.
+
+   <pre>
+   Version 1.0, 10/17/26
+   </pre>
+
+   @version 1.0, 10/17/26
+   @author JMC
+*/
+public class ReleaseSnapshot {
+    private int scopReleaseID;
+
+    /**
+       release version, as given by the user
+    */
+    private String version;
+
+    /**
+       SCOP or SCOPe
+    */
+    private String dbName;
+
+    private java.sql.Date freezeDate;
+    private java.sql.Date releaseDate;
+    private boolean isPublic;
+
+    /**
+       date of last weekly update, or null if none (or release
+       is 12 or earlier)
+    */
+    private java.sql.Date updateDate;
+
+    /**
+       abbreviations for each level, indexed by level id
+    */
+    private String[] levelAbbrev;
+    private String[] masterAbbrev;
+
+    /**
+       nodes, in order of id
+    */
+    private int[] ids;
+    private int[] sunid;
+    private byte[] level;
+    private String[] sccs;
+    private String[] sid;
+    private String[] description;
+
+    /**
+       parent_node_id of each node, and index of the parent, or -1
+       if none or not in this release
+    */
+    private int[] parentID;
+    private int[] parent;
+
+    /**
+       first child and next sibling of each node, or -1 if none.
+       Children are in order of id.
+    */
+    private int[] firstChild;
+    private int[] nextSibling;
+
+    /**
+       comments for node i are commentText[commentStart[i]] to
+       commentText[commentStart[i+1]-1], in order of id; null if
+       not loaded
+    */
+    private int[] commentStart;
+    private String[] commentText;
+    private boolean[] commentAuto;
+
+    /**
+       ncbi taxid for each species, or 0 if none; null if not loaded
+    */
+    private int[] taxid;
+
+    /**
+       pdb release ids of chains linked to each node, in order of
+       pdb_chain_id, or null if none
+    */
+    private int[][] pdbReleases;
+
+    /**
+       uniprot and pfam accessions linked to each node, or null
+       if none
+    */
+    private String[][] uniprot;
+    private String[][] pfam;
+
+    /**
+       largest sunid in earlier releases, if loaded
+    */
+    private int maxOldSunid = 0;
+
+    /**
+       which px were merged from others in this release, and
+       the sunids they were merged from (x+y); null if not loaded
+    */
+    private boolean[] merged;
+    private String[] mergedSunids;
+
+    /**
+       load the release info and all nodes for a release
+    */
+    public ReleaseSnapshot(String version) throws Exception {
+        this.version = version;
+        scopReleaseID = LocalSQL.lookupSCOPRelease(version);
+        dbName = LocalSQL.getDBName(scopReleaseID);
+
+        Statement stmt = LocalSQL.createStatement();
+        ResultSet rs = stmt.executeQuery("select freeze_date, release_date, is_public from scop_release where id="+scopReleaseID);
+        rs.next();
+        freezeDate = rs.getDate(1);
+        releaseDate = rs.getDate(2);
+        isPublic = (rs.getInt(3)==1);
+        rs.close();
+        if (scopReleaseID > 12)
+            updateDate = LocalSQL.getUpdateDate(scopReleaseID);
+
+        rs = stmt.executeQuery("select max(id) from scop_level");
+        rs.next();
+        int nLevels = rs.getInt(1);
+        rs.close();
+        levelAbbrev = new String[nLevels+1];
+        masterAbbrev = new String[nLevels+1];
+        rs = stmt.executeQuery("select id, abbreviation, master_abbreviation from scop_level");
+        while (rs.next()) {
+            int l = rs.getInt(1);
+            levelAbbrev[l] = rs.getString(2);
+            masterAbbrev[l] = rs.getString(3);
+        }
+        rs.close();
+
+        rs = stmt.executeQuery("select count(*) from scop_node where release_id="+scopReleaseID);
+        rs.next();
+        int n = rs.getInt(1);
+        rs.close();
+        stmt.close();
+
+        ids = new int[n];
+        sunid = new int[n];
+        level = new byte[n];
+        sccs = new String[n];
+        sid = new String[n];
+        description = new String[n];
+        parentID = new int[n];
+
+        stmt = LocalSQL.createStatementOneRow();
+        rs = stmt.executeQuery("select id, sunid, level_id, sccs, sid, description, parent_node_id from scop_node where release_id="+scopReleaseID+" order by id");
+        int i = 0;
+        while (rs.next()) {
+            if (i == n)
+                throw new Exception("Nodes added to release "+version+" while loading");
+            ids[i] = rs.getInt(1);
+            sunid[i] = rs.getInt(2);
+            level[i] = (byte)rs.getInt(3);
+            sccs[i] = rs.getString(4);
+            sid[i] = rs.getString(5);
+            description[i] = rs.getString(6);
+            parentID[i] = rs.getInt(7);
+            i++;
+        }
+        rs.close();
+        stmt.close();
+        if (i < n)
+            throw new Exception("Nodes deleted from release "+version+" while loading");
+
+        // link parents and children; go backwards so children
+        // end up in order of id
+        parent = new int[n];
+        firstChild = new int[n];
+        nextSibling = new int[n];
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(nextSibling, -1);
+        for (i = n - 1; i >= 0; i--) {
+            int p = (parentID[i] == 0 ? -1 : indexOf(parentID[i]));
+            parent[i] = p;
+            if (p > -1) {
+                nextSibling[i] = firstChild[p];
+                firstChild[p] = i;
+            }
+        }
+    }
+
+    /**
+       load all comments on nodes in the release
+    */
+    final public void loadComments() throws SQLException {
+        int n = ids.length;
+        commentStart = new int[n+1];
+        Vector<String> text = new Vector<String>();
+        Vector<Boolean> auto = new Vector<Boolean>();
+        Statement stmt = LocalSQL.createStatementOneRow();
+        ResultSet rs = stmt.executeQuery("select c.node_id, c.description, c.is_autogenerated from scop_node n, scop_comment c where c.node_id=n.id and n.release_id="+scopReleaseID+" order by n.id, c.id");
+        int i = 0;
+        while (rs.next()) {
+            int nodeID = rs.getInt(1);
+            while ((i < n) && (ids[i] < nodeID))
+                commentStart[++i] = text.size();
+            text.add(rs.getString(2));
+            auto.add(new Boolean(rs.getInt(3)==1));
+        }
+        rs.close();
+        stmt.close();
+        while (i < n)
+            commentStart[++i] = text.size();
+        commentText = text.toArray(new String[text.size()]);
+        commentAuto = new boolean[commentText.length];
+        for (int j=0; j<commentAuto.length; j++)
+            commentAuto[j] = auto.get(j).booleanValue();
+    }
+
+    /**
+       load links used by the master file: taxids, pdb releases,
+       and uniprot and pfam accessions.  If oldIDs is set, also
+       finds the largest sunid used in earlier releases; if
+       showMerge is set, finds which px were merged.
+    */
+    final public void loadMasterData(boolean oldIDs,
+                                     boolean showMerge) throws SQLException {
+        int n = ids.length;
+        taxid = new int[n];
+        pdbReleases = new int[n][];
+        uniprot = new String[n][];
+        pfam = new String[n][];
+
+        Statement stmt = LocalSQL.createStatementOneRow();
+        ResultSet rs = stmt.executeQuery("select l.node_id, s.ncbi_taxid from scop_node n, link_species l, species s where l.node_id=n.id and n.release_id="+scopReleaseID+" and l.species_id=s.id and s.ncbi_taxid is not null order by l.node_id, l.species_id");
+        while (rs.next()) {
+            int i = indexOf(rs.getInt(1));
+            if ((i > -1) && (taxid[i] == 0))
+                taxid[i] = rs.getInt(2);
+        }
+        rs.close();
+        stmt.close();
+
+        stmt = LocalSQL.createStatementOneRow();
+        rs = stmt.executeQuery("select l.node_id, c.pdb_release_id from scop_node n, link_pdb l, pdb_chain c where l.node_id=n.id and n.release_id="+scopReleaseID+" and l.pdb_chain_id=c.id order by l.node_id, l.pdb_chain_id");
+        int lastI = -1;
+        Vector<Integer> releases = new Vector<Integer>();
+        while (rs.next()) {
+            int i = indexOf(rs.getInt(1));
+            if (i != lastI) {
+                if (lastI > -1)
+                    pdbReleases[lastI] = toArray(releases);
+                releases.clear();
+                lastI = i;
+            }
+            releases.add(new Integer(rs.getInt(2)));
+        }
+        if (lastI > -1)
+            pdbReleases[lastI] = toArray(releases);
+        rs.close();
+        stmt.close();
+
+        loadAccessions(uniprot, "link_uniprot", "uniprot_accession");
+        loadAccessions(pfam, "link_pfam", "pfam_accession");
+
+        if (oldIDs) {
+            // note:  currently includes non-public releases:
+            stmt = LocalSQL.createStatement();
+            rs = stmt.executeQuery("select max(sunid) from scop_node where release_id<"+scopReleaseID);
+            rs.next();
+            maxOldSunid = rs.getInt(1);
+            rs.close();
+            stmt.close();
+        }
+
+        if (showMerge) {
+            merged = new boolean[n];
+            mergedSunids = new String[n];
+            stmt = LocalSQL.createStatement();
+            rs = stmt.executeQuery("select distinct(new_node_id) from scop_history where release_id="+scopReleaseID+" and change_type_id=4 and new_node_id in (select id from scop_node where release_id="+scopReleaseID+" and level_id=8)");
+            while (rs.next()) {
+                int i = indexOf(rs.getInt(1));
+                if (i > -1)
+                    merged[i] = true;
+            }
+            rs.close();
+            rs = stmt.executeQuery("select h.new_node_id, n.sunid from scop_node n, scop_history h where h.old_node_id=n.id and h.release_id="+scopReleaseID+" and h.change_type_id=4 order by h.new_node_id, h.id");
+            while (rs.next()) {
+                int i = indexOf(rs.getInt(1));
+                if ((i == -1) || (!merged[i]))
+                    continue;
+                if (mergedSunids[i]==null)
+                    mergedSunids[i] = ""+rs.getInt(2);
+                else
+                    mergedSunids[i] += "+"+rs.getInt(2);
+            }
+            rs.close();
+            stmt.close();
+        }
+    }
+
+    /**
+       load accessions from a link table, in order of accession
+    */
+    private void loadAccessions(String[][] rv,
+                                String table,
+                                String column) throws SQLException {
+        Statement stmt = LocalSQL.createStatementOneRow();
+        ResultSet rs = stmt.executeQuery("select l.node_id, l."+column+" from scop_node n, "+table+" l where l.node_id=n.id and n.release_id="+scopReleaseID+" order by l.node_id, l."+column);
+        int lastI = -1;
+        Vector<String> acc = new Vector<String>();
+        while (rs.next()) {
+            int i = indexOf(rs.getInt(1));
+            if (i != lastI) {
+                if (lastI > -1)
+                    rv[lastI] = acc.toArray(new String[acc.size()]);
+                acc.clear();
+                lastI = i;
+            }
+            acc.add(rs.getString(2));
+        }
+        if (lastI > -1)
+            rv[lastI] = acc.toArray(new String[acc.size()]);
+        rs.close();
+        stmt.close();
+    }
+
+    private static int[] toArray(Vector<Integer> v) {
+        int[] rv = new int[v.size()];
+        for (int i=0; i<rv.length; i++)
+            rv[i] = v.get(i).intValue();
+        return rv;
+    }
+
+    /**
+       index of a node, or -1 if not in this release
+    */
+    final public int indexOf(int nodeID) {
+        int i = Arrays.binarySearch(ids, nodeID);
+        if (i < 0)
+            return -1;
+        return i;
+    }
+
+    final public int getReleaseID() {
+        return scopReleaseID;
+    }
+
+    final public String getVersion() {
+        return version;
+    }
+
+    final public String getDBName() {
+        return dbName;
+    }
+
+    final public java.sql.Date getFreezeDate() {
+        return freezeDate;
+    }
+
+    final public java.sql.Date getReleaseDate() {
+        return releaseDate;
+    }
+
+    final public boolean isPublic() {
+        return isPublic;
+    }
+
+    final public java.sql.Date getUpdateDate() {
+        return updateDate;
+    }
+
+    final public String getLevelAbbrev(int levelID) {
+        return levelAbbrev[levelID];
+    }
+
+    final public String getMasterAbbrev(int levelID) {
+        return masterAbbrev[levelID];
+    }
+
+    /**
+       number of nodes in the release
+    */
+    final public int size() {
+        return ids.length;
+    }
+
+    final public int getID(int i) {
+        return ids[i];
+    }
+
+    /**
+       sunid of node i, or -1 if i is -1, like LocalSQL.getSunid
+    */
+    final public int getSunid(int i) {
+        if (i == -1)
+            return -1;
+        return sunid[i];
+    }
+
+    final public int getLevel(int i) {
+        return level[i];
+    }
+
+    final public String getSCCS(int i) {
+        return sccs[i];
+    }
+
+    final public String getSid(int i) {
+        return sid[i];
+    }
+
+    final public String getDescription(int i) {
+        return description[i];
+    }
+
+    /**
+       parent_node_id of node i, or 0 if none
+    */
+    final public int getParentID(int i) {
+        return parentID[i];
+    }
+
+    /**
+       index of parent of node i, or -1 if none in this release
+    */
+    final public int getParent(int i) {
+        return parent[i];
+    }
+
+    /**
+       index of the first child of node i, or -1 if none
+    */
+    final public int getFirstChild(int i) {
+        return firstChild[i];
+    }
+
+    /**
+       index of the next child of node i's parent, or -1 if none
+    */
+    final public int getNextSibling(int i) {
+        return nextSibling[i];
+    }
+
+    /**
+       Walks up the tree from node i until parent at a given level
+       is found; returns its index, or -1 if not found (or i is
+       -1).  Same as LocalSQL.findParent
+    */
+    final public int findParent(int i, int levelID) {
+        if (i == -1)
+            return -1;
+        for (int p = parent[i]; p > -1; p = parent[p])
+            if (level[p] == levelID)
+                return p;
+        return -1;
+    }
+
+    /**
+       index of the first comment on node i
+    */
+    final public int getCommentStart(int i) {
+        return commentStart[i];
+    }
+
+    /**
+       index after the last comment on node i
+    */
+    final public int getCommentEnd(int i) {
+        return commentStart[i+1];
+    }
+
+    final public String getComment(int j) {
+        return commentText[j];
+    }
+
+    final public boolean isCommentAutogenerated(int j) {
+        return commentAuto[j];
+    }
+
+    /**
+       ncbi taxid of node i, or 0 if none
+    */
+    final public int getTaxid(int i) {
+        return taxid[i];
+    }
+
+    /**
+       pdb releases of chains linked to node i, or null if none
+    */
+    final public int[] getPDBReleases(int i) {
+        return pdbReleases[i];
+    }
+
+    /**
+       uniprot accessions linked to node i, or null if none
+    */
+    final public String[] getUniprot(int i) {
+        return uniprot[i];
+    }
+
+    /**
+       pfam accessions linked to node i, or null if none
+    */
+    final public String[] getPfam(int i) {
+        return pfam[i];
+    }
+
+    final public int getMaxOldSunid() {
+        return maxOldSunid;
+    }
+
+    /**
+       was px i merged from others in this release?
+    */
+    final public boolean isMerged(int i) {
+        return ((merged != null) && merged[i]);
+    }
+
+    /**
+       sunids px i was merged from (x+y)
+    */
+    final public String getMergedSunids(int i) {
+        return mergedSunids[i];
+    }
+}
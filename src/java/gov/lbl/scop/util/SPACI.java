@@ -21,6 +21,7 @@
  */
 package gov.lbl.scop.util;
 
+import gov.lbl.scop.local.DimensionCache;
 import gov.lbl.scop.local.LocalSQL;
 import org.strbio.io.Printf;
 
@@ -91,15 +92,15 @@ public class SPACI {
        In case of ties, sort alphabetically by sid.
     */
     final public static Vector<SPACI.SPACINode> sortByScores(Vector<Integer> nodeID,
-                                                             HashMap<Integer, String> nodesToSids,
-                                                             HashMap<Integer, Double> nodesToScores) {
+                                                             IntMap<String> nodesToSids,
+                                                             IntMap<Double> nodesToScores) {
         Vector<SPACI.SPACINode> rv = new Vector<SPACI.SPACINode>();
         for (Integer id : nodeID) {
             // error if no sid
-            String sid = nodesToSids.get(id);
+            String sid = nodesToSids.get(id.intValue());
             if (sid == null)
                 throw new IllegalArgumentException("unmapped sid for " + id);
-            Double score = nodesToScores.get(id);
+            Double score = nodesToScores.get(id.intValue());
             if (score != null) {
                 rv.add(new SPACINode(id.intValue(),
                                      sid,
@@ -313,14 +314,13 @@ public class SPACI {
             if (methodID == 0) {
                 method = "-";
             } else {
-                rs = stmt.executeQuery("select summary, is_theory from pdb_method where id=" + methodID);
-                if (rs.next()) {
-                    method = rs.getString(1);
-                    if (rs.getInt(2) == 1) method = "THEORY";
+                String summary = DimensionCache.getMethodSummary(methodID);
+                if (summary != null) {
+                    method = summary;
+                    if (DimensionCache.isTheoryMethod(methodID)) method = "THEORY";
                     if (method.equals("THEORY"))
                         isTheory = true;
                 }
-                rs.close();
             }
 
             whatcheckSummary = whatcheck(whatcheck);
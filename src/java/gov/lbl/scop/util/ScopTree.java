@@ -0,0 +1,407 @@
+/*
+ * Software to build and maintain SCOPe, https://scop.berkeley.edu/
+ *
+ * Copyright (C) 2012-2018 The Regents of the University of California
+ *
+ * For feedback, mailto:scope@compbio.berkeley.edu
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * Version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+package gov.lbl.scop.util;
+
+import java.sql.*;
+import java.util.*;
+import gov.lbl.scop.local.LocalSQL;
+import gov.lbl.scop.local.SCOP;
+
+/**
+   In-memory snapshot of the SCOP hierarchy for one release,
+   stored in primitive arrays indexed by position in the release
+   (nodes sorted by id).  Answers parent/child/level questions
+   without going back to the db.
+   <p>
+   Snapshots are shared per JVM, and are only used by the LocalSQL
+   helpers if enabled, either with setEnabled() or by setting
+   scop_tree=true in scop.properties.  Tools that edit the tree
+   should leave it disabled, or call invalidate() after editing.
+*/
+public class ScopTree {
+    /**
+       are snapshots used by the LocalSQL helpers?
+    */
+    private static boolean enabled = "true".equals(SCOP.getProperty("scop_tree"));
+
+    /**
+       snapshots loaded so far, by release id
+    */
+    private static HashMap<Integer,ScopTree> trees = new HashMap<Integer,ScopTree>();
+
+    /**
+       release this is a snapshot of
+    */
+    private int scopReleaseID;
+
+    /**
+       node ids, in increasing order
+    */
+    private int[] ids;
+
+    /**
+       smallest id in the release
+    */
+    private int minID;
+
+    /**
+       index of each id - minID, or -1 if not in the release; null
+       if the ids are too sparse, in which case we search ids[]
+    */
+    private int[] idIndex;
+
+    /**
+       index of parent, or -1 for root
+    */
+    private int[] parent;
+
+    /**
+       first child and next sibling of each node, or -1 if none.
+       Children are in order of id.
+    */
+    private int[] firstChild;
+    private int[] nextSibling;
+
+    private byte[] level;
+    private int[] sunid;
+
+    /**
+       sccs and sid of each node, stored as offsets into one array;
+       length is -1 if null
+    */
+    private char[] sccsChars;
+    private int[] sccsStart;
+    private short[] sccsLength;
+    private char[] sidChars;
+    private int[] sidStart;
+    private short[] sidLength;
+
+    /**
+       turn use of snapshots by LocalSQL on or off
+    */
+    final public static void setEnabled(boolean b) {
+        enabled = b;
+    }
+
+    final public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+       get snapshot for a release, loading it if needed
+    */
+    final public static synchronized ScopTree get(int scopReleaseID) throws SQLException {
+        Integer key = new Integer(scopReleaseID);
+        ScopTree rv = trees.get(key);
+        if (rv == null) {
+            rv = new ScopTree(scopReleaseID);
+            trees.put(key, rv);
+        }
+        return rv;
+    }
+
+    /**
+       get snapshot containing a node, if snapshots are enabled;
+       returns null if disabled or node isn't found.
+    */
+    final public static ScopTree forNode(int nodeID) throws SQLException {
+        if ((!enabled) || (nodeID <= 0))
+            return null;
+        synchronized (ScopTree.class) {
+            for (ScopTree t : trees.values())
+                if (t.contains(nodeID))
+                    return t;
+        }
+        int scopReleaseID = LocalSQL.getSCOPRelease(nodeID);
+        if (scopReleaseID == 0)
+            return null;
+        ScopTree rv = get(scopReleaseID);
+        if (rv.contains(nodeID))
+            return rv;
+        return null;
+    }
+
+    /**
+       forget snapshot for a release, after it has been edited
+    */
+    final public static synchronized void invalidate(int scopReleaseID) {
+        trees.remove(new Integer(scopReleaseID));
+    }
+
+    /**
+       forget all snapshots
+    */
+    final public static synchronized void invalidateAll() {
+        trees.clear();
+    }
+
+    /**
+       load a release from the db
+    */
+    private ScopTree(int scopReleaseID) throws SQLException {
+        this.scopReleaseID = scopReleaseID;
+
+        Statement stmt = LocalSQL.createStatement();
+        ResultSet rs = stmt.executeQuery("select count(*), min(id), max(id) from scop_node where release_id="+scopReleaseID);
+        rs.next();
+        int n = rs.getInt(1);
+        minID = rs.getInt(2);
+        int maxID = rs.getInt(3);
+        rs.close();
+        stmt.close();
+
+        ids = new int[n];
+        int[] parentID = new int[n];
+        level = new byte[n];
+        sunid = new int[n];
+        StringBuilder sccsBuffer = new StringBuilder();
+        sccsStart = new int[n];
+        sccsLength = new short[n];
+        StringBuilder sidBuffer = new StringBuilder();
+        sidStart = new int[n];
+        sidLength = new short[n];
+
+        // stream in nodes; ignore any added since we counted
+        stmt = LocalSQL.createStatementOneRow();
+        rs = stmt.executeQuery("select id, parent_node_id, level_id, sunid, sccs, sid from scop_node where release_id="+scopReleaseID+" order by id");
+        int i = 0;
+        while (rs.next() && (i < n)) {
+            int id = rs.getInt(1);
+            if (id > maxID)
+                break;
+            ids[i] = id;
+            parentID[i] = rs.getInt(2);
+            level[i] = (byte)rs.getInt(3);
+            sunid[i] = rs.getInt(4);
+            String s = rs.getString(5);
+            sccsStart[i] = sccsBuffer.length();
+            if (s == null)
+                sccsLength[i] = -1;
+            else {
+                sccsBuffer.append(s);
+                sccsLength[i] = (short)s.length();
+            }
+            s = rs.getString(6);
+            sidStart[i] = sidBuffer.length();
+            if (s == null)
+                sidLength[i] = -1;
+            else {
+                sidBuffer.append(s);
+                sidLength[i] = (short)s.length();
+            }
+            i++;
+        }
+        rs.close();
+        stmt.close();
+        sccsChars = sccsBuffer.toString().toCharArray();
+        sidChars = sidBuffer.toString().toCharArray();
+        if (i < n) {
+            // nodes deleted while we were loading
+            n = i;
+            ids = Arrays.copyOf(ids, n);
+        }
+
+        // use direct index unless ids are very sparse
+        if ((n > 0) && ((long)maxID - minID < 4L * n + 1024)) {
+            idIndex = new int[maxID - minID + 1];
+            Arrays.fill(idIndex, -1);
+            for (i = 0; i < n; i++)
+                idIndex[ids[i] - minID] = i;
+        }
+
+        // link parents and children; go backwards so children
+        // end up in order of id
+        parent = new int[n];
+        firstChild = new int[n];
+        nextSibling = new int[n];
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(nextSibling, -1);
+        for (i = n - 1; i >= 0; i--) {
+            int p = (parentID[i] == 0 ? -1 : indexOf(parentID[i]));
+            parent[i] = p;
+            if (p > -1) {
+                nextSibling[i] = firstChild[p];
+                firstChild[p] = i;
+            }
+        }
+    }
+
+    /**
+       index of a node, or -1 if not in this release
+    */
+    private int indexOf(int nodeID) {
+        if (idIndex != null) {
+            int i = nodeID - minID;
+            if ((i < 0) || (i >= idIndex.length))
+                return -1;
+            return idIndex[i];
+        }
+        int i = Arrays.binarySearch(ids, nodeID);
+        if (i < 0)
+            return -1;
+        return i;
+    }
+
+    final public int getReleaseID() {
+        return scopReleaseID;
+    }
+
+    /**
+       number of nodes in the snapshot
+    */
+    final public int size() {
+        return ids.length;
+    }
+
+    /**
+       is node in this release?
+    */
+    final public boolean contains(int nodeID) {
+        return (indexOf(nodeID) > -1);
+    }
+
+    /**
+       returns parent node id, or 0 if none
+    */
+    final public int getParent(int nodeID) {
+        int i = indexOf(nodeID);
+        if ((i == -1) || (parent[i] == -1))
+            return 0;
+        return ids[parent[i]];
+    }
+
+    /**
+       returns level for a node, or 0 if not found
+    */
+    final public int getLevel(int nodeID) {
+        int i = indexOf(nodeID);
+        if (i == -1)
+            return 0;
+        return level[i];
+    }
+
+    /**
+       returns sunid for a node, or -1 if not found
+    */
+    final public int getSunid(int nodeID) {
+        int i = indexOf(nodeID);
+        if (i == -1)
+            return -1;
+        return sunid[i];
+    }
+
+    /**
+       returns sccs for a node, or null if not found
+    */
+    final public String getSCCS(int nodeID) {
+        int i = indexOf(nodeID);
+        if ((i == -1) || (sccsLength[i] == -1))
+            return null;
+        return new String(sccsChars, sccsStart[i], sccsLength[i]);
+    }
+
+    /**
+       returns sid for a node, or null if not found
+    */
+    final public String getSid(int nodeID) {
+        int i = indexOf(nodeID);
+        if ((i == -1) || (sidLength[i] == -1))
+            return null;
+        return new String(sidChars, sidStart[i], sidLength[i]);
+    }
+
+    /**
+       Walks up the tree until parent at a given level is found,
+       or 0 if not found.  Same as LocalSQL.findParent
+    */
+    final public int findParent(int nodeID, int levelID) {
+        int i = indexOf(nodeID);
+        if (i == -1)
+            return 0;
+        for (int p = parent[i]; p > -1; p = parent[p])
+            if (level[p] == levelID)
+                return ids[p];
+        return 0;
+    }
+
+    /**
+       Finds all descendents of a given node; optionally (if levelID
+       is non-zero) at a given level.  Same as LocalSQL.findChildren
+    */
+    final public Vector<Integer> findChildren(int nodeID, int levelID) {
+        Vector<Integer> rv = new Vector<Integer>();
+        int i = indexOf(nodeID);
+        if (i > -1)
+            addChildren(i, levelID, rv);
+        return rv;
+    }
+
+    private void addChildren(int i, int levelID, Vector<Integer> rv) {
+        for (int c = firstChild[i]; c > -1; c = nextSibling[c]) {
+            int l = level[c];
+            if ((l == levelID) || (levelID == 0))
+                rv.add(new Integer(ids[c]));
+            if ((l < 8) &&
+                ((l < levelID) || (levelID == 0)))
+                addChildren(c, levelID, rv);
+        }
+    }
+
+    /**
+       Checks whether one node is an ancestor of another.
+    */
+    final public boolean isAncestor(int parentNodeID, int childNodeID) {
+        int p = indexOf(parentNodeID);
+        int c = indexOf(childNodeID);
+        if ((p == -1) || (c == -1))
+            return false;
+        for (c = parent[c]; c > -1; c = parent[c])
+            if (c == p)
+                return true;
+        return false;
+    }
+
+    /**
+       Returns level of the lowest common ancestor of two nodes
+       (or of the node itself, if they are the same), or 0 if
+       they have none in this release.
+    */
+    final public int getFirstCommonLevel(int nodeID1, int nodeID2) {
+        int a = indexOf(nodeID1);
+        int b = indexOf(nodeID2);
+        if ((a == -1) || (b == -1))
+            return 0;
+        while ((a > -1) && (b > -1) && (a != b)) {
+            if (level[a] > level[b])
+                a = parent[a];
+            else if (level[b] > level[a])
+                b = parent[b];
+            else {
+                a = parent[a];
+                b = parent[b];
+            }
+        }
+        if ((a == -1) || (b == -1))
+            return 0;
+        return level[a];
+    }
+}
@@ -35,6 +35,7 @@ import org.strbio.mol.*;
 import org.strbio.util.*;
 import org.strbio.IO;
 import gov.lbl.scop.app.ParsePDBXML;
+import gov.lbl.scop.local.JobMetrics;
 import gov.lbl.scop.local.LocalSQL;
 
 /**
@@ -1086,6 +1087,7 @@ public class Thumbnail {
 
         ProcessBuilder pb = new ProcessBuilder("/usr/bin/pymol", "-c", tmpFile.getPath());
         pb.redirectErrorStream(true);
+        long t = JobMetrics.startTool();
         Process p = pb.start();
         ByteArrayOutputStream pymolLog = new ByteArrayOutputStream();
         InputStream pymolOutput = p.getInputStream();
@@ -1096,6 +1098,7 @@ public class Thumbnail {
                 pymolLog.write(buffer, 0, n);
         }
         int exitCode = p.waitFor();
+        JobMetrics.endTool(t);
         tmpFile.delete();
         if (exitCode != 0)
             throw new IOException("PyMOL failed with exit code "+exitCode+
@@ -1110,9 +1113,11 @@ public class Thumbnail {
         Program gimp = new Program(GIMP_CONSOLE);
         gimp.setOutput(null);
         gimp.setError(null);
+        long t = JobMetrics.startTool();
         gimp.run(gimpBatchArgs("(scop-thumbs \""+fileName+"\" \""+
                                smallFileName+"\" \""+
                                mediumFileName+"\")"));
+        JobMetrics.endTool(t);
     }
 
     final public static void makeThumbTiny(String fileName,
@@ -1120,8 +1125,10 @@ public class Thumbnail {
         Program gimp = new Program(GIMP_CONSOLE);
         gimp.setOutput(null);
         gimp.setError(null);
+        long t = JobMetrics.startTool();
         gimp.run(gimpBatchArgs("(scop-thumb-tiny \""+fileName+"\" \""+
                                tinyFileName+"\")"));
+        JobMetrics.endTool(t);
     }
 
     /**